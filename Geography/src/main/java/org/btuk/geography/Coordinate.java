@@ -3,7 +3,14 @@ package org.btuk.geography;
 public record Coordinate(double latitude, double longitude) {
 
     // Cache key: rounded to 6 decimal places to avoid precision issues.
+    // Deprecated: the result depends on the default locale, use getCellKey() instead.
+    @Deprecated
     public String getCacheKey() {
         return String.format("%.6f_%.6f", latitude, longitude);
     }
+
+    // Cache key: the GeoCell containing this coordinate.
+    public long getCellKey() {
+        return GeoCell.key(latitude, longitude);
+    }
 }
@@ -0,0 +1,161 @@
+package org.btuk.geography;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * A growable list of coordinates stored as two primitive arrays, for bulk operations.
+ * <p>
+ * Bulk APIs take a buffer and write their results into arrays aligned with it, so the result for the coordinate at
+ * index {@code i} is at index {@code i} of the result array. Converting 100k points then needs a handful of arrays
+ * instead of a record, a map entry and a boxed key per point.
+ */
+public final class CoordinateBuffer {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private double[] latitudes;
+    private double[] longitudes;
+    private int size;
+
+    public CoordinateBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of coordinates the buffer can hold before it grows
+     */
+    public CoordinateBuffer(int capacity) {
+        this.latitudes = new double[capacity];
+        this.longitudes = new double[capacity];
+    }
+
+    private CoordinateBuffer(double[] latitudes, double[] longitudes, int size) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.size = size;
+    }
+
+    /**
+     * Create a buffer backed by existing arrays, without copying them.
+     *
+     * @param latitudes  the latitudes
+     * @param longitudes the longitudes, as many as latitudes
+     * @return the buffer, holding every element of the arrays
+     */
+    public static CoordinateBuffer wrap(double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Got " + latitudes.length + " latitudes but " + longitudes.length + " longitudes");
+        }
+        return new CoordinateBuffer(latitudes, longitudes, latitudes.length);
+    }
+
+    /**
+     * Copy coordinates into a new buffer.
+     *
+     * @param coordinates the coordinates
+     * @return the buffer
+     */
+    public static CoordinateBuffer of(Collection<Coordinate> coordinates) {
+        CoordinateBuffer buffer = new CoordinateBuffer(coordinates.size());
+        for (Coordinate coordinate : coordinates) {
+            buffer.add(coordinate.latitude(), coordinate.longitude());
+        }
+        return buffer;
+    }
+
+    public void add(double latitude, double longitude) {
+        if (size == latitudes.length) {
+            ensureCapacity(size + 1);
+        }
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        size++;
+    }
+
+    public void add(Coordinate coordinate) {
+        add(coordinate.latitude(), coordinate.longitude());
+    }
+
+    public void set(int index, double latitude, double longitude) {
+        Objects.checkIndex(index, size);
+        latitudes[index] = latitude;
+        longitudes[index] = longitude;
+    }
+
+    public double getLatitude(int index) {
+        Objects.checkIndex(index, size);
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        Objects.checkIndex(index, size);
+        return longitudes[index];
+    }
+
+    /**
+     * Get a coordinate as a record, which allocates, prefer the primitive getters in loops.
+     *
+     * @param index the index
+     * @return the coordinate
+     */
+    public Coordinate get(int index) {
+        Objects.checkIndex(index, size);
+        return new Coordinate(latitudes[index], longitudes[index]);
+    }
+
+    /**
+     * Get the {@link GeoCell} of a coordinate.
+     *
+     * @param index the index
+     * @return the cell key, as {@link Coordinate#getCellKey()}
+     */
+    public long getCellKey(int index) {
+        Objects.checkIndex(index, size);
+        return GeoCell.key(latitudes[index], longitudes[index]);
+    }
+
+    /**
+     * Get the array of latitudes. Only the first {@link #size()} elements are coordinates, and the array is replaced
+     * when the buffer grows.
+     *
+     * @return the backing array of latitudes
+     */
+    public double[] getLatitudes() {
+        return latitudes;
+    }
+
+    /**
+     * Get the array of longitudes. Only the first {@link #size()} elements are coordinates, and the array is replaced
+     * when the buffer grows.
+     *
+     * @return the backing array of longitudes
+     */
+    public double[] getLongitudes() {
+        return longitudes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all coordinates, keeping the arrays for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > latitudes.length) {
+            int grown = (int) Math.min(Math.max(capacity, latitudes.length * 2L), Integer.MAX_VALUE - 8);
+            latitudes = Arrays.copyOf(latitudes, grown);
+            longitudes = Arrays.copyOf(longitudes, grown);
+        }
+    }
+}
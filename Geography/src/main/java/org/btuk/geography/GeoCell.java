@@ -0,0 +1,62 @@
+package org.btuk.geography;
+
+/**
+ * Quantised lat/lon cells packed into a {@code long}.
+ * <p>
+ * A cell is {@link #CELL_SIZE_DEGREES} on each side (about 11 metres at the equator), the upper 32 bits of the key hold
+ * the latitude index and the lower 32 bits the longitude index.
+ */
+public final class GeoCell {
+
+    public static final int CELLS_PER_DEGREE = 10_000;
+    public static final double CELL_SIZE_DEGREES = 1.0 / CELLS_PER_DEGREE;
+
+    private static final long LONGITUDE_CELLS = 360L * CELLS_PER_DEGREE;
+    private static final long LATITUDE_CELLS = 180L * CELLS_PER_DEGREE;
+
+    private GeoCell() {
+    }
+
+    /**
+     * Get the key of the cell containing a coordinate.
+     *
+     * @param latitude  the latitude in degrees
+     * @param longitude the longitude in degrees
+     * @return the cell key
+     */
+    public static long key(double latitude, double longitude) {
+        long latitudeIndex = Math.clamp((long) Math.floor((latitude + 90) * CELLS_PER_DEGREE), 0, LATITUDE_CELLS - 1);
+        long longitudeIndex = Math.floorMod((long) Math.floor((longitude + 180) * CELLS_PER_DEGREE), LONGITUDE_CELLS);
+        return (latitudeIndex << 32) | longitudeIndex;
+    }
+
+    /**
+     * Get the latitude of the centre of a cell.
+     *
+     * @param key the cell key
+     * @return the latitude in degrees
+     */
+    public static double latitude(long key) {
+        return ((key >>> 32) + 0.5) / CELLS_PER_DEGREE - 90;
+    }
+
+    /**
+     * Get the longitude of the centre of a cell.
+     *
+     * @param key the cell key
+     * @return the longitude in degrees
+     */
+    public static double longitude(long key) {
+        return ((key & 0xFFFFFFFFL) + 0.5) / CELLS_PER_DEGREE - 180;
+    }
+
+    /**
+     * Get the centre of a cell.
+     *
+     * @param key the cell key
+     * @return the coordinate of the centre of the cell
+     */
+    public static Coordinate centre(long key) {
+        return new Coordinate(latitude(key), longitude(key));
+    }
+}
@@ -0,0 +1,238 @@
+package org.btuk.geography.elevation;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.CoordinateBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ground elevation from a directory of SRTM {@code .hgt} tiles, entirely offline.
+ * <p>
+ * Tiles are memory-mapped when first needed and kept in an LRU of at most {@code maximumOpenTiles}, the operating
+ * system pages in only the parts that are read. Tiles that are not on disk are remembered separately, so the sea and
+ * other gaps neither cost a file system lookup every time nor evict mapped tiles.
+ * <p>
+ * GeoTIFF is not supported, convert such data to {@code .hgt} first, for example with {@code gdal_translate -of SRTMHGT}.
+ */
+public final class ElevationService implements Closeable {
+
+    private final Path directory;
+    // Only mapped tiles, so gaps in the data never evict them.
+    private final Map<Integer, HgtTile> tiles;
+    // Tiles that are not on disk, by tile key. There are fewer than 66k tiles, so this stays small.
+    private final BitSet missingTiles = new BitSet();
+
+    /**
+     * @param directory        the directory with the tile files
+     * @param maximumOpenTiles the maximum number of tiles to keep mapped
+     */
+    public ElevationService(Path directory, int maximumOpenTiles) {
+        if (maximumOpenTiles < 1) {
+            throw new IllegalArgumentException("At least one tile must be kept open");
+        }
+        this.directory = directory;
+        this.tiles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, HgtTile> eldest) {
+                return size() > maximumOpenTiles;
+            }
+        };
+    }
+
+    /**
+     * Get the elevation of a coordinate.
+     *
+     * @param coordinate the coordinate
+     * @return the elevation in metres above the EGM96 geoid, or {@link Double#NaN} if there is no data
+     */
+    public double getElevation(Coordinate coordinate) {
+        return getElevation(coordinate.latitude(), coordinate.longitude());
+    }
+
+    /**
+     * Get the elevation of a coordinate. Longitudes outside of [-180, 180) are wrapped around.
+     *
+     * @param latitude  the latitude
+     * @param longitude the longitude
+     * @return the elevation in metres above the EGM96 geoid, or {@link Double#NaN} if there is no data
+     */
+    public double getElevation(double latitude, double longitude) {
+        if (!isValid(latitude, longitude)) {
+            return Double.NaN;
+        }
+        longitude = wrapLongitude(longitude);
+        return elevation(getTile((int) Math.floor(latitude), (int) Math.floor(longitude)), latitude, longitude);
+    }
+
+    /**
+     * Get the elevations of an array of coordinates.
+     *
+     * @param coordinates the coordinates
+     * @return the elevation of every coordinate in metres, {@link Double#NaN} where there is no data
+     */
+    public double[] getElevations(Coordinate[] coordinates) {
+        double[] elevations = new double[coordinates.length];
+        getElevations(CoordinateBuffer.of(Arrays.asList(coordinates)), elevations);
+        return elevations;
+    }
+
+    /**
+     * Get the elevations of a buffer of coordinates.
+     *
+     * @param coordinates the coordinates
+     * @param elevations  receives the elevation of every coordinate in metres, at the index of the coordinate,
+     *                    {@link Double#NaN} where there is no data
+     */
+    public void getElevations(CoordinateBuffer coordinates, double[] elevations) {
+        getElevations(coordinates.getLatitudes(), coordinates.getLongitudes(), elevations, 0, coordinates.size());
+    }
+
+    /**
+     * Get the elevations of a range of coordinates given as parallel arrays.
+     * Consecutive coordinates in the same tile skip the LRU, so nearby points should be passed together.
+     *
+     * @param latitudes  the latitudes
+     * @param longitudes the longitudes
+     * @param elevations receives the elevations in metres, {@link Double#NaN} where there is no data
+     * @param offset     the index of the first coordinate
+     * @param length     the number of coordinates
+     */
+    public void getElevations(double[] latitudes, double[] longitudes, double[] elevations, int offset, int length) {
+        int currentKey = 0;
+        HgtTile current = null;
+        boolean loaded = false;
+        for (int i = offset; i < offset + length; i++) {
+            double latitude = latitudes[i];
+            if (!isValid(latitude, longitudes[i])) {
+                elevations[i] = Double.NaN;
+                continue;
+            }
+            double longitude = wrapLongitude(longitudes[i]);
+            int tileLatitude = (int) Math.floor(latitude);
+            int tileLongitude = (int) Math.floor(longitude);
+            int key = tileKey(tileLatitude, tileLongitude);
+            if (!loaded || key != currentKey) {
+                current = getTile(tileLatitude, tileLongitude);
+                currentKey = key;
+                loaded = true;
+            }
+            elevations[i] = elevation(current, latitude, longitude);
+        }
+    }
+
+    /**
+     * Get the number of tiles currently mapped.
+     *
+     * @return the number of mapped tiles
+     */
+    public synchronized int getOpenTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * Forget all tiles. The mappings are released once they are garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        tiles.clear();
+        missingTiles.clear();
+    }
+
+    // The coordinate must be valid and the longitude wrapped.
+    private double elevation(HgtTile tile, double latitude, double longitude) {
+        double elevation = tile == null ? Double.NaN : tile.getElevation(latitude, longitude);
+        if (!Double.isNaN(elevation)) {
+            return elevation;
+        }
+        // A point on the south or west edge of a tile is also on the north or east edge of its neighbours.
+        int tileLatitude = (int) Math.floor(latitude);
+        int tileLongitude = (int) Math.floor(longitude);
+        boolean southEdge = latitude == tileLatitude;
+        boolean westEdge = longitude == tileLongitude;
+        for (int latitudeOffset = 0; latitudeOffset <= (southEdge ? 1 : 0); latitudeOffset++) {
+            for (int longitudeOffset = 0; longitudeOffset <= (westEdge ? 1 : 0); longitudeOffset++) {
+                if (latitudeOffset == 0 && longitudeOffset == 0) {
+                    continue;
+                }
+                int neighbourLongitude = tileLongitude - longitudeOffset;
+                HgtTile neighbour = getTile(tileLatitude - latitudeOffset, neighbourLongitude);
+                if (neighbour != null) {
+                    // West of -180° the neighbour is the tile at 179°E, where the point is at 180°.
+                    elevation = neighbour.getElevation(latitude, longitude + neighbour.getLongitude() - neighbourLongitude);
+                    if (!Double.isNaN(elevation)) {
+                        return elevation;
+                    }
+                }
+            }
+        }
+        return Double.NaN;
+    }
+
+    private HgtTile getTile(int latitude, int longitude) {
+        if (latitude < -90 || latitude >= 90) {
+            return null;
+        }
+        longitude = Math.floorMod(longitude + 180, 360) - 180;
+        int key = tileKey(latitude, longitude);
+        synchronized (this) {
+            HgtTile tile = tiles.get(key);
+            if (tile != null || missingTiles.get(key)) {
+                return tile;
+            }
+        }
+        // Map outside the lock, two threads may both open a tile but only one mapping is kept.
+        HgtTile tile = open(latitude, longitude);
+        synchronized (this) {
+            HgtTile existing = tiles.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            if (tile == null) {
+                missingTiles.set(key);
+            } else {
+                tiles.put(key, tile);
+            }
+            return tile;
+        }
+    }
+
+    private HgtTile open(int latitude, int longitude) {
+        Path file = directory.resolve(HgtTile.fileName(latitude, longitude));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return HgtTile.open(file);
+        } catch (IOException e) {
+            System.err.println("Failed to open elevation tile " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isValid(double latitude, double longitude) {
+        return latitude >= -90 && latitude < 90 && Double.isFinite(longitude);
+    }
+
+    // Moves a longitude into [-180, 180) by whole turns, so it keeps its position within the tile.
+    private static double wrapLongitude(double longitude) {
+        if (longitude >= -180 && longitude < 180) {
+            return longitude;
+        }
+        double tile = Math.floor(longitude);
+        double wrapped = longitude - tile + Math.floorMod((long) tile + 180, 360) - 180;
+        // Rounding can leave a point just below a tile boundary on the boundary.
+        return wrapped < 180 ? wrapped : -180;
+    }
+
+    // The tile must be within [-90, 90) and [-180, 180).
+    private static int tileKey(int latitude, int longitude) {
+        return (latitude + 90) * 360 + longitude + 180;
+    }
+}
@@ -0,0 +1,165 @@
+package org.btuk.geography.elevation;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * One degree by one degree of SRTM elevation data, memory-mapped from an {@code .hgt} file.
+ * <p>
+ * The file holds a square grid of big-endian signed 16-bit heights in metres, row by row from the north-west corner.
+ * SRTM1 tiles have 3601 samples per side, SRTM3 tiles 1201, the last row and column repeat the first of the next tile.
+ * The south-west corner of the tile is taken from the file name, for example {@code N51W001.hgt}.
+ */
+public final class HgtTile {
+
+    /**
+     * The value of samples without data.
+     */
+    public static final short VOID = Short.MIN_VALUE;
+
+    private final MappedByteBuffer buffer;
+    private final int latitude;
+    private final int longitude;
+    private final int size;
+    private final double samplesPerDegree;
+
+    private HgtTile(MappedByteBuffer buffer, int latitude, int longitude, int size) {
+        this.buffer = buffer;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.size = size;
+        this.samplesPerDegree = size - 1;
+    }
+
+    /**
+     * Map a tile file into memory.
+     *
+     * @param file the tile file, named after its south-west corner
+     * @return the tile
+     * @throws IOException if the file could not be read or is not a tile file
+     */
+    public static HgtTile open(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        int[] corner = parseName(name);
+        if (corner == null) {
+            throw new IOException("Not an SRTM tile name: " + name);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long samples = channel.size() / 2;
+            int size = (int) Math.round(Math.sqrt(samples));
+            if (size < 2 || (long) size * size * 2 != channel.size()) {
+                throw new IOException("Corrupt SRTM tile: " + file);
+            }
+            // The mapping stays valid after the channel is closed.
+            return new HgtTile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), corner[0], corner[1], size);
+        }
+    }
+
+    /**
+     * Get the name of the tile file covering a coordinate.
+     *
+     * @param latitude  the latitude
+     * @param longitude the longitude
+     * @return the file name, for example {@code N51W001.hgt}
+     */
+    public static String fileName(int latitude, int longitude) {
+        return String.format(Locale.ROOT, "%c%02d%c%03d.hgt",
+                latitude < 0 ? 'S' : 'N', Math.abs(latitude),
+                longitude < 0 ? 'W' : 'E', Math.abs(longitude));
+    }
+
+    // Returns the south-west corner as {latitude, longitude}, or null if the name doesn't match.
+    private static int[] parseName(String name) {
+        String upper = name.toUpperCase(Locale.ROOT);
+        if (upper.length() < 7 || !upper.endsWith(".HGT")) {
+            return null;
+        }
+        char north = upper.charAt(0);
+        char east = upper.charAt(3);
+        if ((north != 'N' && north != 'S') || (east != 'E' && east != 'W')) {
+            return null;
+        }
+        try {
+            int latitude = Integer.parseInt(upper, 1, 3, 10);
+            int longitude = Integer.parseInt(upper, 4, 7, 10);
+            return new int[]{north == 'S' ? -latitude : latitude, east == 'W' ? -longitude : longitude};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public int getLatitude() {
+        return latitude;
+    }
+
+    public int getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Get the number of samples per side, 3601 for SRTM1 and 1201 for SRTM3.
+     *
+     * @return the number of samples per side
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the elevation at a point of the tile, interpolated bilinearly between the four surrounding samples.
+     * Samples without data are left out of the interpolation.
+     *
+     * @param latitude  the latitude, within the tile
+     * @param longitude the longitude, within the tile
+     * @return the elevation in metres, or {@link Double#NaN} if the point is outside the tile or has no data around it
+     */
+    public double getElevation(double latitude, double longitude) {
+        // Rows count down from the north edge, columns right from the west edge.
+        double y = (this.latitude + 1 - latitude) * samplesPerDegree;
+        double x = (longitude - this.longitude) * samplesPerDegree;
+        if (!(y >= 0 && y <= samplesPerDegree && x >= 0 && x <= samplesPerDegree)) {
+            return Double.NaN;
+        }
+        int row = Math.min((int) y, size - 2);
+        int column = Math.min((int) x, size - 2);
+        double fy = y - row;
+        double fx = x - column;
+
+        double sum = 0;
+        double weights = 0;
+        int index = row * size + column;
+        short sample = sample(index);
+        if (sample != VOID) {
+            double weight = (1 - fx) * (1 - fy);
+            sum += weight * sample;
+            weights += weight;
+        }
+        sample = sample(index + 1);
+        if (sample != VOID) {
+            double weight = fx * (1 - fy);
+            sum += weight * sample;
+            weights += weight;
+        }
+        sample = sample(index + size);
+        if (sample != VOID) {
+            double weight = (1 - fx) * fy;
+            sum += weight * sample;
+            weights += weight;
+        }
+        sample = sample(index + size + 1);
+        if (sample != VOID) {
+            double weight = fx * fy;
+            sum += weight * sample;
+            weights += weight;
+        }
+        return weights > 0 ? sum / weights : Double.NaN;
+    }
+
+    private short sample(int index) {
+        return buffer.getShort(2 * index);
+    }
+}
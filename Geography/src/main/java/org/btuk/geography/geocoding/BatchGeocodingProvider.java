@@ -0,0 +1,29 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A {@link GeocodingProvider} that can also look up many coordinates in one job.
+ */
+public interface BatchGeocodingProvider extends GeocodingProvider {
+
+    /**
+     * Get the largest number of coordinates one job may hold.
+     *
+     * @return the maximum batch size
+     */
+    int getMaximumBatchSize();
+
+    /**
+     * Look up the countries of several coordinates in one job, blocking the calling thread until the job is done.
+     *
+     * @param coordinates the coordinates, at most {@link #getMaximumBatchSize()}
+     * @return the uppercase ISO 3166-1 alpha-2 country code of every coordinate in the same order, or "Unknown"
+     * @throws IOException          if the job failed, the lookups may be retried one by one
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    List<String> getCountries(List<Coordinate> coordinates) throws IOException, InterruptedException;
+}
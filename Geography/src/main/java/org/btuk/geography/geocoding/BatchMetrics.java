@@ -0,0 +1,21 @@
+package org.btuk.geography.geocoding;
+
+/**
+ * Where the lookups of one {@code getCountries} call were answered and how long each stage took.
+ *
+ * @param lookups         the number of coordinates in the call
+ * @param cacheHits       lookups answered by the tiles, the in-memory cache or the persistent cache
+ * @param offlineHits     lookups answered by the boundary index
+ * @param negativeHits    lookups skipped because the cell failed recently
+ * @param onlineLookups   lookups sent to the providers, including ones that joined a pending lookup of the same cell
+ * @param failedLookups   online lookups that failed
+ * @param localNanos      the time spent on the calling thread checking the local tiers
+ * @param onlineNanos     the time from the end of the local stage until the last online lookup completed
+ */
+public record BatchMetrics(int lookups, int cacheHits, int offlineHits, int negativeHits, int onlineLookups, int failedLookups,
+                           long localNanos, long onlineNanos) {
+
+    public long totalNanos() {
+        return localNanos + onlineNanos;
+    }
+}
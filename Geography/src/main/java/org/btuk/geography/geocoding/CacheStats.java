@@ -0,0 +1,18 @@
+package org.btuk.geography.geocoding;
+
+/**
+ * Snapshot of the counters of the in-memory geocode cache.
+ *
+ * @param hits        lookups answered from memory
+ * @param misses      lookups that were not in memory
+ * @param evictions   entries removed to stay within the budget
+ * @param size        the current number of entries
+ * @param maximumSize the maximum number of entries
+ */
+public record CacheStats(long hits, long misses, long evictions, int size, int maximumSize) {
+
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,113 @@
+package org.btuk.geography.geocoding;
+
+import java.time.Duration;
+
+/**
+ * Takes a failing provider out of rotation for a while.
+ * <p>
+ * After {@code failureThreshold} failures in a row the breaker opens and the provider gets no requests. Once the open
+ * time has passed a single trial request is let through: if it succeeds the breaker closes, if it fails the breaker
+ * opens again for twice as long, up to the maximum open time.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long minimumOpenNanos;
+    private final long maximumOpenNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openNanos;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    /**
+     * @param failureThreshold   the number of failures in a row that opens the breaker
+     * @param minimumOpenTime    how long the breaker stays open the first time
+     * @param maximumOpenTime    the longest the breaker stays open after repeated failed trials
+     */
+    public CircuitBreaker(int failureThreshold, Duration minimumOpenTime, Duration maximumOpenTime) {
+        this.failureThreshold = failureThreshold;
+        this.minimumOpenNanos = minimumOpenTime.toNanos();
+        this.maximumOpenNanos = maximumOpenTime.toNanos();
+        this.openNanos = minimumOpenNanos;
+    }
+
+    /**
+     * Check whether a request may be sent, without claiming the trial request.
+     *
+     * @param now the current {@link System#nanoTime()}
+     * @return true if a request may be sent
+     */
+    public synchronized boolean isAvailable(long now) {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> now >= openUntil;
+            case HALF_OPEN -> !trialInFlight;
+        };
+    }
+
+    /**
+     * Claim the right to send a request, in the half-open state only one request is allowed.
+     *
+     * @param now the current {@link System#nanoTime()}
+     * @return true if the request may be sent
+     */
+    public synchronized boolean tryAcquire(long now) {
+        if (state == State.OPEN && now >= openUntil) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (trialInFlight) {
+                    yield false;
+                }
+                trialInFlight = true;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openNanos = minimumOpenNanos;
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure(long now) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            openNanos = Math.min(maximumOpenNanos, openNanos * 2);
+            open(now);
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open(now);
+        }
+    }
+
+    /**
+     * Give back the trial request without a result, for a request that was never sent.
+     */
+    public synchronized void onCancelled() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openUntil = now + openNanos;
+        trialInFlight = false;
+    }
+}
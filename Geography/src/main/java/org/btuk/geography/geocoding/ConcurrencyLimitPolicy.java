@@ -0,0 +1,79 @@
+package org.btuk.geography.geocoding;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Allows at most {@code limit} requests in flight at the same time.
+ * <p>
+ * For planning, every request is assumed to take the expected latency, so the earliest start is the moment the first
+ * of the {@code limit} slots is expected to be free again. The expected latency follows the measured latency of the
+ * provider.
+ */
+public final class ConcurrencyLimitPolicy implements ProviderPolicy {
+
+    private final Semaphore permits;
+    private final long[] slotFree;
+    private volatile long expectedLatencyNanos;
+
+    /**
+     * @param limit           the maximum number of concurrent requests
+     * @param expectedLatency the expected duration of a request, used for planning
+     */
+    public ConcurrencyLimitPolicy(int limit, Duration expectedLatency) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("The limit must be at least 1");
+        }
+        this.permits = new Semaphore(limit, true);
+        this.slotFree = new long[limit];
+        this.expectedLatencyNanos = expectedLatency.toNanos();
+        Arrays.fill(slotFree, Long.MIN_VALUE);
+    }
+
+    @Override
+    public long peek(long now) {
+        return Math.max(now, slotFree[earliestSlot()]);
+    }
+
+    @Override
+    public boolean reserve(long start) {
+        int slot = earliestSlot();
+        slotFree[slot] = Math.max(start, slotFree[slot]) + expectedLatencyNanos;
+        return true;
+    }
+
+    @Override
+    public void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    @Override
+    public void release() {
+        permits.release();
+    }
+
+    @Override
+    public void onExpectedLatency(long expectedLatencyNanos) {
+        this.expectedLatencyNanos = expectedLatencyNanos;
+    }
+
+    /**
+     * Update the expected latency used for planning.
+     *
+     * @param expectedLatency the expected duration of a request
+     */
+    public void setExpectedLatency(Duration expectedLatency) {
+        this.expectedLatencyNanos = expectedLatency.toNanos();
+    }
+
+    private int earliestSlot() {
+        int earliest = 0;
+        for (int i = 1; i < slotFree.length; i++) {
+            if (slotFree[i] < slotFree[earliest]) {
+                earliest = i;
+            }
+        }
+        return earliest;
+    }
+}
@@ -0,0 +1,347 @@
+package org.btuk.geography.geocoding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.btuk.geography.Coordinate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Offline country lookup backed by a country-boundary dataset in GeoJSON format (for example Natural Earth admin 0).
+ * <p>
+ * The boundaries are kept in a 1x1 degree grid of candidate rings, and every ring keeps its edges in latitude bands,
+ * so a lookup only has to test the handful of edges near the point.
+ * Points that are not inside any country, or that are closer to a border than the configured tolerance,
+ * can't be classified and return null, those are left to the online providers.
+ */
+public final class CountryBoundaryIndex {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Properties that may hold the ISO 3166-1 alpha-2 code, in order of preference.
+    private static final String[] COUNTRY_CODE_PROPERTIES = {"ISO_A2_EH", "ISO_A2", "iso_a2", "ISO3166-1-Alpha-2"};
+
+    private static final double METRES_PER_DEGREE = 111_320;
+    private static final int GRID_COLUMNS = 360;
+    private static final int GRID_ROWS = 180;
+    private static final int[] NO_RINGS = new int[0];
+
+    private final String[] countryCodes;
+    private final Ring[] rings;
+    private final int[][] grid;
+    private final double borderToleranceMetres;
+
+    private CountryBoundaryIndex(String[] countryCodes, Ring[] rings, double borderToleranceMetres) {
+        this.countryCodes = countryCodes;
+        this.rings = rings;
+        this.borderToleranceMetres = borderToleranceMetres;
+        this.grid = buildGrid(rings, borderToleranceMetres);
+    }
+
+    /**
+     * Load a country-boundary GeoJSON FeatureCollection from disk.
+     *
+     * @param file                  the GeoJSON file
+     * @param borderToleranceMetres points closer than this distance to a border are not classified
+     * @return the boundary index
+     * @throws IOException if the file could not be read
+     */
+    public static CountryBoundaryIndex load(Path file, double borderToleranceMetres) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return load(inputStream, borderToleranceMetres);
+        }
+    }
+
+    /**
+     * Load a country-boundary GeoJSON FeatureCollection from a stream.
+     *
+     * @param inputStream           the GeoJSON data
+     * @param borderToleranceMetres points closer than this distance to a border are not classified
+     * @return the boundary index
+     * @throws IOException if the data could not be read
+     */
+    public static CountryBoundaryIndex load(InputStream inputStream, double borderToleranceMetres) throws IOException {
+        JsonNode root = objectMapper.readTree(inputStream);
+        List<String> countryCodes = new ArrayList<>();
+        List<Ring> rings = new ArrayList<>();
+
+        for (JsonNode feature : root.path("features")) {
+            String countryCode = getCountryCode(feature.path("properties"));
+            if (countryCode == null) {
+                continue;
+            }
+            int countryIndex = countryCodes.indexOf(countryCode);
+            if (countryIndex == -1) {
+                countryIndex = countryCodes.size();
+                countryCodes.add(countryCode);
+            }
+
+            JsonNode geometry = feature.path("geometry");
+            switch (geometry.path("type").asText()) {
+                case "Polygon" -> addPolygon(geometry.path("coordinates"), countryIndex, rings);
+                case "MultiPolygon" -> {
+                    for (JsonNode polygon : geometry.path("coordinates")) {
+                        addPolygon(polygon, countryIndex, rings);
+                    }
+                }
+                default -> {
+                    // Not an area, ignore.
+                }
+            }
+        }
+
+        // Keep the rings of a country next to each other, the lookup relies on it.
+        rings.sort(Comparator.comparingInt(ring -> ring.countryIndex));
+        return new CountryBoundaryIndex(countryCodes.toArray(new String[0]), rings.toArray(new Ring[0]), borderToleranceMetres);
+    }
+
+    /**
+     * Get the country of a coordinate.
+     *
+     * @param coordinate the coordinate
+     * @return the ISO 3166-1 alpha-2 country code, or null if the coordinate can't be classified offline
+     */
+    public String getCountry(Coordinate coordinate) {
+        return getCountry(coordinate.latitude(), coordinate.longitude());
+    }
+
+    /**
+     * Get the country of a coordinate.
+     *
+     * @param latitude  the latitude in degrees
+     * @param longitude the longitude in degrees
+     * @return the ISO 3166-1 alpha-2 country code, or null if the coordinate can't be classified offline
+     */
+    public String getCountry(double latitude, double longitude) {
+        int[] candidates = grid[cellIndex(latitude, longitude)];
+
+        int country = -1;
+        int currentCountry = -1;
+        boolean inside = false;
+        for (int ringIndex : candidates) {
+            Ring ring = rings[ringIndex];
+            if (ring.countryIndex != currentCountry) {
+                if (inside) {
+                    country = currentCountry;
+                    break;
+                }
+                currentCountry = ring.countryIndex;
+            }
+            // Even-odd over all rings of the country, so holes cancel out the outer ring.
+            if (ring.contains(latitude, longitude)) {
+                inside = !inside;
+            }
+        }
+        if (country == -1 && inside) {
+            country = currentCountry;
+        }
+        if (country == -1) {
+            return null;
+        }
+
+        if (borderToleranceMetres > 0) {
+            double metresPerDegreeLongitude = METRES_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+            for (int ringIndex : candidates) {
+                if (rings[ringIndex].isWithinDistance(latitude, longitude, borderToleranceMetres, metresPerDegreeLongitude)) {
+                    return null;
+                }
+            }
+        }
+        return countryCodes[country];
+    }
+
+    private static String getCountryCode(JsonNode properties) {
+        for (String property : COUNTRY_CODE_PROPERTIES) {
+            String value = properties.path(property).asText(null);
+            if (value != null && value.length() == 2 && Character.isLetter(value.charAt(0)) && Character.isLetter(value.charAt(1))) {
+                return value.toUpperCase(Locale.ROOT);
+            }
+        }
+        return null;
+    }
+
+    private static void addPolygon(JsonNode polygon, int countryIndex, List<Ring> rings) {
+        for (JsonNode ringNode : polygon) {
+            int size = ringNode.size();
+            if (size < 3) {
+                continue;
+            }
+            // Store the ring closed, so edge i always runs from vertex i to vertex i + 1.
+            boolean closed = ringNode.get(0).get(0).asDouble() == ringNode.get(size - 1).get(0).asDouble()
+                    && ringNode.get(0).get(1).asDouble() == ringNode.get(size - 1).get(1).asDouble();
+            int vertices = closed ? size : size + 1;
+            double[] latitudes = new double[vertices];
+            double[] longitudes = new double[vertices];
+            for (int i = 0; i < size; i++) {
+                longitudes[i] = ringNode.get(i).get(0).asDouble();
+                latitudes[i] = ringNode.get(i).get(1).asDouble();
+            }
+            if (!closed) {
+                latitudes[size] = latitudes[0];
+                longitudes[size] = longitudes[0];
+            }
+            rings.add(new Ring(countryIndex, latitudes, longitudes));
+        }
+    }
+
+    private static int[][] buildGrid(Ring[] rings, double borderToleranceMetres) {
+        List<List<Integer>> cells = new ArrayList<>(GRID_ROWS * GRID_COLUMNS);
+        for (int i = 0; i < GRID_ROWS * GRID_COLUMNS; i++) {
+            cells.add(null);
+        }
+
+        for (int ringIndex = 0; ringIndex < rings.length; ringIndex++) {
+            Ring ring = rings[ringIndex];
+            // Grow the bounds by the border tolerance, so border checks near the edge of a cell still see the ring.
+            double maxAbsLatitude = Math.min(89, Math.max(Math.abs(ring.minLatitude), Math.abs(ring.maxLatitude)));
+            double marginLatitude = borderToleranceMetres / METRES_PER_DEGREE;
+            double marginLongitude = borderToleranceMetres / (METRES_PER_DEGREE * Math.cos(Math.toRadians(maxAbsLatitude)));
+
+            int minRow = row(ring.minLatitude - marginLatitude);
+            int maxRow = row(ring.maxLatitude + marginLatitude);
+            int minColumn = column(ring.minLongitude - marginLongitude);
+            int maxColumn = column(ring.maxLongitude + marginLongitude);
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    int cell = row * GRID_COLUMNS + column;
+                    if (cells.get(cell) == null) {
+                        cells.set(cell, new ArrayList<>());
+                    }
+                    cells.get(cell).add(ringIndex);
+                }
+            }
+        }
+
+        int[][] grid = new int[GRID_ROWS * GRID_COLUMNS][];
+        for (int i = 0; i < grid.length; i++) {
+            List<Integer> cell = cells.get(i);
+            grid[i] = cell == null ? NO_RINGS : cell.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return grid;
+    }
+
+    private static int cellIndex(double latitude, double longitude) {
+        return row(latitude) * GRID_COLUMNS + column(longitude);
+    }
+
+    private static int row(double latitude) {
+        return Math.clamp((int) Math.floor(latitude + 90), 0, GRID_ROWS - 1);
+    }
+
+    private static int column(double longitude) {
+        return Math.clamp((int) Math.floor(longitude + 180), 0, GRID_COLUMNS - 1);
+    }
+
+    // A single closed ring of a polygon, with its edges bucketed by latitude.
+    private static final class Ring {
+
+        private final int countryIndex;
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final double minLatitude;
+        private final double maxLatitude;
+        private final double minLongitude;
+        private final double maxLongitude;
+        private final int bandCount;
+        private final double bandHeight;
+        private final int[][] bands;
+
+        private Ring(int countryIndex, double[] latitudes, double[] longitudes) {
+            this.countryIndex = countryIndex;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.minLatitude = Arrays.stream(latitudes).min().orElseThrow();
+            this.maxLatitude = Arrays.stream(latitudes).max().orElseThrow();
+            this.minLongitude = Arrays.stream(longitudes).min().orElseThrow();
+            this.maxLongitude = Arrays.stream(longitudes).max().orElseThrow();
+
+            int edges = latitudes.length - 1;
+            this.bandCount = Math.max(1, edges / 4);
+            this.bandHeight = Math.max((maxLatitude - minLatitude) / bandCount, 1e-9);
+
+            int[] counts = new int[bandCount];
+            for (int i = 0; i < edges; i++) {
+                for (int band = band(Math.min(latitudes[i], latitudes[i + 1])); band <= band(Math.max(latitudes[i], latitudes[i + 1])); band++) {
+                    counts[band]++;
+                }
+            }
+            this.bands = new int[bandCount][];
+            for (int band = 0; band < bandCount; band++) {
+                bands[band] = new int[counts[band]];
+                counts[band] = 0;
+            }
+            for (int i = 0; i < edges; i++) {
+                for (int band = band(Math.min(latitudes[i], latitudes[i + 1])); band <= band(Math.max(latitudes[i], latitudes[i + 1])); band++) {
+                    bands[band][counts[band]++] = i;
+                }
+            }
+        }
+
+        private int band(double latitude) {
+            return Math.clamp((int) ((latitude - minLatitude) / bandHeight), 0, bandCount - 1);
+        }
+
+        private boolean contains(double latitude, double longitude) {
+            if (latitude < minLatitude || latitude > maxLatitude || longitude < minLongitude || longitude > maxLongitude) {
+                return false;
+            }
+            // Cast a ray towards positive longitude and count the edges it crosses.
+            boolean inside = false;
+            for (int i : bands[band(latitude)]) {
+                double latA = latitudes[i];
+                double latB = latitudes[i + 1];
+                if ((latA > latitude) != (latB > latitude)) {
+                    double crossing = longitudes[i] + (latitude - latA) * (longitudes[i + 1] - longitudes[i]) / (latB - latA);
+                    if (longitude < crossing) {
+                        inside = !inside;
+                    }
+                }
+            }
+            return inside;
+        }
+
+        private boolean isWithinDistance(double latitude, double longitude, double metres, double metresPerDegreeLongitude) {
+            double marginLatitude = metres / METRES_PER_DEGREE;
+            if (latitude < minLatitude - marginLatitude || latitude > maxLatitude + marginLatitude) {
+                return false;
+            }
+            double marginLongitude = metres / Math.max(metresPerDegreeLongitude, 1);
+            if (longitude < minLongitude - marginLongitude || longitude > maxLongitude + marginLongitude) {
+                return false;
+            }
+
+            // Project the nearby edges to a local metric plane around the point.
+            double squaredMetres = metres * metres;
+            for (int band = band(latitude - marginLatitude); band <= band(latitude + marginLatitude); band++) {
+                for (int i : bands[band]) {
+                    double ax = (longitudes[i] - longitude) * metresPerDegreeLongitude;
+                    double ay = (latitudes[i] - latitude) * METRES_PER_DEGREE;
+                    double bx = (longitudes[i + 1] - longitude) * metresPerDegreeLongitude;
+                    double by = (latitudes[i + 1] - latitude) * METRES_PER_DEGREE;
+                    if (squaredDistanceToOrigin(ax, ay, bx, by) < squaredMetres) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static double squaredDistanceToOrigin(double ax, double ay, double bx, double by) {
+            double dx = bx - ax;
+            double dy = by - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = lengthSquared == 0 ? 0 : Math.clamp(-(ax * dx + ay * dy) / lengthSquared, 0, 1);
+            double x = ax + t * dx;
+            double y = ay + t * dy;
+            return x * x + y * y;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.btuk.geography.geocoding;
+
+/**
+ * Two-byte encoding of ISO 3166-1 alpha-2 country codes.
+ * <p>
+ * A code is stored as its two uppercase ASCII letters, {@code (first << 8) | second}. Decoding returns interned strings,
+ * so decoding never allocates.
+ */
+public final class CountryCodes {
+
+    // No value, used for absent entries.
+    public static final short NONE = 0;
+    // The country could not be determined.
+    public static final short UNKNOWN = 1;
+
+    public static final String UNKNOWN_COUNTRY = "Unknown";
+
+    private static final String[] CODES = new String[26 * 26];
+
+    static {
+        for (int first = 0; first < 26; first++) {
+            for (int second = 0; second < 26; second++) {
+                CODES[first * 26 + second] = new String(new char[]{(char) ('A' + first), (char) ('A' + second)}).intern();
+            }
+        }
+    }
+
+    private CountryCodes() {
+    }
+
+    /**
+     * Check whether a string is a two letter country code, in either case.
+     *
+     * @param countryCode the string to check, may be null
+     * @return true if the string consists of exactly two ASCII letters
+     */
+    public static boolean isValid(String countryCode) {
+        return countryCode != null && countryCode.length() == 2
+                && isAsciiLetter(countryCode.charAt(0)) && isAsciiLetter(countryCode.charAt(1));
+    }
+
+    /**
+     * Encode a country code.
+     *
+     * @param countryCode the ISO 3166-1 alpha-2 code, in either case
+     * @return the encoded code, or {@link #UNKNOWN} if the string is not a country code
+     */
+    public static short encode(String countryCode) {
+        if (!isValid(countryCode)) {
+            return UNKNOWN;
+        }
+        return (short) ((upper(countryCode.charAt(0)) << 8) | upper(countryCode.charAt(1)));
+    }
+
+    /**
+     * Decode a country code.
+     *
+     * @param code the encoded code
+     * @return the uppercase ISO 3166-1 alpha-2 code, {@link #UNKNOWN_COUNTRY}, or null for {@link #NONE}
+     */
+    public static String decode(short code) {
+        if (code == NONE) {
+            return null;
+        }
+        int first = ((code >> 8) & 0xFF) - 'A';
+        int second = (code & 0xFF) - 'A';
+        if (first < 0 || first >= 26 || second < 0 || second >= 26) {
+            return UNKNOWN_COUNTRY;
+        }
+        return CODES[first * 26 + second];
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static int upper(char c) {
+        return c >= 'a' ? c - ('a' - 'A') : c;
+    }
+}
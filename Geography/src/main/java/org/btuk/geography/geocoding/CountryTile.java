@@ -0,0 +1,147 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.GeoCell;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Precomputed country codes of a region, stored as a memory-mapped raster.
+ * <p>
+ * The file is a header {@code [magic][version][origin latitude index][origin longitude index][step][rows][columns]}
+ * followed by one country code per sample, row by row from the south-west corner. Indices and the step are in
+ * {@link GeoCell} units, so a sample covers a square of {@code step} by {@code step} cells and is resolved at its centre.
+ * <p>
+ * A sample only answers lookups if all eight samples around it have the same country, cells near a border, and in the
+ * outermost ring of samples, are left to the other tiers.
+ */
+public final class CountryTile {
+
+    private static final int MAGIC = 0x47454F54; // GEOT
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+
+    private final MappedByteBuffer buffer;
+    private final long originLatitudeIndex;
+    private final long originLongitudeIndex;
+    private final int step;
+    private final int rows;
+    private final int columns;
+
+    private CountryTile(MappedByteBuffer buffer, long originLatitudeIndex, long originLongitudeIndex, int step, int rows, int columns) {
+        this.buffer = buffer;
+        this.originLatitudeIndex = originLatitudeIndex;
+        this.originLongitudeIndex = originLongitudeIndex;
+        this.step = step;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * Map a tile file into memory.
+     *
+     * @param file the tile file
+     * @return the tile
+     * @throws IOException if the file could not be read or is not a tile file
+     */
+    public static CountryTile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a country tile: " + file);
+            }
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a country tile: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported country tile version " + buffer.getInt(4) + ": " + file);
+            }
+            int step = buffer.getInt(16);
+            int rows = buffer.getInt(20);
+            int columns = buffer.getInt(24);
+            if (step < 1 || rows < 0 || columns < 0 || channel.size() != HEADER_SIZE + 2L * rows * columns) {
+                throw new IOException("Corrupt country tile: " + file);
+            }
+            return new CountryTile(buffer, buffer.getInt(8), buffer.getInt(12), step, rows, columns);
+        }
+    }
+
+    /**
+     * Write a tile file, replacing it atomically if it exists.
+     *
+     * @param file                 the tile file
+     * @param originLatitudeIndex  the {@link GeoCell} latitude index of the south edge
+     * @param originLongitudeIndex the {@link GeoCell} longitude index of the west edge
+     * @param step                 the size of a sample in cells
+     * @param rows                 the number of rows of samples
+     * @param columns              the number of columns of samples
+     * @param codes                the {@link CountryCodes country codes} of the samples row by row,
+     *                             {@link CountryCodes#NONE} for samples that could not be resolved
+     * @throws IOException if the file could not be written
+     */
+    public static void write(Path file, int originLatitudeIndex, int originLongitudeIndex, int step, int rows, int columns,
+                             short[] codes) throws IOException {
+        if (codes.length != (long) rows * columns) {
+            throw new IllegalArgumentException("Expected " + (long) rows * columns + " codes, got " + codes.length);
+        }
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + 2 * codes.length);
+        data.putInt(MAGIC).putInt(VERSION)
+                .putInt(originLatitudeIndex).putInt(originLongitudeIndex)
+                .putInt(step).putInt(rows).putInt(columns);
+        data.asShortBuffer().put(codes);
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporary)) {
+            output.write(data.array());
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Get the country of a coordinate.
+     *
+     * @param coordinate the coordinate
+     * @return the ISO 3166-1 alpha-2 country code or "Unknown" for the sea, null if the tile doesn't answer
+     */
+    public String getCountry(Coordinate coordinate) {
+        return CountryCodes.decode(get(coordinate.getCellKey()));
+    }
+
+    /**
+     * Get the country code of a cell.
+     *
+     * @param key the cell key
+     * @return the country code, or {@link CountryCodes#NONE} if the tile doesn't answer
+     */
+    short get(long key) {
+        long row = Math.floorDiv((key >>> 32) - originLatitudeIndex, step);
+        long column = Math.floorDiv((key & 0xFFFFFFFFL) - originLongitudeIndex, step);
+        if (row < 1 || column < 1 || row >= rows - 1 || column >= columns - 1) {
+            return CountryCodes.NONE;
+        }
+        int index = (int) (row * columns + column);
+        short code = sample(index);
+        if (code == CountryCodes.NONE) {
+            return CountryCodes.NONE;
+        }
+        for (int neighbour = index - columns - 1; neighbour <= index + columns - 1; neighbour += columns) {
+            if (sample(neighbour) != code || sample(neighbour + 1) != code || sample(neighbour + 2) != code) {
+                return CountryCodes.NONE;
+            }
+        }
+        return code;
+    }
+
+    private short sample(int index) {
+        return buffer.getShort(HEADER_SIZE + 2 * index);
+    }
+}
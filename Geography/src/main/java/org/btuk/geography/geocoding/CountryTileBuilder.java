@@ -0,0 +1,100 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.GeoCell;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command line tool that resolves every sample of a region and writes a {@link CountryTile}.
+ * <p>
+ * Usage: {@code <min latitude> <min longitude> <max latitude> <max longitude> <step in degrees> <output file>}.
+ * The samples go through {@link ReverseGeocoder}, so they use the cache, the boundary index and the providers within
+ * their quotas. Samples that could not be resolved are left empty in the tile, running the tool again fills them in
+ * from the cache. Put the tile into the {@code tiles} directory for the geocoder to map it on startup.
+ */
+public final class CountryTileBuilder {
+
+    // Samples resolved per call, bounding the number of pending lookups.
+    private static final int CHUNK_SIZE = 10_000;
+
+    private CountryTileBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 6) {
+            System.err.println("Usage: <min latitude> <min longitude> <max latitude> <max longitude> <step in degrees> <output file>");
+            System.exit(1);
+        }
+        double minLatitude = Double.parseDouble(args[0]);
+        double minLongitude = Double.parseDouble(args[1]);
+        double maxLatitude = Double.parseDouble(args[2]);
+        double maxLongitude = Double.parseDouble(args[3]);
+        double stepDegrees = Double.parseDouble(args[4]);
+        Path output = Path.of(args[5]);
+        if (minLatitude >= maxLatitude || minLongitude >= maxLongitude || stepDegrees <= 0) {
+            System.err.println("The bounding box must not be empty or cross the antimeridian, and the step must be positive");
+            System.exit(1);
+        }
+
+        int step = Math.max(1, (int) Math.round(stepDegrees * GeoCell.CELLS_PER_DEGREE));
+        long southWest = GeoCell.key(minLatitude, minLongitude);
+        int originLatitudeIndex = (int) (southWest >>> 32);
+        int originLongitudeIndex = (int) (southWest & 0xFFFFFFFFL);
+        long northEast = GeoCell.key(maxLatitude, maxLongitude);
+        int rows = (int) ((northEast >>> 32) - originLatitudeIndex) / step + 1;
+        int columns = (int) ((northEast & 0xFFFFFFFFL) - originLongitudeIndex) / step + 1;
+        long samples = (long) rows * columns;
+        if (samples > Integer.MAX_VALUE / 2) {
+            System.err.println("Too many samples (" + samples + "), use a larger step or a smaller region");
+            System.exit(1);
+        }
+
+        System.out.printf(Locale.US, "Resolving %d x %d samples of %.5f degrees%n", rows, columns, (double) step / GeoCell.CELLS_PER_DEGREE);
+        short[] codes = new short[rows * columns];
+        int failed = 0;
+        long start = System.currentTimeMillis();
+        try (Geocoder geocoder = Geocoder.builder().build()) {
+            // Samples the boundary index or existing tiles can answer should not go online.
+            geocoder.getLoadFuture().join();
+            for (int chunkStart = 0; chunkStart < codes.length; chunkStart += CHUNK_SIZE) {
+                int chunkEnd = Math.min(codes.length, chunkStart + CHUNK_SIZE);
+                List<Coordinate> coordinates = new ArrayList<>(chunkEnd - chunkStart);
+                for (int index = chunkStart; index < chunkEnd; index++) {
+                    coordinates.add(sampleCentre(originLatitudeIndex, originLongitudeIndex, step, index / columns, index % columns));
+                }
+
+                geocoder.getCountriesAsync(coordinates, (coordinate, country) -> {
+                    // Failed lookups also report "Unknown", leave those empty instead of marking them as sea.
+                    if (!geocoder.hasFailed(coordinate)) {
+                        long key = coordinate.getCellKey();
+                        int row = (int) (((key >>> 32) - originLatitudeIndex) / step);
+                        int column = (int) (((key & 0xFFFFFFFFL) - originLongitudeIndex) / step);
+                        codes[row * columns + column] = CountryCodes.encode(country);
+                    }
+                }).join();
+
+                for (int index = chunkStart; index < chunkEnd; index++) {
+                    if (codes[index] == CountryCodes.NONE) {
+                        failed++;
+                    }
+                }
+                System.out.printf(Locale.US, "%d/%d samples, %d unresolved, %ds%n",
+                        chunkEnd, codes.length, failed, (System.currentTimeMillis() - start) / 1000);
+            }
+
+            CountryTile.write(output, originLatitudeIndex, originLongitudeIndex, step, rows, columns, codes);
+            System.out.println("Wrote " + output + (failed > 0 ? ", run again to resolve the remaining " + failed + " samples" : ""));
+        }
+    }
+
+    private static Coordinate sampleCentre(int originLatitudeIndex, int originLongitudeIndex, int step, int row, int column) {
+        double latitude = (originLatitudeIndex + (long) row * step + step / 2.0) / GeoCell.CELLS_PER_DEGREE - 90;
+        double longitude = (originLongitudeIndex + (long) column * step + step / 2.0) / GeoCell.CELLS_PER_DEGREE - 180;
+        return new Coordinate(latitude, longitude);
+    }
+}
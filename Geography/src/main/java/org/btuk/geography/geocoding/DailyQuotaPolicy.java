@@ -0,0 +1,83 @@
+package org.btuk.geography.geocoding;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * Allows a fixed number of requests per UTC day.
+ * <p>
+ * Requests count against the quota when they are reserved, and are taken back if they are cancelled before they are
+ * sent. The count is kept in a {@link QuotaBackend}, the default
+ * {@link DailyQuotaStore} only writes it to disk when the scheduler flushes, not on every request.
+ */
+public final class DailyQuotaPolicy implements ProviderPolicy {
+
+    private final String name;
+    private final int limit;
+    private final QuotaBackend store;
+
+    /**
+     * @param name  the name the count is stored under
+     * @param limit the number of requests per day
+     * @param store the store that persists the count
+     */
+    public DailyQuotaPolicy(String name, int limit, QuotaBackend store) {
+        this.name = name;
+        this.limit = limit;
+        this.store = store;
+    }
+
+    @Override
+    public long peek(long now) {
+        return store.getCount(name, today()) < limit ? now : NEVER;
+    }
+
+    @Override
+    public boolean reserve(long start) {
+        // Checked again under the lock of the store, another server or a batch job may have used up the quota since peek.
+        return store.add(name, today(), 1, limit) == 1;
+    }
+
+    /**
+     * Reserve several requests at once outside the scheduler, such as the lookups of a batch job.
+     *
+     * @param count the number of requests wanted
+     * @return the number of requests reserved, less than {@code count} if the quota runs out
+     */
+    public int reserveUpTo(int count) {
+        return store.add(name, today(), count, limit);
+    }
+
+    @Override
+    public void cancel() {
+        cancel(1);
+    }
+
+    /**
+     * Take back requests reserved with {@link #reserveUpTo(int)} that are not going to be answered by that
+     * reservation, such as the lookups of a failed batch job that are looked up one by one instead.
+     *
+     * @param count the number of requests
+     */
+    public void cancel(int count) {
+        store.add(name, today(), -count, limit);
+    }
+
+    @Override
+    public void flush() {
+        store.flush();
+    }
+
+    /**
+     * Get the number of requests left today.
+     *
+     * @return the remaining quota
+     */
+    public int getRemaining() {
+        return Math.max(0, limit - store.getCount(name, today()));
+    }
+
+    private static String today() {
+        return LocalDate.now(ZoneOffset.UTC).toString();
+    }
+}
@@ -0,0 +1,98 @@
+package org.btuk.geography.geocoding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps the daily request counts of providers, persisted to a JSON file such as {@code daily_limits.json}.
+ * <p>
+ * The file holds the UTC date and a {@code <name>Count} field per provider, counts reset when the date changes.
+ * Changes are only written on {@link #flush()}.
+ */
+public final class DailyQuotaStore implements QuotaBackend {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT);
+    private static final String COUNT_SUFFIX = "Count";
+
+    private final File file;
+    private final Map<String, Integer> counts = new HashMap<>();
+
+    private String date;
+    private boolean dirty;
+
+    public DailyQuotaStore(File file) {
+        this.file = file;
+        load();
+    }
+
+    @Override
+    public synchronized int getCount(String name, String today) {
+        updateDate(today);
+        return counts.getOrDefault(name, 0);
+    }
+
+    @Override
+    public synchronized int add(String name, String today, int requested, int limit) {
+        int count = getCount(name, today);
+        int granted = requested < 0 ? -Math.min(count, -requested) : Math.clamp((long) limit - count, 0, requested);
+        if (granted != 0) {
+            counts.put(name, count + granted);
+            dirty = true;
+        }
+        return granted;
+    }
+
+    /**
+     * Write the counts to disk if they changed since the last flush.
+     */
+    @Override
+    public synchronized void flush() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("date", date);
+            counts.forEach((name, count) -> node.put(name + COUNT_SUFFIX, count));
+            objectMapper.writeValue(file, node);
+            dirty = false;
+        } catch (IOException e) {
+            System.err.println("Error saving daily limits: " + e.getMessage());
+        }
+    }
+
+    private void updateDate(String today) {
+        if (!today.equals(date)) {
+            date = today;
+            counts.clear();
+            dirty = true;
+        }
+    }
+
+    private void load() {
+        if (file.exists()) {
+            try {
+                JsonNode node = objectMapper.readTree(file);
+                date = node.path("date").asText(null);
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    if (field.getKey().endsWith(COUNT_SUFFIX)) {
+                        counts.put(field.getKey().substring(0, field.getKey().length() - COUNT_SUFFIX.length()), field.getValue().asInt());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error loading daily limits: " + e.getMessage());
+            }
+        }
+    }
+}
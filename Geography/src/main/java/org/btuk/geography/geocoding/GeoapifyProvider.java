@@ -0,0 +1,148 @@
+package org.btuk.geography.geocoding;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.btuk.geography.Coordinate;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reverse geocoding with the Geoapify API.
+ * The free tier allows 3000 requests per day, use a {@link DailyQuotaPolicy} to respect that.
+ * <p>
+ * Batches go to the batch API: the coordinates are posted as one job, which is then polled until the results are in.
+ */
+public final class GeoapifyProvider extends HttpGeocodingProvider implements BatchGeocodingProvider {
+
+    public static final String DEFAULT_BASE_URL = "https://api.geoapify.com";
+
+    private static final String REVERSE_PATH = "/v1/geocode/reverse?lat=%f&lon=%f&apiKey=%s";
+    private static final String[] COUNTRY_CODE_PATH = {"features", "0", "properties", "country_code"};
+    private static final String BATCH_PATH = "/v1/batch/geocode/reverse";
+    private static final int MAXIMUM_BATCH_SIZE = 1000;
+
+    // Jobs take seconds to minutes, poll with a growing interval and give up after the timeout.
+    private static final Duration FIRST_POLL_INTERVAL = Duration.ofSeconds(1);
+    private static final Duration MAXIMUM_POLL_INTERVAL = Duration.ofSeconds(10);
+    private static final Duration BATCH_TIMEOUT = Duration.ofMinutes(10);
+
+    private final String urlTemplate;
+    private final String batchUrl;
+    private final String apiKey;
+
+    public GeoapifyProvider(HttpClient httpClient, String apiKey) {
+        this(httpClient, DEFAULT_BASE_URL, apiKey);
+    }
+
+    public GeoapifyProvider(HttpClient httpClient, String baseUrl, String apiKey) {
+        super(httpClient);
+        this.urlTemplate = baseUrl + REVERSE_PATH;
+        this.batchUrl = baseUrl + BATCH_PATH;
+        this.apiKey = apiKey;
+    }
+
+    @Override
+    public String getName() {
+        return "geoapify";
+    }
+
+    @Override
+    public String getCountry(Coordinate coordinate) throws IOException, InterruptedException {
+        String urlString = String.format(Locale.US, urlTemplate, coordinate.latitude(), coordinate.longitude(), apiKey);
+        return toCountry(getString(urlString, COUNTRY_CODE_PATH, "Accept", "application/json"), coordinate);
+    }
+
+    @Override
+    public int getMaximumBatchSize() {
+        return MAXIMUM_BATCH_SIZE;
+    }
+
+    @Override
+    public List<String> getCountries(List<Coordinate> coordinates) throws IOException, InterruptedException {
+        if (coordinates.size() > MAXIMUM_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch holds at most " + MAXIMUM_BATCH_SIZE + " coordinates");
+        }
+        ArrayNode body = objectMapper().createArrayNode();
+        for (Coordinate coordinate : coordinates) {
+            body.addObject()
+                    .put("lat", coordinate.latitude())
+                    .put("lon", coordinate.longitude());
+        }
+
+        HttpRequest.Builder post = request(batchUrl + "?apiKey=" + apiKey,
+                "Accept", "application/json",
+                "Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper().writeValueAsBytes(body)));
+        BatchResponse job = send(post, GeoapifyProvider::readBatchResponse, 200, 202);
+
+        long deadline = System.nanoTime() + BATCH_TIMEOUT.toNanos();
+        Duration interval = FIRST_POLL_INTERVAL;
+        while (job.countryCodes() == null) {
+            String jobUrl = job.url();
+            if (jobUrl == null) {
+                if (job.id() == null) {
+                    throw new IOException("Geoapify batch job has no id");
+                }
+                jobUrl = batchUrl + "?id=" + job.id() + "&apiKey=" + apiKey;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IOException("Geoapify batch job timed out: " + jobUrl);
+            }
+            Thread.sleep(interval);
+            interval = interval.multipliedBy(3).dividedBy(2);
+            if (interval.compareTo(MAXIMUM_POLL_INTERVAL) > 0) {
+                interval = MAXIMUM_POLL_INTERVAL;
+            }
+            BatchResponse poll = send(request(jobUrl + "&format=json", "Accept", "application/json").GET(),
+                    GeoapifyProvider::readBatchResponse, 200, 202);
+            // Pending responses don't always repeat the URL.
+            job = poll.url() == null && poll.countryCodes() == null ? new BatchResponse(job.id(), jobUrl, null) : poll;
+        }
+
+        List<String> countryCodes = job.countryCodes();
+        if (countryCodes.size() != coordinates.size()) {
+            throw new IOException("Geoapify batch returned " + countryCodes.size() + " results for " + coordinates.size() + " coordinates");
+        }
+        List<String> countries = new ArrayList<>(coordinates.size());
+        for (int i = 0; i < coordinates.size(); i++) {
+            countries.add(toCountry(countryCodes.get(i), coordinates.get(i)));
+        }
+        return countries;
+    }
+
+    // A pending job has an id and URL, a finished one an array with a result object per coordinate.
+    private static BatchResponse readBatchResponse(int status, JsonParser parser) throws IOException {
+        if (status == 202) {
+            JsonNode job = parser.readValueAsTree();
+            return new BatchResponse(job.path("id").asText(null), job.path("url").asText(null), null);
+        }
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Geoapify batch results are not an array");
+        }
+        List<String> countryCodes = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String countryCode = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                if (parser.nextToken() == JsonToken.VALUE_STRING && name.equals("country_code")) {
+                    countryCode = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            countryCodes.add(countryCode);
+        }
+        return new BatchResponse(null, null, countryCodes);
+    }
+
+    private record BatchResponse(String id, String url, List<String> countryCodes) {
+    }
+}
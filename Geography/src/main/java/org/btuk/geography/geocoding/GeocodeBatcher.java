@@ -0,0 +1,180 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Groups lookups into batch jobs for a {@link BatchGeocodingProvider}.
+ * <p>
+ * Submitted lookups are held for a short linger time, or until a full batch has been collected, and then sent as one
+ * job. A batch job has a fixed overhead of several seconds, so groups smaller than the minimum batch size, lookups
+ * beyond the daily quota and the lookups of a failed job go to the {@link GeocodeScheduler} one by one instead.
+ */
+final class GeocodeBatcher {
+
+    private final BatchGeocodingProvider provider;
+    private final DailyQuotaPolicy quota;
+    private final GeocodeScheduler fallback;
+    private final Executor executor;
+    private final int minimumBatchSize;
+    private final Duration linger;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedLookups = new LongAdder();
+
+    private List<Coordinate> pendingCoordinates = new ArrayList<>();
+    private List<CompletableFuture<String>> pendingResults = new ArrayList<>();
+
+    /**
+     * @param provider         the provider of the batch jobs
+     * @param quota            the daily quota the lookups of a job count against, or null if there is none
+     * @param fallback         the scheduler for lookups that don't go into a job
+     * @param executor         runs the jobs, they block while polling for the results
+     * @param minimumBatchSize the smallest group that is worth a job
+     * @param linger           how long to wait for more lookups before sending a partial batch
+     */
+    GeocodeBatcher(BatchGeocodingProvider provider, DailyQuotaPolicy quota, GeocodeScheduler fallback, Executor executor,
+                   int minimumBatchSize, Duration linger) {
+        this.provider = provider;
+        this.quota = quota;
+        this.fallback = fallback;
+        this.executor = executor;
+        this.minimumBatchSize = minimumBatchSize;
+        this.linger = linger;
+    }
+
+    /**
+     * Add a lookup to the next batch.
+     *
+     * @param coordinate the coordinate
+     * @return a CompletableFuture with the ISO 3166-1 alpha-2 country code, or "Unknown" if the provider has no country
+     * for it, completed exceptionally like {@link GeocodeScheduler#submit(Coordinate)} if no provider could answer
+     */
+    CompletableFuture<String> submit(Coordinate coordinate) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        List<Coordinate> fullCoordinates = null;
+        List<CompletableFuture<String>> fullResults = null;
+
+        synchronized (this) {
+            if (pendingCoordinates.isEmpty()) {
+                CompletableFuture.delayedExecutor(linger.toNanos(), TimeUnit.NANOSECONDS, executor).execute(this::flush);
+            }
+            pendingCoordinates.add(coordinate);
+            pendingResults.add(result);
+            if (pendingCoordinates.size() >= provider.getMaximumBatchSize()) {
+                fullCoordinates = pendingCoordinates;
+                fullResults = pendingResults;
+                pendingCoordinates = new ArrayList<>();
+                pendingResults = new ArrayList<>();
+            }
+        }
+
+        if (fullCoordinates != null) {
+            dispatch(fullCoordinates, fullResults);
+        }
+        return result;
+    }
+
+    /**
+     * Send the pending lookups now instead of waiting for the linger time.
+     */
+    void flush() {
+        List<Coordinate> coordinates;
+        List<CompletableFuture<String>> results;
+        synchronized (this) {
+            if (pendingCoordinates.isEmpty()) {
+                return;
+            }
+            coordinates = pendingCoordinates;
+            results = pendingResults;
+            pendingCoordinates = new ArrayList<>();
+            pendingResults = new ArrayList<>();
+        }
+        dispatch(coordinates, results);
+    }
+
+    /**
+     * Get the number of batch jobs sent.
+     *
+     * @return the number of jobs
+     */
+    long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Get the number of lookups that were answered by batch jobs.
+     *
+     * @return the number of lookups
+     */
+    long getBatchedLookupCount() {
+        return batchedLookups.sum();
+    }
+
+    private void dispatch(List<Coordinate> coordinates, List<CompletableFuture<String>> results) {
+        int batchSize = coordinates.size();
+        if (quota != null) {
+            batchSize = Math.min(batchSize, quota.getRemaining());
+        }
+        if (batchSize < minimumBatchSize) {
+            // Too few to be worth a job, look them up one by one.
+            batchSize = 0;
+        } else if (quota != null) {
+            batchSize = quota.reserveUpTo(batchSize);
+        }
+        for (int i = batchSize; i < coordinates.size(); i++) {
+            forward(fallback.submit(coordinates.get(i)), results.get(i));
+        }
+        if (batchSize > 0) {
+            List<Coordinate> batch = coordinates.subList(0, batchSize);
+            List<CompletableFuture<String>> batchResults = results.subList(0, batchSize);
+            executor.execute(() -> run(batch, batchResults));
+        }
+    }
+
+    private void run(List<Coordinate> coordinates, List<CompletableFuture<String>> results) {
+        try {
+            List<String> countries = provider.getCountries(coordinates);
+            batches.increment();
+            batchedLookups.add(coordinates.size());
+            for (int i = 0; i < results.size(); i++) {
+                results.get(i).complete(countries.get(i));
+            }
+        } catch (IOException e) {
+            System.err.println("Error from the " + provider.getName() + " batch job of " + coordinates.size()
+                    + " coordinates, looking them up one by one: " + e.getMessage());
+            // The scheduler reserves the lookups again.
+            if (quota != null) {
+                quota.cancel(coordinates.size());
+            }
+            for (int i = 0; i < coordinates.size(); i++) {
+                forward(fallback.submit(coordinates.get(i)), results.get(i));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException error = new InterruptedIOException("Interrupted while waiting for a batch job");
+            results.forEach(result -> result.completeExceptionally(error));
+        } catch (RuntimeException e) {
+            results.forEach(result -> result.completeExceptionally(e));
+        }
+    }
+
+    private static void forward(CompletableFuture<String> source, CompletableFuture<String> target) {
+        source.whenComplete((country, error) -> {
+            if (error != null) {
+                target.completeExceptionally(error);
+            } else {
+                target.complete(country);
+            }
+        });
+    }
+}
@@ -0,0 +1,34 @@
+package org.btuk.geography.geocoding;
+
+import java.io.Closeable;
+
+/**
+ * Persistent tier of the geocode cache, from {@link org.btuk.geography.GeoCell cell keys} to
+ * {@link CountryCodes country codes}.
+ * <p>
+ * The default keeps a log and snapshot in the working directory of one server, {@link SharedGeocodeCache} is shared
+ * by every server on the host.
+ */
+public interface GeocodeCacheBackend extends Closeable {
+
+    /**
+     * Get a cached country code.
+     *
+     * @param key the cell key
+     * @return the country code, or {@link CountryCodes#NONE} if the cell is not cached
+     */
+    short get(long key);
+
+    /**
+     * Store a country code, it may only be durable after the next {@link #flush()}.
+     *
+     * @param key  the cell key
+     * @param code the country code, not {@link CountryCodes#NONE}
+     */
+    void put(long key, short code);
+
+    /**
+     * Write pending changes to disk.
+     */
+    void flush();
+}
@@ -0,0 +1,183 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads lookups over several providers within their {@link ProviderPolicy policies}.
+ * <p>
+ * Every lookup reserves a start time on the provider that is expected to finish it first, given the reservations
+ * already made and the measured latency and error rate of each provider, so a provider that slows down gets fewer
+ * lookups. Providers with an open {@link CircuitBreaker} are skipped, and lookups already waiting for them move on.
+ * Submitting a batch one lookup after another is greedy list scheduling, so a batch is spread over the providers in
+ * proportion to how fast each of them can take requests. The request then waits for its start time on a thread of the
+ * executor, which should use virtual threads.
+ * <p>
+ * A failed lookup is retried after a backoff from the {@link RetryPolicy}, on a provider it has not tried yet if there
+ * is one, until the attempts run out.
+ */
+public final class GeocodeScheduler {
+
+    private final List<ScheduledProvider> providers;
+    private final Executor executor;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * @param executor  runs the requests, they block while waiting for their start time and response
+     * @param providers the providers to spread lookups over
+     */
+    public GeocodeScheduler(Executor executor, List<ScheduledProvider> providers) {
+        this(executor, providers, RetryPolicy.DEFAULT);
+    }
+
+    /**
+     * @param executor    runs the requests, they block while waiting for their start time and response
+     * @param providers   the providers to spread lookups over
+     * @param retryPolicy the retries of failed lookups
+     */
+    public GeocodeScheduler(Executor executor, List<ScheduledProvider> providers, RetryPolicy retryPolicy) {
+        this.executor = executor;
+        this.providers = List.copyOf(providers);
+        this.retryPolicy = retryPolicy;
+    }
+
+    public List<ScheduledProvider> getProviders() {
+        return providers;
+    }
+
+    /**
+     * Schedule a lookup.
+     *
+     * @param coordinate the coordinate
+     * @return a CompletableFuture with the ISO 3166-1 alpha-2 country code, or "Unknown" if the provider has no country
+     * for it. It completes exceptionally with an {@link IOException} if no provider could answer, which is transient
+     * and should not be cached for long.
+     */
+    public CompletableFuture<String> submit(Coordinate coordinate) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        submit(coordinate, Set.of(), 1, result);
+        return result;
+    }
+
+    /**
+     * Write the quota counters of all providers to disk.
+     */
+    public void flush() {
+        for (ScheduledProvider provider : providers) {
+            provider.flush();
+        }
+    }
+
+    private void submit(Coordinate coordinate, Set<ScheduledProvider> tried, int attempt, CompletableFuture<String> result) {
+        ScheduledProvider chosen = null;
+        long chosenStart = ProviderPolicy.NEVER;
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            Set<ScheduledProvider> denied = Set.of();
+            while (true) {
+                chosen = null;
+                long bestFinish = ProviderPolicy.NEVER;
+                for (ScheduledProvider provider : providers) {
+                    if (tried.contains(provider) || denied.contains(provider)) {
+                        continue;
+                    }
+                    long start = provider.peek(now);
+                    if (start == ProviderPolicy.NEVER) {
+                        continue;
+                    }
+                    long finish = start + provider.getExpectedCompletionNanos();
+                    if (finish < bestFinish) {
+                        bestFinish = finish;
+                        chosen = provider;
+                        chosenStart = start;
+                    }
+                }
+                if (chosen == null || chosen.reserve(chosenStart)) {
+                    break;
+                }
+                // A policy shared with other servers can deny what its peek allowed, plan again without the provider.
+                denied = exclude(denied, chosen);
+            }
+        }
+
+        if (chosen == null) {
+            result.completeExceptionally(new IOException("No geocoding provider available for lat="
+                    + coordinate.latitude() + ", lon=" + coordinate.longitude()));
+            return;
+        }
+
+        ScheduledProvider provider = chosen;
+        long start = chosenStart;
+        executor.execute(() -> run(coordinate, provider, start, tried, attempt, result));
+    }
+
+    private void run(Coordinate coordinate, ScheduledProvider provider, long start, Set<ScheduledProvider> tried, int attempt,
+                     CompletableFuture<String> result) {
+        try {
+            long delay = start - System.nanoTime();
+            try {
+                if (delay > 0) {
+                    Thread.sleep(Duration.ofNanos(delay));
+                }
+            } finally {
+                provider.dequeue();
+            }
+            if (!provider.isAvailable(System.nanoTime())) {
+                // The circuit breaker opened while this lookup was waiting, move it without counting an attempt or
+                // keeping the reservation.
+                provider.cancel();
+                submit(coordinate, exclude(tried, provider), attempt, result);
+                return;
+            }
+            result.complete(provider.getCountry(coordinate));
+        } catch (IOException e) {
+            retry(coordinate, provider, tried, attempt, e, result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(new InterruptedIOException("Interrupted while looking up lat="
+                    + coordinate.latitude() + ", lon=" + coordinate.longitude()));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void retry(Coordinate coordinate, ScheduledProvider failed, Set<ScheduledProvider> tried, int attempt,
+                       IOException error, CompletableFuture<String> result) {
+        if (attempt >= retryPolicy.getMaximumAttempts()) {
+            System.err.println("Error from " + failed.getProvider().getName() + " for lat=" + coordinate.latitude()
+                    + ", lon=" + coordinate.longitude() + ", giving up after " + attempt + " attempts: " + error.getMessage());
+            result.completeExceptionally(error);
+            return;
+        }
+
+        // Prefer a provider this lookup has not tried yet, once all have failed start over with all of them.
+        Set<ScheduledProvider> nextTried = exclude(tried, failed);
+        if (nextTried.size() >= providers.size()) {
+            nextTried = Set.of();
+        }
+        Duration retryAfter = error instanceof ProviderResponseException response ? response.getRetryAfter() : null;
+        long delay = retryPolicy.getDelayNanos(attempt, retryAfter);
+        System.err.println("Error from " + failed.getProvider().getName() + " for lat=" + coordinate.latitude()
+                + ", lon=" + coordinate.longitude() + ", retrying in " + TimeUnit.NANOSECONDS.toMillis(delay) + "ms: " + error.getMessage());
+
+        Set<ScheduledProvider> retryTried = nextTried;
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, executor)
+                .execute(() -> submit(coordinate, retryTried, attempt + 1, result));
+    }
+
+    private static Set<ScheduledProvider> exclude(Set<ScheduledProvider> tried, ScheduledProvider provider) {
+        Set<ScheduledProvider> excluded = new HashSet<>(tried);
+        excluded.add(provider);
+        return excluded;
+    }
+}
@@ -0,0 +1,534 @@
+package org.btuk.geography.geocoding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.btuk.geography.GeoCell;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent geocode cache made of a sorted, memory-mapped snapshot and an append-only log of newer results.
+ * <p>
+ * Every log record is {@code [cell key][country code][crc32]}, so a record that was only partially written before a crash
+ * is detected on load and cut off. Only the log is read into memory on startup, the snapshot is searched in place.
+ * Once the log grows large it is merged into a new snapshot in the background.
+ * <p>
+ * A mapped file can't be replaced or deleted on Windows, so every snapshot is written under a new generation name,
+ * {@code cache.<generation>.dat} for {@code cache.dat}, and the store switches to the newest one. Older generations are
+ * deleted once they are not mapped anymore, which may take until the next compaction or start.
+ */
+final class GeocodeStore implements GeocodeCacheBackend {
+
+    private static final int MAGIC = 0x47454F4C; // GEOL
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_DATA_SIZE = 10;
+    private static final int RECORD_SIZE = RECORD_DATA_SIZE + 4;
+
+    private static final int SNAPSHOT_MAGIC = 0x47454F53; // GEOS
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_SIZE = 12;
+
+    // Merge the log into the snapshot once it holds this many records.
+    private static final int COMPACTION_RECORDS = 65536;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // Deletes the file of a replaced snapshot once the snapshot is unreachable.
+    private static final Cleaner snapshotCleaner = Cleaner.create();
+
+    private final Path file;
+    private final Path snapshotDirectory;
+    private final String snapshotPrefix;
+    private final String snapshotSuffix;
+    private final ExecutorService compactionExecutorService = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "geocode-store-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Readers don't lock, a compaction publishes the new snapshot before the shortened log.
+    private volatile Snapshot snapshot;
+    private volatile LongShortMap recent = new LongShortMap();
+
+    private long snapshotGeneration;
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(8192);
+    private int records;
+    private boolean compacting;
+    private boolean closed;
+
+    /**
+     * Open the store, recovering the log from a crash if needed.
+     *
+     * @param file         the log file
+     * @param snapshotFile the name of the snapshot files, each generation is written with its number before the
+     *                     extension
+     * @param legacyFile   a {@code cache.json} to import when neither file exists yet, may be null
+     * @throws IOException if the store could not be opened
+     */
+    GeocodeStore(Path file, Path snapshotFile, Path legacyFile) throws IOException {
+        this.file = file;
+        this.snapshotDirectory = snapshotFile.toAbsolutePath().getParent();
+        String snapshotName = snapshotFile.getFileName().toString();
+        int extension = snapshotName.lastIndexOf('.');
+        this.snapshotPrefix = (extension == -1 ? snapshotName : snapshotName.substring(0, extension)) + ".";
+        this.snapshotSuffix = extension == -1 ? "" : snapshotName.substring(extension);
+
+        // Leftovers of a compaction that crashed before its files were moved into place, the old files are still intact.
+        Files.deleteIfExists(temporaryFile(file));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(snapshotDirectory, this::isTemporarySnapshotFile)) {
+            for (Path temporary : stream) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        // The newest generation is complete, it is only moved into place once written. A crash before the log was
+        // shortened leaves records that are in the snapshot as well, loading them again is harmless.
+        snapshotGeneration = newestSnapshotGeneration();
+        snapshot = Snapshot.open(snapshotFile(snapshotGeneration));
+        deleteStaleSnapshots(snapshotGeneration);
+        if (Files.exists(file)) {
+            load();
+        } else if (legacyFile != null && Files.exists(legacyFile) && snapshot.count == 0) {
+            importLegacy(legacyFile);
+        }
+
+        if (!Files.exists(file)) {
+            writeLog(file, new LongShortMap());
+        }
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        // A large log from an unclean shutdown, merge it right away.
+        if (records >= COMPACTION_RECORDS) {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Get a cached country code.
+     *
+     * @param key the cell key
+     * @return the country code, or {@link CountryCodes#NONE} if the cell is not cached
+     */
+    @Override
+    public short get(long key) {
+        Snapshot currentSnapshot = snapshot;
+        short code = recent.get(key);
+        return code != CountryCodes.NONE ? code : currentSnapshot.get(key);
+    }
+
+    /**
+     * Store a value, it is written to disk on the next {@link #flush()}.
+     *
+     * @param key  the cell key
+     * @param code the country code
+     */
+    @Override
+    public synchronized void put(long key, short code) {
+        recent.put(key, code);
+        ensurePending(RECORD_SIZE);
+        putRecord(pending, key, code);
+        records++;
+    }
+
+    /**
+     * Append all pending records to the log and schedule a compaction if the log has grown too large.
+     */
+    @Override
+    public synchronized void flush() {
+        try {
+            writePending();
+        } catch (IOException e) {
+            System.err.println("Error appending to geocode cache: " + e.getMessage());
+            return;
+        }
+        if (records >= COMPACTION_RECORDS) {
+            scheduleCompaction();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        compactionExecutorService.shutdown();
+        writePending();
+        channel.close();
+    }
+
+    private synchronized void scheduleCompaction() {
+        if (!compacting && !closed) {
+            compacting = true;
+            compactionExecutorService.execute(this::compact);
+        }
+    }
+
+    private void compact() {
+        try {
+            long start;
+            LongShortMap merged;
+            long generation;
+            synchronized (this) {
+                writePending();
+                start = channel.size();
+                merged = recent.copy();
+                generation = snapshotGeneration + 1;
+            }
+
+            // Merge without holding the lock, records appended meanwhile stay in the log below.
+            Path nextSnapshotFile = snapshotFile(generation);
+            writeSnapshot(nextSnapshotFile, snapshot, merged);
+
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                writePending();
+
+                Path temporary = temporaryFile(file);
+                LongShortMap tail = new LongShortMap();
+                int tailRecords;
+                try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                     FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    // Read rather than mapped, so the log can be replaced below.
+                    ByteBuffer tailBuffer = readFully(source, start);
+                    tailRecords = readRecords(tailBuffer, tail);
+
+                    writeFully(target, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip());
+                    writeFully(target, tailBuffer.rewind());
+                    target.force(true);
+                }
+                channel.close();
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+                Snapshot previous = snapshot;
+                Path previousFile = snapshotFile(snapshotGeneration);
+                snapshot = Snapshot.open(nextSnapshotFile);
+                snapshotGeneration = generation;
+                recent = tail;
+                records = tailRecords;
+                if (previous != Snapshot.EMPTY) {
+                    snapshotCleaner.register(previous, () -> deleteSnapshot(previousFile));
+                }
+            }
+            deleteStaleSnapshots(generation);
+        } catch (IOException e) {
+            System.err.println("Error compacting geocode cache: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        long validSize;
+        try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = readFully(readChannel, 0);
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a geocode cache log: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported geocode cache log version " + version + ": " + file);
+            }
+            records = readRecords(buffer, recent);
+            validSize = buffer.position();
+
+            if (validSize < readChannel.size()) {
+                System.err.println("Geocode cache log has a torn tail, discarding " + (readChannel.size() - validSize) + " bytes");
+            }
+        }
+
+        if (validSize < Files.size(file)) {
+            try (FileChannel truncateChannel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncateChannel.truncate(validSize);
+                truncateChannel.force(true);
+            }
+        }
+    }
+
+    // Reads records up to the first invalid one and leaves the buffer positioned there, returns the number read.
+    private static int readRecords(ByteBuffer buffer, LongShortMap target) {
+        CRC32 crc = new CRC32();
+        byte[] data = new byte[RECORD_DATA_SIZE];
+        int count = 0;
+        while (buffer.remaining() >= RECORD_SIZE) {
+            int position = buffer.position();
+            buffer.get(data);
+            int checksum = buffer.getInt();
+            crc.reset();
+            crc.update(data);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(position);
+                break;
+            }
+            long key = buffer.getLong(position);
+            short code = buffer.getShort(position + 8);
+            if (code != CountryCodes.NONE) {
+                target.put(key, code);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private void importLegacy(Path legacyFile) throws IOException {
+        try {
+            JsonNode cacheNode = objectMapper.readTree(legacyFile.toFile());
+            cacheNode.fields().forEachRemaining(entry -> putLegacy(entry.getKey(), entry.getValue().asText()));
+        } catch (IOException e) {
+            System.err.println("Error importing legacy cache: " + e.getMessage());
+        }
+        writeLog(file, recent);
+        records = recent.size();
+    }
+
+    // Legacy keys are "lat_lon" formatted with 6 decimals in the default locale, so the decimal separator may be a comma.
+    private void putLegacy(String key, String value) {
+        int separator = key.lastIndexOf('_');
+        if (separator == -1) {
+            return;
+        }
+        try {
+            double latitude = Double.parseDouble(key.substring(0, separator).replace(',', '.'));
+            double longitude = Double.parseDouble(key.substring(separator + 1).replace(',', '.'));
+            recent.put(GeoCell.key(latitude, longitude), CountryCodes.encode(value));
+        } catch (NumberFormatException e) {
+            System.err.println("Skipping invalid legacy cache key: " + key);
+        }
+    }
+
+    // Write a complete log to a temporary file and move it into place.
+    private static void writeLog(Path target, LongShortMap entries) throws IOException {
+        Path temporary = temporaryFile(target);
+        try (FileChannel writeChannel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(writeChannel), 65536);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            outputStream.write(record.putInt(MAGIC).putInt(VERSION).array(), 0, HEADER_SIZE);
+            for (long key : entries.keys()) {
+                putRecord(record.clear(), key, entries.get(key));
+                outputStream.write(record.array());
+            }
+            outputStream.flush();
+            writeChannel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Merge the current snapshot with newer entries into a new sorted snapshot, newer entries win.
+    private static void writeSnapshot(Path target, Snapshot base, LongShortMap entries) throws IOException {
+        long[] keys = entries.keys();
+        Arrays.sort(keys);
+
+        Path temporary = temporaryFile(target);
+        int count = 0;
+        try (FileChannel writeChannel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(writeChannel), 65536);
+            ByteBuffer record = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+            outputStream.write(new byte[SNAPSHOT_HEADER_SIZE]);
+
+            int baseIndex = 0;
+            int index = 0;
+            while (baseIndex < base.count || index < keys.length) {
+                long baseKey = baseIndex < base.count ? base.key(baseIndex) : Long.MAX_VALUE;
+                long key = index < keys.length ? keys[index] : Long.MAX_VALUE;
+                if (index < keys.length && key <= baseKey) {
+                    outputStream.write(record.clear().putLong(key).putShort(entries.get(key)).array(), 0, RECORD_DATA_SIZE);
+                    index++;
+                    if (key == baseKey) {
+                        baseIndex++;
+                    }
+                } else {
+                    outputStream.write(record.clear().putLong(baseKey).putShort(base.code(baseIndex)).array(), 0, RECORD_DATA_SIZE);
+                    baseIndex++;
+                }
+                count++;
+            }
+            outputStream.flush();
+
+            writeFully(writeChannel.position(0), record.clear().putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(count).flip());
+            writeChannel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path snapshotFile(long generation) {
+        return snapshotDirectory.resolve(snapshotPrefix + generation + snapshotSuffix);
+    }
+
+    private boolean isTemporarySnapshotFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(snapshotPrefix) && name.endsWith(snapshotSuffix + ".tmp");
+    }
+
+    // Get the generation of a snapshot file name, or -1 if it is not one.
+    private long snapshotGeneration(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(snapshotPrefix) || !name.endsWith(snapshotSuffix)
+                || name.length() <= snapshotPrefix.length() + snapshotSuffix.length()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name, snapshotPrefix.length(), name.length() - snapshotSuffix.length(), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private long newestSnapshotGeneration() throws IOException {
+        long newest = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(snapshotDirectory)) {
+            for (Path path : stream) {
+                newest = Math.max(newest, snapshotGeneration(path));
+            }
+        }
+        return newest;
+    }
+
+    // Delete the snapshots older than the current one, those that are still mapped are left for the next attempt.
+    private void deleteStaleSnapshots(long current) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(snapshotDirectory)) {
+            for (Path path : stream) {
+                long generation = snapshotGeneration(path);
+                if (generation != -1 && generation < current) {
+                    deleteSnapshot(path);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error listing geocode cache snapshots: " + e.getMessage());
+        }
+    }
+
+    private static void deleteSnapshot(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Still mapped, on Windows a mapped file can't be deleted.
+        }
+    }
+
+    private void writePending() throws IOException {
+        if (pending.position() == 0) {
+            return;
+        }
+        pending.flip();
+        writeFully(channel, pending);
+        pending.clear();
+        channel.force(false);
+    }
+
+    private void ensurePending(int size) {
+        if (pending.remaining() < size) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    private static Path temporaryFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    // Read a file from a position to its end into a heap buffer.
+    private static ByteBuffer readFully(FileChannel channel, long position) throws IOException {
+        long size = channel.size() - position;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Geocode cache log is too large: " + size + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("Geocode cache log was truncated while reading");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void putRecord(ByteBuffer buffer, long key, short code) {
+        int position = buffer.position();
+        buffer.putLong(key).putShort(code);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(position, RECORD_DATA_SIZE));
+        buffer.putInt((int) crc.getValue());
+    }
+
+    // Sorted [cell key][country code] records, searched in place.
+    private static final class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot(ByteBuffer.allocate(0), 0);
+
+        private final ByteBuffer buffer;
+        private final int count;
+
+        private Snapshot(ByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        private static Snapshot open(Path file) throws IOException {
+            if (!Files.exists(file)) {
+                return EMPTY;
+            }
+            try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed.
+                MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                if (buffer.capacity() < SNAPSHOT_HEADER_SIZE || buffer.getInt(0) != SNAPSHOT_MAGIC || buffer.getInt(4) != SNAPSHOT_VERSION
+                        || buffer.capacity() != SNAPSHOT_HEADER_SIZE + (long) buffer.getInt(8) * RECORD_DATA_SIZE) {
+                    System.err.println("Ignoring invalid geocode cache snapshot: " + file);
+                    return EMPTY;
+                }
+                return new Snapshot(buffer.slice(SNAPSHOT_HEADER_SIZE, buffer.capacity() - SNAPSHOT_HEADER_SIZE), buffer.getInt(8));
+            }
+        }
+
+        private long key(int index) {
+            return buffer.getLong(index * RECORD_DATA_SIZE);
+        }
+
+        private short code(int index) {
+            return buffer.getShort(index * RECORD_DATA_SIZE + 8);
+        }
+
+        private short get(long key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleKey = key(middle);
+                if (middleKey < key) {
+                    low = middle + 1;
+                } else if (middleKey > key) {
+                    high = middle - 1;
+                } else {
+                    return code(middle);
+                }
+            }
+            return CountryCodes.NONE;
+        }
+    }
+}
@@ -0,0 +1,711 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.CoordinateBuffer;
+import org.btuk.geography.GeoCell;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Reverse geocoder from coordinates to ISO 3166-1 alpha-2 country codes.
+ * <p>
+ * Lookups go through warmed-up {@link CountryTile tiles}, an in-memory cache, the persistent cache and the offline
+ * {@link CountryBoundaryIndex}, and only the rest goes to the online providers. Creating a geocoder is cheap: the
+ * persistent cache, the boundary index and the tiles are loaded in the background, lookups made before they are ready
+ * are answered online and their results are kept for the persistent cache once it is open.
+ * <p>
+ * A geocoder owns its threads and files until {@link #close()}, so a plugin should close it when it is disabled.
+ * {@link ReverseGeocoder} keeps a shared instance for code that doesn't manage its own.
+ */
+public final class Geocoder implements Closeable {
+
+    static final String DEFAULT_GEOAPIFY_API_KEY = "YOUR_GEOAPIFY_API_KEY_HERE"; // Replace with your key
+    static final int DEFAULT_CACHE_ENTRIES = 100_000;
+    static final int DEFAULT_SHARED_ENTRIES = 1_000_000;
+
+    private static final String LIMITS_FILE = "daily_limits.json";
+    private static final String CACHE_FILE = "cache.log";
+    private static final String CACHE_SNAPSHOT_FILE = "cache.dat";
+    private static final String LEGACY_CACHE_FILE = "cache.json";
+    private static final String BOUNDARIES_FILE = "countries.geojson";
+    private static final String TILES_DIRECTORY = "tiles";
+    private static final String TILE_EXTENSION = ".tile";
+    private static final String SHARED_CACHE_FILE = "geocode-cache.shared";
+    private static final String SHARED_QUOTA_FILE = "quota.shared";
+    private static final double BORDER_TOLERANCE_METRES = 100;
+
+    // Failed lookups are not cached on disk, only remembered for a short time so an outage doesn't stall every batch.
+    private static final Duration NEGATIVE_CACHE_TTL = Duration.ofMinutes(5);
+    private static final int NEGATIVE_CACHE_SIZE = 100_000;
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(5);
+
+    // Nominatim allows one request per second, Geoapify's free tier 5 per second and 3000 per day.
+    private static final Duration NOMINATIM_REQUEST_INTERVAL = Duration.ofSeconds(1);
+    private static final Duration NOMINATIM_EXPECTED_LATENCY = Duration.ofMillis(500);
+    private static final int GEOAPIFY_DAILY_LIMIT = 3000;
+    private static final int GEOAPIFY_REQUESTS_PER_SECOND = 5;
+    private static final Duration GEOAPIFY_EXPECTED_LATENCY = Duration.ofMillis(300);
+
+    // Calls with at least this many cache misses use Geoapify batch jobs, which take seconds but cost one request.
+    private static final int GEOAPIFY_BATCH_MINIMUM = 50;
+    private static final Duration GEOAPIFY_BATCH_LINGER = Duration.ofMillis(200);
+
+    // Polygon queries stop splitting at about 100 m, or once a polygon has used this many lookups.
+    private static final double POLYGON_MINIMUM_CELL_DEGREES = 0.001;
+    private static final int POLYGON_MAXIMUM_SAMPLES = 2_000;
+
+    // Takes the place of the persistent cache if it could not be opened.
+    private static final GeocodeCacheBackend NO_CACHE = new GeocodeCacheBackend() {
+        @Override
+        public short get(long key) {
+            return CountryCodes.NONE;
+        }
+
+        @Override
+        public void put(long key, short code) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final WTinyLfuCache memoryCache;
+    private final SingleFlight inFlight = new SingleFlight();
+    private final NegativeCache failedLookups = new NegativeCache(NEGATIVE_CACHE_TTL, NEGATIVE_CACHE_SIZE);
+    private final PolygonCoverage polygonCoverage = new PolygonCoverage(POLYGON_MINIMUM_CELL_DEGREES, POLYGON_MAXIMUM_SAMPLES);
+
+    // Lookups block on virtual threads while they wait for their turn and their response.
+    private final ExecutorService executorService = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("reverse-geocoder-", 0).factory());
+    private final GeocoderState state;
+    private final CompletableFuture<Pipeline> pipeline;
+    private final CompletableFuture<Void> loaded;
+
+    // Null until loaded, results found in the meantime wait in pendingPuts.
+    private volatile GeocodeCacheBackend cache;
+    private volatile CountryBoundaryIndex boundaryIndex;
+    private volatile List<CountryTile> tiles = List.of();
+    private final LongShortMap pendingPuts = new LongShortMap();
+
+    private volatile MetricsSink metricsSink;
+    private volatile boolean closed;
+
+    private Geocoder(Builder builder) {
+        this.memoryCache = builder.memoryCacheBytes > 0
+                ? WTinyLfuCache.withMaximumBytes(builder.memoryCacheBytes)
+                : new WTinyLfuCache(builder.memoryCacheEntries);
+        this.metricsSink = builder.metricsSink;
+        this.state = new GeocoderState() {
+            @Override
+            public CacheStats getCacheStats() {
+                return memoryCache.stats();
+            }
+
+            @Override
+            public List<ScheduledProvider> getProviders() {
+                Pipeline ready = getPipeline();
+                return ready == null ? List.of() : ready.scheduler().getProviders();
+            }
+
+            @Override
+            public int getPendingLookups() {
+                return inFlight.size();
+            }
+
+            @Override
+            public long getCoalescedRequestCount() {
+                return inFlight.getCoalescedCount();
+            }
+
+            @Override
+            public int getFailedCellCount() {
+                return failedLookups.size();
+            }
+        };
+
+        // Even the HTTP client and Jackson take a second to initialise in a fresh JVM, so nothing is created up front.
+        this.pipeline = CompletableFuture.supplyAsync(() -> createPipeline(builder), executorService);
+        pipeline.whenComplete((ready, e) -> {
+            if (e != null) {
+                if (!closed) {
+                    System.err.println("Error starting the online geocoding providers: " + e.getMessage());
+                }
+            } else {
+                synchronized (this) {
+                    metricsSink.bind(state);
+                }
+            }
+        });
+        this.loaded = new CompletableFuture<>();
+        CompletableFuture.allOf(
+                        CompletableFuture.runAsync(() -> openCache(builder), executorService),
+                        CompletableFuture.runAsync(() -> boundaryIndex = loadBoundaryIndex(builder.directory), executorService),
+                        CompletableFuture.runAsync(() -> tiles = loadTiles(builder.directory), executorService))
+                .whenComplete((ignored, e) -> loaded.complete(null));
+    }
+
+    // The providers, or null while they are starting or if they failed to start.
+    private Pipeline getPipeline() {
+        return pipeline.isDone() && !pipeline.isCompletedExceptionally() ? pipeline.join() : null;
+    }
+
+    private Pipeline createPipeline(Builder builder) {
+        // Shared client, so connections are kept alive and reused between requests.
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(executorService)
+                .build();
+
+        QuotaBackend quotaStore = openQuotaStore(builder);
+        GeoapifyProvider geoapifyProvider = new GeoapifyProvider(httpClient, builder.geoapifyApiKey);
+        DailyQuotaPolicy geoapifyQuota = new DailyQuotaPolicy("geoapify", GEOAPIFY_DAILY_LIMIT, quotaStore);
+        GeocodeScheduler scheduler = new GeocodeScheduler(executorService, List.of(
+                new ScheduledProvider(new NominatimProvider(httpClient), NOMINATIM_EXPECTED_LATENCY,
+                        new TokenBucketPolicy(1, NOMINATIM_REQUEST_INTERVAL),
+                        new ConcurrencyLimitPolicy(1, NOMINATIM_EXPECTED_LATENCY)),
+                new ScheduledProvider(geoapifyProvider, GEOAPIFY_EXPECTED_LATENCY,
+                        geoapifyQuota,
+                        new TokenBucketPolicy(GEOAPIFY_REQUESTS_PER_SECOND, Duration.ofSeconds(1).dividedBy(GEOAPIFY_REQUESTS_PER_SECOND)),
+                        new ConcurrencyLimitPolicy(GEOAPIFY_REQUESTS_PER_SECOND, GEOAPIFY_EXPECTED_LATENCY))
+        ));
+        GeocodeBatcher batcher = new GeocodeBatcher(geoapifyProvider, geoapifyQuota, scheduler,
+                executorService, GEOAPIFY_BATCH_MINIMUM, GEOAPIFY_BATCH_LINGER);
+        if (closed) {
+            httpClient.shutdownNow();
+            try {
+                quotaStore.close();
+            } catch (IOException e) {
+                System.err.println("Error closing quota store: " + e.getMessage());
+            }
+            throw new IllegalStateException("The geocoder is closed");
+        }
+        return new Pipeline(httpClient, quotaStore, scheduler, batcher);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private void openCache(Builder builder) {
+        GeocodeCacheBackend opened;
+        try {
+            if (builder.sharedDirectory != null) {
+                Files.createDirectories(builder.sharedDirectory);
+                opened = new SharedGeocodeCache(builder.sharedDirectory.resolve(SHARED_CACHE_FILE), builder.sharedEntries);
+            } else {
+                Path directory = builder.directory;
+                opened = new GeocodeStore(directory.resolve(CACHE_FILE), directory.resolve(CACHE_SNAPSHOT_FILE),
+                        directory.resolve(LEGACY_CACHE_FILE));
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Error opening geocode cache, results will not be persisted: " + e.getMessage());
+            }
+            opened = NO_CACHE;
+        }
+        synchronized (pendingPuts) {
+            pendingPuts.forEach(opened::put);
+            cache = opened;
+        }
+    }
+
+    private static QuotaBackend openQuotaStore(Builder builder) {
+        if (builder.sharedDirectory != null) {
+            try {
+                Files.createDirectories(builder.sharedDirectory);
+                return new SharedQuotaStore(builder.sharedDirectory.resolve(SHARED_QUOTA_FILE));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open the shared quota file", e);
+            }
+        }
+        return new DailyQuotaStore(builder.directory.resolve(LIMITS_FILE).toFile());
+    }
+
+    // The boundary index is optional, without it every cache miss goes to the online providers.
+    private static CountryBoundaryIndex loadBoundaryIndex(Path directory) {
+        Path file = directory.resolve(BOUNDARIES_FILE);
+        if (Files.exists(file)) {
+            try {
+                return CountryBoundaryIndex.load(file, BORDER_TOLERANCE_METRES);
+            } catch (IOException e) {
+                System.err.println("Error loading country boundaries: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    // Tiles written by CountryTileBuilder for warmed-up regions, mapped into memory rather than read.
+    private static List<CountryTile> loadTiles(Path directory) {
+        List<CountryTile> tiles = new ArrayList<>();
+        Path tilesDirectory = directory.resolve(TILES_DIRECTORY);
+        if (Files.isDirectory(tilesDirectory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(tilesDirectory, "*" + TILE_EXTENSION)) {
+                for (Path file : files) {
+                    try {
+                        tiles.add(CountryTile.open(file));
+                    } catch (IOException e) {
+                        System.err.println("Error loading country tile " + file + ": " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error listing country tiles: " + e.getMessage());
+            }
+        }
+        return List.copyOf(tiles);
+    }
+
+    /**
+     * Get a future that completes once the persistent cache, the boundary index and the tiles are loaded.
+     * Waiting for it is optional, it only saves online lookups for points the local data could answer.
+     * It also completes when the geocoder is closed.
+     *
+     * @return the future
+     */
+    public CompletableFuture<Void> getLoadFuture() {
+        return loaded;
+    }
+
+    /**
+     * Replace the metrics sink.
+     *
+     * @param sink the new sink, {@link MetricsSink#NONE} to turn metrics off
+     */
+    public synchronized void setMetricsSink(MetricsSink sink) {
+        MetricsSink previous = metricsSink;
+        metricsSink = sink;
+        // Until the providers are started, the sink is bound when they are.
+        if (getPipeline() != null) {
+            sink.bind(state);
+        }
+        previous.close();
+    }
+
+    /**
+     * Get the hit, miss and eviction counters of the in-memory cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats getCacheStats() {
+        return memoryCache.stats();
+    }
+
+    /**
+     * Get the number of upstream requests saved because a lookup for the same cache cell was already pending.
+     *
+     * @return the number of coalesced lookups
+     */
+    public long getCoalescedRequestCount() {
+        return inFlight.getCoalescedCount();
+    }
+
+    private short getCountryFromTiles(long key) {
+        for (CountryTile tile : tiles) {
+            short code = tile.get(key);
+            if (code != CountryCodes.NONE) {
+                return code;
+            }
+        }
+        return CountryCodes.NONE;
+    }
+
+    private String getCountryOffline(double latitude, double longitude) {
+        CountryBoundaryIndex index = boundaryIndex;
+        return index == null ? null : index.getCountry(latitude, longitude);
+    }
+
+    // Warmed-up tiles first, then memory, then the persistent tier, which is promoted into memory on a hit.
+    private String getCountryFromCache(long key) {
+        short code = getCountryFromTiles(key);
+        if (code != CountryCodes.NONE) {
+            return CountryCodes.decode(code);
+        }
+        code = memoryCache.get(key);
+        GeocodeCacheBackend store = cache;
+        if (code == CountryCodes.NONE && store != null) {
+            code = store.get(key);
+            if (code != CountryCodes.NONE) {
+                memoryCache.put(key, code);
+            }
+        }
+        return CountryCodes.decode(code);
+    }
+
+    private void putInCache(Coordinate coordinate, String country) {
+        long key = coordinate.getCellKey();
+        short code = CountryCodes.encode(country);
+        memoryCache.put(key, code);
+        GeocodeCacheBackend store = cache;
+        if (store == null) {
+            synchronized (pendingPuts) {
+                store = cache;
+                if (store == null) {
+                    pendingPuts.put(key, code);
+                    return;
+                }
+            }
+        }
+        store.put(key, code);
+    }
+
+    /**
+     * Get the countries of a list of coordinates, blocking until all of them are resolved.
+     *
+     * @param coordinates the coordinates
+     * @return the ISO 3166-1 alpha-2 country code of every coordinate, or "Unknown"
+     */
+    public Map<Coordinate, String> getCountries(List<Coordinate> coordinates) {
+        return getCountriesAsync(coordinates).join();
+    }
+
+    /**
+     * Get the countries of a list of coordinates without blocking.
+     * The lookups wait on virtual threads, so the calling thread can carry on.
+     *
+     * @param coordinates the coordinates
+     * @return a CompletableFuture with the ISO 3166-1 alpha-2 country code of every coordinate, or "Unknown"
+     */
+    public CompletableFuture<Map<Coordinate, String>> getCountriesAsync(List<Coordinate> coordinates) {
+        Map<Coordinate, String> countries = new ConcurrentHashMap<>();
+        return getCountriesAsync(coordinates, countries::put)
+                .thenApply(ignored -> new HashMap<>(countries));
+    }
+
+    /**
+     * Get the countries a polygon touches, blocking until they are resolved.
+     *
+     * @param polygon the vertices of the polygon
+     * @return the ISO 3166-1 alpha-2 codes of the countries in the polygon
+     * @see PolygonCoverage
+     */
+    public Set<String> getCountriesInPolygon(List<Coordinate> polygon) {
+        return getCountriesInPolygonAsync(polygon).join();
+    }
+
+    /**
+     * Get the countries a polygon touches without blocking.
+     * Only looks up more points where the points sampled so far disagree, so borders between vertices are found
+     * with far fewer lookups than sampling the whole polygon.
+     *
+     * @param polygon the vertices of the polygon
+     * @return a CompletableFuture with the ISO 3166-1 alpha-2 codes of the countries in the polygon
+     * @see PolygonCoverage
+     */
+    public CompletableFuture<Set<String>> getCountriesInPolygonAsync(List<Coordinate> polygon) {
+        return polygonCoverage.getCountries(polygon, this::getCountriesAsync);
+    }
+
+    /**
+     * Get the countries of a list of coordinates without blocking, passing every result to a callback as soon as it is known.
+     * Cached results are passed on the calling thread, the others on the thread that resolved them.
+     *
+     * @param coordinates the coordinates
+     * @param callback    receives every coordinate with its ISO 3166-1 alpha-2 country code, or "Unknown"
+     * @return a CompletableFuture that completes once every coordinate has been passed to the callback
+     */
+    public CompletableFuture<Void> getCountriesAsync(List<Coordinate> coordinates, BiConsumer<Coordinate, String> callback) {
+        Coordinate[] array = coordinates.toArray(new Coordinate[0]);
+        CoordinateBuffer buffer = new CoordinateBuffer(array.length);
+        for (Coordinate coordinate : array) {
+            buffer.add(coordinate);
+        }
+        return getCountriesAsync(buffer, (index, country) -> callback.accept(array[index], country));
+    }
+
+    /**
+     * Get the countries of a buffer of coordinates, blocking until all of them are resolved.
+     *
+     * @param coordinates the coordinates
+     * @return the ISO 3166-1 alpha-2 country code or "Unknown" of every coordinate, at the index of the coordinate
+     */
+    public String[] getCountries(CoordinateBuffer coordinates) {
+        String[] countries = new String[coordinates.size()];
+        getCountriesAsync(coordinates, countries).join();
+        return countries;
+    }
+
+    /**
+     * Get the countries of a buffer of coordinates without blocking.
+     * Cached points cost no allocation, objects are only created for the points that go online.
+     *
+     * @param coordinates the coordinates, must not change until the future completes
+     * @param countries   receives the ISO 3166-1 alpha-2 country code or "Unknown" of every coordinate,
+     *                    at the index of the coordinate
+     * @return a CompletableFuture that completes once every country has been written
+     */
+    public CompletableFuture<Void> getCountriesAsync(CoordinateBuffer coordinates, String[] countries) {
+        if (countries.length < coordinates.size()) {
+            throw new IllegalArgumentException("Expected room for " + coordinates.size() + " countries, got " + countries.length);
+        }
+        return getCountriesAsync(coordinates, (index, country) -> countries[index] = country);
+    }
+
+    private CompletableFuture<Void> getCountriesAsync(CoordinateBuffer coordinates, ResultConsumer callback) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("The geocoder is closed"));
+        }
+        long start = System.nanoTime();
+        double[] latitudes = coordinates.getLatitudes();
+        double[] longitudes = coordinates.getLongitudes();
+        int lookups = coordinates.size();
+        int[] misses = new int[0];
+        int missCount = 0;
+        int cacheHits = 0;
+        int offlineHits = 0;
+        int negativeHits = 0;
+
+        for (int i = 0; i < lookups; i++) {
+            long key = GeoCell.key(latitudes[i], longitudes[i]);
+            String cachedCountry = getCountryFromCache(key);
+            if (cachedCountry != null) {
+                cacheHits++;
+                callback.accept(i, cachedCountry);
+                continue;
+            }
+            // Only go online for points the boundary index can't classify, such as points close to a border.
+            String offlineCountry = getCountryOffline(latitudes[i], longitudes[i]);
+            if (offlineCountry != null) {
+                offlineHits++;
+                callback.accept(i, offlineCountry);
+            } else if (failedLookups.contains(key)) {
+                negativeHits++;
+                callback.accept(i, CountryCodes.UNKNOWN_COUNTRY);
+            } else {
+                if (missCount == misses.length) {
+                    misses = Arrays.copyOf(misses, Math.max(16, missCount * 2));
+                }
+                misses[missCount++] = i;
+            }
+        }
+
+        AtomicInteger failed = new AtomicInteger();
+        boolean useBatch = missCount >= GEOAPIFY_BATCH_MINIMUM;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[missCount];
+        for (int miss = 0; miss < missCount; miss++) {
+            int index = misses[miss];
+            Coordinate coord = new Coordinate(latitudes[index], longitudes[index]);
+            // Concurrent lookups in the same cell, from this batch or another caller, share one request.
+            futures[miss] = inFlight.get(coord.getCellKey(), () -> pipeline
+                            .thenCompose(ready -> useBatch ? ready.batcher().submit(coord) : ready.scheduler().submit(coord))
+                            .thenApply(country -> {
+                                putInCache(coord, country);
+                                return country;
+                            }))
+                    .handle((country, e) -> {
+                        if (e != null) {
+                            failedLookups.put(coord.getCellKey());
+                            failed.incrementAndGet();
+                            country = CountryCodes.UNKNOWN_COUNTRY;
+                        }
+                        callback.accept(index, country);
+                        return null;
+                    });
+        }
+        if (useBatch) {
+            // Every miss of this call is queued, don't wait for the linger time.
+            pipeline.thenAccept(ready -> ready.batcher().flush());
+        }
+        long localEnd = System.nanoTime();
+
+        int online = missCount;
+        int cached = cacheHits;
+        int offline = offlineHits;
+        int negative = negativeHits;
+        // Append the new results to the cache log in one write.
+        return CompletableFuture.allOf(futures)
+                .whenComplete((ignored, e) -> {
+                    GeocodeCacheBackend store = cache;
+                    if (store != null) {
+                        store.flush();
+                    }
+                    Pipeline ready = getPipeline();
+                    if (ready != null) {
+                        ready.scheduler().flush();
+                    }
+                    long onlineNanos = online == 0 ? 0 : System.nanoTime() - localEnd;
+                    metricsSink.recordBatch(new BatchMetrics(lookups, cached, offline, negative, online, failed.get(),
+                            localEnd - start, onlineNanos));
+                });
+    }
+
+    /**
+     * Check whether the last lookup of a coordinate failed, rather than finding no country.
+     *
+     * @param coordinate the coordinate
+     * @return true if the cell is in the negative cache
+     */
+    boolean hasFailed(Coordinate coordinate) {
+        return failedLookups.contains(coordinate.getCellKey());
+    }
+
+    /**
+     * Stop all lookups, which then complete as failed, write pending results and quotas to disk and release the files,
+     * threads and metrics of the geocoder.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // Lookups waiting for providers that were never started fail rather than hang.
+        pipeline.completeExceptionally(new IllegalStateException("The geocoder is closed"));
+        loaded.complete(null);
+        Pipeline ready = getPipeline();
+        if (ready != null) {
+            // Aborts pending requests, a thread resolving a host name would not react to the interrupt.
+            ready.httpClient().shutdownNow();
+        }
+        executorService.shutdownNow();
+        try {
+            if (!executorService.awaitTermination(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                System.err.println("Geocoder lookups did not stop within " + CLOSE_TIMEOUT.toSeconds() + " seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (ready != null) {
+            ready.scheduler().flush();
+            try {
+                ready.quotaStore().close();
+            } catch (IOException e) {
+                System.err.println("Error closing quota store: " + e.getMessage());
+            }
+        }
+        // The executor is stopped, so loading has either finished or failed and left the cache unset.
+        GeocodeCacheBackend store = cache;
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Error closing cache: " + e.getMessage());
+            }
+        }
+        metricsSink.close();
+    }
+
+    // The online part of the geocoder, created in the background.
+    private record Pipeline(HttpClient httpClient, QuotaBackend quotaStore, GeocodeScheduler scheduler, GeocodeBatcher batcher) {
+    }
+
+    @FunctionalInterface
+    private interface ResultConsumer {
+        void accept(int index, String country);
+    }
+
+    /**
+     * Configuration of a {@link Geocoder}. By default the files are kept in the working directory, the in-memory cache
+     * holds 100,000 entries and metrics are off.
+     */
+    public static final class Builder {
+
+        private Path directory = Path.of("");
+        private Path sharedDirectory;
+        private int sharedEntries = DEFAULT_SHARED_ENTRIES;
+        private int memoryCacheEntries = DEFAULT_CACHE_ENTRIES;
+        private long memoryCacheBytes;
+        private String geoapifyApiKey = DEFAULT_GEOAPIFY_API_KEY;
+        private MetricsSink metricsSink = MetricsSink.NONE;
+
+        private Builder() {
+        }
+
+        /**
+         * Set the directory of the cache, quota, boundary and tile files.
+         *
+         * @param directory the directory
+         * @return this builder
+         */
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * Share the persistent cache and the quotas with other servers on the host, through files in a common directory.
+         *
+         * @param sharedDirectory the directory, or null to keep them per server
+         * @param maximumEntries  the capacity of the shared cache, fixed when the file is created
+         * @return this builder
+         */
+        public Builder sharedDirectory(Path sharedDirectory, int maximumEntries) {
+            this.sharedDirectory = sharedDirectory;
+            this.sharedEntries = maximumEntries;
+            return this;
+        }
+
+        /**
+         * Limit the in-memory cache to a number of entries.
+         *
+         * @param maximumEntries the maximum number of entries
+         * @return this builder
+         */
+        public Builder memoryCacheEntries(int maximumEntries) {
+            this.memoryCacheEntries = maximumEntries;
+            this.memoryCacheBytes = 0;
+            return this;
+        }
+
+        /**
+         * Limit the in-memory cache to a heap budget.
+         *
+         * @param maximumBytes the heap budget in bytes
+         * @return this builder
+         */
+        public Builder memoryCacheBytes(long maximumBytes) {
+            this.memoryCacheBytes = maximumBytes;
+            return this;
+        }
+
+        public Builder geoapifyApiKey(String geoapifyApiKey) {
+            this.geoapifyApiKey = geoapifyApiKey;
+            return this;
+        }
+
+        /**
+         * Set where the metrics go, for example a {@link JmxMetricsSink}.
+         *
+         * @param metricsSink the sink
+         * @return this builder
+         */
+        public Builder metricsSink(MetricsSink metricsSink) {
+            this.metricsSink = metricsSink;
+            return this;
+        }
+
+        /**
+         * Create the geocoder. It returns right away, the cache and the offline data load in the background.
+         *
+         * @return the geocoder
+         */
+        public Geocoder build() {
+            return new Geocoder(this);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.btuk.geography.geocoding;
+
+/**
+ * JMX view of the geocoding pipeline, registered by {@link JmxMetricsSink}.
+ */
+public interface GeocoderMXBean {
+
+    long getBatchCount();
+
+    long getLookupCount();
+
+    long getCacheHitCount();
+
+    long getOfflineHitCount();
+
+    long getNegativeHitCount();
+
+    long getOnlineLookupCount();
+
+    long getFailedLookupCount();
+
+    double getMemoryCacheHitRate();
+
+    int getMemoryCacheSize();
+
+    int getMemoryCacheMaximumSize();
+
+    long getMemoryCacheEvictionCount();
+
+    int getPendingLookups();
+
+    long getCoalescedRequestCount();
+
+    int getFailedCellCount();
+
+    double getLastBatchMillis();
+
+    double getBatchP50Millis();
+
+    double getBatchP99Millis();
+
+    double getLocalStageP99Millis();
+
+    double getOnlineStageP99Millis();
+}
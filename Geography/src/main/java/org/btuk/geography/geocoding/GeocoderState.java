@@ -0,0 +1,44 @@
+package org.btuk.geography.geocoding;
+
+import java.util.List;
+
+/**
+ * Live state of a geocoder, for {@link MetricsSink sinks} that poll gauges.
+ */
+public interface GeocoderState {
+
+    /**
+     * Get the counters of the in-memory cache.
+     *
+     * @return the cache statistics
+     */
+    CacheStats getCacheStats();
+
+    /**
+     * Get the online providers with their statistics, policies and queues.
+     *
+     * @return the providers
+     */
+    List<ScheduledProvider> getProviders();
+
+    /**
+     * Get the number of cells with an online lookup in progress.
+     *
+     * @return the number of pending lookups
+     */
+    int getPendingLookups();
+
+    /**
+     * Get the number of upstream requests saved because a lookup for the same cell was already pending.
+     *
+     * @return the number of coalesced lookups
+     */
+    long getCoalescedRequestCount();
+
+    /**
+     * Get the number of cells whose lookup failed recently.
+     *
+     * @return the size of the negative cache
+     */
+    int getFailedCellCount();
+}
@@ -0,0 +1,28 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+
+import java.io.IOException;
+
+/**
+ * An online reverse geocoding service.
+ */
+public interface GeocodingProvider {
+
+    /**
+     * Get the name of the provider, used for quota bookkeeping and logging.
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Look up the country of a coordinate, blocking the calling thread until the response is in.
+     *
+     * @param coordinate the coordinate
+     * @return the uppercase ISO 3166-1 alpha-2 country code, or "Unknown" if the provider has no country for it
+     * @throws IOException          if the request failed, the lookup may be retried with another provider
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    String getCountry(Coordinate coordinate) throws IOException, InterruptedException;
+}
@@ -0,0 +1,175 @@
+package org.btuk.geography.geocoding;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.btuk.geography.Coordinate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Base for providers that are called over HTTP with a shared {@link HttpClient}.
+ * <p>
+ * Responses are read with a streaming parser straight from the response stream, so only the wanted field is
+ * materialised instead of the whole body and a tree of it.
+ */
+abstract class HttpGeocodingProvider implements GeocodingProvider {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+
+    HttpGeocodingProvider(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Send a GET request and read one string from the JSON response.
+     *
+     * @param uri     the request URI
+     * @param path    the field names and array indices leading to the string, see {@link #readString(JsonParser, String...)}
+     * @param headers header names and values
+     * @return the string, or null if the response has no string at the path
+     * @throws IOException          if the request failed, a {@link ProviderResponseException} if the response was not 200 OK
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    String getString(String uri, String[] path, String... headers) throws IOException, InterruptedException {
+        return send(request(uri, headers).GET(), (status, parser) -> readString(parser, path), 200);
+    }
+
+    /**
+     * Send a request and read the JSON response.
+     *
+     * @param request          the request
+     * @param reader           reads the response, it may stop before the end
+     * @param acceptedStatuses the status codes that are not an error
+     * @return the result of the reader
+     * @throws IOException          if the request failed, a {@link ProviderResponseException} if the status code was not accepted
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    <T> T send(HttpRequest.Builder request, ResponseReader<T> reader, int... acceptedStatuses) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+        try (InputStream body = decode(response)) {
+            for (int status : acceptedStatuses) {
+                if (response.statusCode() == status) {
+                    try (JsonParser parser = objectMapper.createParser(body)) {
+                        T result = reader.read(status, parser);
+                        // Read the rest without parsing it, a response closed early costs the keep-alive connection.
+                        body.transferTo(OutputStream.nullOutputStream());
+                        return result;
+                    }
+                }
+            }
+            throw new ProviderResponseException(getName() + " HTTP error: " + response.statusCode(), response.statusCode(),
+                    ProviderResponseException.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null)));
+        }
+    }
+
+    /**
+     * Read the string at a path, skipping everything else without materialising it.
+     * <p>
+     * Each path element is the name of a field, or the index of an element if the value at that point is an array.
+     * The parser is left right after the string, so the caller can stop reading.
+     *
+     * @param parser the parser, before the value the path starts at
+     * @param path   the field names and array indices
+     * @return the string, or null if there is no string at the path
+     * @throws IOException if the JSON is malformed
+     */
+    static String readString(JsonParser parser, String... path) throws IOException {
+        JsonToken token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+        for (String element : path) {
+            if (token == JsonToken.START_OBJECT) {
+                token = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    boolean match = element.equals(parser.currentName());
+                    JsonToken value = parser.nextToken();
+                    if (match) {
+                        token = value;
+                        break;
+                    }
+                    parser.skipChildren();
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                int index = Integer.parseInt(element);
+                token = parser.nextToken();
+                for (int i = 0; i < index && token != JsonToken.END_ARRAY && token != null; i++) {
+                    parser.skipChildren();
+                    token = parser.nextToken();
+                }
+                if (token == JsonToken.END_ARRAY) {
+                    token = null;
+                }
+            } else {
+                return null;
+            }
+            if (token == null) {
+                return null;
+            }
+        }
+        return token == JsonToken.VALUE_STRING ? parser.getText() : null;
+    }
+
+    /**
+     * Start a request with the headers every provider sends.
+     *
+     * @param uri     the request URI
+     * @param headers header names and values
+     * @return the request builder
+     */
+    static HttpRequest.Builder request(String uri, String... headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(uri))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept-Encoding", "gzip");
+        for (int i = 0; i + 1 < headers.length; i += 2) {
+            builder.header(headers[i], headers[i + 1]);
+        }
+        return builder;
+    }
+
+    static ObjectMapper objectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * Turn a country code from a response into the canonical uppercase code.
+     *
+     * @param countryCode the code from the response, may be null
+     * @param coordinate  the coordinate, for the log message
+     * @return the uppercase code, or "Unknown" if the code is missing or not two letters
+     */
+    String toCountry(String countryCode, Coordinate coordinate) {
+        if (CountryCodes.isValid(countryCode)) {
+            // The decoded code is a shared constant, no uppercase copy per response.
+            return CountryCodes.decode(CountryCodes.encode(countryCode));
+        }
+        if (countryCode != null) {
+            System.err.println("Invalid " + getName() + " country_code for lat=" + coordinate.latitude() + ", lon=" + coordinate.longitude() + ": " + countryCode);
+        }
+        return CountryCodes.UNKNOWN_COUNTRY;
+    }
+
+    // Unwrap the body if the server used the gzip encoding we offered.
+    private static InputStream decode(HttpResponse<InputStream> response) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (encoding.equalsIgnoreCase("gzip")) {
+            return new GZIPInputStream(response.body());
+        }
+        return response.body();
+    }
+
+    @FunctionalInterface
+    interface ResponseReader<T> {
+        T read(int status, JsonParser parser) throws IOException;
+    }
+}
@@ -0,0 +1,266 @@
+package org.btuk.geography.geocoding;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes the geocoder metrics as MXBeans on the platform MBean server.
+ * <p>
+ * The pipeline is registered as {@code org.btuk.geography:type=Geocoder} and every provider as
+ * {@code org.btuk.geography:type=GeocodingProvider,name=<name>}, so they show up in JConsole, VisualVM and any JMX
+ * exporter. Beans left behind by an earlier instance, for example before a plugin reload, are replaced.
+ */
+public final class JmxMetricsSink implements MetricsSink, GeocoderMXBean {
+
+    private static final String DOMAIN = "org.btuk.geography";
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder offlineHits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder onlineLookups = new LongAdder();
+    private final LongAdder failedLookups = new LongAdder();
+    private final LatencyHistogram batchDurations = new LatencyHistogram();
+    private final LatencyHistogram localDurations = new LatencyHistogram();
+    private final LatencyHistogram onlineDurations = new LatencyHistogram();
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    private volatile GeocoderState state;
+    private volatile long lastBatchNanos;
+
+    @Override
+    public synchronized void bind(GeocoderState state) {
+        this.state = state;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName(DOMAIN + ":type=Geocoder"), this);
+            for (ScheduledProvider provider : state.getProviders()) {
+                ObjectName name = new ObjectName(DOMAIN + ":type=GeocodingProvider,name="
+                        + ObjectName.quote(provider.getProvider().getName()));
+                register(server, name, new ProviderBean(provider));
+            }
+        } catch (JMException e) {
+            System.err.println("Error registering geocoder MBeans: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void recordBatch(BatchMetrics batch) {
+        batches.increment();
+        lookups.add(batch.lookups());
+        cacheHits.add(batch.cacheHits());
+        offlineHits.add(batch.offlineHits());
+        negativeHits.add(batch.negativeHits());
+        onlineLookups.add(batch.onlineLookups());
+        failedLookups.add(batch.failedLookups());
+        batchDurations.record(batch.totalNanos());
+        localDurations.record(batch.localNanos());
+        if (batch.onlineLookups() > 0) {
+            onlineDurations.record(batch.onlineNanos());
+        }
+        lastBatchNanos = batch.totalNanos();
+    }
+
+    @Override
+    public synchronized void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                System.err.println("Error unregistering " + name + ": " + e.getMessage());
+            }
+        }
+        registered.clear();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getOfflineHitCount() {
+        return offlineHits.sum();
+    }
+
+    @Override
+    public long getNegativeHitCount() {
+        return negativeHits.sum();
+    }
+
+    @Override
+    public long getOnlineLookupCount() {
+        return onlineLookups.sum();
+    }
+
+    @Override
+    public long getFailedLookupCount() {
+        return failedLookups.sum();
+    }
+
+    @Override
+    public double getMemoryCacheHitRate() {
+        return state.getCacheStats().hitRate();
+    }
+
+    @Override
+    public int getMemoryCacheSize() {
+        return state.getCacheStats().size();
+    }
+
+    @Override
+    public int getMemoryCacheMaximumSize() {
+        return state.getCacheStats().maximumSize();
+    }
+
+    @Override
+    public long getMemoryCacheEvictionCount() {
+        return state.getCacheStats().evictions();
+    }
+
+    @Override
+    public int getPendingLookups() {
+        return state.getPendingLookups();
+    }
+
+    @Override
+    public long getCoalescedRequestCount() {
+        return state.getCoalescedRequestCount();
+    }
+
+    @Override
+    public int getFailedCellCount() {
+        return state.getFailedCellCount();
+    }
+
+    @Override
+    public double getLastBatchMillis() {
+        return lastBatchNanos / 1e6;
+    }
+
+    @Override
+    public double getBatchP50Millis() {
+        return batchDurations.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getBatchP99Millis() {
+        return batchDurations.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getLocalStageP99Millis() {
+        return localDurations.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getOnlineStageP99Millis() {
+        return onlineDurations.getPercentileMillis(99);
+    }
+
+    private void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+        try {
+            server.registerMBean(bean, name);
+        } catch (InstanceAlreadyExistsException e) {
+            server.unregisterMBean(name);
+            server.registerMBean(bean, name);
+        }
+        if (!registered.contains(name)) {
+            registered.add(name);
+        }
+    }
+
+    private record ProviderBean(ScheduledProvider provider) implements ProviderMXBean {
+
+        @Override
+        public String getName() {
+            return provider.getProvider().getName();
+        }
+
+        @Override
+        public long getSuccessCount() {
+            return provider.getStats().getSuccesses();
+        }
+
+        @Override
+        public long getFailureCount() {
+            return provider.getStats().getFailures();
+        }
+
+        @Override
+        public double getErrorRate() {
+            return provider.getStats().getErrorRate();
+        }
+
+        @Override
+        public double getLatencyMeanMillis() {
+            return provider.getStats().getLatencyEwmaMillis();
+        }
+
+        @Override
+        public double getLatencyP50Millis() {
+            return provider.getStats().getHistogram().getPercentileMillis(50);
+        }
+
+        @Override
+        public double getLatencyP90Millis() {
+            return provider.getStats().getHistogram().getPercentileMillis(90);
+        }
+
+        @Override
+        public double getLatencyP99Millis() {
+            return provider.getStats().getLatencyP99Millis();
+        }
+
+        @Override
+        public long[][] getLatencyHistogram() {
+            return Arrays.stream(provider.getStats().getHistogram().getBuckets())
+                    .filter(bucket -> bucket[1] > 0)
+                    .toArray(long[][]::new);
+        }
+
+        @Override
+        public String getCircuitState() {
+            return provider.getCircuitBreaker().getState().name();
+        }
+
+        @Override
+        public int getQueuedRequests() {
+            return provider.getQueuedRequests();
+        }
+
+        @Override
+        public int getActiveRequests() {
+            return provider.getActiveRequests();
+        }
+
+        @Override
+        public int getQuotaRemaining() {
+            for (ProviderPolicy policy : provider.getPolicies()) {
+                if (policy instanceof DailyQuotaPolicy quota) {
+                    return quota.getRemaining();
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.btuk.geography.geocoding;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe open-addressing hash map from {@code long} keys to non-zero {@code short} values.
+ * <p>
+ * Entries are stored in two parallel primitive arrays, so an entry costs about 10 bytes (at most 20 at the lowest
+ * load factor) instead of the boxed key, string value and node of a {@code ConcurrentHashMap}.
+ * Reads are optimistic and don't take the lock.
+ */
+final class LongShortMap {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+
+    private Table table;
+    private int size;
+
+    LongShortMap() {
+        this(MIN_CAPACITY);
+    }
+
+    LongShortMap(int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key the key
+     * @return the value, or {@link CountryCodes#NONE} if the key is absent
+     */
+    short get(long key) {
+        long stamp = lock.tryOptimisticRead();
+        short value = table.get(key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = table.get(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Put a value.
+     *
+     * @param key   the key
+     * @param value the value, must not be {@link CountryCodes#NONE}
+     */
+    void put(long key, short value) {
+        if (value == CountryCodes.NONE) {
+            throw new IllegalArgumentException("Can't store an empty value");
+        }
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 4L > table.keys.length * 3L) {
+                Table grown = new Table(table.keys.length * 2);
+                table.forEach(grown::put);
+                table = grown;
+            }
+            if (table.put(key, value)) {
+                size++;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove a key.
+     *
+     * @param key the key
+     * @return the removed value, or {@link CountryCodes#NONE} if the key was absent
+     */
+    short remove(long key) {
+        long stamp = lock.writeLock();
+        try {
+            short value = table.remove(key);
+            if (value != CountryCodes.NONE) {
+                size--;
+            }
+            return value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Take a point-in-time copy of the map, only briefly holding the read lock.
+     *
+     * @return the copy
+     */
+    LongShortMap copy() {
+        LongShortMap copy = new LongShortMap();
+        long stamp = lock.readLock();
+        try {
+            copy.table = table.copy();
+            copy.size = size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return copy;
+    }
+
+    /**
+     * Get a copy of all keys.
+     *
+     * @return the keys, in no particular order
+     */
+    long[] keys() {
+        long stamp = lock.readLock();
+        try {
+            long[] keys = new long[size];
+            int[] index = {0};
+            table.forEach((key, value) -> keys[index[0]++] = key);
+            return keys;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Iterate over all entries while holding the read lock.
+     *
+     * @param consumer the entry consumer
+     */
+    void forEach(EntryConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            table.forEach(consumer);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L < expectedSize * 4L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long key, short value);
+    }
+
+    // Keys and values are swapped together on resize, so a reader always sees a matching pair of arrays.
+    private static final class Table {
+
+        private final long[] keys;
+        private final short[] values;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new short[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private Table copy() {
+            Table copy = new Table(keys.length);
+            System.arraycopy(keys, 0, copy.keys, 0, keys.length);
+            System.arraycopy(values, 0, copy.values, 0, values.length);
+            return copy;
+        }
+
+        private short get(long key) {
+            for (int index = mix(key) & mask; ; index = (index + 1) & mask) {
+                short value = values[index];
+                if (value == CountryCodes.NONE || keys[index] == key) {
+                    return value;
+                }
+            }
+        }
+
+        // Returns true if the key was added, false if an existing value was replaced.
+        private boolean put(long key, short value) {
+            for (int index = mix(key) & mask; ; index = (index + 1) & mask) {
+                if (values[index] == CountryCodes.NONE) {
+                    keys[index] = key;
+                    values[index] = value;
+                    return true;
+                }
+                if (keys[index] == key) {
+                    values[index] = value;
+                    return false;
+                }
+            }
+        }
+
+        // Backward shift deletion, so lookups never need tombstones. Returns the removed value.
+        private short remove(long key) {
+            int index = mix(key) & mask;
+            while (values[index] != CountryCodes.NONE && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            short removed = values[index];
+            if (removed == CountryCodes.NONE) {
+                return removed;
+            }
+            int next = index;
+            while (true) {
+                next = (next + 1) & mask;
+                if (values[next] == CountryCodes.NONE) {
+                    break;
+                }
+                int home = mix(keys[next]) & mask;
+                boolean movable = index <= next ? (home <= index || home > next) : (home <= index && home > next);
+                if (movable) {
+                    keys[index] = keys[next];
+                    values[index] = values[next];
+                    index = next;
+                }
+            }
+            values[index] = CountryCodes.NONE;
+            return removed;
+        }
+
+        private void forEach(EntryConsumer consumer) {
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != CountryCodes.NONE) {
+                    consumer.accept(keys[i], values[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.btuk.geography.geocoding;
+
+/**
+ * Receives the metrics of the geocoding pipeline.
+ * <p>
+ * Counters that change on every call are pushed through {@link #recordBatch(BatchMetrics)}, gauges such as cache
+ * sizes and provider latencies are read from the {@link GeocoderState} when the sink wants them. The default sink is
+ * {@link JmxMetricsSink}.
+ */
+public interface MetricsSink {
+
+    /**
+     * A sink that ignores everything.
+     */
+    MetricsSink NONE = batch -> {
+    };
+
+    /**
+     * Called once when the sink is installed.
+     *
+     * @param state the live state of the geocoder
+     */
+    default void bind(GeocoderState state) {
+    }
+
+    /**
+     * Called when a {@code getCountries} call completes, on the thread that completed it.
+     *
+     * @param batch the metrics of the call
+     */
+    void recordBatch(BatchMetrics batch);
+
+    /**
+     * Called when the sink is replaced or the geocoder is closed.
+     */
+    default void close() {
+    }
+}
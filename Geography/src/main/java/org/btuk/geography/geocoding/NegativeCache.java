@@ -0,0 +1,62 @@
+package org.btuk.geography.geocoding;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers cells whose lookup failed for a short time, so an outage doesn't send every lookup of those cells to the
+ * providers again right away.
+ * <p>
+ * Entries expire after the time to live and are never written to disk, so a failure is retried once the provider is
+ * back. The cache holds at most {@code maximumSize} cells, failures beyond that are simply not remembered.
+ */
+final class NegativeCache {
+
+    private final Map<Long, Long> expiries = new ConcurrentHashMap<>();
+    private final long timeToLiveNanos;
+    private final int maximumSize;
+
+    NegativeCache(Duration timeToLive, int maximumSize) {
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Check whether a lookup of a cell failed recently.
+     *
+     * @param key the cell key
+     * @return true if the cell should not be looked up yet
+     */
+    boolean contains(long key) {
+        Long expiry = expiries.get(key);
+        if (expiry == null) {
+            return false;
+        }
+        if (System.nanoTime() - expiry >= 0) {
+            expiries.remove(key, expiry);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remember a failed lookup.
+     *
+     * @param key the cell key
+     */
+    void put(long key) {
+        long now = System.nanoTime();
+        if (expiries.size() >= maximumSize) {
+            expiries.values().removeIf(expiry -> now - expiry >= 0);
+            if (expiries.size() >= maximumSize) {
+                return;
+            }
+        }
+        expiries.put(key, now + timeToLiveNanos);
+    }
+
+    int size() {
+        return expiries.size();
+    }
+}
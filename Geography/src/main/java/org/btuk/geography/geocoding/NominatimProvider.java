@@ -0,0 +1,41 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.util.Locale;
+
+/**
+ * Reverse geocoding with the OpenStreetMap Nominatim API.
+ * The public instance allows one request per second, use a {@link TokenBucketPolicy} to respect that.
+ */
+public final class NominatimProvider extends HttpGeocodingProvider {
+
+    public static final String DEFAULT_BASE_URL = "https://nominatim.openstreetmap.org";
+
+    private static final String REVERSE_PATH = "/reverse?format=json&lat=%f&lon=%f";
+    private static final String[] COUNTRY_CODE_PATH = {"address", "country_code"};
+
+    private final String urlTemplate;
+
+    public NominatimProvider(HttpClient httpClient) {
+        this(httpClient, DEFAULT_BASE_URL);
+    }
+
+    public NominatimProvider(HttpClient httpClient, String baseUrl) {
+        super(httpClient);
+        this.urlTemplate = baseUrl + REVERSE_PATH;
+    }
+
+    @Override
+    public String getName() {
+        return "nominatim";
+    }
+
+    @Override
+    public String getCountry(Coordinate coordinate) throws IOException, InterruptedException {
+        String urlString = String.format(Locale.US, urlTemplate, coordinate.latitude(), coordinate.longitude());
+        return toCountry(getString(urlString, COUNTRY_CODE_PATH, "User-Agent", "JavaReverseGeocoder/1.0"), coordinate);
+    }
+}
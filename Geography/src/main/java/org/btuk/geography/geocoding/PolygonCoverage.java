@@ -0,0 +1,285 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.GeoCell;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Finds the countries a polygon touches by adaptive subdivision.
+ * <p>
+ * The bounding box of the polygon is split like a quadtree. Every cell is sampled at its corners and centre, together
+ * with the polygon vertices inside it, only samples inside the polygon count. A cell whose samples all have the same
+ * country is assumed to be uniform, cells that disagree are halved along each side that is longer than the minimum cell
+ * size, so lookups concentrate along borders. The samples of a whole level are looked up in one call, which lets the geocoder batch and
+ * coalesce them.
+ * <p>
+ * Coordinates are treated as planar, which is fine at the size of plots and outlines. Polygons must not cross the
+ * antimeridian.
+ */
+public final class PolygonCoverage {
+
+    // Split the bounding box into a grid first, so a single agreeing sample set can't hide a small country.
+    private static final int INITIAL_GRID = 4;
+
+    private final double minimumCellDegrees;
+    private final int maximumSamples;
+
+    /**
+     * @param minimumCellDegrees cells of this size are not split any further, at least {@link GeoCell#CELL_SIZE_DEGREES}
+     * @param maximumSamples     stop splitting once this many points have been looked up, at least 1
+     */
+    public PolygonCoverage(double minimumCellDegrees, int maximumSamples) {
+        // Below the cell size, new samples resolve to cells that were already looked up and never settle a border.
+        if (!(minimumCellDegrees >= GeoCell.CELL_SIZE_DEGREES)) {
+            throw new IllegalArgumentException("The minimum cell size must be at least " + GeoCell.CELL_SIZE_DEGREES + " degrees");
+        }
+        if (maximumSamples < 1) {
+            throw new IllegalArgumentException("The maximum number of samples must be at least 1");
+        }
+        this.minimumCellDegrees = minimumCellDegrees;
+        this.maximumSamples = maximumSamples;
+    }
+
+    /**
+     * Find the countries a polygon touches.
+     *
+     * @param polygon the vertices of the polygon, closed implicitly
+     * @param lookup  resolves a list of coordinates, such as {@link ReverseGeocoder#getCountriesAsync(List)}
+     * @return a CompletableFuture with the ISO 3166-1 alpha-2 codes of the countries in the polygon, without "Unknown"
+     */
+    public CompletableFuture<Set<String>> getCountries(List<Coordinate> polygon,
+                                                       Function<List<Coordinate>, CompletableFuture<Map<Coordinate, String>>> lookup) {
+        if (polygon.isEmpty()) {
+            return CompletableFuture.completedFuture(Set.of());
+        }
+        Query query = new Query(polygon, lookup);
+        return query.run();
+    }
+
+    private final class Query {
+
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final Function<List<Coordinate>, CompletableFuture<Map<Coordinate, String>>> lookup;
+        private final Map<Long, String> resolved = new HashMap<>();
+
+        private Query(List<Coordinate> polygon, Function<List<Coordinate>, CompletableFuture<Map<Coordinate, String>>> lookup) {
+            this.latitudes = new double[polygon.size()];
+            this.longitudes = new double[polygon.size()];
+            for (int i = 0; i < polygon.size(); i++) {
+                latitudes[i] = polygon.get(i).latitude();
+                longitudes[i] = polygon.get(i).longitude();
+            }
+            this.lookup = lookup;
+        }
+
+        private CompletableFuture<Set<String>> run() {
+            double minLatitude = Double.MAX_VALUE, maxLatitude = -Double.MAX_VALUE;
+            double minLongitude = Double.MAX_VALUE, maxLongitude = -Double.MAX_VALUE;
+            for (int i = 0; i < latitudes.length; i++) {
+                minLatitude = Math.min(minLatitude, latitudes[i]);
+                maxLatitude = Math.max(maxLatitude, latitudes[i]);
+                minLongitude = Math.min(minLongitude, longitudes[i]);
+                maxLongitude = Math.max(maxLongitude, longitudes[i]);
+            }
+
+            List<Cell> cells = new ArrayList<>();
+            double latitudeStep = (maxLatitude - minLatitude) / INITIAL_GRID;
+            double longitudeStep = (maxLongitude - minLongitude) / INITIAL_GRID;
+            for (int row = 0; row < INITIAL_GRID; row++) {
+                for (int column = 0; column < INITIAL_GRID; column++) {
+                    Cell cell = new Cell(minLatitude + row * latitudeStep, minLongitude + column * longitudeStep,
+                            minLatitude + (row + 1) * latitudeStep, minLongitude + (column + 1) * longitudeStep);
+                    if (intersects(cell)) {
+                        cells.add(cell);
+                    }
+                }
+            }
+
+            // The vertices are always sampled, so the result is never worse than looking up the vertices alone.
+            List<Coordinate> vertices = new ArrayList<>(latitudes.length);
+            for (int i = 0; i < latitudes.length; i++) {
+                vertices.add(new Coordinate(latitudes[i], longitudes[i]));
+            }
+            return resolve(vertices).thenCompose(ignored -> level(cells));
+        }
+
+        private CompletableFuture<Set<String>> level(List<Cell> cells) {
+            if (cells.isEmpty()) {
+                return CompletableFuture.completedFuture(countries());
+            }
+            Map<Long, Coordinate> samples = new LinkedHashMap<>();
+            int budget = maximumSamples - resolved.size();
+            for (Cell cell : cells) {
+                for (Coordinate sample : cell.samples()) {
+                    if (samples.size() >= budget) {
+                        break;
+                    }
+                    if (contains(sample.latitude(), sample.longitude()) && !resolved.containsKey(sample.getCellKey())) {
+                        samples.putIfAbsent(sample.getCellKey(), sample);
+                    }
+                }
+            }
+            return resolve(new ArrayList<>(samples.values())).thenCompose(ignored -> level(split(cells)));
+        }
+
+        private List<Cell> split(List<Cell> cells) {
+            List<Cell> children = new ArrayList<>();
+            for (Cell cell : cells) {
+                if (resolved.size() >= maximumSamples
+                        || cell.maxLatitude() - cell.minLatitude() <= minimumCellDegrees
+                        && cell.maxLongitude() - cell.minLongitude() <= minimumCellDegrees) {
+                    continue;
+                }
+                if (agrees(cell)) {
+                    continue;
+                }
+                for (Cell child : cell.children(minimumCellDegrees)) {
+                    if (intersects(child)) {
+                        children.add(child);
+                    }
+                }
+            }
+            return children;
+        }
+
+        // A cell needs no further splitting if its samples inside the polygon, including vertices, have one country.
+        private boolean agrees(Cell cell) {
+            String country = null;
+            int samples = 0;
+            for (Coordinate sample : cell.samples()) {
+                String sampleCountry = resolved.get(sample.getCellKey());
+                if (sampleCountry != null && contains(sample.latitude(), sample.longitude())) {
+                    if (country != null && !country.equals(sampleCountry)) {
+                        return false;
+                    }
+                    country = sampleCountry;
+                    samples++;
+                }
+            }
+            for (int i = 0; i < latitudes.length; i++) {
+                if (cell.contains(latitudes[i], longitudes[i])) {
+                    String vertexCountry = resolved.get(new Coordinate(latitudes[i], longitudes[i]).getCellKey());
+                    if (country != null && vertexCountry != null && !country.equals(vertexCountry)) {
+                        return false;
+                    }
+                }
+            }
+            // A cell the polygon only clips without covering a sample is split to find out what it holds.
+            return samples > 0;
+        }
+
+        private CompletableFuture<Void> resolve(List<Coordinate> coordinates) {
+            if (coordinates.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return lookup.apply(coordinates).thenAccept(countries ->
+                    countries.forEach((coordinate, country) -> resolved.put(coordinate.getCellKey(), country)));
+        }
+
+        private Set<String> countries() {
+            Set<String> countries = new TreeSet<>(resolved.values());
+            countries.remove(CountryCodes.UNKNOWN_COUNTRY);
+            return countries;
+        }
+
+        // Even-odd rule with a ray to the east.
+        private boolean contains(double latitude, double longitude) {
+            boolean inside = false;
+            for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+                if ((latitudes[i] > latitude) != (latitudes[j] > latitude)) {
+                    double crossing = longitudes[i] + (latitude - latitudes[i]) / (latitudes[j] - latitudes[i]) * (longitudes[j] - longitudes[i]);
+                    if (longitude < crossing) {
+                        inside = !inside;
+                    }
+                }
+            }
+            return inside;
+        }
+
+        private boolean intersects(Cell cell) {
+            if (contains(cell.minLatitude(), cell.minLongitude())) {
+                return true;
+            }
+            for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+                if (cell.clips(latitudes[j], longitudes[j], latitudes[i], longitudes[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private record Cell(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+
+        private List<Coordinate> samples() {
+            double centreLatitude = (minLatitude + maxLatitude) / 2;
+            double centreLongitude = (minLongitude + maxLongitude) / 2;
+            return List.of(
+                    new Coordinate(centreLatitude, centreLongitude),
+                    new Coordinate(minLatitude, minLongitude),
+                    new Coordinate(minLatitude, maxLongitude),
+                    new Coordinate(maxLatitude, minLongitude),
+                    new Coordinate(maxLatitude, maxLongitude));
+        }
+
+        // Sides at the minimum size are not split, so cells of a flat bounding box don't multiply without shrinking.
+        private List<Cell> children(double minimumDegrees) {
+            double centreLatitude = (minLatitude + maxLatitude) / 2;
+            double centreLongitude = (minLongitude + maxLongitude) / 2;
+            if (maxLatitude - minLatitude <= minimumDegrees) {
+                return List.of(
+                        new Cell(minLatitude, minLongitude, maxLatitude, centreLongitude),
+                        new Cell(minLatitude, centreLongitude, maxLatitude, maxLongitude));
+            }
+            if (maxLongitude - minLongitude <= minimumDegrees) {
+                return List.of(
+                        new Cell(minLatitude, minLongitude, centreLatitude, maxLongitude),
+                        new Cell(centreLatitude, minLongitude, maxLatitude, maxLongitude));
+            }
+            return List.of(
+                    new Cell(minLatitude, minLongitude, centreLatitude, centreLongitude),
+                    new Cell(minLatitude, centreLongitude, centreLatitude, maxLongitude),
+                    new Cell(centreLatitude, minLongitude, maxLatitude, centreLongitude),
+                    new Cell(centreLatitude, centreLongitude, maxLatitude, maxLongitude));
+        }
+
+        private boolean contains(double latitude, double longitude) {
+            return latitude >= minLatitude && latitude <= maxLatitude && longitude >= minLongitude && longitude <= maxLongitude;
+        }
+
+        // Liang-Barsky: whether any part of the segment lies inside the cell.
+        private boolean clips(double latitude0, double longitude0, double latitude1, double longitude1) {
+            double deltaLatitude = latitude1 - latitude0;
+            double deltaLongitude = longitude1 - longitude0;
+            double[] p = {-deltaLongitude, deltaLongitude, -deltaLatitude, deltaLatitude};
+            double[] q = {longitude0 - minLongitude, maxLongitude - longitude0, latitude0 - minLatitude, maxLatitude - latitude0};
+            double enter = 0;
+            double exit = 1;
+            for (int i = 0; i < 4; i++) {
+                if (p[i] == 0) {
+                    if (q[i] < 0) {
+                        return false;
+                    }
+                } else {
+                    double t = q[i] / p[i];
+                    if (p[i] < 0) {
+                        enter = Math.max(enter, t);
+                    } else {
+                        exit = Math.min(exit, t);
+                    }
+                }
+            }
+            return enter <= exit;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.btuk.geography.geocoding;
+
+/**
+ * JMX view of one online provider, registered by {@link JmxMetricsSink}.
+ */
+public interface ProviderMXBean {
+
+    String getName();
+
+    long getSuccessCount();
+
+    long getFailureCount();
+
+    double getErrorRate();
+
+    double getLatencyMeanMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    /**
+     * Get the full latency distribution.
+     *
+     * @return pairs of bucket upper bound in microseconds and count, only for buckets with samples
+     */
+    long[][] getLatencyHistogram();
+
+    String getCircuitState();
+
+    int getQueuedRequests();
+
+    int getActiveRequests();
+
+    /**
+     * Get the requests left today under the daily quota.
+     *
+     * @return the remaining quota, or -1 if the provider has no daily quota
+     */
+    int getQuotaRemaining();
+}
@@ -0,0 +1,70 @@
+package org.btuk.geography.geocoding;
+
+/**
+ * A limit on how a {@link GeocodingProvider} may be used, such as a rate, a daily quota or a concurrency limit.
+ * <p>
+ * The {@link GeocodeScheduler} plans with reservations: it asks every policy of a provider for the earliest time a
+ * request could start, picks the provider that would finish first and reserves that start time. Times are in
+ * {@link System#nanoTime()} nanoseconds. Calls to {@link #peek(long)} and {@link #reserve(long)} are serialised by the
+ * scheduler.
+ */
+public interface ProviderPolicy {
+
+    // Returned by peek if the provider can't be used at all right now.
+    long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Get the earliest time a new request could start, without reserving it.
+     *
+     * @param now the current time
+     * @return the earliest start time, at least {@code now}, or {@link #NEVER}
+     */
+    long peek(long now);
+
+    /**
+     * Reserve a request that starts at the given time.
+     * <p>
+     * A policy whose limit is shared with others, such as a quota across servers, can find it used up even though the
+     * last {@link #peek(long)} allowed the request. It then reserves nothing and returns false, and the scheduler plans
+     * the lookup again.
+     *
+     * @param start the start time, at least the last value returned by {@link #peek(long)}
+     * @return true if the request was reserved
+     */
+    boolean reserve(long start);
+
+    /**
+     * Called on the request thread when a reserved request is not sent after all, for example because the circuit
+     * breaker of the provider opened while it was waiting. Policies that count requests take it back.
+     */
+    default void cancel() {
+    }
+
+    /**
+     * Called on the request thread right before the request is sent, may block.
+     *
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    default void acquire() throws InterruptedException {
+    }
+
+    /**
+     * Called on the request thread once the request is done, whether it succeeded or not.
+     */
+    default void release() {
+    }
+
+    /**
+     * Called when the measured latency of the provider changes, for policies that plan with it.
+     *
+     * @param expectedLatencyNanos the current expected duration of a request
+     */
+    default void onExpectedLatency(long expectedLatencyNanos) {
+    }
+
+    /**
+     * Write any state that needs to survive a restart.
+     */
+    default void flush() {
+    }
+}
@@ -0,0 +1,74 @@
+package org.btuk.geography.geocoding;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A provider answered with an HTTP error status.
+ */
+public class ProviderResponseException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+    private final Duration retryAfter;
+
+    /**
+     * @param message    the message
+     * @param status     the HTTP status code
+     * @param retryAfter how long the provider asked to wait before the next request, or null
+     */
+    public ProviderResponseException(String message, int status, Duration retryAfter) {
+        super(message);
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Get how long the provider asked to wait, from the Retry-After header.
+     *
+     * @return the wait, or null if the response had no valid Retry-After header
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Whether the provider is throttling, rather than failing.
+     *
+     * @return true for 429 Too Many Requests
+     */
+    public boolean isThrottled() {
+        return status == 429;
+    }
+
+    /**
+     * Parse a Retry-After header, which holds either a number of seconds or an HTTP date.
+     *
+     * @param value the header value, may be null
+     * @return the wait, at least zero, or null if the value is missing or invalid
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException e) {
+            try {
+                Duration wait = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return wait.isNegative() ? Duration.ZERO : wait;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
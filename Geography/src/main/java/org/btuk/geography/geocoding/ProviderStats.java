@@ -0,0 +1,76 @@
+package org.btuk.geography.geocoding;
+
+/**
+ * Latency and error statistics of a provider.
+ * <p>
+ * The mean latency and the error rate are exponentially weighted moving averages, so they follow a provider that
+ * slows down within a few requests. The p99 comes from a {@link LatencyHistogram} over all requests.
+ */
+public final class ProviderStats {
+
+    // Weight of the newest sample in the moving averages.
+    private static final double ALPHA = 0.2;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    private double latencyEwmaNanos;
+    private double errorRateEwma;
+    private long successes;
+    private long failures;
+
+    /**
+     * @param expectedLatencyNanos the latency assumed before the first request completes
+     */
+    public ProviderStats(long expectedLatencyNanos) {
+        this.latencyEwmaNanos = expectedLatencyNanos;
+    }
+
+    synchronized void recordSuccess(long latencyNanos) {
+        histogram.record(latencyNanos);
+        latencyEwmaNanos += ALPHA * (latencyNanos - latencyEwmaNanos);
+        errorRateEwma += ALPHA * (0 - errorRateEwma);
+        successes++;
+    }
+
+    synchronized void recordFailure(long latencyNanos) {
+        histogram.record(latencyNanos);
+        // A failure costs its latency and another attempt elsewhere, count it as slow as well.
+        latencyEwmaNanos += ALPHA * (Math.max(latencyNanos, latencyEwmaNanos) - latencyEwmaNanos);
+        errorRateEwma += ALPHA * (1 - errorRateEwma);
+        failures++;
+    }
+
+    /**
+     * Get the expected time until a lookup on this provider has an answer, counting the retries that the error rate
+     * makes likely.
+     *
+     * @return the expected completion time in nanoseconds
+     */
+    synchronized long getExpectedCompletionNanos() {
+        return (long) (latencyEwmaNanos / (1 - Math.min(errorRateEwma, 0.9)));
+    }
+
+    public synchronized double getLatencyEwmaMillis() {
+        return latencyEwmaNanos / 1_000_000;
+    }
+
+    public double getLatencyP99Millis() {
+        return histogram.getPercentileMillis(99);
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRateEwma;
+    }
+
+    public synchronized long getSuccesses() {
+        return successes;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,51 @@
+package org.btuk.geography.geocoding;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Keeps the daily request counts of the providers for {@link DailyQuotaPolicy}.
+ * <p>
+ * Days are UTC dates in ISO format, a count is zero on a day it was not touched. The default
+ * {@link DailyQuotaStore} belongs to one server, {@link SharedQuotaStore} enforces the quota across every server on
+ * the host.
+ */
+public interface QuotaBackend extends Closeable {
+
+    /**
+     * Get the number of requests counted today.
+     *
+     * @param name  the name of the quota
+     * @param today the current UTC date
+     * @return the count
+     */
+    int getCount(String name, String today);
+
+    /**
+     * Add up to {@code requested} requests to today's count without going over the limit. A negative number takes
+     * back requests that were counted but never sent, without going below zero.
+     *
+     * @param name      the name of the quota
+     * @param today     the current UTC date
+     * @param requested the number of requests to add, or to take back if negative
+     * @param limit     the daily limit
+     * @return the number of requests added, negative if taken back
+     */
+    int add(String name, String today, int requested, int limit);
+
+    /**
+     * Write the counts to disk if they are not written on every change.
+     */
+    default void flush() {
+    }
+
+    /**
+     * Write the counts and release the files of the store.
+     *
+     * @throws IOException if the store could not be closed
+     */
+    @Override
+    default void close() throws IOException {
+        flush();
+    }
+}
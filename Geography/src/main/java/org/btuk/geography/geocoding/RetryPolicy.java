@@ -0,0 +1,60 @@
+package org.btuk.geography.geocoding;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Bounded retries with jittered exponential backoff.
+ * <p>
+ * The wait before retry {@code n} is a random time between zero and {@code baseDelay * 2^(n-1)}, capped at the
+ * maximum delay, so retries of many lookups that failed together don't hit the provider at the same moment. A
+ * Retry-After from the provider is a lower bound on the wait.
+ */
+public final class RetryPolicy {
+
+    /**
+     * Four attempts in total, waiting up to 0.5, 1 and 2 seconds in between.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(4, Duration.ofMillis(500), Duration.ofSeconds(30));
+
+    private final int maximumAttempts;
+    private final long baseDelayNanos;
+    private final long maximumDelayNanos;
+
+    /**
+     * @param maximumAttempts the number of attempts including the first one
+     * @param baseDelay       the upper bound of the wait before the first retry
+     * @param maximumDelay    the upper bound of any wait, except a longer Retry-After
+     */
+    public RetryPolicy(int maximumAttempts, Duration baseDelay, Duration maximumDelay) {
+        if (maximumAttempts < 1) {
+            throw new IllegalArgumentException("There must be at least one attempt");
+        }
+        this.maximumAttempts = maximumAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maximumDelayNanos = maximumDelay.toNanos();
+    }
+
+    public int getMaximumAttempts() {
+        return maximumAttempts;
+    }
+
+    /**
+     * Get the wait before a retry.
+     *
+     * @param attempt    the number of attempts made so far, at least 1
+     * @param retryAfter the wait the provider asked for, or null
+     * @return the wait in nanoseconds
+     */
+    public long getDelayNanos(int attempt, Duration retryAfter) {
+        long ceiling = baseDelayNanos << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maximumDelayNanos) {
+            ceiling = maximumDelayNanos;
+        }
+        long delay = ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+        if (retryAfter != null) {
+            delay = Math.max(delay, retryAfter.toNanos());
+        }
+        return delay;
+    }
+}
@@ -1,219 +1,185 @@
 package org.btuk.geography.geocoding;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.btuk.geography.Coordinate;
+import org.btuk.geography.CoordinateBuffer;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URL;
+import java.nio.file.Path;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Static access to a shared {@link Geocoder}, created on first use.
+ * <p>
+ * The shared geocoder is configured through system properties and publishes its metrics over JMX. Plugins that want
+ * their own configuration or lifecycle should build a {@link Geocoder} instead.
+ */
 public class ReverseGeocoder {
 
-    private static final ObjectMapper objectMapper = new ObjectMapper()
-            .enable(SerializationFeature.INDENT_OUTPUT);
-    private static final String NOMINATIM_API_URL = "https://nominatim.openstreetmap.org/reverse?format=json&lat=%f&lon=%f";
-    private static final String GEOAPIFY_API_URL = "https://api.geoapify.com/v1/geocode/reverse?lat=%f&lon=%f&apiKey=%s";
-    private static final String GEOAPIFY_API_KEY = "YOUR_GEOAPIFY_API_KEY_HERE"; // Replace with your key
-    private static final String CACHE_FILE = "cache.json";
+    // Budget of the in-memory tier, either as entries or as bytes of heap, the byte budget wins if both are set.
+    private static final String CACHE_ENTRIES_PROPERTY = "btuk.geocoder.cache.entries";
+    private static final String CACHE_BYTES_PROPERTY = "btuk.geocoder.cache.bytes";
 
-    private static final Map<String, String> cache = new ConcurrentHashMap<>();
-    private static final RateLimiter RATE_LIMITER = new RateLimiter();
+    // Servers on the same host can share the persistent cache and the quotas through files in a common directory.
+    private static final String SHARED_DIRECTORY_PROPERTY = "btuk.geocoder.shared.directory";
+    private static final String SHARED_ENTRIES_PROPERTY = "btuk.geocoder.shared.entries";
 
-    private static final ExecutorService nominatimExecutorService = Executors.newSingleThreadExecutor();
-    private static final ExecutorService geoapifyExecutorService = Executors.newSingleThreadExecutor();
+    private static Geocoder geocoder;
 
-    // Load cache at startup
-    static {
-        loadCache();
+    /**
+     * Get the shared geocoder, creating it if needed. Creating it returns right away, the caches load in the background.
+     *
+     * @return the shared geocoder
+     */
+    public static synchronized Geocoder getGeocoder() {
+        if (geocoder == null) {
+            geocoder = createGeocoder();
+        }
+        return geocoder;
     }
 
-    private static void saveCache() {
-        try {
-            ObjectNode cacheNode = objectMapper.createObjectNode();
-            cache.forEach(cacheNode::put);
-            objectMapper.writeValue(new File(CACHE_FILE), cacheNode);
-        } catch (IOException e) {
-            System.err.println("Error saving cache: " + e.getMessage());
+    private static Geocoder createGeocoder() {
+        Geocoder.Builder builder = Geocoder.builder()
+                .memoryCacheEntries(Integer.getInteger(CACHE_ENTRIES_PROPERTY, Geocoder.DEFAULT_CACHE_ENTRIES))
+                .metricsSink(new JmxMetricsSink());
+        Long maximumBytes = Long.getLong(CACHE_BYTES_PROPERTY);
+        if (maximumBytes != null) {
+            builder.memoryCacheBytes(maximumBytes);
+        }
+        String sharedDirectory = System.getProperty(SHARED_DIRECTORY_PROPERTY);
+        if (sharedDirectory != null) {
+            builder.sharedDirectory(Path.of(sharedDirectory), Integer.getInteger(SHARED_ENTRIES_PROPERTY, Geocoder.DEFAULT_SHARED_ENTRIES));
         }
+        return builder.build();
     }
 
-    private static void loadCache() {
-        File file = new File(CACHE_FILE);
-        if (file.exists()) {
-            try {
-                JsonNode cacheNode = objectMapper.readTree(file);
-                cacheNode.fields().forEachRemaining(entry ->
-                        cache.put(entry.getKey(), entry.getValue().asText()));
-            } catch (IOException e) {
-                System.err.println("Error loading cache: " + e.getMessage());
-            }
-        }
+    /**
+     * Replace the metrics sink, the default publishes the metrics over JMX.
+     *
+     * @param sink the new sink, {@link MetricsSink#NONE} to turn metrics off
+     */
+    public static void setMetricsSink(MetricsSink sink) {
+        getGeocoder().setMetricsSink(sink);
     }
 
-    private static String getCountryNominatim(Coordinate coordinate) {
-        try {
-            RATE_LIMITER.setNominatimLastRequest(System.currentTimeMillis());
-            String urlString = String.format(Locale.US, NOMINATIM_API_URL, coordinate.latitude(), coordinate.longitude());
-            URL url = new URI(urlString).toURL();
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("User-Agent", "JavaReverseGeocoder/1.0");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                if (responseCode == 429) {
-                    System.err.println("Nominatim rate limit hit, retrying after delay...");
-                    Thread.sleep(RATE_LIMITER.getDelayForNextNominatimRequest());
-                    return getCountryNominatim(coordinate);
-                }
-                System.err.println("Nominatim HTTP error: " + responseCode);
-                return "Unknown";
-            }
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            reader.close();
-            conn.disconnect();
-
-            JsonNode jsonNode = objectMapper.readTree(response.toString());
-            JsonNode addressNode = jsonNode.path("address");
-            if (!addressNode.isMissingNode()) {
-                String countryCode = addressNode.path("country_code").asText(null);
-                if (countryCode != null && countryCode.matches("[a-zA-Z]{2}")) {
-                    return countryCode.toUpperCase();
-                }
-                System.err.println("Invalid Nominatim country_code for lat=" + coordinate.latitude() + ", lon=" + coordinate.longitude() + ": " + countryCode);
-            }
-        } catch (Exception e) {
-            if (e instanceof IOException) {
-                System.err.println("Nominatim IO error, retrying: " + e.getMessage());
-                try {
-                    Thread.sleep(RATE_LIMITER.getDelayForNextNominatimRequest());
-                } catch (InterruptedException ex) {
-                    // Ignored.
-                }
-                return getCountryNominatim(coordinate);
-            }
-            System.err.println("Nominatim error for lat=" + coordinate.latitude() + ", lon=" + coordinate.longitude() + ": " + e.getMessage());
-        }
-        return "Unknown";
+    /**
+     * Get the hit, miss and eviction counters of the in-memory cache.
+     *
+     * @return the cache statistics
+     */
+    public static CacheStats getCacheStats() {
+        return getGeocoder().getCacheStats();
     }
 
-    private static String getCountryGeoapify(Coordinate coordinate) {
-        if (!RATE_LIMITER.canUseGeoapify()) {
-            System.err.println("Geoapify daily limit reached, use nominatim.");
-            try {
-                // We'll use the other thread executor and wait,
-                // since we've reached the limit this thread won't be used until the next day.
-                return nominatimExecutorService.submit(() -> getCountryNominatim(coordinate)).get();
-            } catch (InterruptedException | ExecutionException e) {
-                // Ignored.
-                return "Unknown";
-            }
-        }
-        try {
-            String urlString = String.format(Locale.US, GEOAPIFY_API_URL, coordinate.latitude(), coordinate.longitude(), GEOAPIFY_API_KEY);
-            URL url = new URI(urlString).toURL();
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/json");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                System.err.println("Geoapify HTTP error: " + responseCode);
-                return nominatimExecutorService.submit(() -> getCountryNominatim(coordinate)).get();
-            }
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            reader.close();
-            conn.disconnect();
-
-            JsonNode jsonNode = objectMapper.readTree(response.toString());
-            JsonNode featuresNode = jsonNode.path("features");
-            if (featuresNode.isArray() && !featuresNode.isEmpty()) {
-                JsonNode propertiesNode = featuresNode.get(0).path("properties");
-                String countryCode = propertiesNode.path("country_code").asText(null);
-                if (countryCode != null && countryCode.matches("[a-zA-Z]{2}")) {
-                    String alpha2Code = countryCode.toUpperCase();
-                    RATE_LIMITER.incrementGeoapify();
-                    return alpha2Code;
-                }
-                System.err.println("Invalid Geoapify country_code for lat=" + coordinate.latitude() + ", lon=" + coordinate.longitude() + ": " + countryCode);
-            }
-        } catch (Exception e) {
-            System.err.println("Geoapify error for lat=" + coordinate.latitude() + ", lon=" + coordinate.longitude() + ": " + e.getMessage());
-        }
-        return "Unknown";
+    /**
+     * Get the number of upstream requests saved because a lookup for the same cache cell was already pending.
+     *
+     * @return the number of coalesced lookups
+     */
+    public static long getCoalescedRequestCount() {
+        return getGeocoder().getCoalescedRequestCount();
     }
 
-    private static String getCountryFromCache(Coordinate coordinate) {
-        String cacheKey = coordinate.getCacheKey();
-        return cache.get(cacheKey);
+    /**
+     * Get the countries of a list of coordinates, blocking until all of them are resolved.
+     *
+     * @param coordinates the coordinates
+     * @return the ISO 3166-1 alpha-2 country code of every coordinate, or "Unknown"
+     */
+    public static Map<Coordinate, String> getCountries(List<Coordinate> coordinates) {
+        return getGeocoder().getCountries(coordinates);
     }
 
-    private static Future<String> getCountrySingle(Coordinate coord) {
-        if (RATE_LIMITER.canUseNominatim()) {
-            return nominatimExecutorService.submit(() -> getCountryNominatim(coord));
-        } else if (RATE_LIMITER.canUseGeoapify()) {
-            return geoapifyExecutorService.submit(() -> getCountryGeoapify(coord));
-        } else {
-            // Fallback is always nominatim.
-            return nominatimExecutorService.submit(() -> getCountryNominatim(coord));
-        }
+    /**
+     * Get the countries of a list of coordinates without blocking.
+     *
+     * @param coordinates the coordinates
+     * @return a CompletableFuture with the ISO 3166-1 alpha-2 country code of every coordinate, or "Unknown"
+     * @see Geocoder#getCountriesAsync(List)
+     */
+    public static CompletableFuture<Map<Coordinate, String>> getCountriesAsync(List<Coordinate> coordinates) {
+        return getGeocoder().getCountriesAsync(coordinates);
     }
 
-    public static Map<Coordinate, String> getCountries(List<Coordinate> coordinates) {
-        Map<Coordinate, String> countries = new HashMap<>();
-        Map<Coordinate, Future<String>> futures = new HashMap<>();
-
-        for (Coordinate coord : coordinates) {
-            String cachedCountry = getCountryFromCache(coord);
-            if (cachedCountry != null) {
-                countries.put(coord, cachedCountry);
-            } else {
-                futures.put(coord, getCountrySingle(coord));
-            }
-        }
+    /**
+     * Get the countries a polygon touches, blocking until they are resolved.
+     *
+     * @param polygon the vertices of the polygon
+     * @return the ISO 3166-1 alpha-2 codes of the countries in the polygon
+     * @see PolygonCoverage
+     */
+    public static Set<String> getCountriesInPolygon(List<Coordinate> polygon) {
+        return getGeocoder().getCountriesInPolygon(polygon);
+    }
+
+    /**
+     * Get the countries a polygon touches without blocking.
+     *
+     * @param polygon the vertices of the polygon
+     * @return a CompletableFuture with the ISO 3166-1 alpha-2 codes of the countries in the polygon
+     * @see Geocoder#getCountriesInPolygonAsync(List)
+     */
+    public static CompletableFuture<Set<String>> getCountriesInPolygonAsync(List<Coordinate> polygon) {
+        return getGeocoder().getCountriesInPolygonAsync(polygon);
+    }
+
+    /**
+     * Get the countries of a list of coordinates without blocking, passing every result to a callback as soon as it is known.
+     *
+     * @param coordinates the coordinates
+     * @param callback    receives every coordinate with its ISO 3166-1 alpha-2 country code, or "Unknown"
+     * @return a CompletableFuture that completes once every coordinate has been passed to the callback
+     * @see Geocoder#getCountriesAsync(List, BiConsumer)
+     */
+    public static CompletableFuture<Void> getCountriesAsync(List<Coordinate> coordinates, BiConsumer<Coordinate, String> callback) {
+        return getGeocoder().getCountriesAsync(coordinates, callback);
+    }
+
+    /**
+     * Get the countries of a buffer of coordinates, blocking until all of them are resolved.
+     *
+     * @param coordinates the coordinates
+     * @return the ISO 3166-1 alpha-2 country code or "Unknown" of every coordinate, at the index of the coordinate
+     */
+    public static String[] getCountries(CoordinateBuffer coordinates) {
+        return getGeocoder().getCountries(coordinates);
+    }
+
+    /**
+     * Get the countries of a buffer of coordinates without blocking.
+     *
+     * @param coordinates the coordinates, must not change until the future completes
+     * @param countries   receives the ISO 3166-1 alpha-2 country code or "Unknown" of every coordinate,
+     *                    at the index of the coordinate
+     * @return a CompletableFuture that completes once every country has been written
+     * @see Geocoder#getCountriesAsync(CoordinateBuffer, String[])
+     */
+    public static CompletableFuture<Void> getCountriesAsync(CoordinateBuffer coordinates, String[] countries) {
+        return getGeocoder().getCountriesAsync(coordinates, countries);
+    }
+
+    /**
+     * Check whether the last lookup of a coordinate failed, rather than finding no country.
+     *
+     * @param coordinate the coordinate
+     * @return true if the cell is in the negative cache
+     */
+    static boolean hasFailed(Coordinate coordinate) {
+        return getGeocoder().hasFailed(coordinate);
+    }
 
-        // Wait for all the future to complete.
-        for (Map.Entry<Coordinate, Future<String>> future : futures.entrySet()) {
-            try {
-                String country = future.getValue().get();
-                cache.put(future.getKey().getCacheKey(), country);
-                saveCache();
-                countries.put(future.getKey(), country);
-            } catch (InterruptedException | ExecutionException e) {
-                countries.put(future.getKey(), "Unknown");
-                // throw new RuntimeException(e);
-            }
+    /**
+     * Close the shared geocoder, writing pending results to disk. The next call creates a new one.
+     */
+    public static synchronized void close() {
+        if (geocoder != null) {
+            geocoder.close();
+            geocoder = null;
         }
-        return countries;
     }
 
     public static void main(String[] args) {
@@ -237,8 +203,7 @@ public class ReverseGeocoder {
             System.out.printf(Locale.US, "Lat: %.6f, Lon: %.6f -> Country: %s%n",
                     country.getKey().latitude(), country.getKey().longitude(), country.getValue());
         }
-        nominatimExecutorService.shutdown();
-        geoapifyExecutorService.shutdown();
+        close();
         System.out.printf("Completed in %dms", System.currentTimeMillis() - start);
     }
 }
@@ -0,0 +1,217 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link GeocodingProvider} together with the policies that limit its use.
+ * <p>
+ * The latency and error rate of every request are recorded in the {@link ProviderStats}, the scheduler uses them to
+ * estimate when a lookup on this provider would finish. Failures in a row open the {@link CircuitBreaker}, which takes
+ * the provider out of rotation until a trial request succeeds. A Retry-After from the provider pauses all requests to
+ * it for that long.
+ */
+public final class ScheduledProvider {
+
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final Duration MINIMUM_OPEN_TIME = Duration.ofSeconds(10);
+    private static final Duration MAXIMUM_OPEN_TIME = Duration.ofMinutes(5);
+
+    private final GeocodingProvider provider;
+    private final List<ProviderPolicy> policies;
+    private final ProviderStats stats;
+    private final CircuitBreaker circuitBreaker;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    // Set from a Retry-After, no request is planned before this time.
+    private volatile long pausedUntil = Long.MIN_VALUE;
+
+    /**
+     * @param provider        the provider
+     * @param expectedLatency the expected duration of a request until the first one has been measured
+     * @param policies        the limits on the provider
+     */
+    public ScheduledProvider(GeocodingProvider provider, Duration expectedLatency, ProviderPolicy... policies) {
+        this(provider, expectedLatency, new CircuitBreaker(FAILURE_THRESHOLD, MINIMUM_OPEN_TIME, MAXIMUM_OPEN_TIME), policies);
+    }
+
+    /**
+     * @param provider        the provider
+     * @param expectedLatency the expected duration of a request until the first one has been measured
+     * @param circuitBreaker  the circuit breaker of the provider
+     * @param policies        the limits on the provider
+     */
+    public ScheduledProvider(GeocodingProvider provider, Duration expectedLatency, CircuitBreaker circuitBreaker, ProviderPolicy... policies) {
+        this.provider = provider;
+        this.policies = List.of(policies);
+        this.stats = new ProviderStats(expectedLatency.toNanos());
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public GeocodingProvider getProvider() {
+        return provider;
+    }
+
+    public List<ProviderPolicy> getPolicies() {
+        return policies;
+    }
+
+    public ProviderStats getStats() {
+        return stats;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Get the number of lookups that have a reserved start time but have not started yet.
+     *
+     * @return the queue depth
+     */
+    public int getQueuedRequests() {
+        return queued.get();
+    }
+
+    /**
+     * Get the number of requests in flight.
+     *
+     * @return the number of active requests
+     */
+    public int getActiveRequests() {
+        return active.get();
+    }
+
+    long getExpectedCompletionNanos() {
+        return stats.getExpectedCompletionNanos();
+    }
+
+    boolean isAvailable(long now) {
+        return circuitBreaker.isAvailable(now);
+    }
+
+    // The earliest start allowed by all policies.
+    long peek(long now) {
+        if (!circuitBreaker.isAvailable(now)) {
+            return ProviderPolicy.NEVER;
+        }
+        long start = Math.max(now, pausedUntil);
+        for (ProviderPolicy policy : policies) {
+            start = Math.max(start, policy.peek(now));
+        }
+        return start;
+    }
+
+    // Reserves the start on all policies, or on none of them if one denies it.
+    boolean reserve(long start) {
+        for (int i = 0; i < policies.size(); i++) {
+            if (!policies.get(i).reserve(start)) {
+                for (int j = i - 1; j >= 0; j--) {
+                    policies.get(j).cancel();
+                }
+                return false;
+            }
+        }
+        queued.incrementAndGet();
+        return true;
+    }
+
+    // Takes back a reservation whose request was never sent.
+    void cancel() {
+        for (ProviderPolicy policy : policies) {
+            policy.cancel();
+        }
+    }
+
+    // Called by the scheduler once a reserved lookup's start time has come, whether it is sent or moved.
+    void dequeue() {
+        queued.decrementAndGet();
+    }
+
+    /**
+     * Send a request within the policies and record how it went.
+     *
+     * @throws IOException if the request failed, or the circuit breaker opened while the request was waiting
+     */
+    String getCountry(Coordinate coordinate) throws IOException, InterruptedException {
+        if (!circuitBreaker.tryAcquire(System.nanoTime())) {
+            cancel();
+            throw new IOException("The circuit breaker of " + provider.getName() + " is open");
+        }
+        boolean recorded = false;
+        int acquired = 0;
+        try {
+            for (ProviderPolicy policy : policies) {
+                policy.acquire();
+                acquired++;
+            }
+            long start = System.nanoTime();
+            active.incrementAndGet();
+            try {
+                String country = provider.getCountry(coordinate);
+                recorded = true;
+                onSuccess(System.nanoTime() - start);
+                return country;
+            } catch (ProviderResponseException e) {
+                recorded = true;
+                onFailure(System.nanoTime() - start, e);
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                recorded = true;
+                onFailure(System.nanoTime() - start, null);
+                throw e;
+            } finally {
+                active.decrementAndGet();
+            }
+        } finally {
+            if (!recorded) {
+                // Interrupted before sending, don't hold on to the trial request of a half-open breaker.
+                circuitBreaker.onCancelled();
+                cancel();
+            }
+            for (int i = acquired - 1; i >= 0; i--) {
+                policies.get(i).release();
+            }
+        }
+    }
+
+    void flush() {
+        for (ProviderPolicy policy : policies) {
+            policy.flush();
+        }
+    }
+
+    private void onSuccess(long latencyNanos) {
+        stats.recordSuccess(latencyNanos);
+        circuitBreaker.onSuccess();
+        updateExpectedLatency();
+    }
+
+    private void onFailure(long latencyNanos, ProviderResponseException response) {
+        long now = System.nanoTime();
+        stats.recordFailure(latencyNanos);
+        if (response != null && response.getRetryAfter() != null) {
+            pausedUntil = Math.max(pausedUntil, now + response.getRetryAfter().toNanos());
+        }
+        // Throttling is handled by the pause and the backoff, it says nothing about the health of the provider.
+        if (response != null && response.isThrottled()) {
+            circuitBreaker.onCancelled();
+        } else {
+            circuitBreaker.onFailure(now);
+        }
+        updateExpectedLatency();
+    }
+
+    private void updateExpectedLatency() {
+        long expected = (long) (stats.getLatencyEwmaMillis() * 1_000_000);
+        for (ProviderPolicy policy : policies) {
+            policy.onExpectedLatency(expected);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.btuk.geography.geocoding;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Geocode cache in a memory-mapped hash table that several JVMs on the same host can use at the same time.
+ * <p>
+ * The file is a header {@code [magic][version][capacity][size]} followed by {@code capacity} slots of
+ * {@code [cell key + 1][country code][padding]}, with linear probing and a key of zero marking an empty slot. Readers
+ * don't lock: a writer stores the code before it publishes the key with release semantics, so a reader that sees the
+ * key also sees the code. Writers hold an exclusive lock on the header, across processes through the file lock and
+ * within this JVM through a plain lock, since file locks are held per process.
+ * <p>
+ * The table doesn't grow, once it is three quarters full new results are only kept in memory. Size it for the
+ * expected number of cells when the file is created, the capacity of an existing file is kept. Open a file only once
+ * per JVM, file locks of two instances in the same process would overlap.
+ */
+public final class SharedGeocodeCache implements GeocodeCacheBackend {
+
+    private static final int MAGIC = 0x47454F48; // GEOH
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 16;
+    private static final int SIZE_OFFSET = 12;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final int maximumSize;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private boolean fullWarned;
+
+    /**
+     * Open the shared cache, creating it if it doesn't exist yet.
+     *
+     * @param file            the cache file
+     * @param expectedEntries the number of cells to make room for if the file is created
+     * @throws IOException if the file could not be opened or is not a shared cache
+     */
+    public SharedGeocodeCache(Path file, int expectedEntries) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int requestedCapacity = Integer.highestOneBit(Math.max(16, (int) Math.min(1 << 30, expectedEntries * 4L / 3))) << 1;
+            // Whoever gets the lock first on an empty file writes the header.
+            FileLock fileLock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                if (channel.size() == 0) {
+                    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) requestedCapacity * SLOT_SIZE);
+                    header.putInt(4, VERSION);
+                    header.putInt(8, requestedCapacity);
+                    header.putInt(SIZE_OFFSET, 0);
+                    header.putInt(0, MAGIC);
+                    header.force();
+                }
+            } finally {
+                fileLock.release();
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a shared geocode cache: " + file);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported shared geocode cache version " + header.getInt(4) + ": " + file);
+            }
+            this.capacity = header.getInt(8);
+            if (Integer.bitCount(capacity) != 1 || channel.size() < HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+                throw new IOException("Corrupt shared geocode cache: " + file);
+            }
+            this.mask = capacity - 1;
+            this.maximumSize = (int) (capacity * 3L / 4);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public short get(long key) {
+        long stored = key + 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long slotKey = (long) LONGS.getAcquire(buffer, offset);
+            if (slotKey == 0) {
+                return CountryCodes.NONE;
+            }
+            if (slotKey == stored) {
+                return buffer.getShort(offset + 8);
+            }
+        }
+    }
+
+    @Override
+    public void put(long key, short code) {
+        if (code == CountryCodes.NONE) {
+            throw new IllegalArgumentException("Can't store an empty value");
+        }
+        lock.lock();
+        try {
+            FileLock fileLock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                insert(key + 1, code);
+            } finally {
+                fileLock.release();
+            }
+        } catch (IOException e) {
+            System.err.println("Error locking the shared geocode cache: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of cached cells, across all processes.
+     *
+     * @return the number of cells
+     */
+    public int size() {
+        return (int) INTS.getAcquire(buffer, SIZE_OFFSET);
+    }
+
+    /**
+     * Get the number of cells the table takes before it stops accepting new ones.
+     *
+     * @return the maximum number of cells
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    // Every put is already visible to the other processes through the shared mapping, this only makes it durable.
+    @Override
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void insert(long stored, short code) {
+        for (int slot = mix(stored - 1) & mask; ; slot = (slot + 1) & mask) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long slotKey = (long) LONGS.getAcquire(buffer, offset);
+            if (slotKey == stored) {
+                buffer.putShort(offset + 8, code);
+                return;
+            }
+            if (slotKey == 0) {
+                int size = (int) INTS.getAcquire(buffer, SIZE_OFFSET);
+                if (size >= maximumSize) {
+                    warnFull();
+                    return;
+                }
+                buffer.putShort(offset + 8, code);
+                LONGS.setRelease(buffer, offset, stored);
+                INTS.setRelease(buffer, SIZE_OFFSET, size + 1);
+                return;
+            }
+        }
+    }
+
+    private void warnFull() {
+        if (!fullWarned) {
+            fullWarned = true;
+            System.err.println("The shared geocode cache is full at " + maximumSize + " cells, new results are only kept in memory");
+        }
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,214 @@
+package org.btuk.geography.geocoding;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Daily request counts in a small memory-mapped file shared by every JVM on the host, so a quota is enforced across
+ * all servers instead of per server.
+ * <p>
+ * The file is a header {@code [magic][version][epoch day]} followed by {@value #SLOTS} slots of
+ * {@code [name][count]}. Counts are changed under an exclusive file lock and are visible to the other processes right
+ * away, reads don't lock. All counts are reset when the first change of a new UTC day is made. A file lock is held by
+ * the whole JVM, so instances on the same file within one JVM take turns on an in-process lock first.
+ */
+public final class SharedQuotaStore implements QuotaBackend {
+
+    private static final int MAGIC = 0x47454F51; // GEOQ
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int DAY_OFFSET = 8;
+    private static final int NAME_SIZE = 32;
+    private static final int SLOT_SIZE = NAME_SIZE + 8;
+    private static final int SLOTS = 64;
+    private static final int FILE_SIZE = HEADER_SIZE + SLOTS * SLOT_SIZE;
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    // The in-process lock of every open file, by real path.
+    private static final Map<Path, ReentrantLock> FILE_LOCKS = new ConcurrentHashMap<>();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ReentrantLock lock;
+    private final Map<String, byte[]> encodedNames = new ConcurrentHashMap<>();
+
+    // The last date string converted to an epoch day, checked on every call.
+    private volatile ParsedDay lastDay = new ParsedDay("", 0);
+
+    /**
+     * Open the shared quota file, creating it if it doesn't exist yet.
+     *
+     * @param file the quota file
+     * @throws IOException if the file could not be opened or is not a quota file
+     */
+    public SharedQuotaStore(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.lock = FILE_LOCKS.computeIfAbsent(file.toRealPath(), path -> new ReentrantLock());
+            lock.lock();
+            FileLock fileLock = null;
+            try {
+                fileLock = channel.lock();
+                boolean created = channel.size() == 0;
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+                if (created) {
+                    buffer.putInt(4, VERSION);
+                    buffer.putInt(0, MAGIC);
+                    buffer.force();
+                }
+            } finally {
+                if (fileLock != null) {
+                    fileLock.release();
+                }
+                lock.unlock();
+            }
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a shared quota file: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported shared quota file version " + buffer.getInt(4) + ": " + file);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getCount(String name, String today) {
+        if ((int) INTS.getAcquire(buffer, DAY_OFFSET) != epochDay(today)) {
+            return 0;
+        }
+        int slot = find(encode(name));
+        return slot < 0 ? 0 : (int) INTS.getAcquire(buffer, countOffset(slot));
+    }
+
+    @Override
+    public int add(String name, String today, int requested, int limit) {
+        byte[] encodedName = encode(name);
+        int day = epochDay(today);
+        lock.lock();
+        try {
+            FileLock fileLock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                if ((int) INTS.getAcquire(buffer, DAY_OFFSET) != day) {
+                    for (int slot = 0; slot < SLOTS; slot++) {
+                        INTS.setRelease(buffer, countOffset(slot), 0);
+                    }
+                    INTS.setRelease(buffer, DAY_OFFSET, day);
+                }
+                int slot = find(encodedName);
+                if (slot < 0) {
+                    slot = claim(encodedName);
+                }
+                int count = (int) INTS.getAcquire(buffer, countOffset(slot));
+                int granted = requested < 0 ? -Math.min(count, -requested) : Math.clamp((long) limit - count, 0, requested);
+                if (granted != 0) {
+                    INTS.setRelease(buffer, countOffset(slot), count + granted);
+                }
+                return granted;
+            } finally {
+                fileLock.release();
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            // Without the lock the count can't be checked, deny rather than risk going over the quota.
+            System.err.println("Error locking the shared quota file: " + e);
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        buffer.force();
+    }
+
+    // The mapping stays valid until it is collected, but no longer holds the file open.
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private int find(byte[] encodedName) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            if (buffer.get(offset) == 0) {
+                return -1;
+            }
+            if (nameEquals(offset, encodedName)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int offset, byte[] encodedName) {
+        for (int i = 0; i < NAME_SIZE; i++) {
+            if (buffer.get(offset + i) != encodedName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Slots are filled in order and never freed, so the first slot with an empty name is free.
+    private int claim(byte[] encodedName) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            if (buffer.get(offset) == 0) {
+                INTS.setRelease(buffer, countOffset(slot), 0);
+                buffer.put(offset + 1, encodedName, 1, NAME_SIZE - 1);
+                // The first byte makes the slot visible to readers, write it last.
+                buffer.put(offset, encodedName[0]);
+                return slot;
+            }
+        }
+        throw new IllegalStateException("The shared quota file has no room for more than " + SLOTS + " quotas");
+    }
+
+    private static int countOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE + NAME_SIZE;
+    }
+
+    private byte[] encode(String name) {
+        return encodedNames.computeIfAbsent(name, SharedQuotaStore::pad);
+    }
+
+    private static byte[] pad(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > NAME_SIZE) {
+            throw new IllegalArgumentException("A quota name must be 1 to " + NAME_SIZE + " bytes long: " + name);
+        }
+        byte[] padded = new byte[NAME_SIZE];
+        System.arraycopy(bytes, 0, padded, 0, bytes.length);
+        return padded;
+    }
+
+    private int epochDay(String today) {
+        ParsedDay parsed = lastDay;
+        if (!parsed.date().equals(today)) {
+            parsed = new ParsedDay(today, (int) LocalDate.parse(today).toEpochDay());
+            lastDay = parsed;
+        }
+        return parsed.epochDay();
+    }
+
+    private record ParsedDay(String date, int epochDay) {
+    }
+}
@@ -0,0 +1,75 @@
+package org.btuk.geography.geocoding;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent lookups of the same cell key into a single pending future.
+ * <p>
+ * The first caller for a key starts the lookup, callers that arrive while it is still running get the same future.
+ * Once it completes the key is released, so later callers go through the cache again.
+ */
+final class SingleFlight {
+
+    private final Map<Long, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Get the pending lookup for a key, or start one.
+     *
+     * @param key    the cell key
+     * @param lookup starts the lookup, only called if no lookup for the key is pending
+     * @return the pending lookup
+     */
+    CompletableFuture<String> get(long key, Supplier<CompletableFuture<String>> lookup) {
+        CompletableFuture<String> pending = inFlight.get(key);
+        if (pending != null) {
+            coalesced.increment();
+            return pending;
+        }
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        pending = inFlight.putIfAbsent(key, created);
+        if (pending != null) {
+            coalesced.increment();
+            return pending;
+        }
+
+        // Start the lookup outside the map, a lookup that completes immediately must not remove itself mid-insert.
+        try {
+            lookup.get().whenComplete((result, e) -> {
+                inFlight.remove(key, created);
+                if (e != null) {
+                    created.completeExceptionally(e);
+                } else {
+                    created.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * Get the number of lookups that joined a pending lookup instead of going upstream.
+     *
+     * @return the number of saved upstream calls
+     */
+    long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Get the number of keys with a pending lookup.
+     *
+     * @return the number of pending lookups
+     */
+    int size() {
+        return inFlight.size();
+    }
+}
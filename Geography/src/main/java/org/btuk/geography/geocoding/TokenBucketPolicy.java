@@ -0,0 +1,53 @@
+package org.btuk.geography.geocoding;
+
+import java.time.Duration;
+
+/**
+ * Allows one request per interval, with bursts of up to {@code capacity} requests after the provider has been idle.
+ */
+public final class TokenBucketPolicy implements ProviderPolicy {
+
+    private final int capacity;
+    private final long intervalNanos;
+
+    private double storedTokens;
+    private long nextFree = Long.MIN_VALUE;
+
+    /**
+     * @param capacity the maximum number of requests in a burst
+     * @param interval the time it takes to refill one token
+     */
+    public TokenBucketPolicy(int capacity, Duration interval) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    @Override
+    public long peek(long now) {
+        refill(now);
+        return Math.max(now, nextFree);
+    }
+
+    @Override
+    public boolean reserve(long start) {
+        refill(start);
+        double spent = Math.min(1, storedTokens);
+        storedTokens -= spent;
+        nextFree = Math.max(nextFree, start) + (long) ((1 - spent) * intervalNanos);
+        return true;
+    }
+
+    // Tokens only build up while nothing is reserved.
+    private void refill(long now) {
+        if (nextFree == Long.MIN_VALUE) {
+            nextFree = now;
+            storedTokens = capacity;
+        } else if (now > nextFree) {
+            storedTokens = Math.min(capacity, storedTokens + (double) (now - nextFree) / intervalNanos);
+            nextFree = now;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package org.btuk.geography.geocoding;
+
+import java.util.Arrays;
+
+/**
+ * Bounded in-memory cache from cell keys to country codes with W-TinyLFU eviction.
+ * <p>
+ * New entries enter a small LRU window. Entries leaving the window only make it into the main space if the
+ * {@link FrequencySketch} says they are used more often than the entry they would replace. The main space is a
+ * segmented LRU, entries that are hit again move from probation to the protected segment.
+ * <p>
+ * Entries live in primitive arrays linked by index, the arrays grow on demand up to the maximum size.
+ */
+final class WTinyLfuCache {
+
+    // Approximate heap cost of one entry: node arrays and the index, plus up to two sketch longs, as the sketch table
+    // is rounded up to a power of two.
+    static final int BYTES_PER_ENTRY = 64;
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+    private static final int NIL = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int mainMaximum;
+    private final int protectedMaximum;
+    private final FrequencySketch sketch;
+
+    private final int[] heads = {NIL, NIL, NIL};
+    private final int[] tails = {NIL, NIL, NIL};
+    private final int[] sizes = new int[3];
+
+    private long[] keys;
+    private short[] values;
+    private int[] previous;
+    private int[] next;
+    private byte[] queues;
+    private int allocated;
+    private int freeHead = NIL;
+
+    // Linear probing index from key to node + 1, 0 marks an empty slot.
+    private long[] indexKeys;
+    private int[] indexNodes;
+    private int indexMask;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    WTinyLfuCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be at least 1");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.mainMaximum = maximumSize - windowMaximum;
+        this.protectedMaximum = (int) (mainMaximum * 0.8);
+        this.sketch = new FrequencySketch(maximumSize);
+
+        int capacity = Math.min(maximumSize, INITIAL_CAPACITY);
+        this.keys = new long[capacity];
+        this.values = new short[capacity];
+        this.previous = new int[capacity];
+        this.next = new int[capacity];
+        this.queues = new byte[capacity];
+
+        int indexCapacity = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.indexKeys = new long[indexCapacity];
+        this.indexNodes = new int[indexCapacity];
+        this.indexMask = indexCapacity - 1;
+    }
+
+    /**
+     * Create a cache that holds roughly as many entries as fit in a heap budget, including its frequency sketch.
+     *
+     * @param maximumBytes the heap budget in bytes
+     * @return the cache
+     */
+    static WTinyLfuCache withMaximumBytes(long maximumBytes) {
+        return new WTinyLfuCache(Math.clamp(maximumBytes / BYTES_PER_ENTRY, 1, Integer.MAX_VALUE - 8));
+    }
+
+    /**
+     * Get a country code, recording the access.
+     *
+     * @param key the cell key
+     * @return the country code, or {@link CountryCodes#NONE} if the key is not cached
+     */
+    synchronized short get(long key) {
+        sketch.increment(key);
+        int node = find(key);
+        if (node == NIL) {
+            misses++;
+            return CountryCodes.NONE;
+        }
+        hits++;
+        onAccess(node);
+        return values[node];
+    }
+
+    /**
+     * Put a country code, evicting an entry if the cache is full.
+     *
+     * @param key  the cell key
+     * @param code the country code
+     */
+    synchronized void put(long key, short code) {
+        int node = find(key);
+        if (node != NIL) {
+            values[node] = code;
+            sketch.increment(key);
+            onAccess(node);
+            return;
+        }
+
+        node = allocate();
+        keys[node] = key;
+        values[node] = code;
+        link(WINDOW, node);
+        indexPut(key, node);
+        sketch.increment(key);
+
+        if (sizes[WINDOW] > windowMaximum) {
+            int candidate = heads[WINDOW];
+            unlink(candidate);
+            link(PROBATION, candidate);
+
+            if (sizes[PROBATION] + sizes[PROTECTED] > mainMaximum) {
+                // The admission filter: keep whichever of the two is used more often.
+                int victim = heads[PROBATION];
+                if (victim != candidate && sketch.frequency(keys[candidate]) > sketch.frequency(keys[victim])) {
+                    evict(victim);
+                } else {
+                    evict(candidate);
+                }
+            }
+        }
+    }
+
+    synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, sizes[WINDOW] + sizes[PROBATION] + sizes[PROTECTED], maximumSize);
+    }
+
+    private void onAccess(int node) {
+        switch (queues[node]) {
+            case WINDOW, PROTECTED -> {
+                byte queue = queues[node];
+                unlink(node);
+                link(queue, node);
+            }
+            case PROBATION -> {
+                unlink(node);
+                link(PROTECTED, node);
+                if (sizes[PROTECTED] > protectedMaximum) {
+                    int demoted = heads[PROTECTED];
+                    unlink(demoted);
+                    link(PROBATION, demoted);
+                }
+            }
+            default -> throw new IllegalStateException("Unknown queue " + queues[node]);
+        }
+    }
+
+    private void evict(int node) {
+        unlink(node);
+        indexRemove(keys[node]);
+        next[node] = freeHead;
+        freeHead = node;
+        evictions++;
+    }
+
+    private int allocate() {
+        if (freeHead != NIL) {
+            int node = freeHead;
+            freeHead = next[node];
+            return node;
+        }
+        if (allocated == keys.length) {
+            grow();
+        }
+        return allocated++;
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min((long) keys.length * 2, maximumSize + 1L);
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+        next = Arrays.copyOf(next, capacity);
+        queues = Arrays.copyOf(queues, capacity);
+
+        if (capacity * 2L > indexKeys.length) {
+            long[] oldKeys = indexKeys;
+            int[] oldNodes = indexNodes;
+            int indexCapacity = indexKeys.length * 2;
+            indexKeys = new long[indexCapacity];
+            indexNodes = new int[indexCapacity];
+            indexMask = indexCapacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldNodes[i] != 0) {
+                    indexPut(oldKeys[i], oldNodes[i] - 1);
+                }
+            }
+        }
+    }
+
+    private void link(byte queue, int node) {
+        queues[node] = queue;
+        previous[node] = tails[queue];
+        next[node] = NIL;
+        if (tails[queue] == NIL) {
+            heads[queue] = node;
+        } else {
+            next[tails[queue]] = node;
+        }
+        tails[queue] = node;
+        sizes[queue]++;
+    }
+
+    private void unlink(int node) {
+        byte queue = queues[node];
+        if (previous[node] == NIL) {
+            heads[queue] = next[node];
+        } else {
+            next[previous[node]] = next[node];
+        }
+        if (next[node] == NIL) {
+            tails[queue] = previous[node];
+        } else {
+            previous[next[node]] = previous[node];
+        }
+        sizes[queue]--;
+    }
+
+    private int find(long key) {
+        for (int slot = mix(key) & indexMask; ; slot = (slot + 1) & indexMask) {
+            int node = indexNodes[slot];
+            if (node == 0) {
+                return NIL;
+            }
+            if (indexKeys[slot] == key) {
+                return node - 1;
+            }
+        }
+    }
+
+    private void indexPut(long key, int node) {
+        int slot = mix(key) & indexMask;
+        while (indexNodes[slot] != 0) {
+            slot = (slot + 1) & indexMask;
+        }
+        indexKeys[slot] = key;
+        indexNodes[slot] = node + 1;
+    }
+
+    // Backward shift deletion, so lookups never need tombstones.
+    private void indexRemove(long key) {
+        int slot = mix(key) & indexMask;
+        while (indexKeys[slot] != key || indexNodes[slot] == 0) {
+            slot = (slot + 1) & indexMask;
+        }
+        int next = slot;
+        while (true) {
+            next = (next + 1) & indexMask;
+            if (indexNodes[next] == 0) {
+                break;
+            }
+            int home = mix(indexKeys[next]) & indexMask;
+            boolean movable = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+            if (movable) {
+                indexKeys[slot] = indexKeys[next];
+                indexNodes[slot] = indexNodes[next];
+                slot = next;
+            }
+        }
+        indexNodes[slot] = 0;
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
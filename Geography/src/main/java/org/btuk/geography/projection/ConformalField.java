@@ -0,0 +1,176 @@
+package org.btuk.geography.projection;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The conformal correction of the Airocean triangles, a vector field sampled on a triangular grid.
+ * <p>
+ * Positions are in the unit triangle with corners (0, 0), (1, 0) and (0.5, √3 / 2). The field maps a position of the
+ * conformal projection to the position of the same point in the plain Dymaxion triangle, interpolating linearly within
+ * the triangles of the grid. The other direction is solved with Newton's method.
+ * <p>
+ * The parts of faces that are cut and moved are converted in the turned frame of the face they are moved to, so the
+ * field must have the symmetry of the triangle, as the table of Terra++ has.
+ */
+final class ConformalField {
+
+    static final int SIDE_LENGTH = 256;
+
+    private static final double ROOT3 = Math.sqrt(3);
+    // The table is stored for a triangle of a different size.
+    private static final double VECTOR_SCALE_FACTOR = 1 / 1.1473979730192934;
+    private static final int NEWTON_ITERATIONS = 5;
+
+    // Indexed [u][v] with u + v <= SIDE_LENGTH, grid point (u, v) is at ((u + v / 2) / SIDE_LENGTH, √3 / 2 * v / SIDE_LENGTH).
+    private final double[][] fieldX;
+    private final double[][] fieldY;
+
+    ConformalField(double[][] fieldX, double[][] fieldY) {
+        if (fieldX.length != SIDE_LENGTH + 1 || fieldY.length != SIDE_LENGTH + 1) {
+            throw new IllegalArgumentException("The field must have " + (SIDE_LENGTH + 1) + " rows");
+        }
+        for (int u = 0; u <= SIDE_LENGTH; u++) {
+            if (fieldX[u].length != SIDE_LENGTH + 1 - u || fieldY[u].length != SIDE_LENGTH + 1 - u) {
+                throw new IllegalArgumentException("Row " + u + " of the field must have " + (SIDE_LENGTH + 1 - u) + " points");
+            }
+        }
+        this.fieldX = fieldX;
+        this.fieldY = fieldY;
+    }
+
+    /**
+     * Read the table of Terra++, one {@code {x, y}} vector per line, the grid points with the same v one after another.
+     *
+     * @param inputStream the table, it is not closed
+     * @return the field
+     * @throws IOException if the table could not be read or is incomplete
+     */
+    static ConformalField read(InputStream inputStream) throws IOException {
+        double[][] fieldX = new double[SIDE_LENGTH + 1][];
+        double[][] fieldY = new double[SIDE_LENGTH + 1][];
+        for (int u = 0; u <= SIDE_LENGTH; u++) {
+            fieldX[u] = new double[SIDE_LENGTH + 1 - u];
+            fieldY[u] = new double[SIDE_LENGTH + 1 - u];
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.US_ASCII));
+        for (int v = 0; v <= SIDE_LENGTH; v++) {
+            for (int u = 0; u <= SIDE_LENGTH - v; u++) {
+                String line;
+                do {
+                    line = reader.readLine();
+                    if (line == null) {
+                        throw new IOException("The conformal table ends before grid point u=" + u + ", v=" + v);
+                    }
+                    line = line.replaceAll("[{},]", " ").strip();
+                } while (line.isEmpty());
+
+                String[] values = line.split("\\s+");
+                if (values.length != 2) {
+                    throw new IOException("Invalid conformal table line for grid point u=" + u + ", v=" + v + ": " + line);
+                }
+                try {
+                    fieldX[u][v] = Double.parseDouble(values[0]) * VECTOR_SCALE_FACTOR;
+                    fieldY[u][v] = Double.parseDouble(values[1]) * VECTOR_SCALE_FACTOR;
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid conformal table line for grid point u=" + u + ", v=" + v + ": " + line, e);
+                }
+            }
+        }
+        return new ConformalField(fieldX, fieldY);
+    }
+
+    /**
+     * Get the Dymaxion position of a conformal position.
+     *
+     * @param x   the conformal X, in the unit triangle
+     * @param y   the conformal Y, in the unit triangle
+     * @param out receives the Dymaxion X at index 0 and Y at index 1
+     */
+    void toDymaxion(double x, double y, double[] out) {
+        double u = (x - y / ROOT3) * SIDE_LENGTH;
+        double v = 2 * y / ROOT3 * SIDE_LENGTH;
+        int u1 = Math.clamp((long) Math.floor(u), 0, SIDE_LENGTH - 1);
+        int v1 = Math.clamp((long) Math.floor(v), 0, SIDE_LENGTH - 1 - u1);
+        double fu = u - u1;
+        double fv = v - v1;
+
+        if (isLowerTriangle(u1, v1, fu, fv)) {
+            out[0] = fieldX[u1][v1] + fu * (fieldX[u1 + 1][v1] - fieldX[u1][v1]) + fv * (fieldX[u1][v1 + 1] - fieldX[u1][v1]);
+            out[1] = fieldY[u1][v1] + fu * (fieldY[u1 + 1][v1] - fieldY[u1][v1]) + fv * (fieldY[u1][v1 + 1] - fieldY[u1][v1]);
+        } else {
+            out[0] = fieldX[u1 + 1][v1 + 1] - (1 - fu) * (fieldX[u1 + 1][v1 + 1] - fieldX[u1][v1 + 1])
+                    - (1 - fv) * (fieldX[u1 + 1][v1 + 1] - fieldX[u1 + 1][v1]);
+            out[1] = fieldY[u1 + 1][v1 + 1] - (1 - fu) * (fieldY[u1 + 1][v1 + 1] - fieldY[u1][v1 + 1])
+                    - (1 - fv) * (fieldY[u1 + 1][v1 + 1] - fieldY[u1 + 1][v1]);
+        }
+    }
+
+    /**
+     * Get the conformal position of a Dymaxion position.
+     *
+     * @param dymaxionX the Dymaxion X
+     * @param dymaxionY the Dymaxion Y
+     * @param guessX    the conformal X to start from
+     * @param guessY    the conformal Y to start from
+     * @param out       receives the conformal X at index 0 and Y at index 1
+     */
+    void toConformal(double dymaxionX, double dymaxionY, double guessX, double guessY, double[] out) {
+        double x = guessX;
+        double y = guessY;
+        for (int i = 0; i < NEWTON_ITERATIONS; i++) {
+            double u = (x - y / ROOT3) * SIDE_LENGTH;
+            double v = 2 * y / ROOT3 * SIDE_LENGTH;
+            int u1 = Math.clamp((long) Math.floor(u), 0, SIDE_LENGTH - 1);
+            int v1 = Math.clamp((long) Math.floor(v), 0, SIDE_LENGTH - 1 - u1);
+            double fu = u - u1;
+            double fv = v - v1;
+
+            // The field and its derivatives by u and v within the grid triangle.
+            double fx;
+            double fy;
+            double dxdu;
+            double dxdv;
+            double dydu;
+            double dydv;
+            if (isLowerTriangle(u1, v1, fu, fv)) {
+                dxdu = fieldX[u1 + 1][v1] - fieldX[u1][v1];
+                dxdv = fieldX[u1][v1 + 1] - fieldX[u1][v1];
+                dydu = fieldY[u1 + 1][v1] - fieldY[u1][v1];
+                dydv = fieldY[u1][v1 + 1] - fieldY[u1][v1];
+                fx = fieldX[u1][v1] + fu * dxdu + fv * dxdv;
+                fy = fieldY[u1][v1] + fu * dydu + fv * dydv;
+            } else {
+                dxdu = fieldX[u1 + 1][v1 + 1] - fieldX[u1][v1 + 1];
+                dxdv = fieldX[u1 + 1][v1 + 1] - fieldX[u1 + 1][v1];
+                dydu = fieldY[u1 + 1][v1 + 1] - fieldY[u1][v1 + 1];
+                dydv = fieldY[u1 + 1][v1 + 1] - fieldY[u1 + 1][v1];
+                fx = fieldX[u1 + 1][v1 + 1] - (1 - fu) * dxdu - (1 - fv) * dxdv;
+                fy = fieldY[u1 + 1][v1 + 1] - (1 - fu) * dydu - (1 - fv) * dydv;
+            }
+
+            // The Jacobian by x and y, u = (x - y / √3) * n and v = 2y / √3 * n.
+            double dxdx = dxdu * SIDE_LENGTH;
+            double dxdy = (2 * dxdv - dxdu) / ROOT3 * SIDE_LENGTH;
+            double dydx = dydu * SIDE_LENGTH;
+            double dydy = (2 * dydv - dydu) / ROOT3 * SIDE_LENGTH;
+            double determinant = dxdx * dydy - dxdy * dydx;
+
+            double errorX = fx - dymaxionX;
+            double errorY = fy - dymaxionY;
+            x -= (dydy * errorX - dxdy * errorY) / determinant;
+            y -= (dxdx * errorY - dydx * errorX) / determinant;
+        }
+        out[0] = x;
+        out[1] = y;
+    }
+
+    // Every grid cell is split into a lower and an upper triangle, the last cell of a row only has the lower one.
+    private static boolean isLowerTriangle(int u1, int v1, double fu, double fv) {
+        return fu + fv <= 1 || u1 + v1 == SIDE_LENGTH - 1;
+    }
+}
@@ -0,0 +1,62 @@
+package org.btuk.geography.projection;
+
+/**
+ * Plate carrée: latitude and longitude map linearly to block Z and X.
+ * <p>
+ * Only fit for small areas, distances east-west are stretched by {@code 1 / cos(latitude)}. The conversion is a pure
+ * scale and offset, so the batch loops are vectorised by the JIT.
+ */
+public final class EquirectangularProjection implements MapProjection {
+
+    private final double blocksPerDegree;
+    private final double degreesPerBlock;
+    private final double originX;
+    private final double originZ;
+
+    /**
+     * @param blocksPerDegree the number of blocks per degree, in both directions
+     * @param originX         the block X of longitude 0
+     * @param originZ         the block Z of latitude 0
+     */
+    public EquirectangularProjection(double blocksPerDegree, double originX, double originZ) {
+        if (!(blocksPerDegree > 0)) {
+            throw new IllegalArgumentException("The scale must be positive");
+        }
+        this.blocksPerDegree = blocksPerDegree;
+        this.degreesPerBlock = 1 / blocksPerDegree;
+        this.originX = originX;
+        this.originZ = originZ;
+    }
+
+    @Override
+    public void toGeo(double x, double z, double[] out) {
+        out[0] = (originZ - z) * degreesPerBlock;
+        out[1] = (x - originX) * degreesPerBlock;
+    }
+
+    @Override
+    public void fromGeo(double latitude, double longitude, double[] out) {
+        out[0] = originX + longitude * blocksPerDegree;
+        out[1] = originZ - latitude * blocksPerDegree;
+    }
+
+    @Override
+    public void toGeo(double[] x, double[] z, double[] latitudes, double[] longitudes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            longitudes[i] = (x[i] - originX) * degreesPerBlock;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            latitudes[i] = (originZ - z[i]) * degreesPerBlock;
+        }
+    }
+
+    @Override
+    public void fromGeo(double[] latitudes, double[] longitudes, double[] x, double[] z, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = originX + longitudes[i] * blocksPerDegree;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            z[i] = originZ - latitudes[i] * blocksPerDegree;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.btuk.geography.projection;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.CoordinateBuffer;
+
+/**
+ * Conversion between Minecraft block coordinates and geographic coordinates.
+ * <p>
+ * Block X grows to the east and block Z to the south, as in Minecraft. The single point methods write into an array
+ * owned by the caller, so converting in a loop allocates nothing. The batch methods work on primitive arrays and are
+ * the fast path for bulk conversions.
+ */
+public interface MapProjection {
+
+    /**
+     * Convert a block position to a geographic coordinate.
+     *
+     * @param x   the block X
+     * @param z   the block Z
+     * @param out receives the latitude at index 0 and the longitude at index 1, in degrees
+     */
+    void toGeo(double x, double z, double[] out);
+
+    /**
+     * Convert a geographic coordinate to a block position.
+     *
+     * @param latitude  the latitude in degrees
+     * @param longitude the longitude in degrees
+     * @param out       receives the block X at index 0 and the block Z at index 1
+     */
+    void fromGeo(double latitude, double longitude, double[] out);
+
+    /**
+     * Convert block positions to geographic coordinates.
+     *
+     * @param x          the block X values
+     * @param z          the block Z values
+     * @param latitudes  receives the latitudes in degrees, may be the same array as {@code z}
+     * @param longitudes receives the longitudes in degrees, may be the same array as {@code x}
+     * @param offset     the index of the first point
+     * @param length     the number of points
+     */
+    default void toGeo(double[] x, double[] z, double[] latitudes, double[] longitudes, int offset, int length) {
+        double[] point = new double[2];
+        for (int i = offset; i < offset + length; i++) {
+            toGeo(x[i], z[i], point);
+            latitudes[i] = point[0];
+            longitudes[i] = point[1];
+        }
+    }
+
+    /**
+     * Convert geographic coordinates to block positions.
+     *
+     * @param latitudes  the latitudes in degrees
+     * @param longitudes the longitudes in degrees
+     * @param x          receives the block X values, may be the same array as {@code longitudes}
+     * @param z          receives the block Z values, may be the same array as {@code latitudes}
+     * @param offset     the index of the first point
+     * @param length     the number of points
+     */
+    default void fromGeo(double[] latitudes, double[] longitudes, double[] x, double[] z, int offset, int length) {
+        double[] point = new double[2];
+        for (int i = offset; i < offset + length; i++) {
+            fromGeo(latitudes[i], longitudes[i], point);
+            x[i] = point[0];
+            z[i] = point[1];
+        }
+    }
+
+    /**
+     * Convert a buffer of coordinates to block positions.
+     *
+     * @param coordinates the coordinates
+     * @param x           receives the block X of every coordinate, at the index of the coordinate
+     * @param z           receives the block Z of every coordinate, at the index of the coordinate
+     */
+    default void fromGeo(CoordinateBuffer coordinates, double[] x, double[] z) {
+        fromGeo(coordinates.getLatitudes(), coordinates.getLongitudes(), x, z, 0, coordinates.size());
+    }
+
+    /**
+     * Convert block positions to a buffer of coordinates.
+     *
+     * @param x      the block X values
+     * @param z      the block Z values
+     * @param length the number of points, starting at index 0
+     * @return a buffer with the coordinate of every point, at the index of the point
+     */
+    default CoordinateBuffer toGeo(double[] x, double[] z, int length) {
+        double[] latitudes = new double[length];
+        double[] longitudes = new double[length];
+        toGeo(x, z, latitudes, longitudes, 0, length);
+        return CoordinateBuffer.wrap(latitudes, longitudes);
+    }
+
+    /**
+     * Convert a block position to a geographic coordinate.
+     *
+     * @param x the block X
+     * @param z the block Z
+     * @return the coordinate
+     */
+    default Coordinate toCoordinate(double x, double z) {
+        double[] point = new double[2];
+        toGeo(x, z, point);
+        return new Coordinate(point[0], point[1]);
+    }
+}
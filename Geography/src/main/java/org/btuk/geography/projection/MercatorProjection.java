@@ -0,0 +1,78 @@
+package org.btuk.geography.projection;
+
+/**
+ * Spherical Mercator, as used by web maps (EPSG:3857).
+ * <p>
+ * The projection is conformal, so shapes are right at any latitude and only the scale changes, by
+ * {@code 1 / cos(latitude)}. At a scale of one block per metre, buildings near the equator are built 1:1.
+ * Latitudes are clamped to ±85.05113°, where the projected map is square.
+ */
+public final class MercatorProjection implements MapProjection {
+
+    public static final double EARTH_RADIUS_METRES = 6_378_137;
+    public static final double MAXIMUM_LATITUDE = 85.05112877980659;
+
+    private final double blocksPerRadian;
+    private final double radiansPerBlock;
+    private final double originX;
+    private final double originZ;
+
+    /**
+     * @param blocksPerMetre the number of blocks per projected metre
+     * @param originX        the block X of longitude 0
+     * @param originZ        the block Z of the equator
+     */
+    public MercatorProjection(double blocksPerMetre, double originX, double originZ) {
+        if (!(blocksPerMetre > 0)) {
+            throw new IllegalArgumentException("The scale must be positive");
+        }
+        this.blocksPerRadian = EARTH_RADIUS_METRES * blocksPerMetre;
+        this.radiansPerBlock = 1 / blocksPerRadian;
+        this.originX = originX;
+        this.originZ = originZ;
+    }
+
+    @Override
+    public void toGeo(double x, double z, double[] out) {
+        out[0] = latitude(z);
+        out[1] = Math.toDegrees((x - originX) * radiansPerBlock);
+    }
+
+    @Override
+    public void fromGeo(double latitude, double longitude, double[] out) {
+        out[0] = originX + Math.toRadians(longitude) * blocksPerRadian;
+        out[1] = z(latitude);
+    }
+
+    // X and Z are independent, the longitude loop is vectorised and only the latitude loop pays for the transcendentals.
+    @Override
+    public void toGeo(double[] x, double[] z, double[] latitudes, double[] longitudes, int offset, int length) {
+        double degreesPerBlock = Math.toDegrees(radiansPerBlock);
+        for (int i = offset; i < offset + length; i++) {
+            longitudes[i] = (x[i] - originX) * degreesPerBlock;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            latitudes[i] = latitude(z[i]);
+        }
+    }
+
+    @Override
+    public void fromGeo(double[] latitudes, double[] longitudes, double[] x, double[] z, int offset, int length) {
+        double blocksPerDegree = Math.toRadians(blocksPerRadian);
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = originX + longitudes[i] * blocksPerDegree;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            z[i] = z(latitudes[i]);
+        }
+    }
+
+    private double latitude(double z) {
+        return Math.toDegrees(2 * Math.atan(Math.exp((originZ - z) * radiansPerBlock)) - Math.PI / 2);
+    }
+
+    private double z(double latitude) {
+        double clamped = Math.toRadians(Math.clamp(latitude, -MAXIMUM_LATITUDE, MAXIMUM_LATITUDE));
+        return originZ - Math.log(Math.tan(Math.PI / 4 + clamped / 2)) * blocksPerRadian;
+    }
+}
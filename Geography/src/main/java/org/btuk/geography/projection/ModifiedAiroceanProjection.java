@@ -0,0 +1,415 @@
+package org.btuk.geography.projection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The conformal Airocean projection with the modification of Build The Earth, scaled to blocks, following the
+ * implementation in Terra++.
+ * <p>
+ * The globe is projected onto the 20 faces of an icosahedron, unfolded into Buckminster Fuller's Dymaxion layout and
+ * made conformal by a correction table. Two faces are cut to keep Australia whole. BTE then rotates the Eurasian half
+ * of the map by 150° around the Bering Strait, so Eurasia and America share one coastline instead of being split by the
+ * Pacific. At {@link #BTE_SCALE} the Earth is built at roughly 1:1.
+ * <p>
+ * The correction table is {@code conformal.txt} of Terra++, it is not bundled and has to be given to
+ * {@link #load(InputStream)}. Block positions outside the map convert to NaN.
+ * <p>
+ * The block positions have not been compared with the output of Terra++ yet, so they may not match those of a BTE
+ * server.
+ */
+public final class ModifiedAiroceanProjection implements MapProjection {
+
+    /**
+     * The number of blocks per unit of the projection used by Build The Earth.
+     */
+    public static final double BTE_SCALE = 7318261.522857145;
+
+    private static final double ROOT3 = Math.sqrt(3);
+    // Side of a face in the projection, the arc between two vertices of the icosahedron.
+    private static final double ARC = 2 * Math.asin(Math.sqrt(5 - Math.sqrt(5)) / Math.sqrt(10));
+    // Distance of the faces from the centre of the unit sphere.
+    private static final double Z = Math.sqrt(5 + 2 * Math.sqrt(5)) / Math.sqrt(15);
+    private static final double EL6 = Math.sqrt(8) / Math.sqrt(5 + Math.sqrt(5)) / 6;
+    private static final double DVE = Math.sqrt(3 + Math.sqrt(5)) / Math.sqrt(5 + Math.sqrt(5));
+    private static final int NEWTON_ITERATIONS = 6;
+
+    // Longitude and latitude of the vertices of the icosahedron, in degrees.
+    private static final double[][] VERTICES = {
+            {10.536199, 64.7}, {-5.245390, 2.300882}, {58.157706, 10.447378}, {122.3, 39.1},
+            {-143.478490, 50.103201}, {-67.132330, 23.717925}, {36.521510, -50.103200}, {112.867673, -23.717930},
+            {174.754610, -2.300882}, {-121.842290, -10.447350}, {-57.7, -39.1}, {-169.463800, -64.7}
+    };
+
+    // Vertices of every face, the first one points to the top of the face before it is flipped. Faces 20 and 21 are
+    // the parts of faces 14 and 15 that are cut off, rotated by 60°.
+    private static final int[][] FACE_VERTICES = {
+            {2, 1, 6}, {1, 0, 2}, {0, 1, 5}, {1, 5, 10}, {1, 6, 10}, {7, 2, 6}, {2, 3, 7}, {3, 0, 2}, {0, 3, 4},
+            {4, 0, 5}, {5, 4, 9}, {9, 5, 10}, {10, 9, 11}, {11, 6, 10}, {6, 7, 11}, {8, 3, 7}, {8, 3, 4}, {8, 4, 9},
+            {9, 8, 11}, {7, 8, 11}, {11, 6, 7}, {3, 7, 8}
+    };
+
+    // Centre of every face in the unfolded map, in units of ARC / 2 and ARC * √3 / 12.
+    private static final int[][] FACE_CENTRES = {
+            {-3, 7}, {-2, 5}, {-1, 7}, {2, 5}, {4, 5},
+            {-4, 1}, {-3, -1}, {-2, 1}, {-1, -1}, {0, 1}, {1, -1}, {2, 1}, {3, -1}, {4, 1}, {5, -1},
+            {-3, -5}, {-1, -5}, {1, -5}, {2, -7}, {-4, -7}, {-5, -5}, {-2, -7}
+    };
+
+    private static final int FACES = 20;
+    private static final int GRID_COLUMNS = 11;
+
+    // Faces of the unfolded map pointing downwards, they are rotated by 180°.
+    private static final boolean[] FLIPPED = new boolean[FACE_VERTICES.length];
+    private static final double[] CENTRE_X = new double[FACE_VERTICES.length];
+    private static final double[] CENTRE_Y = new double[FACE_VERTICES.length];
+    // Unit vectors to the centres of the faces of the icosahedron.
+    private static final double[][] CENTROIDS = new double[FACE_VERTICES.length][];
+    // Rotation of every face to the top of the sphere with its first vertex pointing up, row major, and the inverse.
+    private static final double[][] ROTATIONS = new double[FACE_VERTICES.length][];
+    private static final double[][] INVERSE_ROTATIONS = new double[FACE_VERTICES.length][];
+    // The face in every triangle of the unfolded map, three rows of GRID_COLUMNS triangles, -1 where there is none.
+    private static final int[] FACE_GRID = new int[3 * GRID_COLUMNS];
+
+    // BTE's modification.
+    private static final double ARCTIC_Y = -0.2;
+    private static final double BERING_X = -0.3420420960118339;
+    private static final double BERING_Y = -0.322211064085279;
+    private static final double ALEUTIAN_Y = -0.5000446805492526;
+    private static final double ALEUTIAN_XL = -0.5149231279757507;
+    private static final double ALEUTIAN_XR = -0.45;
+    private static final double ARCTIC_M = (ARCTIC_Y - ROOT3 * ARC / 4) / (BERING_X - -0.5 * ARC);
+    private static final double ARCTIC_B = ARCTIC_Y - ARCTIC_M * BERING_X;
+    private static final double ALEUTIAN_M = (BERING_Y - ALEUTIAN_Y) / (BERING_X - ALEUTIAN_XR);
+    private static final double ALEUTIAN_B = BERING_Y - ALEUTIAN_M * BERING_X;
+    private static final double COS_THETA = Math.cos(Math.toRadians(-150));
+    private static final double SIN_THETA = Math.sin(Math.toRadians(-150));
+
+    static {
+        double[][] vertices = new double[VERTICES.length][];
+        for (int i = 0; i < VERTICES.length; i++) {
+            vertices[i] = toCartesian(Math.toRadians(VERTICES[i][0]), Math.toRadians(90 - VERTICES[i][1]));
+        }
+
+        for (int face = 0; face < FACE_VERTICES.length; face++) {
+            double[] a = vertices[FACE_VERTICES[face][0]];
+            double[] b = vertices[FACE_VERTICES[face][1]];
+            double[] c = vertices[FACE_VERTICES[face][2]];
+            double x = a[0] + b[0] + c[0];
+            double y = a[1] + b[1] + c[1];
+            double z = a[2] + b[2] + c[2];
+            double length = Math.sqrt(x * x + y * y + z * z);
+            CENTROIDS[face] = new double[]{x / length, y / length, z / length};
+
+            // Rotate the centroid to the pole, then turn the face so its first vertex points along +Y.
+            double longitude = Math.atan2(y, x);
+            double colatitude = Math.atan2(Math.hypot(x, y), z);
+            double vertexLongitude = Math.toRadians(VERTICES[FACE_VERTICES[face][0]][0]) - longitude;
+            double vertexColatitude = Math.toRadians(90 - VERTICES[FACE_VERTICES[face][0]][1]);
+            double[] vertex = toCartesian(vertexLongitude, vertexColatitude);
+            double turnedX = vertex[0] * Math.cos(colatitude) - vertex[2] * Math.sin(colatitude);
+            double turn = Math.PI / 2 - Math.atan2(vertex[1], turnedX);
+            ROTATIONS[face] = zyzRotation(-longitude, -colatitude, turn);
+            INVERSE_ROTATIONS[face] = transpose(ROTATIONS[face]);
+
+            CENTRE_X[face] = FACE_CENTRES[face][0] * ARC / 2;
+            CENTRE_Y[face] = FACE_CENTRES[face][1] * ARC * ROOT3 / 12;
+            FLIPPED[face] = switch (FACE_CENTRES[face][1]) {
+                case 7, 1, -5 -> true;
+                default -> false;
+            };
+        }
+
+        Arrays.fill(FACE_GRID, -1);
+        for (int face = 0; face < FACE_VERTICES.length; face++) {
+            FACE_GRID[findTriangle(CENTRE_X[face], CENTRE_Y[face])] = face;
+        }
+    }
+
+    private final ConformalField conformalField;
+    private final double scale;
+
+    ModifiedAiroceanProjection(ConformalField conformalField, double scale) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("The scale must be positive");
+        }
+        this.conformalField = conformalField;
+        this.scale = scale;
+    }
+
+    /**
+     * Create the projection at the scale of Build The Earth.
+     *
+     * @param conformalTable the correction table of Terra++, {@code conformal.txt}, it is not closed
+     * @return the projection
+     * @throws IOException if the table could not be read or is incomplete
+     */
+    public static ModifiedAiroceanProjection load(InputStream conformalTable) throws IOException {
+        return load(conformalTable, BTE_SCALE);
+    }
+
+    /**
+     * Create the projection at a scale of choice.
+     *
+     * @param conformalTable the correction table of Terra++, {@code conformal.txt}, it is not closed
+     * @param blocksPerUnit  the number of blocks per unit of the projection, an edge of the icosahedron is
+     *                       about 1.1 units
+     * @return the projection
+     * @throws IOException if the table could not be read or is incomplete
+     */
+    public static ModifiedAiroceanProjection load(InputStream conformalTable, double blocksPerUnit) throws IOException {
+        return new ModifiedAiroceanProjection(ConformalField.read(conformalTable), blocksPerUnit);
+    }
+
+    @Override
+    public void toGeo(double x, double z, double[] out) {
+        // Undo the scale and the vertical flip, then BTE's rotation.
+        double mapX = z / scale;
+        double mapY = x / scale;
+        boolean eurasia = isRotatedEurasianPart(x / scale, -z / scale);
+        if (eurasia) {
+            double rotatedX = COS_THETA * mapX + SIN_THETA * mapY;
+            mapY = COS_THETA * mapY - SIN_THETA * mapX;
+            mapX = rotatedX - ARC;
+        } else {
+            mapX += ARC;
+        }
+        mapY += 0.75 * ARC * ROOT3;
+        if (eurasia != isEurasianPart(mapX, mapY)) {
+            setOutside(out);
+            return;
+        }
+
+        int triangle = findTriangle(mapX, mapY);
+        int face = triangle < 0 ? -1 : FACE_GRID[triangle];
+        if (face < 0) {
+            setOutside(out);
+            return;
+        }
+        double faceX = mapX - CENTRE_X[face];
+        double faceY = mapY - CENTRE_Y[face];
+        // The parts of faces 14 and 15 that were moved to faces 20 and 21.
+        boolean outside = switch (face) {
+            case 14 -> faceX > 0;
+            case 15 -> faceX > 0 && faceY * ROOT3 < faceX;
+            case 20 -> -faceY * ROOT3 > faceX;
+            case 21 -> faceX < 0 || -faceY * ROOT3 > faceX;
+            default -> false;
+        };
+        if (outside) {
+            setOutside(out);
+            return;
+        }
+        if (FLIPPED[face]) {
+            faceX = -faceX;
+            faceY = -faceY;
+        }
+
+        conformalField.toDymaxion(faceX / ARC + 0.5, faceY / ARC + ROOT3 / 6, out);
+        toSphere(out[0], out[1], INVERSE_ROTATIONS[face], out);
+    }
+
+    @Override
+    public void fromGeo(double latitude, double longitude, double[] out) {
+        double lambda = Math.toRadians(longitude);
+        double phi = Math.toRadians(90 - latitude);
+        double sinPhi = Math.sin(phi);
+        double x = sinPhi * Math.cos(lambda);
+        double y = sinPhi * Math.sin(lambda);
+        double z = Math.cos(phi);
+
+        int face = findFace(x, y, z);
+        double[] rotation = ROTATIONS[face];
+        double rotatedX = rotation[0] * x + rotation[1] * y + rotation[2] * z;
+        double rotatedY = rotation[3] * x + rotation[4] * y + rotation[5] * z;
+        double rotatedZ = rotation[6] * x + rotation[7] * y + rotation[8] * z;
+
+        // Project onto the plane of the face, then into the triangle of the Dymaxion projection and make it conformal.
+        double planeX = Z / rotatedZ * rotatedX;
+        double planeY = Z / rotatedZ * rotatedY;
+        double a = Math.atan((2 * planeY / ROOT3 - EL6) / DVE);
+        double b = Math.atan((planeX - planeY / ROOT3 - EL6) / DVE);
+        double c = Math.atan((-planeX - planeY / ROOT3 - EL6) / DVE);
+        double dymaxionX = 0.5 * (b - c);
+        double dymaxionY = (2 * a - b - c) / (2 * ROOT3);
+        conformalField.toConformal(dymaxionX, dymaxionY, dymaxionX / ARC + 0.5, dymaxionY / ARC + ROOT3 / 6, out);
+        double faceX = (out[0] - 0.5) * ARC;
+        double faceY = (out[1] - ROOT3 / 6) * ARC;
+
+        if (FLIPPED[face]) {
+            faceX = -faceX;
+            faceY = -faceY;
+        }
+        // Move the cut off parts of faces 14 and 15 next to Australia and Japan.
+        if ((face == 14 || face == 15 && faceX > faceY * ROOT3) && faceX > 0) {
+            double rotatedFaceX = 0.5 * faceX - 0.5 * ROOT3 * faceY;
+            faceY = 0.5 * ROOT3 * faceX + 0.5 * faceY;
+            faceX = rotatedFaceX;
+            face += 6;
+        }
+        double mapX = faceX + CENTRE_X[face];
+        double mapY = faceY + CENTRE_Y[face];
+
+        boolean eurasia = isEurasianPart(mapX, mapY);
+        mapY -= 0.75 * ARC * ROOT3;
+        if (eurasia) {
+            mapX += ARC;
+            double rotatedMapX = COS_THETA * mapX - SIN_THETA * mapY;
+            mapY = SIN_THETA * mapX + COS_THETA * mapY;
+            mapX = rotatedMapX;
+        } else {
+            mapX -= ARC;
+        }
+        // The map is turned by 90° and flipped vertically, north is towards negative Z.
+        out[0] = mapY * scale;
+        out[1] = mapX * scale;
+    }
+
+    private static boolean isEurasianPart(double x, double y) {
+        // Everything left of the Bering Strait and above the Aleutian Islands.
+        if (x > 0) {
+            return false;
+        }
+        if (x < -0.5 * ARC) {
+            return true;
+        }
+        if (y > ROOT3 * ARC / 4) {
+            return x < 0;
+        }
+        if (y < ALEUTIAN_Y) {
+            return y < (ALEUTIAN_Y + ALEUTIAN_XL) - x;
+        }
+        if (y > BERING_Y) {
+            return y < ARCTIC_Y ? x < BERING_X : y < ARCTIC_M * x + ARCTIC_B;
+        }
+        return y > ALEUTIAN_M * x + ALEUTIAN_B;
+    }
+
+    // The same split in the rotated map, before the turn by 90°.
+    private static boolean isRotatedEurasianPart(double x, double y) {
+        if (y < 0) {
+            return x > 0;
+        }
+        if (y > ARC / 2) {
+            return x > -ROOT3 * ARC / 2;
+        }
+        return y * -ROOT3 < x;
+    }
+
+    // The index of the triangle of the unfolded map containing a point, or -1 if it is outside the grid.
+    private static int findTriangle(double x, double y) {
+        double scaledX = x / ARC;
+        double scaledY = y / ARC / ROOT3 * 2;
+        if (!(Math.abs(scaledY) <= 1.5)) {
+            return -1;
+        }
+
+        int row;
+        if (scaledY > 0.5) {
+            row = 0;
+            scaledY = 1 - scaledY;
+        } else if (scaledY < -0.5) {
+            row = 2;
+            scaledY = -1 - scaledY;
+        } else {
+            row = 1;
+        }
+        // Within the row, triangles alternate between pointing up and down every half edge.
+        double edge = scaledX + 0.5 * (scaledY + 0.5);
+        double otherEdge = scaledX - 0.5 * (scaledY + 0.5);
+        long column = (long) Math.floor(edge) + (long) Math.floor(otherEdge) + GRID_COLUMNS / 2 + 1;
+        if (column < 0 || column >= GRID_COLUMNS) {
+            return -1;
+        }
+        return row * GRID_COLUMNS + (int) column;
+    }
+
+    // The face whose centroid is nearest to a unit vector.
+    private static int findFace(double x, double y, double z) {
+        int nearest = 0;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+        for (int face = 0; face < FACES; face++) {
+            double[] centroid = CENTROIDS[face];
+            double dx = centroid[0] - x;
+            double dy = centroid[1] - y;
+            double dz = centroid[2] - z;
+            double distance = dx * dx + dy * dy + dz * dz;
+            if (distance < nearestDistance) {
+                nearest = face;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    // Invert the triangle transform of a Dymaxion position with Newton's method and rotate it back onto the sphere.
+    private static void toSphere(double dymaxionX, double dymaxionY, double[] inverseRotation, double[] out) {
+        double planeX = dymaxionX;
+        double planeY = dymaxionY;
+        for (int i = 0; i < NEWTON_ITERATIONS; i++) {
+            double aTan = (2 * planeY / ROOT3 - EL6) / DVE;
+            double bTan = (planeX - planeY / ROOT3 - EL6) / DVE;
+            double cTan = (-planeX - planeY / ROOT3 - EL6) / DVE;
+            double a = Math.atan(aTan);
+            double b = Math.atan(bTan);
+            double c = Math.atan(cTan);
+            double da = 1 / (DVE * (1 + aTan * aTan));
+            double db = 1 / (DVE * (1 + bTan * bTan));
+            double dc = 1 / (DVE * (1 + cTan * cTan));
+
+            double errorX = 0.5 * (b - c) - dymaxionX;
+            double errorY = (2 * a - b - c) / (2 * ROOT3) - dymaxionY;
+            double dxdx = 0.5 * (db + dc);
+            double dxdy = 0.5 * (dc - db) / ROOT3;
+            double dydx = (dc - db) / (2 * ROOT3);
+            double dydy = (4 * da + db + dc) / 6;
+            double determinant = dxdx * dydy - dxdy * dydx;
+            planeX -= (dydy * errorX - dxdy * errorY) / determinant;
+            planeY -= (dxdx * errorY - dydx * errorX) / determinant;
+        }
+
+        double length = Math.sqrt(planeX * planeX + planeY * planeY + Z * Z);
+        double x = planeX / length;
+        double y = planeY / length;
+        double z = Z / length;
+        double sphereX = inverseRotation[0] * x + inverseRotation[1] * y + inverseRotation[2] * z;
+        double sphereY = inverseRotation[3] * x + inverseRotation[4] * y + inverseRotation[5] * z;
+        double sphereZ = inverseRotation[6] * x + inverseRotation[7] * y + inverseRotation[8] * z;
+        out[0] = 90 - Math.toDegrees(Math.atan2(Math.hypot(sphereX, sphereY), sphereZ));
+        out[1] = Math.toDegrees(Math.atan2(sphereY, sphereX));
+    }
+
+    private static void setOutside(double[] out) {
+        out[0] = Double.NaN;
+        out[1] = Double.NaN;
+    }
+
+    private static double[] toCartesian(double longitude, double colatitude) {
+        double sinColatitude = Math.sin(colatitude);
+        return new double[]{sinColatitude * Math.cos(longitude), sinColatitude * Math.sin(longitude), Math.cos(colatitude)};
+    }
+
+    // Rotation by a around Z, then b around Y, then c around Z, row major.
+    private static double[] zyzRotation(double a, double b, double c) {
+        double sinA = Math.sin(a);
+        double cosA = Math.cos(a);
+        double sinB = Math.sin(b);
+        double cosB = Math.cos(b);
+        double sinC = Math.sin(c);
+        double cosC = Math.cos(c);
+        return new double[]{
+                cosA * cosB * cosC - sinC * sinA, -sinA * cosB * cosC - sinC * cosA, cosC * sinB,
+                sinC * cosB * cosA + cosC * sinA, cosC * cosA - sinC * cosB * sinA, sinC * sinB,
+                -sinB * cosA, sinB * sinA, cosB
+        };
+    }
+
+    private static double[] transpose(double[] matrix) {
+        return new double[]{
+                matrix[0], matrix[3], matrix[6],
+                matrix[1], matrix[4], matrix[7],
+                matrix[2], matrix[5], matrix[8]
+        };
+    }
+}
@@ -0,0 +1,150 @@
+package org.btuk.geography.elevation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the {@link ElevationService} on tiny tiles of 3 by 3 samples, half a degree apart.
+ * <p>
+ * Most tiles hold {@code 100 y + 10 x + x y} at row {@code y} and column {@code x}, which bilinear interpolation
+ * reproduces exactly between the samples.
+ */
+class ElevationServiceTest {
+
+    private static final short V = HgtTile.VOID;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void elevationIsInterpolatedBilinearly() throws IOException {
+        tile("N51W001.hgt", surface());
+        ElevationService service = new ElevationService(directory, 4);
+
+        for (double latitude = 51; latitude <= 52; latitude += 0.125) {
+            for (double longitude = -1; longitude <= 0; longitude += 0.125) {
+                // The north and east edges are found from the neighbours, which are missing.
+                assertEquals(surface((52 - latitude) * 2, (longitude + 1) * 2), service.getElevation(latitude, longitude),
+                        1e-9, latitude + ", " + longitude);
+            }
+        }
+    }
+
+    @Test
+    void voidSamplesAreLeftOut() throws IOException {
+        tile("N51W001.hgt",
+                10, V, 30,
+                V, V, V,
+                70, 80, 90);
+        ElevationService service = new ElevationService(directory, 4);
+
+        // The north-west cell has only one sample, the south-west cell two.
+        assertEquals(10, service.getElevation(51.75, -0.75), 1e-9);
+        assertEquals((0.1875 * 70 + 0.5625 * 80) / 0.75, service.getElevation(51.125, -0.625), 1e-9);
+        // A point on a void sample or between two has no data, the samples with no weight don't count.
+        assertTrue(Double.isNaN(service.getElevation(51.5, -0.5)));
+        assertTrue(Double.isNaN(service.getElevation(51.75, -0.5)));
+    }
+
+    @Test
+    void pointsOnSharedEdgesUseTheNeighbourWhereTheTileHasNoData() throws IOException {
+        // The south row and the west column of the tile are void, so only its neighbours have data on those edges.
+        tile("N51W001.hgt",
+                V, 1, 2,
+                V, 3, 4,
+                V, V, V);
+        tile("N50W001.hgt",
+                500, 510, 520,
+                600, 610, 620,
+                700, 710, 720);
+        tile("N51W002.hgt",
+                800, 810, 820,
+                900, 910, 920,
+                V, V, 1020);
+        ElevationService service = new ElevationService(directory, 4);
+
+        assertEquals(505, service.getElevation(51, -0.75), 1e-9);
+        assertEquals(510, service.getElevation(51, -0.5), 1e-9);
+        assertEquals(820, service.getElevation(52, -1), 1e-9);
+        assertEquals(970, service.getElevation(51.25, -1), 1e-9);
+        // The south-west corner is on the edge of three neighbours, the tile to the west is tried first.
+        assertEquals(1020, service.getElevation(51, -1), 1e-9);
+        // The tile to the north is missing, so its south edge is found in the tile.
+        assertEquals(1, service.getElevation(52, -0.5), 1e-9);
+    }
+
+    @Test
+    void longitudesAreWrappedAround() throws IOException {
+        tile("N00W160.hgt", surface());
+        tile("N00W180.hgt", surface());
+        tile("N01E179.hgt", surface());
+        ElevationService service = new ElevationService(directory, 4);
+
+        assertEquals(surface(1.5, 0.5), service.getElevation(0.25, -159.75), 1e-9);
+        assertEquals(surface(1.5, 0.5), service.getElevation(0.25, 200.25), 1e-9);
+        assertEquals(surface(1.5, 0.5), service.getElevation(0.25, -519.75), 1e-9);
+        assertEquals(surface(1, 0), service.getElevation(0.5, 180), 1e-9);
+        assertEquals(surface(1, 1.5), service.getElevation(0.5, 540.75), 1e-9);
+        // 180°W is the east edge of the tile at 179°E, which is found where the tile at 180°W is missing.
+        assertEquals(surface(1, 2), service.getElevation(1.5, -180), 1e-9);
+        assertEquals(surface(1, 2), service.getElevation(1.5, 180), 1e-9);
+        assertEquals(3, service.getOpenTileCount());
+    }
+
+    @Test
+    void coordinatesOutsideOfTheWorldHaveNoData() throws IOException {
+        tile("N00E000.hgt", surface());
+        tile("S90E000.hgt", surface());
+        ElevationService service = new ElevationService(directory, 4);
+
+        assertTrue(Double.isNaN(service.getElevation(-95, 0)));
+        assertTrue(Double.isNaN(service.getElevation(-90.5, 0.5)));
+        assertTrue(Double.isNaN(service.getElevation(90, 0)));
+        assertTrue(Double.isNaN(service.getElevation(95, 0)));
+        assertTrue(Double.isNaN(service.getElevation(Double.NaN, 0.5)));
+        assertTrue(Double.isNaN(service.getElevation(0.5, Double.POSITIVE_INFINITY)));
+        assertEquals(surface(2, 1), service.getElevation(-90, 0.5), 1e-9);
+
+        // An invalid coordinate between two in the same tile must not leave the tile unused for the second.
+        double[] latitudes = {0.5, Double.NaN, 0.25, -95};
+        double[] longitudes = {0.5, 0.5, 0.25, 0.5};
+        double[] elevations = new double[4];
+        service.getElevations(latitudes, longitudes, elevations, 0, 4);
+        assertEquals(surface(1, 1), elevations[0], 1e-9);
+        assertTrue(Double.isNaN(elevations[1]));
+        assertEquals(surface(1.5, 0.5), elevations[2], 1e-9);
+        assertTrue(Double.isNaN(elevations[3]));
+    }
+
+    // The samples of 100 y + 10 x + x y.
+    private static int[] surface() {
+        int[] samples = new int[9];
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 3; x++) {
+                samples[y * 3 + x] = 100 * y + 10 * x + x * y;
+            }
+        }
+        return samples;
+    }
+
+    // The value of 100 y + 10 x + x y between the samples, y counts rows down from the north edge.
+    private static double surface(double y, double x) {
+        return 100 * y + 10 * x + x * y;
+    }
+
+    private void tile(String name, int... samples) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2);
+        for (int sample : samples) {
+            buffer.putShort((short) sample);
+        }
+        Files.write(directory.resolve(name), buffer.array());
+    }
+}
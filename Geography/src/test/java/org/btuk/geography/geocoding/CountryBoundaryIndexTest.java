@@ -0,0 +1,82 @@
+package org.btuk.geography.geocoding;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks the {@link CountryBoundaryIndex} on {@code boundaries.geojson}, a fixture of synthetic countries.
+ * <p>
+ * AA is the square from 0°E to 4°E and 50°N to 54°N, with a hole from 1°E to 2°E and 51°N to 52°N. BB is the square to
+ * the east of it up to 8°E, plus an enclave from 1.25°E to 1.75°E and 51.25°N to 51.75°N in the hole of AA. CC is an
+ * open triangle from 10°E to 12°E, the country without a valid code from 20°E to 22°E is left out.
+ */
+class CountryBoundaryIndexTest {
+
+    private static final double BORDER_TOLERANCE = 1000;
+
+    @Test
+    void pointInsideACountryIsClassified() throws IOException {
+        CountryBoundaryIndex index = load(BORDER_TOLERANCE);
+
+        assertEquals("AA", index.getCountry(53, 0.5));
+        assertEquals("AA", index.getCountry(50.5, 3.5));
+        assertEquals("BB", index.getCountry(52, 6));
+        // The code is taken from the next property if the preferred one isn't valid, and the ring is closed.
+        assertEquals("CC", index.getCountry(50.5, 11));
+        assertNull(index.getCountry(51, 21));
+    }
+
+    @Test
+    void holesAndEnclavesUseEvenOddContainment() throws IOException {
+        CountryBoundaryIndex index = load(BORDER_TOLERANCE);
+
+        // In the hole of AA, but not in the enclave.
+        assertNull(index.getCountry(51.9, 1.1));
+        assertNull(index.getCountry(51.1, 1.9));
+        // In the enclave of BB, in the hole of AA.
+        assertEquals("BB", index.getCountry(51.5, 1.5));
+    }
+
+    @Test
+    void pointNearABorderIsNotClassified() throws IOException {
+        CountryBoundaryIndex index = load(BORDER_TOLERANCE);
+
+        // 0.005° of longitude is about 340 metres at 52°N, 0.02° about 1370 metres.
+        assertNull(index.getCountry(52, 3.995));
+        assertNull(index.getCountry(52, 4.005));
+        assertEquals("AA", index.getCountry(52, 3.98));
+        assertEquals("BB", index.getCountry(52, 4.02));
+        // The borders of the hole and the enclave count too.
+        assertNull(index.getCountry(51.5, 0.995));
+        assertNull(index.getCountry(51.5, 1.255));
+        // The outer border, towards the sea.
+        assertNull(index.getCountry(53.995, 6));
+        assertEquals("BB", index.getCountry(53.98, 6));
+
+        CountryBoundaryIndex exact = load(0);
+        assertEquals("AA", exact.getCountry(52, 3.995));
+        assertEquals("BB", exact.getCountry(52, 4.005));
+        assertEquals("BB", exact.getCountry(51.5, 1.255));
+    }
+
+    @Test
+    void pointInTheOceanIsNotClassified() throws IOException {
+        CountryBoundaryIndex index = load(BORDER_TOLERANCE);
+
+        assertNull(index.getCountry(50.5, 9));
+        assertNull(index.getCountry(55, 2));
+        assertNull(index.getCountry(0, -30));
+        assertNull(index.getCountry(-89.5, 179.9));
+    }
+
+    private CountryBoundaryIndex load(double borderToleranceMetres) throws IOException {
+        try (InputStream inputStream = getClass().getResourceAsStream("boundaries.geojson")) {
+            return CountryBoundaryIndex.load(inputStream, borderToleranceMetres);
+        }
+    }
+}
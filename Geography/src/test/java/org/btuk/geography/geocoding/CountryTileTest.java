@@ -0,0 +1,141 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.GeoCell;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Writes and opens small {@link CountryTile} files.
+ * <p>
+ * The tile starts at 51°N 0°E and has 5 rows and 6 columns of samples of 2 by 2 cells. GB is to the west of FR, with
+ * a sample of sea in the fourth row.
+ */
+class CountryTileTest {
+
+    private static final int ORIGIN_LATITUDE_INDEX = 141 * GeoCell.CELLS_PER_DEGREE;
+    private static final int ORIGIN_LONGITUDE_INDEX = 180 * GeoCell.CELLS_PER_DEGREE;
+    private static final int STEP = 2;
+    private static final int ROWS = 5;
+    private static final int COLUMNS = 6;
+    private static final int HEADER_SIZE = 28;
+
+    private static final short GB = CountryCodes.encode("GB");
+    private static final short FR = CountryCodes.encode("FR");
+    private static final short SEA = CountryCodes.UNKNOWN;
+    private static final short[] CODES = {
+            GB, GB, GB, GB, FR, FR,
+            GB, GB, GB, GB, FR, FR,
+            GB, GB, GB, GB, FR, FR,
+            GB, GB, GB, SEA, FR, FR,
+            GB, GB, GB, GB, FR, FR
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writtenTileIsReadBack() throws IOException {
+        Path file = directory.resolve("tile.bin");
+        CountryTile.write(file, ORIGIN_LATITUDE_INDEX, ORIGIN_LONGITUDE_INDEX, STEP, ROWS, COLUMNS, CODES);
+        CountryTile tile = CountryTile.open(file);
+
+        // Every cell of a sample has the code of the sample.
+        for (int latitudeOffset = 0; latitudeOffset < STEP; latitudeOffset++) {
+            for (int longitudeOffset = 0; longitudeOffset < STEP; longitudeOffset++) {
+                assertEquals(GB, tile.get(key(1, 1, latitudeOffset, longitudeOffset)));
+                assertEquals(GB, tile.get(key(2, 1, latitudeOffset, longitudeOffset)));
+                assertEquals(GB, tile.get(key(3, 1, latitudeOffset, longitudeOffset)));
+                assertEquals(GB, tile.get(key(1, 2, latitudeOffset, longitudeOffset)));
+            }
+        }
+        long key = key(1, 1, 0, 0);
+        assertEquals("GB", tile.getCountry(new Coordinate(GeoCell.latitude(key), GeoCell.longitude(key))));
+
+        // Writing again replaces the tile.
+        short[] sea = new short[ROWS * COLUMNS];
+        Arrays.fill(sea, SEA);
+        CountryTile.write(file, ORIGIN_LATITUDE_INDEX, ORIGIN_LONGITUDE_INDEX, STEP, ROWS, COLUMNS, sea);
+        assertEquals(CountryCodes.UNKNOWN_COUNTRY, CountryTile.open(file).getCountry(new Coordinate(GeoCell.latitude(key), GeoCell.longitude(key))));
+        assertFalse(Files.exists(directory.resolve("tile.bin.tmp")));
+        assertThrows(IllegalArgumentException.class,
+                () -> CountryTile.write(file, ORIGIN_LATITUDE_INDEX, ORIGIN_LONGITUDE_INDEX, STEP, ROWS, COLUMNS, new short[3]));
+    }
+
+    @Test
+    void samplesNearABorderOrTheEdgeDontAnswer() throws IOException {
+        Path file = directory.resolve("tile.bin");
+        CountryTile.write(file, ORIGIN_LATITUDE_INDEX, ORIGIN_LONGITUDE_INDEX, STEP, ROWS, COLUMNS, CODES);
+        CountryTile tile = CountryTile.open(file);
+
+        // The outermost ring, although its samples agree with their neighbours inside the tile.
+        for (int column = 0; column < COLUMNS; column++) {
+            assertEquals(CountryCodes.NONE, tile.get(key(0, column, 0, 0)), "column " + column);
+            assertEquals(CountryCodes.NONE, tile.get(key(ROWS - 1, column, 1, 1)), "column " + column);
+        }
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals(CountryCodes.NONE, tile.get(key(row, 0, 0, 0)), "row " + row);
+            assertEquals(CountryCodes.NONE, tile.get(key(row, COLUMNS - 1, 1, 1)), "row " + row);
+        }
+        // Outside of the tile.
+        assertEquals(CountryCodes.NONE, tile.get(key(-3, 2, 0, 0)));
+        assertEquals(CountryCodes.NONE, tile.get(key(2, COLUMNS + 3, 0, 0)));
+
+        // A neighbour in another country.
+        assertEquals(CountryCodes.NONE, tile.get(key(1, 3, 0, 0)));
+        assertEquals(CountryCodes.NONE, tile.get(key(2, 4, 0, 0)));
+        // A neighbour in the sea, diagonally and straight.
+        assertEquals(CountryCodes.NONE, tile.get(key(2, 2, 0, 0)));
+        assertEquals(CountryCodes.NONE, tile.get(key(3, 2, 0, 0)));
+        assertNull(tile.getCountry(new Coordinate(GeoCell.latitude(key(2, 2, 0, 0)), GeoCell.longitude(key(2, 2, 0, 0)))));
+    }
+
+    @Test
+    void corruptTilesAreRejected() throws IOException {
+        Path file = directory.resolve("tile.bin");
+        CountryTile.write(file, ORIGIN_LATITUDE_INDEX, ORIGIN_LONGITUDE_INDEX, STEP, ROWS, COLUMNS, CODES);
+        byte[] valid = Files.readAllBytes(file);
+        assertEquals(HEADER_SIZE + 2 * ROWS * COLUMNS, valid.length);
+
+        assertRejected(Arrays.copyOf(valid, valid.length - 1));
+        assertRejected(Arrays.copyOf(valid, valid.length + 2));
+        assertRejected(Arrays.copyOf(valid, HEADER_SIZE - 4));
+        assertRejected(new byte[0]);
+        // The magic, the version, the step and the rows.
+        assertRejected(withInt(valid, 0, 0x12345678));
+        assertRejected(withInt(valid, 4, 2));
+        assertRejected(withInt(valid, 16, 0));
+        assertRejected(withInt(valid, 20, -ROWS));
+        assertRejected(withInt(valid, 20, ROWS + 1));
+    }
+
+    private void assertRejected(byte[] data) throws IOException {
+        Path file = directory.resolve("corrupt.bin");
+        Files.write(file, data);
+        assertThrows(IOException.class, () -> CountryTile.open(file));
+    }
+
+    private static byte[] withInt(byte[] data, int offset, int value) {
+        byte[] changed = data.clone();
+        ByteBuffer.wrap(changed).putInt(offset, value);
+        return changed;
+    }
+
+    // The key of a cell within a sample.
+    private static long key(int row, int column, int latitudeOffset, int longitudeOffset) {
+        long latitudeIndex = ORIGIN_LATITUDE_INDEX + (long) row * STEP + latitudeOffset;
+        long longitudeIndex = ORIGIN_LONGITUDE_INDEX + (long) column * STEP + longitudeOffset;
+        return (latitudeIndex << 32) | longitudeIndex;
+    }
+}
@@ -0,0 +1,140 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a {@link DailyQuotaPolicy} on a {@link SharedQuotaStore} holds the limit across servers.
+ */
+class DailyQuotaPolicyTest {
+
+    private static final int LIMIT = 100;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sharedQuotaIsNeverExceeded() throws Exception {
+        Path file = directory.resolve("quota.dat");
+        try (SharedQuotaStore first = new SharedQuotaStore(file); SharedQuotaStore second = new SharedQuotaStore(file)) {
+            // Two servers on one host, each reserving single lookups and batch jobs as fast as it can.
+            List<DailyQuotaPolicy> policies = List.of(new DailyQuotaPolicy("geoapify", LIMIT, first),
+                    new DailyQuotaPolicy("geoapify", LIMIT, second));
+            AtomicInteger granted = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int thread = 0; thread < 8; thread++) {
+                    DailyQuotaPolicy policy = policies.get(thread % 2);
+                    boolean batches = thread % 4 >= 2;
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < 200; i++) {
+                            if (batches) {
+                                granted.addAndGet(policy.reserveUpTo(3));
+                            } else if (policy.peek(0) != ProviderPolicy.NEVER && policy.reserve(0)) {
+                                granted.incrementAndGet();
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get(10, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertEquals(LIMIT, granted.get());
+            assertEquals(0, policies.get(0).getRemaining());
+            assertEquals(0, policies.get(1).getRemaining());
+            assertFalse(policies.get(0).reserve(0));
+        }
+    }
+
+    @Test
+    void cancelGivesTheRequestBackToAllServers() throws Exception {
+        Path file = directory.resolve("quota.dat");
+        try (SharedQuotaStore first = new SharedQuotaStore(file); SharedQuotaStore second = new SharedQuotaStore(file)) {
+            DailyQuotaPolicy policy = new DailyQuotaPolicy("geoapify", 1, first);
+            DailyQuotaPolicy other = new DailyQuotaPolicy("geoapify", 1, second);
+
+            assertTrue(policy.reserve(0));
+            assertEquals(ProviderPolicy.NEVER, other.peek(0));
+            policy.cancel();
+            assertTrue(other.reserve(0));
+        }
+    }
+
+    @Test
+    void schedulerReplansALookupWhoseQuotaRanOutAfterPeek() throws Exception {
+        Path file = directory.resolve("quota.dat");
+        try (SharedQuotaStore first = new SharedQuotaStore(file); SharedQuotaStore second = new SharedQuotaStore(file)) {
+            DailyQuotaPolicy quota = new DailyQuotaPolicy("geoapify", 1, first);
+            DailyQuotaPolicy otherServer = new DailyQuotaPolicy("geoapify", 1, second);
+            // The other server takes the last request between the peek and the reservation of this one.
+            ProviderPolicy racingQuota = new ProviderPolicy() {
+                @Override
+                public long peek(long now) {
+                    long start = quota.peek(now);
+                    otherServer.reserveUpTo(1);
+                    return start;
+                }
+
+                @Override
+                public boolean reserve(long start) {
+                    return quota.reserve(start);
+                }
+
+                @Override
+                public void cancel() {
+                    quota.cancel();
+                }
+            };
+
+            ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+            try {
+                ScheduledProvider geoapify = new ScheduledProvider(new FixedProvider("geoapify", "GB"), Duration.ofMillis(10), racingQuota);
+                ScheduledProvider nominatim = new ScheduledProvider(new FixedProvider("nominatim", "FR"), Duration.ofSeconds(1));
+                GeocodeScheduler scheduler = new GeocodeScheduler(executor, List.of(geoapify, nominatim));
+
+                assertEquals("FR", scheduler.submit(new Coordinate(48.85, 2.35)).get(10, TimeUnit.SECONDS));
+                assertEquals(0, geoapify.getStats().getSuccesses());
+                assertEquals(0, geoapify.getQueuedRequests());
+                assertEquals(1, first.getCount("geoapify", LocalDate.now(ZoneOffset.UTC).toString()));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private record FixedProvider(String name, String country) implements GeocodingProvider {
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getCountry(Coordinate coordinate) throws IOException {
+            return country;
+        }
+    }
+}
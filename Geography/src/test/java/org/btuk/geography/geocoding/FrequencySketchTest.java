@@ -0,0 +1,67 @@
+package org.btuk.geography.geocoding;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks the counting and the periodic halving of the {@link FrequencySketch}.
+ */
+class FrequencySketchTest {
+
+    @Test
+    void countsAreEstimatedAndSaturate() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(7);
+        }
+        assertEquals(5, sketch.frequency(7));
+        assertEquals(0, sketch.frequency(8));
+
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(7);
+        }
+        assertEquals(15, sketch.frequency(7));
+    }
+
+    @Test
+    void countsHalveWhenTheSampleIsFull() {
+        // A sample of 160 increments.
+        FrequencySketch sketch = new FrequencySketch(16);
+        long[] keys = {-1, -2, -3};
+        int[] increments = {15, 8, 5};
+        for (int i = 0; i < keys.length; i++) {
+            for (int j = 0; j < increments[i]; j++) {
+                sketch.increment(keys[i]);
+            }
+        }
+
+        // Saturated increments don't count towards the sample, so the halving comes after at most 160 new keys.
+        for (long key = 0; key < 160; key++) {
+            int[] before = frequencies(sketch, keys);
+            sketch.increment(key);
+            int[] after = frequencies(sketch, keys);
+            if (after[0] < before[0]) {
+                for (int i = 0; i < keys.length; i++) {
+                    assertEquals(before[i] / 2, after[i], "key " + keys[i]);
+                }
+                assertTrue(sketch.frequency(key) <= 1);
+                return;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                assertTrue(after[i] >= before[i], "key " + keys[i]);
+            }
+        }
+        fail("The counts were not halved");
+    }
+
+    private static int[] frequencies(FrequencySketch sketch, long[] keys) {
+        int[] frequencies = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            frequencies[i] = sketch.frequency(keys[i]);
+        }
+        return frequencies;
+    }
+}
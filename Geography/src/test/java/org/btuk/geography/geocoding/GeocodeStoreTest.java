@@ -0,0 +1,198 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.GeoCell;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the crash recovery and the compaction of the {@link GeocodeStore}.
+ */
+class GeocodeStoreTest {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 14;
+    // The number of log records that starts a compaction.
+    private static final int COMPACTION_RECORDS = 65536;
+    private static final short GB = CountryCodes.encode("GB");
+    private static final short FR = CountryCodes.encode("FR");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void resultsSurviveAReopen() throws IOException {
+        try (GeocodeStore store = open()) {
+            store.put(1, GB);
+            store.put(2, FR);
+            store.put(1, FR);
+        }
+
+        try (GeocodeStore store = open()) {
+            assertEquals(FR, store.get(1));
+            assertEquals(FR, store.get(2));
+            assertEquals(CountryCodes.NONE, store.get(3));
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedOnReopen() throws IOException {
+        try (GeocodeStore store = open()) {
+            store.put(1, GB);
+            store.put(2, FR);
+        }
+        // A crash in the middle of appending the third record.
+        Files.write(log(), new byte[]{0, 0, 0, 0, 0, 3, 0}, StandardOpenOption.APPEND);
+
+        try (GeocodeStore store = open()) {
+            assertEquals(HEADER_SIZE + 2 * RECORD_SIZE, Files.size(log()));
+            assertEquals(GB, store.get(1));
+            assertEquals(FR, store.get(2));
+            store.put(3, GB);
+        }
+
+        // Records appended after the truncation are read back.
+        try (GeocodeStore store = open()) {
+            assertEquals(GB, store.get(3));
+            assertEquals(HEADER_SIZE + 3 * RECORD_SIZE, Files.size(log()));
+        }
+    }
+
+    @Test
+    void recordWithABadChecksumIsRejected() throws IOException {
+        try (GeocodeStore store = open()) {
+            store.put(1, GB);
+            store.put(2, FR);
+            store.put(3, GB);
+        }
+        // Change the country code of the second record, its checksum no longer matches.
+        try (FileChannel channel = FileChannel.open(log(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x7F}), HEADER_SIZE + RECORD_SIZE + 8);
+        }
+
+        // Everything from the bad record on is discarded, the records after it can't be trusted to be complete.
+        try (GeocodeStore store = open()) {
+            assertEquals(GB, store.get(1));
+            assertEquals(CountryCodes.NONE, store.get(2));
+            assertEquals(CountryCodes.NONE, store.get(3));
+            assertEquals(HEADER_SIZE + RECORD_SIZE, Files.size(log()));
+        }
+    }
+
+    @Test
+    void resultsWrittenAfterCompactionSurviveAReopen() throws Exception {
+        try (GeocodeStore store = open()) {
+            fill(store, 0, COMPACTION_RECORDS, GB);
+            awaitCompaction(store);
+            assertTrue(Files.exists(snapshot(1)));
+
+            // Overwrites an entry of the snapshot and adds new ones to the shortened log.
+            store.put(1, FR);
+            fill(store, COMPACTION_RECORDS, 100, FR);
+            assertEquals(GB, store.get(2));
+        }
+
+        try (GeocodeStore store = open()) {
+            assertEquals(FR, store.get(1));
+            assertEquals(GB, store.get(2));
+            assertEquals(GB, store.get(COMPACTION_RECORDS));
+            assertEquals(FR, store.get(COMPACTION_RECORDS + 100));
+            assertEquals(CountryCodes.NONE, store.get(COMPACTION_RECORDS + 101));
+        }
+    }
+
+    @Test
+    void onlyTheNewestSnapshotGenerationIsKept() throws Exception {
+        try (GeocodeStore store = open()) {
+            for (int generation = 1; generation <= 3; generation++) {
+                fill(store, (generation - 1) * COMPACTION_RECORDS, COMPACTION_RECORDS, generation % 2 == 0 ? FR : GB);
+                awaitCompaction(store);
+                assertTrue(Files.exists(snapshot(generation)));
+            }
+            assertEquals(List.of("cache.3.dat", "cache.log"), files());
+        }
+
+        // Generations left behind while they were mapped, as on Windows, and a compaction that crashed while writing.
+        Files.copy(snapshot(3), snapshot(1));
+        Files.copy(snapshot(3), snapshot(2));
+        Files.write(directory.resolve("cache.4.dat.tmp"), new byte[]{1, 2, 3});
+
+        try (GeocodeStore store = open()) {
+            assertEquals(List.of("cache.3.dat", "cache.log"), files());
+            assertEquals(GB, store.get(1));
+            assertEquals(FR, store.get(COMPACTION_RECORDS + 1));
+            assertEquals(GB, store.get(3L * COMPACTION_RECORDS));
+        }
+    }
+
+    @Test
+    void legacyCacheIsImported() throws IOException {
+        Path legacy = directory.resolve("cache.json");
+        // Written with the default locale, so the decimal separator may be a comma.
+        Files.writeString(legacy, """
+                {"51.500000_-0.130000": "GB", "48,850000_2,350000": "FR", "invalid": "DE", "0.000000_0.000000": "Unknown"}
+                """);
+
+        try (GeocodeStore store = open()) {
+            assertEquals(GB, store.get(GeoCell.key(51.5, -0.13)));
+            assertEquals(FR, store.get(GeoCell.key(48.85, 2.35)));
+            assertEquals(CountryCodes.UNKNOWN, store.get(GeoCell.key(0, 0)));
+        }
+
+        // The import is only done once, the results are in the log now.
+        Files.writeString(legacy, "{\"10.000000_10.000000\": \"NG\"}");
+        try (GeocodeStore store = open()) {
+            assertEquals(GB, store.get(GeoCell.key(51.5, -0.13)));
+            assertEquals(CountryCodes.NONE, store.get(GeoCell.key(10, 10)));
+        }
+    }
+
+    private GeocodeStore open() throws IOException {
+        return new GeocodeStore(log(), directory.resolve("cache.dat"), directory.resolve("cache.json"));
+    }
+
+    private Path log() {
+        return directory.resolve("cache.log");
+    }
+
+    private Path snapshot(int generation) {
+        return directory.resolve("cache." + generation + ".dat");
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static void fill(GeocodeStore store, int from, int count, short code) {
+        for (int i = 1; i <= count; i++) {
+            store.put(from + i, code);
+        }
+        store.flush();
+    }
+
+    // The compaction runs in the background, it is done once the log has been replaced by the records left over.
+    private void awaitCompaction(GeocodeStore store) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (Files.size(log()) >= COMPACTION_RECORDS * RECORD_SIZE) {
+            assertFalse(System.nanoTime() > deadline, "The compaction did not finish");
+            Thread.sleep(10);
+        }
+        // Waits for the compaction to publish the new snapshot, it does so under the lock of the store.
+        store.flush();
+    }
+}
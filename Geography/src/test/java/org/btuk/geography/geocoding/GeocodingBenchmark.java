@@ -0,0 +1,108 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Measures the throughput of the online lookups against a {@link StandInGeocodingServer}, without touching the real APIs.
+ * <p>
+ * Usage: {@code [--lookups n] [--latency ms] [--jitter ms] [--throttle share] [--errors share] [--rate n]}.
+ * The same random coordinates are looked up one by one through the {@link GeocodeScheduler} and then in batch jobs
+ * through the {@link GeocodeBatcher}.
+ */
+public final class GeocodingBenchmark {
+
+    private GeocodingBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        int lookups = Integer.parseInt(options.getOrDefault("lookups", "2000"));
+        Duration latency = Duration.ofMillis(Long.parseLong(options.getOrDefault("latency", "50")));
+        Duration jitter = Duration.ofMillis(Long.parseLong(options.getOrDefault("jitter", "50")));
+        double throttle = Double.parseDouble(options.getOrDefault("throttle", "0.02"));
+        double errors = Double.parseDouble(options.getOrDefault("errors", "0.01"));
+        int rate = Integer.parseInt(options.getOrDefault("rate", "50"));
+
+        Random random = new Random(42);
+        List<Coordinate> coordinates = new ArrayList<>(lookups);
+        for (int i = 0; i < lookups; i++) {
+            coordinates.add(new Coordinate(random.nextDouble(-60, 80), random.nextDouble(-180, 180)));
+        }
+
+        File quotaFile = File.createTempFile("benchmark_limits", ".json");
+        quotaFile.deleteOnExit();
+
+        try (StandInGeocodingServer server = new StandInGeocodingServer(StandInGeocodingServer::gridCountry);
+             ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("benchmark-", 0).factory())) {
+            server.setLatency(latency, jitter)
+                    .setThrottleRate(throttle)
+                    .setErrorRate(errors)
+                    .setBatchDuration(Duration.ofMillis(500));
+            HttpClient httpClient = HttpClient.newBuilder().executor(executor).build();
+
+            // Both providers get the same limits, the server decides which one is faster.
+            NominatimProvider nominatim = new NominatimProvider(httpClient, server.getBaseUrl());
+            GeoapifyProvider geoapify = new GeoapifyProvider(httpClient, server.getBaseUrl(), "benchmark");
+            DailyQuotaPolicy quota = new DailyQuotaPolicy("geoapify", Integer.MAX_VALUE, new DailyQuotaStore(quotaFile));
+            GeocodeScheduler scheduler = new GeocodeScheduler(executor, List.of(
+                    new ScheduledProvider(nominatim, latency,
+                            new TokenBucketPolicy(rate, Duration.ofSeconds(1).dividedBy(rate)),
+                            new ConcurrencyLimitPolicy(rate, latency)),
+                    new ScheduledProvider(geoapify, latency, quota,
+                            new TokenBucketPolicy(rate, Duration.ofSeconds(1).dividedBy(rate)),
+                            new ConcurrencyLimitPolicy(rate, latency))
+            ));
+            GeocodeBatcher batcher = new GeocodeBatcher(geoapify, quota, scheduler, executor, 50, Duration.ofMillis(200));
+
+            run("single", coordinates, scheduler::submit);
+            for (ScheduledProvider provider : scheduler.getProviders()) {
+                ProviderStats stats = provider.getStats();
+                System.out.printf(Locale.US, "  %-10s %6d ok %4d failed, mean %.1f ms, p99 %.1f ms, circuit %s%n",
+                        provider.getProvider().getName(), stats.getSuccesses(), stats.getFailures(),
+                        stats.getLatencyEwmaMillis(), stats.getLatencyP99Millis(), provider.getCircuitBreaker().getState());
+            }
+
+            long requestsBefore = server.getRequestCount();
+            run("batch", coordinates, batcher::submit);
+            System.out.printf(Locale.US, "  %d jobs answered %d lookups in %d HTTP requests%n",
+                    batcher.getBatchCount(), batcher.getBatchedLookupCount(), server.getRequestCount() - requestsBefore);
+            System.out.printf(Locale.US, "Server: %d requests, %d throttled, %d failed%n",
+                    server.getRequestCount(), server.getThrottledCount(), server.getFailedCount());
+        }
+    }
+
+    private static void run(String name, List<Coordinate> coordinates, Function<Coordinate, CompletableFuture<String>> lookup) {
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> futures = new ArrayList<>(coordinates.size());
+        for (Coordinate coordinate : coordinates) {
+            futures.add(lookup.apply(coordinate));
+        }
+        int unknown = 0;
+        for (CompletableFuture<String> future : futures) {
+            if (CountryCodes.UNKNOWN_COUNTRY.equals(future.exceptionally(e -> CountryCodes.UNKNOWN_COUNTRY).join())) {
+                unknown++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.US, "%s: %d lookups in %.2f s, %.0f lookups/s, %d unknown%n",
+                name, coordinates.size(), seconds, coordinates.size() / seconds, unknown);
+    }
+}
@@ -0,0 +1,162 @@
+package org.btuk.geography.geocoding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the {@link LongShortMap} against a {@link HashMap}, with keys that share a long collision chain at every table
+ * size, and with a writer resizing and shifting the table under concurrent readers.
+ */
+class LongShortMapTest {
+
+    @Test
+    void operationsMatchAHashMap() {
+        // Every key hashes to the last slot of tables of up to 1024 slots, so the chain wraps around the end.
+        List<Long> keys = new ArrayList<>(collidingKeys(1023, 40));
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            keys.add(random.nextLong());
+        }
+
+        LongShortMap map = new LongShortMap();
+        Map<Long, Short> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // Mostly colliding keys at first, then all keys so the table grows.
+            long key = keys.get(random.nextInt(i < 50_000 ? 40 : keys.size()));
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                short value = (short) (1 + random.nextInt(Short.MAX_VALUE));
+                map.put(key, value);
+                expected.put(key, value);
+            } else if (operation < 8) {
+                Short removed = expected.remove(key);
+                assertEquals(removed == null ? CountryCodes.NONE : removed, map.remove(key), "remove " + key);
+            } else {
+                assertEquals((short) expected.getOrDefault(key, CountryCodes.NONE), map.get(key), "get " + key);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (long key : keys) {
+            assertEquals((short) expected.getOrDefault(key, CountryCodes.NONE), map.get(key), "get " + key);
+        }
+        long[] actualKeys = map.keys();
+        Arrays.sort(actualKeys);
+        assertArrayEquals(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), actualKeys);
+        Map<Long, Short> copied = new HashMap<>();
+        map.copy().forEach(copied::put);
+        assertEquals(expected, copied);
+    }
+
+    @Test
+    void removingEveryKeyEmptiesTheMap() {
+        List<Long> keys = collidingKeys(0, 100);
+        LongShortMap map = new LongShortMap();
+        for (long key : keys) {
+            map.put(key, value(key));
+        }
+        assertEquals(100, map.size());
+
+        // Remove from the middle of the chain first, so the rest is shifted back.
+        for (int i = 50; i < 150; i++) {
+            long key = keys.get(i % 100);
+            assertEquals(value(key), map.remove(key));
+            assertEquals(CountryCodes.NONE, map.remove(key));
+            for (int j = i + 1; j < 150; j++) {
+                assertEquals(value(keys.get(j % 100)), map.get(keys.get(j % 100)));
+            }
+        }
+        assertEquals(0, map.size());
+        assertEquals(0, map.keys().length);
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, CountryCodes.NONE));
+    }
+
+    @Test
+    void readersSeeConsistentValuesWhileTheTableChanges() throws InterruptedException {
+        // The stable keys are never removed, so readers must always find them, while resizes and removals move them.
+        // They are put behind churning keys of the same chain, so removals shift them back.
+        List<Long> keys = collidingKeys(7, 2000);
+        List<Long> stable = keys.subList(100, 120);
+        List<Long> churn = new ArrayList<>(keys.subList(0, 100));
+        churn.addAll(keys.subList(120, 2000));
+        LongShortMap map = new LongShortMap(2000);
+        for (long key : keys.subList(0, 120)) {
+            map.put(key, value(key));
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(4);
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int seed = i;
+            Thread reader = new Thread(() -> {
+                Random random = new Random(seed);
+                started.countDown();
+                while (!done.get() && failure.get() == null) {
+                    long key = stable.get(random.nextInt(stable.size()));
+                    if (map.get(key) != value(key)) {
+                        failure.compareAndSet(null, "Lost " + key);
+                    }
+                    key = churn.get(random.nextInt(churn.size()));
+                    short value = map.get(key);
+                    if (value != CountryCodes.NONE && value != value(key)) {
+                        failure.compareAndSet(null, "Wrong value " + value + " for " + key);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        started.await();
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            for (long key : churn) {
+                map.put(key, value(key));
+            }
+            for (int i = 0; i < churn.size(); i++) {
+                map.remove(churn.get(random.nextInt(churn.size())));
+            }
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        for (long key : stable) {
+            assertEquals(value(key), map.get(key));
+        }
+    }
+
+    private static short value(long key) {
+        return (short) (1 + Math.floorMod(key, Short.MAX_VALUE));
+    }
+
+    // Keys whose hash, as the map computes it, ends in the given ten bits.
+    private static List<Long> collidingKeys(int home, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; keys.size() < count; key++) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            if (((int) (hash ^ (hash >>> 32)) & 1023) == home) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
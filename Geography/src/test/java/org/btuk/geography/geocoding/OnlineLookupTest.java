@@ -0,0 +1,193 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the providers, the {@link GeocodeScheduler} and the {@link GeocodeBatcher} against {@link StandInGeocodingServer}s.
+ */
+class OnlineLookupTest {
+
+    private static final Coordinate LONDON = new Coordinate(51.5, -0.13);
+    private static final Coordinate SYDNEY = new Coordinate(-33.87, 151.2);
+    private static final RetryPolicy FAST_RETRIES = new RetryPolicy(4, Duration.ofMillis(50), Duration.ofSeconds(5));
+    private static final long TIMEOUT_SECONDS = 20;
+
+    @TempDir
+    Path directory;
+
+    private final List<StandInGeocodingServer> servers = new ArrayList<>();
+    private ExecutorService executor;
+    private HttpClient httpClient;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("online-lookup-test-", 0).factory());
+        httpClient = HttpClient.newBuilder().executor(executor).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(StandInGeocodingServer::close);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void providersReadTheCountry() throws Exception {
+        StandInGeocodingServer server = start();
+
+        assertEquals(expected(LONDON), new NominatimProvider(httpClient, server.getBaseUrl()).getCountry(LONDON));
+        assertEquals(expected(SYDNEY), new GeoapifyProvider(httpClient, server.getBaseUrl(), "test").getCountry(SYDNEY));
+        // The stand-in has no country south of 60°S.
+        assertEquals(CountryCodes.UNKNOWN_COUNTRY, new NominatimProvider(httpClient, server.getBaseUrl()).getCountry(new Coordinate(-75, 0)));
+    }
+
+    @Test
+    void throttledResponseHasRetryAfter() throws Exception {
+        StandInGeocodingServer server = start().setThrottleRate(1);
+
+        ProviderResponseException error = assertThrows(ProviderResponseException.class,
+                () -> new NominatimProvider(httpClient, server.getBaseUrl()).getCountry(LONDON));
+        assertEquals(429, error.getStatus());
+        assertTrue(error.isThrottled());
+        assertEquals(Duration.ofSeconds(1), error.getRetryAfter());
+    }
+
+    @Test
+    void serverErrorIsNotThrottling() throws Exception {
+        StandInGeocodingServer server = start().setErrorRate(1);
+
+        ProviderResponseException error = assertThrows(ProviderResponseException.class,
+                () -> new GeoapifyProvider(httpClient, server.getBaseUrl(), "test").getCountry(LONDON));
+        assertEquals(500, error.getStatus());
+        assertFalse(error.isThrottled());
+        assertNull(error.getRetryAfter());
+    }
+
+    @Test
+    void schedulerWaitsForRetryAfter() throws Exception {
+        StandInGeocodingServer server = start().setRateLimit(1);
+        ScheduledProvider nominatim = new ScheduledProvider(new NominatimProvider(httpClient, server.getBaseUrl()), Duration.ofMillis(10));
+        GeocodeScheduler scheduler = new GeocodeScheduler(executor, List.of(nominatim), FAST_RETRIES);
+
+        long start = System.nanoTime();
+        CompletableFuture<String> london = scheduler.submit(LONDON);
+        CompletableFuture<String> sydney = scheduler.submit(SYDNEY);
+        assertEquals(expected(LONDON), london.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(expected(SYDNEY), sydney.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // One lookup was throttled and retried no earlier than the one second the server asked for.
+        assertEquals(1, server.getThrottledCount());
+        assertTrue(System.nanoTime() - start >= TimeUnit.SECONDS.toNanos(1));
+        // Throttling says nothing about the health of the provider.
+        assertEquals(CircuitBreaker.State.CLOSED, nominatim.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void schedulerMovesLookupsOffAFailingProvider() throws Exception {
+        StandInGeocodingServer failing = start().setErrorRate(1);
+        StandInGeocodingServer healthy = start();
+        // The failing provider looks faster, so it gets the lookups until it has failed.
+        ScheduledProvider nominatim = new ScheduledProvider(new NominatimProvider(httpClient, failing.getBaseUrl()),
+                Duration.ofMillis(10), new CircuitBreaker(3, Duration.ofMinutes(1), Duration.ofMinutes(1)));
+        ScheduledProvider geoapify = new ScheduledProvider(new GeoapifyProvider(httpClient, healthy.getBaseUrl(), "test"),
+                Duration.ofSeconds(1));
+        GeocodeScheduler scheduler = new GeocodeScheduler(executor, List.of(nominatim, geoapify), FAST_RETRIES);
+
+        List<Coordinate> coordinates = coordinates(10);
+        List<CompletableFuture<String>> results = coordinates.stream().map(scheduler::submit).toList();
+        for (int i = 0; i < coordinates.size(); i++) {
+            assertEquals(expected(coordinates.get(i)), results.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        assertTrue(failing.getFailedCount() >= 3);
+        assertEquals(CircuitBreaker.State.OPEN, nominatim.getCircuitBreaker().getState());
+        assertEquals(coordinates.size(), geoapify.getStats().getSuccesses());
+    }
+
+    @Test
+    void batchJobIsPolledUntilItIsDone() throws Exception {
+        StandInGeocodingServer server = start().setBatchDuration(Duration.ofMillis(1500));
+        GeoapifyProvider geoapify = new GeoapifyProvider(httpClient, server.getBaseUrl(), "test");
+        DailyQuotaPolicy quota = new DailyQuotaPolicy("geoapify", 100, new DailyQuotaStore(directory.resolve("limits.json").toFile()));
+        GeocodeScheduler fallback = new GeocodeScheduler(executor,
+                List.of(new ScheduledProvider(geoapify, Duration.ofMillis(10), quota)), FAST_RETRIES);
+        GeocodeBatcher batcher = new GeocodeBatcher(geoapify, quota, fallback, executor, 5, Duration.ofMillis(100));
+
+        List<Coordinate> coordinates = coordinates(20);
+        List<CompletableFuture<String>> results = coordinates.stream().map(batcher::submit).toList();
+        for (int i = 0; i < coordinates.size(); i++) {
+            assertEquals(expected(coordinates.get(i)), results.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, batcher.getBatchCount());
+        assertEquals(coordinates.size(), batcher.getBatchedLookupCount());
+        // Posted, still pending at the first poll after one second, done at the second poll.
+        assertEquals(3, server.getRequestCount());
+        assertEquals(100 - coordinates.size(), quota.getRemaining());
+    }
+
+    @Test
+    void failedBatchJobFallsBackToSingleLookups() throws Exception {
+        StandInGeocodingServer failing = start().setErrorRate(1);
+        StandInGeocodingServer healthy = start();
+        DailyQuotaPolicy quota = new DailyQuotaPolicy("geoapify", 100, new DailyQuotaStore(directory.resolve("limits.json").toFile()));
+        GeocodeScheduler fallback = new GeocodeScheduler(executor,
+                List.of(new ScheduledProvider(new NominatimProvider(httpClient, healthy.getBaseUrl()), Duration.ofMillis(10))), FAST_RETRIES);
+        GeocodeBatcher batcher = new GeocodeBatcher(new GeoapifyProvider(httpClient, failing.getBaseUrl(), "test"), quota,
+                fallback, executor, 5, Duration.ofMillis(100));
+
+        List<Coordinate> coordinates = coordinates(20);
+        List<CompletableFuture<String>> results = coordinates.stream().map(batcher::submit).toList();
+        for (int i = 0; i < coordinates.size(); i++) {
+            assertEquals(expected(coordinates.get(i)), results.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, batcher.getBatchCount());
+        assertEquals(1, failing.getFailedCount());
+        assertEquals(coordinates.size(), healthy.getRequestCount());
+        // The quota reserved for the failed job is given back.
+        assertEquals(100, quota.getRemaining());
+    }
+
+    private StandInGeocodingServer start() throws IOException {
+        StandInGeocodingServer server = new StandInGeocodingServer(StandInGeocodingServer::gridCountry);
+        servers.add(server);
+        return server;
+    }
+
+    private static List<Coordinate> coordinates(int count) {
+        Random random = new Random(42);
+        List<Coordinate> coordinates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            coordinates.add(new Coordinate(random.nextDouble(-50, 80), random.nextDouble(-180, 180)));
+        }
+        return coordinates;
+    }
+
+    private static String expected(Coordinate coordinate) {
+        return StandInGeocodingServer.gridCountry(coordinate).toUpperCase(Locale.ROOT);
+    }
+}
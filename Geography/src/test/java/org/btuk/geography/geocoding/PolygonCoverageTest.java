@@ -0,0 +1,113 @@
+package org.btuk.geography.geocoding;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.GeoCell;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the {@link PolygonCoverage} with lookups that classify points by a synthetic border.
+ */
+class PolygonCoverageTest {
+
+    @Test
+    void polygonStraddlingABorderFindsBothCountries() throws Exception {
+        PolygonCoverage coverage = new PolygonCoverage(0.001, 1000);
+        // The border runs along 1°E, the vertices are all to the west of it except one.
+        List<Coordinate> polygon = List.of(
+                new Coordinate(50, 0), new Coordinate(50, 1.05), new Coordinate(50.5, 0.5), new Coordinate(51, 0));
+
+        Set<String> countries = coverage.getCountries(polygon, lookup(point -> point.longitude() < 1 ? "AA" : "BB", new AtomicInteger()))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(Set.of("AA", "BB"), countries);
+    }
+
+    @Test
+    void countryBetweenTheVerticesIsFound() throws Exception {
+        PolygonCoverage coverage = new PolygonCoverage(0.001, 1000);
+        // A strip of BB from 0.9°E to 1.1°E crosses the square, the sea to the north of 51.9°N is left out.
+        List<Coordinate> polygon = List.of(
+                new Coordinate(50, 0), new Coordinate(50, 2), new Coordinate(52, 2), new Coordinate(52, 0));
+        Function<Coordinate, String> border = point -> {
+            if (point.latitude() > 51.9) {
+                return CountryCodes.UNKNOWN_COUNTRY;
+            }
+            return point.longitude() >= 0.9 && point.longitude() < 1.1 ? "BB" : "AA";
+        };
+
+        Set<String> countries = coverage.getCountries(polygon, lookup(border, new AtomicInteger())).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Set.of("AA", "BB"), countries);
+    }
+
+    @Test
+    void maximumSamplesBoundsTheLookups() throws Exception {
+        // A diagonal border keeps every level disagreeing down to the minimum cell size.
+        List<Coordinate> polygon = List.of(
+                new Coordinate(50, 0), new Coordinate(50, 1), new Coordinate(51, 1), new Coordinate(51, 0));
+        Function<Coordinate, String> border = point -> point.longitude() < point.latitude() - 50 ? "AA" : "BB";
+
+        AtomicInteger unbounded = new AtomicInteger();
+        new PolygonCoverage(GeoCell.CELL_SIZE_DEGREES * 10, Integer.MAX_VALUE).getCountries(polygon, lookup(border, unbounded))
+                .get(5, TimeUnit.SECONDS);
+        assertTrue(unbounded.get() > 1000, unbounded + " lookups");
+
+        for (int maximumSamples : new int[]{1, 4, 50, 1000}) {
+            AtomicInteger lookups = new AtomicInteger();
+            Set<String> countries = new PolygonCoverage(GeoCell.CELL_SIZE_DEGREES * 10, maximumSamples)
+                    .getCountries(polygon, lookup(border, lookups))
+                    .get(5, TimeUnit.SECONDS);
+            // The vertices are always looked up.
+            assertTrue(lookups.get() <= Math.max(maximumSamples, polygon.size()), lookups + " lookups for " + maximumSamples);
+            assertEquals(Set.of("AA", "BB"), countries);
+        }
+    }
+
+    @Test
+    void degeneratePolygonsTerminate() throws Exception {
+        PolygonCoverage coverage = new PolygonCoverage(GeoCell.CELL_SIZE_DEGREES, 100_000);
+        Function<Coordinate, String> border = point -> point.longitude() < 0.5 ? "AA" : "BB";
+
+        // A line, along a diagonal, a parallel and a meridian, and a single point.
+        List<List<Coordinate>> polygons = List.of(
+                List.of(new Coordinate(50, 0), new Coordinate(50.5, 0.5), new Coordinate(51, 1)),
+                List.of(new Coordinate(50, 0), new Coordinate(50, 1), new Coordinate(50, 0)),
+                List.of(new Coordinate(50, 0.25), new Coordinate(51, 0.25)),
+                List.of(new Coordinate(50, 0.75), new Coordinate(50, 0.75), new Coordinate(50, 0.75)));
+        List<Set<String>> expected = List.of(Set.of("AA", "BB"), Set.of("AA", "BB"), Set.of("AA"), Set.of("BB"));
+
+        for (int i = 0; i < polygons.size(); i++) {
+            AtomicInteger lookups = new AtomicInteger();
+            Set<String> countries = coverage.getCountries(polygons.get(i), lookup(border, lookups)).get(5, TimeUnit.SECONDS);
+            // Only the vertices, a polygon without area has no samples inside of it.
+            assertEquals(expected.get(i), countries);
+            assertTrue(lookups.get() <= polygons.get(i).size(), lookups + " lookups");
+        }
+        assertEquals(Set.of(), coverage.getCountries(List.of(), lookup(border, new AtomicInteger())).get(5, TimeUnit.SECONDS));
+    }
+
+    // A lookup that classifies every point at once and counts the points.
+    private static Function<List<Coordinate>, CompletableFuture<Map<Coordinate, String>>> lookup(
+            Function<Coordinate, String> country, AtomicInteger lookups) {
+        return coordinates -> {
+            lookups.addAndGet(coordinates.size());
+            Map<Coordinate, String> countries = new HashMap<>();
+            for (Coordinate coordinate : coordinates) {
+                countries.put(coordinate, country.apply(coordinate));
+            }
+            return CompletableFuture.completedFuture(countries);
+        };
+    }
+}
@@ -0,0 +1,382 @@
+package org.btuk.geography.geocoding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.btuk.geography.Coordinate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local HTTP server that answers like Nominatim and Geoapify, for tests, benchmarks and trying the providers offline.
+ * <p>
+ * It serves {@code /reverse} like Nominatim, and {@code /v1/geocode/reverse} and the batch API
+ * {@code /v1/batch/geocode/reverse} like Geoapify, so the providers can be pointed at it with their base URL
+ * constructors. Latency, random 429 and 500 responses and a per-second rate limit can be injected to see how the
+ * scheduler copes with a slow or failing provider.
+ */
+public final class StandInGeocodingServer implements Closeable {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HttpServer server;
+    private final Function<Coordinate, String> countries;
+    private final Map<String, BatchJob> batchJobs = new ConcurrentHashMap<>();
+    private final AtomicLong nextJobId = new AtomicLong();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile Duration latencyJitter = Duration.ZERO;
+    private volatile double throttleRate;
+    private volatile double errorRate;
+    private volatile int requestsPerSecond = Integer.MAX_VALUE;
+    private volatile Duration batchDuration = Duration.ofSeconds(2);
+
+    private long windowStart;
+    private int windowRequests;
+
+    /**
+     * Start a server on a free port of the loopback address.
+     *
+     * @param countries the country code of a coordinate, lowercase as the real APIs return it, or null for the sea
+     * @throws IOException if the server could not be started
+     */
+    public StandInGeocodingServer(Function<Coordinate, String> countries) throws IOException {
+        this(0, countries);
+    }
+
+    /**
+     * Start a server on the loopback address.
+     *
+     * @param port      the port, 0 for a free port
+     * @param countries the country code of a coordinate, lowercase as the real APIs return it, or null for the sea
+     * @throws IOException if the server could not be started
+     */
+    public StandInGeocodingServer(int port, Function<Coordinate, String> countries) throws IOException {
+        this.countries = countries;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stand-in-geocoder-", 0).factory()));
+        server.createContext("/reverse", exchange -> handle(exchange, this::nominatim));
+        server.createContext("/v1/geocode/reverse", exchange -> handle(exchange, this::geoapify));
+        server.createContext("/v1/batch/geocode/reverse", exchange -> handle(exchange, this::geoapifyBatch));
+        server.start();
+    }
+
+    /**
+     * Made up countries for benchmarks: every 10 by 10 degree square gets its own code, everything south of 60°S is sea.
+     *
+     * @param coordinate the coordinate
+     * @return the lowercase country code, or null
+     */
+    public static String gridCountry(Coordinate coordinate) {
+        if (coordinate.latitude() < -60) {
+            return null;
+        }
+        int row = (int) Math.floor((coordinate.latitude() + 90) / 10);
+        int column = (int) Math.floor((coordinate.longitude() + 180) / 10);
+        return new String(new char[]{(char) ('a' + row % 26), (char) ('a' + column % 26)});
+    }
+
+    /**
+     * Get the base URL to pass to the providers.
+     *
+     * @return the base URL, without a trailing slash
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Delay every response.
+     *
+     * @param latency the fixed delay
+     * @param jitter  the maximum random delay added on top
+     * @return this server
+     */
+    public StandInGeocodingServer setLatency(Duration latency, Duration jitter) {
+        this.latency = latency;
+        this.latencyJitter = jitter;
+        return this;
+    }
+
+    /**
+     * Answer a share of the requests with 429 Too Many Requests.
+     *
+     * @param throttleRate the share, between 0 and 1
+     * @return this server
+     */
+    public StandInGeocodingServer setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+        return this;
+    }
+
+    /**
+     * Answer a share of the requests with 500 Internal Server Error.
+     *
+     * @param errorRate the share, between 0 and 1
+     * @return this server
+     */
+    public StandInGeocodingServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Answer requests beyond a rate with 429 Too Many Requests and a Retry-After header.
+     *
+     * @param requestsPerSecond the number of requests allowed per second
+     * @return this server
+     */
+    public StandInGeocodingServer setRateLimit(int requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    /**
+     * Set how long a batch job takes before its results can be fetched.
+     *
+     * @param batchDuration the duration of a job
+     * @return this server
+     */
+    public StandInGeocodingServer setBatchDuration(Duration batchDuration) {
+        this.batchDuration = batchDuration;
+        return this;
+    }
+
+    /**
+     * Get the number of requests received, including rejected ones.
+     *
+     * @return the number of requests
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Get the number of requests answered with 429.
+     *
+     * @return the number of throttled requests
+     */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    /**
+     * Get the number of requests answered with 500.
+     *
+     * @return the number of failed requests
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            requests.increment();
+            try {
+                sleep();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (!tryAcquireRate() || random.nextDouble() < throttleRate) {
+                throttled.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, error("Too many requests"));
+            } else if (random.nextDouble() < errorRate) {
+                failed.increment();
+                send(exchange, 500, error("Internal server error"));
+            } else {
+                try {
+                    handler.handle(exchange, query(exchange));
+                } catch (RuntimeException e) {
+                    send(exchange, 400, error(e.toString()));
+                }
+            }
+        }
+    }
+
+    private void nominatim(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String country = countries.apply(coordinate(query));
+        ObjectNode response = objectMapper.createObjectNode();
+        if (country == null) {
+            response.put("error", "Unable to geocode");
+        } else {
+            response.putObject("address").put("country_code", country);
+        }
+        send(exchange, 200, response);
+    }
+
+    private void geoapify(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String country = countries.apply(coordinate(query));
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("type", "FeatureCollection");
+        ArrayNode features = response.putArray("features");
+        if (country != null) {
+            features.addObject().putObject("properties").put("country_code", country);
+        }
+        send(exchange, 200, response);
+    }
+
+    private void geoapifyBatch(HttpExchange exchange, Map<String, String> query) throws IOException {
+        if (exchange.getRequestMethod().equals("POST")) {
+            JsonNode body;
+            try (InputStream input = exchange.getRequestBody()) {
+                body = objectMapper.readTree(input);
+            }
+            ArrayNode results = objectMapper.createArrayNode();
+            for (JsonNode point : body) {
+                ObjectNode result = results.addObject();
+                Coordinate coordinate = new Coordinate(point.path("lat").asDouble(), point.path("lon").asDouble());
+                String country = countries.apply(coordinate);
+                if (country != null) {
+                    result.put("country_code", country);
+                }
+                result.putObject("query").put("lat", coordinate.latitude()).put("lon", coordinate.longitude());
+            }
+            String id = Long.toString(nextJobId.incrementAndGet());
+            batchJobs.put(id, new BatchJob(System.nanoTime() + batchDuration.toNanos(), results));
+
+            ObjectNode response = objectMapper.createObjectNode();
+            response.put("id", id);
+            response.put("status", "pending");
+            response.put("url", getBaseUrl() + "/v1/batch/geocode/reverse?id=" + id + "&apiKey=" + query.getOrDefault("apiKey", ""));
+            send(exchange, 202, response);
+            return;
+        }
+
+        BatchJob job = batchJobs.get(query.getOrDefault("id", ""));
+        if (job == null) {
+            send(exchange, 404, error("Unknown job"));
+        } else if (System.nanoTime() < job.readyAt()) {
+            ObjectNode response = objectMapper.createObjectNode();
+            response.put("id", query.get("id"));
+            response.put("status", "pending");
+            send(exchange, 202, response);
+        } else {
+            send(exchange, 200, job.results());
+        }
+    }
+
+    private void sleep() throws InterruptedException {
+        long delay = latency.toNanos();
+        long jitter = latencyJitter.toNanos();
+        if (jitter > 0) {
+            delay += ThreadLocalRandom.current().nextLong(jitter);
+        }
+        if (delay > 0) {
+            Thread.sleep(Duration.ofNanos(delay));
+        }
+    }
+
+    private synchronized boolean tryAcquireRate() {
+        long now = System.nanoTime();
+        if (now - windowStart >= 1_000_000_000L) {
+            windowStart = now;
+            windowRequests = 0;
+        }
+        return ++windowRequests <= requestsPerSecond;
+    }
+
+    private static Coordinate coordinate(Map<String, String> query) {
+        return new Coordinate(Double.parseDouble(query.get("lat")), Double.parseDouble(query.get("lon")));
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw != null) {
+            for (String parameter : raw.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    query.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static ObjectNode error(String message) {
+        return objectMapper.createObjectNode().put("error", message);
+    }
+
+    // Compress the response if the client offered gzip, like the real APIs do.
+    private static void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        List<String> encodings = exchange.getRequestHeaders().getOrDefault("Accept-Encoding", List.of());
+        if (encodings.stream().anyMatch(encoding -> encoding.toLowerCase(Locale.ROOT).contains("gzip"))) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2 + 32);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Run a stand-in server until the process is stopped.
+     * <p>
+     * Usage: {@code [port] [countries.geojson]}. Without a boundaries file the made up {@link #gridCountry} codes are used.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        Function<Coordinate, String> countries = StandInGeocodingServer::gridCountry;
+        if (args.length > 1) {
+            CountryBoundaryIndex index = CountryBoundaryIndex.load(Path.of(args[1]), 0);
+            countries = coordinate -> {
+                String country = index.getCountry(coordinate);
+                return country == null ? null : country.toLowerCase(Locale.ROOT);
+            };
+        }
+        StandInGeocodingServer server = new StandInGeocodingServer(port, countries);
+        System.out.println("Stand-in geocoding server listening on " + server.getBaseUrl());
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> query) throws IOException;
+    }
+
+    private record BatchJob(long readyAt, JsonNode results) {
+    }
+}
@@ -0,0 +1,108 @@
+package org.btuk.geography.geocoding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the budget, the admission filter and the counters of the {@link WTinyLfuCache}.
+ */
+class WTinyLfuCacheTest {
+
+    private static final short CODE = 42;
+
+    @Test
+    void budgetsHoldUnderChurn() {
+        long maximumBytes = 1000L * WTinyLfuCache.BYTES_PER_ENTRY + WTinyLfuCache.BYTES_PER_ENTRY / 2;
+        WTinyLfuCache cache = WTinyLfuCache.withMaximumBytes(maximumBytes);
+        assertEquals(1000, cache.stats().maximumSize());
+
+        // Skewed keys, so entries move between all three segments and are evicted from each.
+        Random random = new Random(42);
+        Set<Long> added = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = (long) (Math.pow(random.nextDouble(), 3) * 20_000);
+            if (cache.get(key) == CountryCodes.NONE) {
+                cache.put(key, CODE);
+                added.add(key);
+            }
+            assertTrue(cache.stats().size() <= 1000);
+        }
+
+        CacheStats stats = cache.stats();
+        assertEquals(1000, stats.size());
+        assertTrue(stats.maximumSize() * (long) WTinyLfuCache.BYTES_PER_ENTRY <= maximumBytes);
+        assertEquals(200_000, stats.hits() + stats.misses());
+        // Every miss was put and every put entry is either still cached or was evicted.
+        assertEquals(stats.misses(), stats.size() + stats.evictions());
+        assertTrue(stats.misses() > added.size());
+
+        // The entries left are all still found.
+        int found = 0;
+        for (long key : added) {
+            if (cache.get(key) == CODE) {
+                found++;
+            }
+        }
+        assertEquals(1000, found);
+    }
+
+    @Test
+    void frequentKeySurvivesAScan() {
+        WTinyLfuCache cache = new WTinyLfuCache(100);
+        long hot = -1;
+        cache.put(hot, CODE);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(CODE, cache.get(hot));
+        }
+
+        // The key is read once per twice the cache size of one-off keys, which an LRU would have evicted every time.
+        for (long key = 0; key < 10_000; key++) {
+            assertEquals(CountryCodes.NONE, cache.get(key));
+            cache.put(key, CODE);
+            if (key % 200 == 199) {
+                assertEquals(CODE, cache.get(hot), "after " + (key + 1) + " keys");
+            }
+        }
+        assertEquals(100, cache.stats().size());
+    }
+
+    @Test
+    void countersFollowAScriptedSequence() {
+        // A window of one entry and a main space of one entry.
+        WTinyLfuCache cache = new WTinyLfuCache(2);
+
+        assertEquals(CountryCodes.NONE, cache.get(1));
+        cache.put(1, (short) 1);
+        assertEquals(CountryCodes.NONE, cache.get(2));
+        cache.put(2, (short) 2);
+        assertEquals(1, cache.get(1));
+        assertEquals(new CacheStats(1, 2, 0, 2, 2), cache.stats());
+
+        // 2 leaves the window, but 1 was used more often, so 2 is not admitted.
+        assertEquals(CountryCodes.NONE, cache.get(3));
+        cache.put(3, (short) 3);
+        assertEquals(new CacheStats(1, 3, 1, 2, 2), cache.stats());
+        assertEquals(CountryCodes.NONE, cache.get(2));
+        assertEquals(3, cache.get(3));
+        assertEquals(1, cache.get(1));
+        assertEquals(new CacheStats(3, 4, 1, 2, 2), cache.stats());
+
+        // 3 leaves the window for 4, and having been used as often as 1, isn't admitted either.
+        cache.put(4, (short) 4);
+        assertEquals(CountryCodes.NONE, cache.get(3));
+        assertEquals(4, cache.get(4));
+        assertEquals(1, cache.get(1));
+        assertEquals(new CacheStats(5, 5, 2, 2, 2), cache.stats());
+
+        // Updating an entry doesn't count as a hit, a miss or a new entry.
+        cache.put(4, (short) 5);
+        assertEquals(5, cache.get(4));
+        assertEquals(new CacheStats(6, 5, 2, 2, 2), cache.stats());
+    }
+}
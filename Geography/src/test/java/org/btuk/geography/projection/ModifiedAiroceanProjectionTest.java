@@ -0,0 +1,182 @@
+package org.btuk.geography.projection;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks the {@link ModifiedAiroceanProjection} with synthetic conformal fields, and against reference coordinates of
+ * Terra++ if the real table and the coordinates are in the test resources.
+ * <p>
+ * The real table can't be bundled. To compare against Terra++, add its {@code conformal.txt} and a
+ * {@code terra-landmarks.csv} with {@code name,latitude,longitude,x,z} lines taken from a Terra++ server.
+ */
+class ModifiedAiroceanProjectionTest {
+
+    private static final double ROOT3 = Math.sqrt(3);
+    private static final int N = ConformalField.SIDE_LENGTH;
+    // Side of a face, the arc between two vertices of the icosahedron.
+    private static final double ARC = 2 * Math.asin(Math.sqrt(5 - Math.sqrt(5)) / Math.sqrt(10));
+    // The tolerances of a round trip, the vertices of the icosahedron are only given to 1e-6°.
+    private static final double DEGREES_TOLERANCE = 1e-5;
+    private static final double BLOCK_TOLERANCE = 0.5;
+
+    @Test
+    void geographicRoundTripsWithAnIdentityField() {
+        assertGeographicRoundTrips(new ModifiedAiroceanProjection(field(0), ModifiedAiroceanProjection.BTE_SCALE));
+    }
+
+    @Test
+    void geographicRoundTripsWithACorrectedField() {
+        assertGeographicRoundTrips(new ModifiedAiroceanProjection(field(2), ModifiedAiroceanProjection.BTE_SCALE));
+    }
+
+    @Test
+    void blockPositionsInTheGapsOfTheMapAreNaN() {
+        MapProjection projection = new ModifiedAiroceanProjection(field(2), ModifiedAiroceanProjection.BTE_SCALE);
+        double[] point = new double[2];
+
+        for (double[] gap : new double[][]{{1e9, 1e9}, {3e7, 3e7}, {-3e7, 3e7}, {3e7, -3e7}, {-3e7, -3e7}, {Double.NaN, 0}}) {
+            projection.toGeo(gap[0], gap[1], point);
+            assertTrue(Double.isNaN(point[0]) && Double.isNaN(point[1]), "Not a gap: " + Arrays.toString(gap));
+        }
+
+        // Every position is either in a gap or the image of the coordinate it converts to, so no two positions share
+        // a coordinate.
+        Random random = new Random(42);
+        double[] back = new double[2];
+        int gaps = 0;
+        int positions = 20_000;
+        for (int i = 0; i < positions; i++) {
+            double x = random.nextDouble(-2.5e7, 2.5e7);
+            double z = random.nextDouble(-2.5e7, 2.5e7);
+            projection.toGeo(x, z, point);
+            if (Double.isNaN(point[0])) {
+                assertTrue(Double.isNaN(point[1]));
+                gaps++;
+                continue;
+            }
+            projection.fromGeo(point[0], point[1], back);
+            assertEquals(x, back[0], BLOCK_TOLERANCE, "x of " + x + ", " + z);
+            assertEquals(z, back[1], BLOCK_TOLERANCE, "z of " + x + ", " + z);
+        }
+        // A large part of the square around the map is ocean outside of it, and most of the rest is map.
+        assertTrue(gaps > positions / 10 && gaps < positions * 9 / 10, gaps + " gaps");
+    }
+
+    @Test
+    void tableIsReadInTheFormatOfTerra() throws IOException {
+        ConformalField read = ConformalField.read(new ByteArrayInputStream(table(field(2)).getBytes(StandardCharsets.US_ASCII)));
+        double[] expected = new double[2];
+        double[] actual = new double[2];
+        for (double x = 0.05; x < 1; x += 0.1) {
+            for (double y = 0.02; y < ROOT3 / 2 * Math.min(x, 1 - x) * 2; y += 0.1) {
+                field(2).toDymaxion(x, y, expected);
+                read.toDymaxion(x, y, actual);
+                assertArrayEquals(expected, actual, 1e-12);
+            }
+        }
+    }
+
+    @Test
+    void incompleteTableIsRejected() {
+        String table = table(field(0));
+        byte[] truncated = table.substring(0, table.length() / 2).getBytes(StandardCharsets.US_ASCII);
+
+        assertThrows(IOException.class, () -> ModifiedAiroceanProjection.load(new ByteArrayInputStream(truncated)));
+        assertThrows(IOException.class, () -> ModifiedAiroceanProjection.load(new ByteArrayInputStream("{1, x},".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test
+    void landmarksMatchTerra() throws IOException {
+        InputStream table = getClass().getResourceAsStream("/conformal.txt");
+        InputStream landmarks = getClass().getResourceAsStream("/terra-landmarks.csv");
+        assumeTrue(table != null && landmarks != null, "The conformal table of Terra++ and its landmarks are not in the test resources");
+
+        ModifiedAiroceanProjection projection;
+        try (table) {
+            projection = ModifiedAiroceanProjection.load(table);
+        }
+        double[] point = new double[2];
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(landmarks, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                String name = fields[0];
+                double latitude = Double.parseDouble(fields[1]);
+                double longitude = Double.parseDouble(fields[2]);
+                double x = Double.parseDouble(fields[3]);
+                double z = Double.parseDouble(fields[4]);
+
+                projection.fromGeo(latitude, longitude, point);
+                assertEquals(x, point[0], 1, name + " x");
+                assertEquals(z, point[1], 1, name + " z");
+                projection.toGeo(x, z, point);
+                assertEquals(latitude, point[0], DEGREES_TOLERANCE, name + " latitude");
+                assertEquals(longitude, point[1], DEGREES_TOLERANCE, name + " longitude");
+            }
+        }
+    }
+
+    private static void assertGeographicRoundTrips(MapProjection projection) {
+        double[] block = new double[2];
+        double[] point = new double[2];
+        for (double latitude = -80; latitude <= 80; latitude += 3.7) {
+            for (double longitude = -180; longitude < 180; longitude += 4.3) {
+                projection.fromGeo(latitude, longitude, block);
+                projection.toGeo(block[0], block[1], point);
+                String at = String.format(Locale.ROOT, "%.1f, %.1f", latitude, longitude);
+                assertEquals(latitude, point[0], DEGREES_TOLERANCE, "latitude of " + at);
+                assertEquals(0, Math.IEEEremainder(point[1] - longitude, 360), DEGREES_TOLERANCE, "longitude of " + at);
+            }
+        }
+    }
+
+    // The plain Dymaxion triangle, centred and scaled to the arc, stretched away from the centre by a correction that
+    // vanishes on the edges, so neighbouring faces still meet. Like the real table it has the symmetry of the triangle,
+    // which the projection relies on for the faces that are cut and moved.
+    private static ConformalField field(double correction) {
+        double[][] fieldX = new double[N + 1][];
+        double[][] fieldY = new double[N + 1][];
+        for (int u = 0; u <= N; u++) {
+            fieldX[u] = new double[N + 1 - u];
+            fieldY[u] = new double[N + 1 - u];
+            for (int v = 0; v <= N - u; v++) {
+                double stretch = 1 + correction * u * v * (N - u - v) / ((double) N * N * N);
+                fieldX[u][v] = ((u + v / 2.0) / N - 0.5) * stretch * ARC;
+                fieldY[u][v] = (ROOT3 / 2 * v / N - ROOT3 / 6) * stretch * ARC;
+            }
+        }
+        return new ConformalField(fieldX, fieldY);
+    }
+
+    // The field in the text format of Terra++, the vectors are stored for a triangle of side 1.1473979730192934.
+    private static String table(ConformalField field) {
+        StringBuilder table = new StringBuilder();
+        double[] vector = new double[2];
+        for (int v = 0; v <= N; v++) {
+            for (int u = 0; u <= N - v; u++) {
+                field.toDymaxion((u + v / 2.0) / N, ROOT3 / 2 * v / N, vector);
+                table.append('{').append(vector[0] * 1.1473979730192934).append(", ").append(vector[1] * 1.1473979730192934).append("},\n");
+            }
+        }
+        return table.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package org.btuk.geography.projection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the single point and batch paths of the projections.
+ * <p>
+ * Usage: {@code [points] [rounds] [conformal table]}. Each round converts all points to geographic coordinates and
+ * back, the first rounds warm up the JIT and are not reported. The modified Airocean projection is only run if the
+ * path of the Terra++ conformal table is given.
+ */
+public final class ProjectionBenchmark {
+
+    private static final int WARM_UP_ROUNDS = 5;
+
+    private ProjectionBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int points = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Random random = new Random(42);
+        double[] x = new double[points];
+        double[] z = new double[points];
+        for (int i = 0; i < points; i++) {
+            x[i] = random.nextDouble(-2_000_000, 2_000_000);
+            z[i] = random.nextDouble(-2_000_000, 2_000_000);
+        }
+
+        run("equirectangular", new EquirectangularProjection(100_000, 0, 0), x, z, rounds);
+        run("mercator", new MercatorProjection(1, 0, 0), x, z, rounds);
+        if (args.length > 2) {
+            ModifiedAiroceanProjection airocean;
+            try (InputStream conformalTable = Files.newInputStream(Path.of(args[2]))) {
+                airocean = ModifiedAiroceanProjection.load(conformalTable);
+            }
+            // The map has gaps, so the points are projected from coordinates instead.
+            double[] point = new double[2];
+            for (int i = 0; i < points; i++) {
+                airocean.fromGeo(random.nextDouble(-60, 60), random.nextDouble(-180, 180), point);
+                x[i] = point[0];
+                z[i] = point[1];
+            }
+            run("airocean", airocean, x, z, rounds);
+        }
+    }
+
+    private static void run(String name, MapProjection projection, double[] x, double[] z, int rounds) {
+        int points = x.length;
+        double[] latitudes = new double[points];
+        double[] longitudes = new double[points];
+        double[] backX = new double[points];
+        double[] backZ = new double[points];
+        double[] point = new double[2];
+
+        long singleNanos = 0;
+        long batchNanos = 0;
+        double checksum = 0;
+        for (int round = 0; round < WARM_UP_ROUNDS + rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < points; i++) {
+                projection.toGeo(x[i], z[i], point);
+                projection.fromGeo(point[0], point[1], point);
+                checksum += point[0];
+            }
+            long middle = System.nanoTime();
+            projection.toGeo(x, z, latitudes, longitudes, 0, points);
+            projection.fromGeo(latitudes, longitudes, backX, backZ, 0, points);
+            checksum += backX[round % points];
+            long end = System.nanoTime();
+            if (round >= WARM_UP_ROUNDS) {
+                singleNanos += middle - start;
+                batchNanos += end - middle;
+            }
+        }
+
+        double error = 0;
+        for (int i = 0; i < points; i++) {
+            error = Math.max(error, Math.max(Math.abs(backX[i] - x[i]), Math.abs(backZ[i] - z[i])));
+        }
+        long conversions = 2L * points * rounds;
+        System.out.printf(Locale.US, "%-16s single %.2f ns, batch %.2f ns per conversion, round trip error %.2e blocks (%.0f)%n",
+                name, (double) singleNanos / conversions, (double) batchNanos / conversions, error, checksum);
+    }
+}
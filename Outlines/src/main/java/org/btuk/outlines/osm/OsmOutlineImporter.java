@@ -0,0 +1,387 @@
+package org.btuk.outlines.osm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.projection.MapProjection;
+import org.btuk.outlines.geometry.IntPoint2d;
+import org.btuk.outlines.geometry.Outline;
+
+/**
+ * Imports the outlines of OSM ways, such as building footprints, from an {@code .osm.pbf} extract.
+ * <p>
+ * The file is streamed twice. The first pass keeps the node ids of the ways that match a {@link TagFilter}, the second
+ * the coordinates of only those nodes. The blocks of each pass are decompressed and decoded in parallel, with a bounded
+ * number in flight, so the heap needed depends on the number of matching ways, about 20 bytes per way node, and not on
+ * the size of the extract.
+ * <p>
+ * Ways with at least one node inside the bounding box are projected to block coordinates and passed on as
+ * {@link Outline outlines}. Ways with nodes missing from the extract are skipped.
+ */
+public final class OsmOutlineImporter {
+
+    private static final Set<String> SUPPORTED_FEATURES = Set.of("OsmSchema-V0.6", "DenseNodes");
+    private static final int MISSING = Integer.MIN_VALUE;
+    private static final double FIXED_POINT = 1e7;
+
+    private final MapProjection projection;
+    private final Coordinate southWest;
+    private final Coordinate northEast;
+    private final List<TagFilter> filters;
+    private final int threads;
+
+    /**
+     * @param projection the projection from coordinates to blocks
+     * @param southWest  the south-west corner of the bounding box
+     * @param northEast  the north-east corner of the bounding box
+     * @param filters    ways matching any of these filters are imported
+     */
+    public OsmOutlineImporter(MapProjection projection, Coordinate southWest, Coordinate northEast, List<TagFilter> filters) {
+        this(projection, southWest, northEast, filters, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param projection the projection from coordinates to blocks
+     * @param southWest  the south-west corner of the bounding box
+     * @param northEast  the north-east corner of the bounding box
+     * @param filters    ways matching any of these filters are imported
+     * @param threads    the number of threads decoding blocks
+     */
+    public OsmOutlineImporter(MapProjection projection, Coordinate southWest, Coordinate northEast, List<TagFilter> filters,
+                              int threads) {
+        if (filters.isEmpty()) {
+            throw new IllegalArgumentException("At least one tag filter is required");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        this.projection = projection;
+        this.southWest = southWest;
+        this.northEast = northEast;
+        this.filters = List.copyOf(filters);
+        this.threads = threads;
+    }
+
+    /**
+     * Import the outlines of an extract.
+     *
+     * @param file     the {@code .osm.pbf} file
+     * @param consumer receives every outline, on the calling thread
+     * @return the number of outlines passed to the consumer
+     * @throws IOException if the file could not be read or is malformed
+     */
+    public long importOutlines(Path file, Consumer<Outline> consumer) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Ways ways = new Ways();
+            readBlocks(file, executor, block -> new WayCollector(block, ways));
+            if (ways.count == 0) {
+                return 0;
+            }
+
+            Nodes nodes = new Nodes(ways.distinctRefs());
+            readBlocks(file, executor, block -> new NodeCollector(nodes));
+
+            return emit(ways, nodes, consumer);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void readBlocks(Path file, ExecutorService executor, Function<PrimitiveBlock, PrimitiveBlock.Visitor> visitors)
+            throws IOException {
+        // Each block in flight holds up to 32 MB, so only a few per thread are read ahead.
+        int permits = threads * 2;
+        Semaphore inFlight = new Semaphore(permits);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            PbfBlob blob;
+            while ((blob = PbfBlob.read(input)) != null && failure.get() == null) {
+                switch (blob.type()) {
+                    case PbfBlob.HEADER -> checkHeader(blob.decompress());
+                    case PbfBlob.DATA -> {
+                        inFlight.acquire();
+                        PbfBlob data = blob;
+                        executor.execute(() -> {
+                            try {
+                                PrimitiveBlock block = PrimitiveBlock.parse(data.decompress());
+                                block.accept(visitors.apply(block));
+                            } catch (IOException e) {
+                                failure.compareAndSet(null, e);
+                            } catch (RuntimeException e) {
+                                failure.compareAndSet(null, new IOException("Failed to decode a block", e));
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                    }
+                    default -> {
+                        // Unknown blob types are to be skipped according to the format.
+                    }
+                }
+            }
+            inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while importing " + file);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private static void checkHeader(byte[] data) throws IOException {
+        ProtobufReader reader = new ProtobufReader(data);
+        while (reader.hasRemaining()) {
+            int key = reader.readKey();
+            if (key >>> 3 == 4) {
+                String feature = reader.readString();
+                if (!SUPPORTED_FEATURES.contains(feature)) {
+                    throw new IOException("Unsupported required feature " + feature);
+                }
+            } else {
+                reader.skip(key);
+            }
+        }
+    }
+
+    private long emit(Ways ways, Nodes nodes, Consumer<Outline> consumer) {
+        long count = 0;
+        double[] latitudes = new double[64];
+        double[] longitudes = new double[64];
+        for (int way = 0; way < ways.count; way++) {
+            int start = ways.starts[way];
+            int length = ways.starts[way + 1] - start;
+            if (latitudes.length < length) {
+                latitudes = new double[length];
+                longitudes = new double[length];
+            }
+
+            boolean complete = true;
+            boolean inside = false;
+            for (int i = 0; i < length && complete; i++) {
+                int node = nodes.indexOf(ways.refs[start + i]);
+                if (node < 0 || nodes.latitudes[node] == MISSING) {
+                    complete = false;
+                    break;
+                }
+                latitudes[i] = nodes.latitudes[node] / FIXED_POINT;
+                longitudes[i] = nodes.longitudes[node] / FIXED_POINT;
+                inside |= latitudes[i] >= southWest.latitude() && latitudes[i] <= northEast.latitude()
+                        && longitudes[i] >= southWest.longitude() && longitudes[i] <= northEast.longitude();
+            }
+            if (!complete || !inside) {
+                continue;
+            }
+
+            // The arrays are overwritten with the block positions.
+            projection.fromGeo(latitudes, longitudes, longitudes, latitudes, 0, length);
+            List<IntPoint2d> points = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                IntPoint2d point = new IntPoint2d((int) Math.floor(longitudes[i]), (int) Math.floor(latitudes[i]));
+                if (points.isEmpty() || !points.getLast().equals(point)) {
+                    points.add(point);
+                }
+            }
+            // Outlines are closed implicitly.
+            if (points.size() > 1 && points.getFirst().equals(points.getLast())) {
+                points.removeLast();
+            }
+            if (points.size() >= 3) {
+                consumer.accept(new Outline(List.copyOf(points)));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The node ids of the matching ways, in one array with the start of every way.
+    private static final class Ways {
+
+        private long[] refs = new long[1024];
+        private int[] starts = new int[257];
+        private int count;
+
+        private synchronized void add(long[] blockRefs, int[] blockStarts, int blockCount) {
+            int refCount = starts[count];
+            int added = blockStarts[blockCount];
+            if (refCount + added > refs.length) {
+                refs = Arrays.copyOf(refs, Math.max(refs.length * 2, refCount + added));
+            }
+            if (count + blockCount + 1 > starts.length) {
+                starts = Arrays.copyOf(starts, Math.max(starts.length * 2, count + blockCount + 1));
+            }
+            System.arraycopy(blockRefs, 0, refs, refCount, added);
+            for (int i = 1; i <= blockCount; i++) {
+                starts[count + i] = refCount + blockStarts[i];
+            }
+            count += blockCount;
+        }
+
+        private long[] distinctRefs() {
+            long[] sorted = Arrays.copyOf(refs, starts[count]);
+            Arrays.parallelSort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, distinct);
+        }
+    }
+
+    // The coordinates of the nodes of the matching ways, in 1e-7 degrees, indexed like the sorted ids.
+    private static final class Nodes {
+
+        private final long[] ids;
+        private final int[] latitudes;
+        private final int[] longitudes;
+
+        private Nodes(long[] ids) {
+            this.ids = ids;
+            this.latitudes = new int[ids.length];
+            this.longitudes = new int[ids.length];
+            Arrays.fill(latitudes, MISSING);
+        }
+
+        private int indexOf(long id) {
+            return Arrays.binarySearch(ids, id);
+        }
+    }
+
+    private final class WayCollector implements PrimitiveBlock.Visitor {
+
+        private final Ways ways;
+        private final int[] keys;
+        private final int[][] values;
+        private long[] refs = new long[256];
+        private int[] starts = new int[33];
+        private int count;
+
+        private WayCollector(PrimitiveBlock block, Ways ways) {
+            this.ways = ways;
+            this.keys = new int[filters.size()];
+            this.values = new int[filters.size()][];
+            for (int i = 0; i < filters.size(); i++) {
+                TagFilter filter = filters.get(i);
+                keys[i] = block.indexOf(filter.key().getBytes(StandardCharsets.UTF_8));
+                values[i] = filter.values().stream()
+                        .mapToInt(value -> block.indexOf(value.getBytes(StandardCharsets.UTF_8)))
+                        .filter(index -> index >= 0)
+                        .toArray();
+            }
+        }
+
+        @Override
+        public boolean wantsNodes() {
+            return false;
+        }
+
+        @Override
+        public boolean wantsWays() {
+            return Arrays.stream(keys).anyMatch(key -> key >= 0);
+        }
+
+        @Override
+        public void way(long id, int[] tagKeys, int[] tagValues, int tagCount, long[] wayRefs, int refCount) {
+            if (!matches(tagKeys, tagValues, tagCount)) {
+                return;
+            }
+            int start = starts[count];
+            if (start + refCount > refs.length) {
+                refs = Arrays.copyOf(refs, Math.max(refs.length * 2, start + refCount));
+            }
+            if (count + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            System.arraycopy(wayRefs, 0, refs, start, refCount);
+            starts[++count] = start + refCount;
+            if (count == 1024) {
+                flush();
+            }
+        }
+
+        private boolean matches(int[] tagKeys, int[] tagValues, int tagCount) {
+            for (int filter = 0; filter < keys.length; filter++) {
+                if (keys[filter] < 0) {
+                    continue;
+                }
+                for (int tag = 0; tag < tagCount; tag++) {
+                    if (tagKeys[tag] == keys[filter]
+                            && (filters.get(filter).values().isEmpty() || contains(values[filter], tagValues[tag]))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void end() {
+            if (count > 0) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            ways.add(refs, starts, count);
+            count = 0;
+        }
+
+        private static boolean contains(int[] array, int value) {
+            for (int element : array) {
+                if (element == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class NodeCollector implements PrimitiveBlock.Visitor {
+
+        private final Nodes nodes;
+
+        private NodeCollector(Nodes nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public boolean wantsNodes() {
+            return true;
+        }
+
+        @Override
+        public boolean wantsWays() {
+            return false;
+        }
+
+        // Every node is written by one block only, the semaphore publishes the arrays to the importing thread.
+        @Override
+        public void node(long id, double latitude, double longitude) {
+            int index = nodes.indexOf(id);
+            if (index >= 0) {
+                nodes.latitudes[index] = (int) Math.round(latitude * FIXED_POINT);
+                nodes.longitudes[index] = (int) Math.round(longitude * FIXED_POINT);
+            }
+        }
+    }
+}
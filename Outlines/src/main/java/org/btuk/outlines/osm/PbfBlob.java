@@ -0,0 +1,117 @@
+package org.btuk.outlines.osm;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * One blob of an {@code .osm.pbf} file: a {@code BlobHeader} naming the type, followed by the still compressed block.
+ * <p>
+ * Reading blobs is sequential and cheap, {@link #decompress()} is the expensive part and is meant to run in parallel.
+ *
+ * @param type the type of the block, {@code OSMHeader} or {@code OSMData}
+ * @param blob the encoded {@code Blob} message
+ */
+record PbfBlob(String type, byte[] blob) {
+
+    static final String HEADER = "OSMHeader";
+    static final String DATA = "OSMData";
+
+    // Limits from the format specification.
+    private static final int MAXIMUM_HEADER_SIZE = 64 * 1024;
+    private static final int MAXIMUM_BLOB_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Read the next blob.
+     *
+     * @param input the file, positioned at the start of a blob
+     * @return the blob, or null at the end of the file
+     * @throws IOException if the file could not be read or is malformed
+     */
+    static PbfBlob read(DataInputStream input) throws IOException {
+        int headerSize;
+        try {
+            headerSize = input.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (headerSize < 0 || headerSize > MAXIMUM_HEADER_SIZE) {
+            throw new IOException("Invalid blob header size " + headerSize);
+        }
+        byte[] header = input.readNBytes(headerSize);
+        if (header.length != headerSize) {
+            throw new EOFException("Truncated blob header");
+        }
+
+        String type = null;
+        int dataSize = -1;
+        ProtobufReader reader = new ProtobufReader(header);
+        while (reader.hasRemaining()) {
+            int key = reader.readKey();
+            switch (key >>> 3) {
+                case 1 -> type = reader.readString();
+                case 3 -> dataSize = (int) reader.readVarint();
+                default -> reader.skip(key);
+            }
+        }
+        if (type == null || dataSize < 0 || dataSize > MAXIMUM_BLOB_SIZE) {
+            throw new IOException("Invalid blob header");
+        }
+        byte[] blob = input.readNBytes(dataSize);
+        if (blob.length != dataSize) {
+            throw new EOFException("Truncated blob");
+        }
+        return new PbfBlob(type, blob);
+    }
+
+    /**
+     * Decompress the block.
+     *
+     * @return the encoded block
+     * @throws IOException if the blob is malformed or uses an unsupported compression
+     */
+    byte[] decompress() throws IOException {
+        ProtobufReader reader = new ProtobufReader(blob);
+        int rawSize = -1;
+        ProtobufReader zlibData = null;
+        while (reader.hasRemaining()) {
+            int key = reader.readKey();
+            switch (key >>> 3) {
+                case 1 -> {
+                    return reader.readBytes();
+                }
+                case 2 -> rawSize = (int) reader.readVarint();
+                case 3 -> zlibData = reader.readMessage();
+                case 4, 5, 6, 7 -> throw new IOException("Unsupported blob compression, only zlib is supported");
+                default -> reader.skip(key);
+            }
+        }
+        if (zlibData == null || rawSize < 0 || rawSize > MAXIMUM_BLOB_SIZE) {
+            throw new IOException("Invalid blob");
+        }
+
+        byte[] data = new byte[rawSize];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlibData.buffer(), zlibData.position(), zlibData.limit() - zlibData.position());
+            int length = 0;
+            while (!inflater.finished() && length < rawSize) {
+                int inflated = inflater.inflate(data, length, rawSize - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawSize || !inflater.finished()) {
+                throw new IOException("Blob inflated to the wrong size");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt blob", e);
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,277 @@
+package org.btuk.outlines.osm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decoder of an {@code OSMData} block, passing nodes and ways to a {@link Visitor}.
+ * <p>
+ * Nothing is decoded that the visitor doesn't ask for, skipping the nodes of a block is a matter of skipping bytes.
+ * Tags are passed as indices into the string table of the block, so filtering them needs no string decoding.
+ */
+final class PrimitiveBlock {
+
+    private static final double NANODEGREES = 1e-9;
+
+    private final byte[] data;
+    private final int[] stringOffsets;
+    private final int[] stringLengths;
+    private final List<ProtobufReader> groups;
+    private final long granularity;
+    private final long latitudeOffset;
+    private final long longitudeOffset;
+
+    private PrimitiveBlock(byte[] data, int[] stringOffsets, int[] stringLengths, List<ProtobufReader> groups,
+                           long granularity, long latitudeOffset, long longitudeOffset) {
+        this.data = data;
+        this.stringOffsets = stringOffsets;
+        this.stringLengths = stringLengths;
+        this.groups = groups;
+        this.granularity = granularity;
+        this.latitudeOffset = latitudeOffset;
+        this.longitudeOffset = longitudeOffset;
+    }
+
+    static PrimitiveBlock parse(byte[] data) throws IOException {
+        int[] stringOffsets = new int[0];
+        int[] stringLengths = new int[0];
+        List<ProtobufReader> groups = new ArrayList<>();
+        long granularity = 100;
+        long latitudeOffset = 0;
+        long longitudeOffset = 0;
+
+        // The offsets follow the groups in the encoding, so the groups are only decoded once the block is read.
+        ProtobufReader reader = new ProtobufReader(data);
+        while (reader.hasRemaining()) {
+            int key = reader.readKey();
+            switch (key >>> 3) {
+                case 1 -> {
+                    ProtobufReader table = reader.readMessage();
+                    int count = 0;
+                    while (table.hasRemaining()) {
+                        int stringKey = table.readKey();
+                        if (stringKey >>> 3 != 1) {
+                            table.skip(stringKey);
+                            continue;
+                        }
+                        ProtobufReader string = table.readMessage();
+                        if (count == stringOffsets.length) {
+                            stringOffsets = Arrays.copyOf(stringOffsets, Math.max(16, count * 2));
+                            stringLengths = Arrays.copyOf(stringLengths, stringOffsets.length);
+                        }
+                        stringOffsets[count] = string.position();
+                        stringLengths[count] = string.limit() - string.position();
+                        count++;
+                    }
+                    stringOffsets = Arrays.copyOf(stringOffsets, count);
+                    stringLengths = Arrays.copyOf(stringLengths, count);
+                }
+                case 2 -> groups.add(reader.readMessage());
+                case 17 -> granularity = reader.readVarint();
+                case 19 -> latitudeOffset = reader.readVarint();
+                case 20 -> longitudeOffset = reader.readVarint();
+                default -> reader.skip(key);
+            }
+        }
+        return new PrimitiveBlock(data, stringOffsets, stringLengths, groups, granularity, latitudeOffset, longitudeOffset);
+    }
+
+    /**
+     * Find a string in the string table.
+     *
+     * @param utf8 the string, encoded as UTF-8
+     * @return the index of the string, or -1 if the block doesn't contain it
+     */
+    int indexOf(byte[] utf8) {
+        for (int i = 0; i < stringOffsets.length; i++) {
+            if (Arrays.equals(data, stringOffsets[i], stringOffsets[i] + stringLengths[i], utf8, 0, utf8.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String getString(int index) {
+        return new String(data, stringOffsets[index], stringLengths[index], StandardCharsets.UTF_8);
+    }
+
+    void accept(Visitor visitor) throws IOException {
+        WayBuffer way = visitor.wantsWays() ? new WayBuffer() : null;
+        for (ProtobufReader group : groups) {
+            ProtobufReader reader = new ProtobufReader(group.buffer(), group.position(), group.limit() - group.position());
+            while (reader.hasRemaining()) {
+                int key = reader.readKey();
+                switch (key >>> 3) {
+                    case 1 -> {
+                        if (visitor.wantsNodes()) {
+                            readNode(reader.readMessage(), visitor);
+                        } else {
+                            reader.skip(key);
+                        }
+                    }
+                    case 2 -> {
+                        if (visitor.wantsNodes()) {
+                            readDenseNodes(reader.readMessage(), visitor);
+                        } else {
+                            reader.skip(key);
+                        }
+                    }
+                    case 3 -> {
+                        if (way != null) {
+                            readWay(reader.readMessage(), way);
+                            visitor.way(way.id, way.keys, way.values, way.tagCount, way.refs, way.refCount);
+                        } else {
+                            reader.skip(key);
+                        }
+                    }
+                    default -> reader.skip(key);
+                }
+            }
+        }
+        visitor.end();
+    }
+
+    private void readNode(ProtobufReader reader, Visitor visitor) throws IOException {
+        long id = 0;
+        long latitude = 0;
+        long longitude = 0;
+        while (reader.hasRemaining()) {
+            int key = reader.readKey();
+            switch (key >>> 3) {
+                case 1 -> id = reader.readSignedVarint();
+                case 8 -> latitude = reader.readSignedVarint();
+                case 9 -> longitude = reader.readSignedVarint();
+                default -> reader.skip(key);
+            }
+        }
+        visitor.node(id, toDegrees(latitudeOffset, latitude), toDegrees(longitudeOffset, longitude));
+    }
+
+    private void readDenseNodes(ProtobufReader reader, Visitor visitor) throws IOException {
+        ProtobufReader ids = null;
+        ProtobufReader latitudes = null;
+        ProtobufReader longitudes = null;
+        while (reader.hasRemaining()) {
+            int key = reader.readKey();
+            switch (key >>> 3) {
+                case 1 -> ids = reader.readMessage();
+                case 8 -> latitudes = reader.readMessage();
+                case 9 -> longitudes = reader.readMessage();
+                default -> reader.skip(key);
+            }
+        }
+        if (ids == null || latitudes == null || longitudes == null) {
+            return;
+        }
+        long id = 0;
+        long latitude = 0;
+        long longitude = 0;
+        while (ids.hasRemaining()) {
+            if (!latitudes.hasRemaining() || !longitudes.hasRemaining()) {
+                throw new IOException("Dense nodes have fewer coordinates than ids");
+            }
+            id += ids.readSignedVarint();
+            latitude += latitudes.readSignedVarint();
+            longitude += longitudes.readSignedVarint();
+            visitor.node(id, toDegrees(latitudeOffset, latitude), toDegrees(longitudeOffset, longitude));
+        }
+    }
+
+    private static void readWay(ProtobufReader reader, WayBuffer way) throws IOException {
+        way.id = 0;
+        way.tagCount = 0;
+        way.refCount = 0;
+        int valueCount = 0;
+        while (reader.hasRemaining()) {
+            int key = reader.readKey();
+            switch (key >>> 3) {
+                case 1 -> way.id = reader.readVarint();
+                case 2 -> {
+                    ProtobufReader keys = reader.readMessage();
+                    while (keys.hasRemaining()) {
+                        way.keys = grow(way.keys, way.tagCount);
+                        way.keys[way.tagCount++] = (int) keys.readVarint();
+                    }
+                }
+                case 3 -> {
+                    ProtobufReader values = reader.readMessage();
+                    while (values.hasRemaining()) {
+                        way.values = grow(way.values, valueCount);
+                        way.values[valueCount++] = (int) values.readVarint();
+                    }
+                }
+                case 8 -> {
+                    ProtobufReader refs = reader.readMessage();
+                    long ref = 0;
+                    while (refs.hasRemaining()) {
+                        ref += refs.readSignedVarint();
+                        if (way.refCount == way.refs.length) {
+                            way.refs = Arrays.copyOf(way.refs, way.refs.length * 2);
+                        }
+                        way.refs[way.refCount++] = ref;
+                    }
+                }
+                default -> reader.skip(key);
+            }
+        }
+        if (valueCount != way.tagCount) {
+            throw new IOException("Way " + way.id + " has " + way.tagCount + " keys but " + valueCount + " values");
+        }
+    }
+
+    private double toDegrees(long offset, long value) {
+        return NANODEGREES * (offset + granularity * value);
+    }
+
+    private static int[] grow(int[] array, int size) {
+        return size < array.length ? array : Arrays.copyOf(array, array.length * 2);
+    }
+
+    interface Visitor {
+
+        boolean wantsNodes();
+
+        boolean wantsWays();
+
+        /**
+         * Receive a node.
+         *
+         * @param id        the node id
+         * @param latitude  the latitude in degrees
+         * @param longitude the longitude in degrees
+         */
+        default void node(long id, double latitude, double longitude) {
+        }
+
+        /**
+         * Receive a way. The arrays are reused for the next way.
+         *
+         * @param id       the way id
+         * @param keys     the string table indices of the tag keys
+         * @param values   the string table indices of the tag values
+         * @param tagCount the number of tags
+         * @param refs     the ids of the nodes of the way, in order
+         * @param refCount the number of nodes
+         */
+        default void way(long id, int[] keys, int[] values, int tagCount, long[] refs, int refCount) {
+        }
+
+        /**
+         * Called after the last node or way of the block.
+         */
+        default void end() {
+        }
+    }
+
+    private static final class WayBuffer {
+        private long id;
+        private int[] keys = new int[16];
+        private int[] values = new int[16];
+        private int tagCount;
+        private long[] refs = new long[64];
+        private int refCount;
+    }
+}
@@ -0,0 +1,137 @@
+package org.btuk.outlines.osm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal reader for the protobuf wire format over a slice of a byte array.
+ * <p>
+ * Only what the OSM PBF format needs: varints, zigzag varints, fixed 32 and 64-bit values and length-delimited fields,
+ * which are returned as readers over the same array, so nested messages are never copied.
+ */
+final class ProtobufReader {
+
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    ProtobufReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    ProtobufReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Read the key of the next field.
+     *
+     * @return the key, the field number is {@code key >>> 3} and the wire type {@code key & 7}
+     * @throws IOException if the message is truncated
+     */
+    int readKey() throws IOException {
+        return (int) readVarint();
+    }
+
+    long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= limit) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    long readSignedVarint() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Read a length-delimited field.
+     *
+     * @return a reader over the content of the field
+     * @throws IOException if the message is truncated
+     */
+    ProtobufReader readMessage() throws IOException {
+        int length = readLength();
+        ProtobufReader message = new ProtobufReader(buffer, position, length);
+        position += length;
+        return message;
+    }
+
+    String readString() throws IOException {
+        int length = readLength();
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    byte[] readBytes() throws IOException {
+        int length = readLength();
+        byte[] value = new byte[length];
+        System.arraycopy(buffer, position, value, 0, length);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Skip the value of a field.
+     *
+     * @param key the key of the field
+     * @throws IOException if the wire type is unknown or the message is truncated
+     */
+    void skip(int key) throws IOException {
+        switch (key & 7) {
+            case VARINT -> readVarint();
+            case FIXED64 -> advance(8);
+            case LENGTH_DELIMITED -> advance(readLength());
+            case FIXED32 -> advance(4);
+            default -> throw new IOException("Unsupported wire type " + (key & 7));
+        }
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int position() {
+        return position;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    private int readLength() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > limit - position) {
+            throw new IOException("Field length " + length + " exceeds the message");
+        }
+        return (int) length;
+    }
+
+    private void advance(int length) throws IOException {
+        if (length > limit - position) {
+            throw new IOException("Truncated field");
+        }
+        position += length;
+    }
+}
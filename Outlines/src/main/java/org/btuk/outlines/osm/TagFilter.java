@@ -0,0 +1,37 @@
+package org.btuk.outlines.osm;
+
+import java.util.Set;
+
+/**
+ * Selects OSM ways by one of their tags.
+ *
+ * @param key    the tag key, for example {@code building}
+ * @param values the accepted values, any value if empty
+ */
+public record TagFilter(String key, Set<String> values) {
+
+    public TagFilter {
+        values = Set.copyOf(values);
+    }
+
+    /**
+     * Accept ways with a tag, whatever its value.
+     *
+     * @param key the tag key
+     * @return the filter
+     */
+    public static TagFilter any(String key) {
+        return new TagFilter(key, Set.of());
+    }
+
+    /**
+     * Accept ways with a tag that has one of a set of values.
+     *
+     * @param key    the tag key
+     * @param values the accepted values
+     * @return the filter
+     */
+    public static TagFilter anyOf(String key, String... values) {
+        return new TagFilter(key, Set.of(values));
+    }
+}
@@ -0,0 +1,94 @@
+package org.btuk.outlines.osm;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.projection.EquirectangularProjection;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the import of a county-sized extract.
+ * <p>
+ * Usage: {@code [buildings] [threads]}. Writes a synthetic extract of square buildings and as many other ways spread
+ * over a 1° by 1° area, then imports the buildings in the southern half and reports the time and the peak heap used.
+ * Run it with a small {@code -Xmx} to check that the heap stays bounded.
+ */
+public final class OsmImportBenchmark {
+
+    private static final int BLOCK_SIZE = 8000;
+
+    private OsmImportBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int buildings = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        Path file = Files.createTempFile("benchmark", ".osm.pbf");
+        try {
+            write(file, buildings);
+            System.out.printf(Locale.ROOT, "%d buildings, %.1f MB, %d threads%n", buildings, Files.size(file) / 1e6, threads);
+
+            OsmOutlineImporter importer = new OsmOutlineImporter(new EquirectangularProjection(100_000, 0, 0),
+                    new Coordinate(51.0, -1.0), new Coordinate(51.5, 0.0), List.of(TagFilter.any("building")), threads);
+            for (int round = 0; round < 3; round++) {
+                System.gc();
+                List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                        .filter(pool -> pool.getType() == MemoryType.HEAP)
+                        .toList();
+                pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+                long start = System.nanoTime();
+                long count = importer.importOutlines(file, outline -> {
+                });
+                long elapsed = System.nanoTime() - start;
+                long peak = pools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+                System.out.printf(Locale.ROOT, "%d outlines in %d ms, peak heap %.0f MB%n", count, elapsed / 1_000_000, peak / 1e6);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Every building has 4 nodes and is followed by a road through 2 of them, as the ways of a real extract.
+    private static void write(Path file, int buildings) throws IOException {
+        Random random = new Random(42);
+        try (PbfFileWriter writer = new PbfFileWriter(file)) {
+            writer.header("OsmSchema-V0.6", "DenseNodes");
+            for (int first = 0; first < buildings; first += BLOCK_SIZE / 4) {
+                int count = Math.min(BLOCK_SIZE / 4, buildings - first);
+                long[] ids = new long[count * 4];
+                long[] latitudes = new long[count * 4];
+                long[] longitudes = new long[count * 4];
+                for (int building = 0; building < count; building++) {
+                    long latitude = 51_000_000_000L + random.nextLong(1_000_000_000L) / 100 * 100;
+                    long longitude = -1_000_000_000L + random.nextLong(1_000_000_000L) / 100 * 100;
+                    for (int corner = 0; corner < 4; corner++) {
+                        int node = building * 4 + corner;
+                        ids[node] = (first + building) * 4L + corner + 1;
+                        latitudes[node] = latitude + (corner >= 2 ? 100_000 : 0);
+                        longitudes[node] = longitude + (corner == 1 || corner == 2 ? 150_000 : 0);
+                    }
+                }
+                writer.block(new PbfFileWriter.Block().denseNodes(ids, latitudes, longitudes), true);
+            }
+            for (int first = 0; first < buildings; first += BLOCK_SIZE / 2) {
+                int count = Math.min(BLOCK_SIZE / 2, buildings - first);
+                PbfFileWriter.Block block = new PbfFileWriter.Block();
+                for (int building = first; building < first + count; building++) {
+                    long node = building * 4L + 1;
+                    block.way(building * 2L + 1, List.of("building", "yes"), node, node + 1, node + 2, node + 3, node);
+                    block.way(building * 2L + 2, List.of("highway", "residential"), node, node + 1);
+                }
+                writer.block(block, true);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.btuk.outlines.osm;
+
+import org.btuk.geography.Coordinate;
+import org.btuk.geography.projection.EquirectangularProjection;
+import org.btuk.outlines.geometry.IntPoint2d;
+import org.btuk.outlines.geometry.Outline;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Imports a small {@code .osm.pbf} extract written by {@link PbfFileWriter} and checks the outlines exactly.
+ * <p>
+ * The projection has 100,000 blocks per degree and every node is in the middle of a block, so the block of a node is
+ * exact. The bounding box is 51°N to 51.1°N, 1°W to 0.9°W.
+ */
+class OsmOutlineImporterTest {
+
+    private static final Coordinate SOUTH_WEST = new Coordinate(51.0, -1.0);
+    private static final Coordinate NORTH_EAST = new Coordinate(51.1, -0.9);
+    private static final List<TagFilter> FILTERS = List.of(TagFilter.any("building"), TagFilter.anyOf("amenity", "parking"));
+
+    // Node ids and the blocks they are in, node 21 is missing from the extract.
+    private static final long[] IDS = {20, 1, 2, 3, 4, 5, 6, 7, 8, 10, 11, 12};
+    private static final int[][] BLOCKS = {
+            {-96_000, -5_106_000},
+            {-95_000, -5_105_000}, {-94_990, -5_105_000}, {-94_990, -5_104_990}, {-95_000, -5_104_990},
+            {-93_000, -5_103_000}, {-92_980, -5_103_000}, {-92_980, -5_102_980}, {-93_000, -5_102_980},
+            // Outside of the bounding box, at 52°N.
+            {-95_000, -5_200_000}, {-94_990, -5_200_000}, {-94_990, -5_199_990}
+    };
+    private static final int[] NODE_9 = {-92_990, -5_102_970};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void importsTheMatchingWaysInTheBoundingBox() throws IOException {
+        Path file = directory.resolve("extract.osm.pbf");
+        writeExtract(file, "OsmSchema-V0.6", "DenseNodes");
+
+        List<Outline> outlines = new ArrayList<>();
+        long count = importer(2).importOutlines(file, outlines::add);
+
+        assertEquals(3, count);
+        assertEquals(3, outlines.size());
+        // Blocks are decoded in parallel, so the ways of different blocks may come in any order.
+        assertEquals(Set.of(
+                outline(-95_000, -5_105_000, -94_990, -5_105_000, -94_990, -5_104_990, -95_000, -5_104_990),
+                outline(-93_000, -5_103_000, -92_980, -5_103_000, -92_980, -5_102_980, -92_990, -5_102_970),
+                outline(-95_000, -5_104_990, -95_000, -5_200_000, -94_990, -5_200_000)
+        ), new HashSet<>(outlines));
+    }
+
+    @Test
+    void singleThreadKeepsTheOrderOfTheWays() throws IOException {
+        Path file = directory.resolve("extract.osm.pbf");
+        writeExtract(file, "OsmSchema-V0.6", "DenseNodes");
+
+        List<Outline> outlines = new ArrayList<>();
+        importer(1).importOutlines(file, outlines::add);
+
+        assertEquals(List.of(
+                outline(-95_000, -5_105_000, -94_990, -5_105_000, -94_990, -5_104_990, -95_000, -5_104_990),
+                outline(-93_000, -5_103_000, -92_980, -5_103_000, -92_980, -5_102_980, -92_990, -5_102_970),
+                outline(-95_000, -5_104_990, -95_000, -5_200_000, -94_990, -5_200_000)
+        ), outlines);
+    }
+
+    @Test
+    void unsupportedRequiredFeatureIsRejected() throws IOException {
+        Path file = directory.resolve("history.osm.pbf");
+        writeExtract(file, "OsmSchema-V0.6", "HistoricalInformation");
+
+        IOException error = assertThrows(IOException.class, () -> importer(2).importOutlines(file, outline -> {
+        }));
+        assertTrue(error.getMessage().contains("HistoricalInformation"));
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws IOException {
+        Path file = directory.resolve("extract.osm.pbf");
+        writeExtract(file, "OsmSchema-V0.6", "DenseNodes");
+        byte[] data = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(data, data.length - 10));
+
+        assertThrows(EOFException.class, () -> importer(2).importOutlines(file, outline -> {
+        }));
+    }
+
+    private static OsmOutlineImporter importer(int threads) {
+        return new OsmOutlineImporter(new EquirectangularProjection(100_000, 0, 0), SOUTH_WEST, NORTH_EAST, FILTERS, threads);
+    }
+
+    private static void writeExtract(Path file, String... requiredFeatures) throws IOException {
+        long[] latitudes = new long[IDS.length];
+        long[] longitudes = new long[IDS.length];
+        for (int i = 0; i < IDS.length; i++) {
+            latitudes[i] = latitude(BLOCKS[i][1]);
+            longitudes[i] = longitude(BLOCKS[i][0]);
+        }
+
+        try (PbfFileWriter writer = new PbfFileWriter(file)) {
+            writer.header(requiredFeatures);
+            // Dense nodes on a 1 µ° grid around 51°N 1°W, and a plain node with the default granularity and no offsets.
+            writer.block(new PbfFileWriter.Block(1000, 51_000_000_000L, -1_000_000_000L)
+                    .denseNodes(IDS, latitudes, longitudes), true);
+            writer.block(new PbfFileWriter.Block().node(9, latitude(NODE_9[1]), longitude(NODE_9[0])), false);
+            writer.block(new PbfFileWriter.Block()
+                    .way(100, List.of("building", "yes"), 1, 2, 3, 4, 1)
+                    .way(101, List.of("highway", "residential"), 5, 6, 7, 8, 5)
+                    .way(102, List.of("amenity", "bench"), 5, 6, 7)
+                    .way(103, List.of("name", "Car park", "amenity", "parking"), 5, 6, 7, 9), false);
+            writer.block(new PbfFileWriter.Block()
+                    // Entirely outside of the bounding box.
+                    .way(104, List.of("building", "yes"), 10, 11, 12)
+                    // Node 21 is not in the extract.
+                    .way(105, List.of("building", "house"), 1, 20, 21)
+                    // Partly inside of the bounding box.
+                    .way(106, List.of("building", "yes"), 4, 10, 11), true);
+        }
+    }
+
+    // The latitude of the middle of a block, in nanodegrees.
+    private static long latitude(int z) {
+        return -(10L * z + 5) * 1000;
+    }
+
+    // The longitude of the middle of a block, in nanodegrees.
+    private static long longitude(int x) {
+        return (10L * x + 5) * 1000;
+    }
+
+    private static Outline outline(int... coordinates) {
+        List<IntPoint2d> points = new ArrayList<>();
+        for (int i = 0; i < coordinates.length; i += 2) {
+            points.add(new IntPoint2d(coordinates[i], coordinates[i + 1]));
+        }
+        return new Outline(points);
+    }
+}
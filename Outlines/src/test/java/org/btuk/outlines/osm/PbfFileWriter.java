@@ -0,0 +1,181 @@
+package org.btuk.outlines.osm;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes small {@code .osm.pbf} files for tests and benchmarks.
+ */
+final class PbfFileWriter implements Closeable {
+
+    private final DataOutputStream output;
+
+    PbfFileWriter(Path file) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    /**
+     * Write the {@code OSMHeader} block.
+     *
+     * @param requiredFeatures the features a reader must support
+     */
+    void header(String... requiredFeatures) throws IOException {
+        ProtobufWriter header = new ProtobufWriter();
+        for (String feature : requiredFeatures) {
+            header.string(4, feature);
+        }
+        blob(PbfBlob.HEADER, header.toByteArray(), true);
+    }
+
+    /**
+     * Write an {@code OSMData} block.
+     *
+     * @param block      the block
+     * @param compressed whether to compress it with zlib or store it raw
+     */
+    void block(Block block, boolean compressed) throws IOException {
+        blob(PbfBlob.DATA, block.toByteArray(), compressed);
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private void blob(String type, byte[] data, boolean compressed) throws IOException {
+        ProtobufWriter blob = new ProtobufWriter();
+        if (compressed) {
+            Deflater deflater = new Deflater();
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[data.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            deflater.end();
+            blob.varint(2, data.length).bytes(3, Arrays.copyOf(buffer, length));
+        } else {
+            blob.bytes(1, data);
+        }
+        byte[] encodedBlob = blob.toByteArray();
+        byte[] header = new ProtobufWriter().string(1, type).varint(3, encodedBlob.length).toByteArray();
+        output.writeInt(header.length);
+        output.write(header);
+        output.write(encodedBlob);
+    }
+
+    /**
+     * A {@code PrimitiveBlock} with its own string table, granularity and offsets. Coordinates are given in
+     * nanodegrees and must be on the grid of the block.
+     */
+    static final class Block {
+
+        private final long granularity;
+        private final long latitudeOffset;
+        private final long longitudeOffset;
+        private final List<String> strings = new ArrayList<>(List.of(""));
+        private final Map<String, Integer> stringIndices = new HashMap<>(Map.of("", 0));
+        private final ProtobufWriter group = new ProtobufWriter();
+
+        Block() {
+            this(100, 0, 0);
+        }
+
+        Block(long granularity, long latitudeOffset, long longitudeOffset) {
+            this.granularity = granularity;
+            this.latitudeOffset = latitudeOffset;
+            this.longitudeOffset = longitudeOffset;
+        }
+
+        Block node(long id, long latitude, long longitude) {
+            group.message(1, new ProtobufWriter()
+                    .signed(1, id)
+                    .signed(8, toGrid(latitude, latitudeOffset))
+                    .signed(9, toGrid(longitude, longitudeOffset)));
+            return this;
+        }
+
+        Block denseNodes(long[] ids, long[] latitudes, long[] longitudes) {
+            long[] gridLatitudes = new long[ids.length];
+            long[] gridLongitudes = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                gridLatitudes[i] = toGrid(latitudes[i], latitudeOffset);
+                gridLongitudes[i] = toGrid(longitudes[i], longitudeOffset);
+            }
+            group.message(2, new ProtobufWriter()
+                    .packedDeltas(1, ids)
+                    .packedDeltas(8, gridLatitudes)
+                    .packedDeltas(9, gridLongitudes));
+            return this;
+        }
+
+        /**
+         * Add a way.
+         *
+         * @param id   the way id
+         * @param tags the tags as key, value, key, value
+         * @param refs the node ids
+         */
+        Block way(long id, List<String> tags, long... refs) {
+            long[] keys = new long[tags.size() / 2];
+            long[] values = new long[tags.size() / 2];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = string(tags.get(2 * i));
+                values[i] = string(tags.get(2 * i + 1));
+            }
+            group.message(3, new ProtobufWriter()
+                    .varint(1, id)
+                    .packed(2, keys)
+                    .packed(3, values)
+                    .packedDeltas(8, refs));
+            return this;
+        }
+
+        byte[] toByteArray() {
+            ProtobufWriter table = new ProtobufWriter();
+            for (String string : strings) {
+                table.string(1, string);
+            }
+            // The offsets come after the groups, in field order.
+            ProtobufWriter block = new ProtobufWriter().message(1, table).message(2, group);
+            if (granularity != 100) {
+                block.varint(17, granularity);
+            }
+            if (latitudeOffset != 0) {
+                block.varint(19, latitudeOffset);
+            }
+            if (longitudeOffset != 0) {
+                block.varint(20, longitudeOffset);
+            }
+            return block.toByteArray();
+        }
+
+        private int string(String string) {
+            return stringIndices.computeIfAbsent(string, added -> {
+                strings.add(added);
+                return strings.size() - 1;
+            });
+        }
+
+        private long toGrid(long nanodegrees, long offset) {
+            if ((nanodegrees - offset) % granularity != 0) {
+                throw new IllegalArgumentException(nanodegrees + " is not on the grid of the block");
+            }
+            return (nanodegrees - offset) / granularity;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.btuk.outlines.osm;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal writer for the protobuf wire format, the counterpart of {@link ProtobufReader} for building test files.
+ */
+final class ProtobufWriter {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    ProtobufWriter varint(int field, long value) {
+        key(field, ProtobufReader.VARINT);
+        writeVarint(output, value);
+        return this;
+    }
+
+    ProtobufWriter signed(int field, long value) {
+        return varint(field, zigzag(value));
+    }
+
+    ProtobufWriter bytes(int field, byte[] value) {
+        key(field, ProtobufReader.LENGTH_DELIMITED);
+        writeVarint(output, value.length);
+        output.writeBytes(value);
+        return this;
+    }
+
+    ProtobufWriter string(int field, String value) {
+        return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    ProtobufWriter message(int field, ProtobufWriter message) {
+        return bytes(field, message.toByteArray());
+    }
+
+    ProtobufWriter packed(int field, long... values) {
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        for (long value : values) {
+            writeVarint(packed, value);
+        }
+        return bytes(field, packed.toByteArray());
+    }
+
+    // Delta coded and zigzag encoded, as the ids and coordinates of dense nodes and the refs of ways.
+    ProtobufWriter packedDeltas(int field, long... values) {
+        long[] encoded = new long[values.length];
+        long previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = zigzag(values[i] - previous);
+            previous = values[i];
+        }
+        return packed(field, encoded);
+    }
+
+    byte[] toByteArray() {
+        return output.toByteArray();
+    }
+
+    private void key(int field, int wireType) {
+        writeVarint(output, (long) field << 3 | wireType);
+    }
+
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+}
@@ -0,0 +1,365 @@
+package org.btuk.worldedit;
+
+import com.fastasyncworldedit.core.extent.clipboard.CPUOptimizedClipboard;
+import com.fastasyncworldedit.core.extent.clipboard.DiskOptimizedClipboard;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector2;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.Polygonal2DRegion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Cache of decoded schematics, so repeated pastes of the same schematic skip decoding.
+ * <p>
+ * Entries are keyed by a hash of the schematic content and its bounds. The hash of a schematic file is remembered by
+ * path, size and modification time, so pasting a cached file doesn't read it again. Small schematics are held in
+ * memory, larger ones in clipboard files on disk, each tier is evicted least recently used first to stay within its
+ * budget. A schematic that doesn't fit its tier is decoded for a single paste, as without the cache.
+ * <p>
+ * Pastes share the cached clipboards through a {@link Lease} and must only read them. An evicted clipboard is closed
+ * once the last paste using it releases its lease.
+ */
+public final class ClipboardCache implements Closeable {
+
+    // A block state is a char in both the in-memory and the disk clipboards.
+    private static final int BYTES_PER_BLOCK = 2;
+    private static final long DEFAULT_MEMORY_BYTES = 128L * 1024 * 1024;
+    private static final long DEFAULT_DISK_BYTES = 1024L * 1024 * 1024;
+    private static final int MAXIMUM_FILE_HASHES = 1024;
+
+    private static ClipboardCache shared;
+
+    private final long maximumMemoryBytes;
+    private final long maximumDiskBytes;
+
+    // Access order, the eldest entry is the least recently used.
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Schematics that are being decoded, pastes of the same schematic wait for the decode instead of starting their own.
+    private final Map<Key, Decode> decoding = new HashMap<>();
+    private final LinkedHashMap<FileVersion, String> fileHashes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileVersion, String> eldest) {
+            return size() > MAXIMUM_FILE_HASHES;
+        }
+    };
+    private long memoryBytes;
+    private long diskBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private boolean closed;
+
+    /**
+     * @param maximumMemoryBytes the size of the clipboards to hold in memory, 0 to keep none in memory
+     * @param maximumDiskBytes   the size of the clipboard files to keep on disk, 0 to keep none on disk
+     */
+    public ClipboardCache(long maximumMemoryBytes, long maximumDiskBytes) {
+        if (maximumMemoryBytes < 0 || maximumDiskBytes < 0) {
+            throw new IllegalArgumentException("The memory and disk budgets can't be negative");
+        }
+        this.maximumMemoryBytes = maximumMemoryBytes;
+        this.maximumDiskBytes = maximumDiskBytes;
+    }
+
+    /**
+     * Get the cache shared by schematic utilities that were not given their own, creating it if it doesn't exist or
+     * was closed.
+     *
+     * @return the shared cache
+     */
+    public static synchronized ClipboardCache shared() {
+        if (shared == null || shared.isClosed()) {
+            shared = new ClipboardCache(DEFAULT_MEMORY_BYTES, DEFAULT_DISK_BYTES);
+        }
+        return shared;
+    }
+
+    /**
+     * Get the decoded clipboard of a schematic, decoding it if it is not cached.
+     * <p>
+     * Concurrent misses for the same schematic wait for the first one to decode it and share its clipboard.
+     *
+     * @param schematic the schematic, in {@link com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat#FAST_V3} format
+     * @param region    the region of the schematic
+     * @return a lease on the clipboard, to be closed once the paste is done
+     * @throws IOException if the schematic could not be read
+     */
+    Lease acquire(Schematic schematic, Polygonal2DRegion region) throws IOException {
+        Key key = new Key(hash(schematic.data()), List.copyOf(schematic.points()), schematic.minY(), schematic.maxY());
+        // The clipboards store the bounding box of the region.
+        BlockVector3 size = region.getMaximumPoint().subtract(region.getMinimumPoint()).add(1, 1, 1);
+        long bytes = (long) size.x() * size.y() * size.z() * BYTES_PER_BLOCK;
+        Tier tier;
+        Decode decode;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                entry.leases++;
+                return new Lease(entry);
+            }
+            decode = decoding.get(key);
+            if (decode != null) {
+                // Counted as a hit, as the schematic is only decoded once.
+                hits++;
+                decode.waiters++;
+                tier = null;
+            } else {
+                misses++;
+                tier = tierFor(bytes);
+                decode = new Decode();
+                decoding.put(key, decode);
+            }
+        }
+        // Another paste is decoding the schematic.
+        if (tier == null) {
+            return new Lease(await(decode));
+        }
+
+        Clipboard clipboard;
+        try {
+            clipboard = switch (tier) {
+                case MEMORY -> SchematicUtils.readClipboard(schematic, dimensions -> new CPUOptimizedClipboard(region));
+                case DISK, NONE -> {
+                    UUID randomUUID = UUID.randomUUID();
+                    yield SchematicUtils.readClipboard(schematic, dimensions -> new DiskOptimizedClipboard(region, randomUUID));
+                }
+            };
+        } catch (Throwable e) {
+            synchronized (this) {
+                decoding.remove(key);
+            }
+            decode.future.completeExceptionally(e);
+            throw e;
+        }
+
+        Entry entry = new Entry(clipboard, tier, bytes);
+        synchronized (this) {
+            decoding.remove(key);
+            // The waiters can't change once the decode is removed, each of them gets a lease.
+            entry.leases = 1 + decode.waiters;
+            if (tier != Tier.NONE && !closed && entries.putIfAbsent(key, entry) == null) {
+                entry.cached = true;
+                if (tier == Tier.MEMORY) {
+                    memoryBytes += entry.bytes;
+                } else {
+                    diskBytes += entry.bytes;
+                }
+                evict();
+            }
+        }
+        decode.future.complete(entry);
+        return new Lease(entry);
+    }
+
+    public synchronized ClipboardCacheStats getStats() {
+        return new ClipboardCacheStats(hits, misses, evictions, entries.size(), memoryBytes, maximumMemoryBytes,
+                diskBytes, maximumDiskBytes);
+    }
+
+    /**
+     * Remove all entries, closing their clipboards once they are not in use anymore.
+     */
+    public synchronized void invalidateAll() {
+        for (Entry entry : entries.values()) {
+            uncache(entry);
+        }
+        entries.clear();
+        fileHashes.clear();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Remove all entries and stop caching, clipboards that are in use are closed when their lease is.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        invalidateAll();
+    }
+
+    private Tier tierFor(long bytes) {
+        if (closed) {
+            return Tier.NONE;
+        }
+        // A single schematic may take a quarter of the memory, so a few large ones don't flush all the small ones.
+        if (bytes <= maximumMemoryBytes / 4) {
+            return Tier.MEMORY;
+        }
+        return bytes <= maximumDiskBytes ? Tier.DISK : Tier.NONE;
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while ((memoryBytes > maximumMemoryBytes || diskBytes > maximumDiskBytes) && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            boolean overBudget = entry.tier == Tier.MEMORY ? memoryBytes > maximumMemoryBytes : diskBytes > maximumDiskBytes;
+            if (overBudget) {
+                iterator.remove();
+                uncache(entry);
+                evictions++;
+            }
+        }
+    }
+
+    private void uncache(Entry entry) {
+        entry.cached = false;
+        if (entry.tier == Tier.MEMORY) {
+            memoryBytes -= entry.bytes;
+        } else {
+            diskBytes -= entry.bytes;
+        }
+        if (entry.leases == 0) {
+            entry.clipboard.close();
+        }
+    }
+
+    private synchronized void release(Entry entry) {
+        if (--entry.leases == 0 && !entry.cached) {
+            entry.clipboard.close();
+        }
+    }
+
+    // Wait for the decode of another paste, the lease on its clipboard was already taken.
+    private static Entry await(Decode decode) throws IOException {
+        try {
+            return decode.future.join();
+        } catch (CompletionException e) {
+            throw new IOException("The schematic could not be decoded", e.getCause());
+        }
+    }
+
+    private String hash(SchematicData data) throws IOException {
+        if (!(data instanceof SchematicData.FileData file)) {
+            return digest(data);
+        }
+        FileVersion version = FileVersion.of(file.file());
+        synchronized (this) {
+            String hash = fileHashes.get(version);
+            if (hash != null) {
+                return hash;
+            }
+        }
+        String hash = digest(data);
+        // A file that changed while it was read may not match the hash, so it is read again next time.
+        if (version.equals(FileVersion.of(file.file()))) {
+            synchronized (this) {
+                fileHashes.put(version, hash);
+            }
+        }
+        return hash;
+    }
+
+    private static String digest(SchematicData data) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        switch (data) {
+            case SchematicData.HeapData heap -> digest.update(heap.bytes(), heap.offset(), heap.length());
+            case SchematicData.BufferData buffer -> digest.update(buffer.buffer().duplicate());
+            case SchematicData.FileData file -> {
+                try (InputStream inputStream = file.openStream()) {
+                    byte[] bytes = new byte[64 * 1024];
+                    int read;
+                    while ((read = inputStream.read(bytes)) != -1) {
+                        digest.update(bytes, 0, read);
+                    }
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private enum Tier {
+        MEMORY,
+        DISK,
+        NONE
+    }
+
+    private record Key(String hash, List<BlockVector2> points, int minY, int maxY) {
+    }
+
+    private record FileVersion(Path file, long size, FileTime lastModified) {
+
+        private static FileVersion of(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new FileVersion(file.toAbsolutePath().normalize(), attributes.size(), attributes.lastModifiedTime());
+        }
+    }
+
+    // Guarded by the cache, except for the future.
+    private static final class Decode {
+
+        private final CompletableFuture<Entry> future = new CompletableFuture<>();
+        private int waiters;
+    }
+
+    // Guarded by the cache.
+    private static final class Entry {
+
+        private final Clipboard clipboard;
+        private final Tier tier;
+        private final long bytes;
+        private int leases;
+        private boolean cached;
+
+        private Entry(Clipboard clipboard, Tier tier, long bytes) {
+            this.clipboard = clipboard;
+            this.tier = tier;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * A clipboard borrowed from the cache. It must not be modified, and not be used after the lease is closed.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final Entry entry;
+        private boolean released;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        public Clipboard clipboard() {
+            return entry.clipboard;
+        }
+
+        @Override
+        public void close() {
+            synchronized (ClipboardCache.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                release(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.btuk.worldedit;
+
+/**
+ * Snapshot of the counters of a {@link ClipboardCache}.
+ *
+ * @param hits               pastes that reused a decoded clipboard
+ * @param misses             pastes that had to decode the schematic
+ * @param evictions          clipboards removed to stay within the budgets
+ * @param size               the current number of cached clipboards
+ * @param memoryBytes        the approximate size of the clipboards in memory
+ * @param maximumMemoryBytes the memory budget
+ * @param diskBytes          the approximate size of the clipboard files on disk
+ * @param maximumDiskBytes   the disk budget
+ */
+public record ClipboardCacheStats(long hits, long misses, long evictions, int size, long memoryBytes,
+                                  long maximumMemoryBytes, long diskBytes, long maximumDiskBytes) {
+
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,204 @@
+package org.btuk.worldedit;
+
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.function.mask.RegionMask;
+import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
+import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Polygonal2DRegion;
+import com.sk89q.worldedit.world.World;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * A paste submitted to a {@link PasteScheduler}, applied one chunk at a time.
+ * <p>
+ * The progress can be read from any thread. Cancelling a job stops it before its next chunk, chunks that were
+ * already pasted are left in place.
+ */
+public final class PasteJob {
+
+    private final World world;
+    private final Priority priority;
+    private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+    private volatile State state = State.DECODING;
+    private volatile Consumer<PasteJob> progressListener;
+    private volatile int pastedChunks;
+    private volatile int totalChunks;
+    private volatile long pastedBlocks;
+    private volatile long totalBlocks;
+
+    // Set once the schematic is decoded, only used on the main thread afterwards.
+    private ClipboardCache.Lease lease;
+    private Clipboard clipboard;
+    private Polygonal2DRegion allowedPasteRegion;
+    private BlockVector3 to;
+    private List<CuboidRegion> chunks;
+
+    // Jobs of the same priority take turns, the job that was served longest ago goes first.
+    long turn;
+
+    PasteJob(World world, Priority priority) {
+        this.world = world;
+        this.priority = priority;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Get the future of the job, completed with true once every chunk is pasted, false if it failed or was cancelled.
+     *
+     * @return the future
+     */
+    public CompletableFuture<Boolean> getFuture() {
+        return future;
+    }
+
+    /**
+     * Get the fraction of the blocks of the schematic that were pasted.
+     *
+     * @return the progress, between 0 and 1
+     */
+    public double getProgress() {
+        long total = totalBlocks;
+        return state == State.COMPLETED ? 1 : total == 0 ? 0 : (double) pastedBlocks / total;
+    }
+
+    public int getPastedChunks() {
+        return pastedChunks;
+    }
+
+    /**
+     * Get the number of chunks of the paste, which is known once the schematic is decoded.
+     *
+     * @return the number of chunks, 0 while decoding
+     */
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    /**
+     * Set a listener that is called on the main thread after every pasted chunk.
+     *
+     * @param progressListener the listener, or null to remove it
+     */
+    public void onProgress(Consumer<PasteJob> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Cancel the job, unless it is already done.
+     *
+     * @return true if the job was cancelled by this call
+     */
+    public boolean cancel() {
+        return finish(State.CANCELLED, false);
+    }
+
+    public boolean isDone() {
+        return state.isDone();
+    }
+
+    void decoded(ClipboardCache.Lease lease, Polygonal2DRegion allowedPasteRegion, BlockVector3 to, List<CuboidRegion> chunks) {
+        this.lease = lease;
+        this.clipboard = lease.clipboard();
+        this.allowedPasteRegion = allowedPasteRegion;
+        this.to = to;
+        this.chunks = chunks;
+        this.totalBlocks = chunks.stream().mapToLong(CuboidRegion::getVolume).sum();
+        this.totalChunks = chunks.size();
+        synchronized (this) {
+            if (state == State.DECODING) {
+                state = State.QUEUED;
+            }
+        }
+    }
+
+    boolean hasNextChunk() {
+        return pastedChunks < chunks.size();
+    }
+
+    /**
+     * Paste the next chunk of the schematic.
+     *
+     * @return the number of blocks in the chunk
+     */
+    long pasteNextChunk() {
+        synchronized (this) {
+            if (state == State.QUEUED) {
+                state = State.RUNNING;
+            }
+        }
+
+        CuboidRegion chunk = chunks.get(pastedChunks);
+        try (EditSession editSession = WorldEdit.getInstance().newEditSession(world)) {
+            editSession.setMask(new RegionMask(allowedPasteRegion));
+
+            // Places the chunk where a paste of the whole clipboard would put it.
+            ForwardExtentCopy copy = new ForwardExtentCopy(clipboard, chunk, clipboard.getOrigin(), editSession, to);
+            copy.setCopyingEntities(true);
+            Operations.complete(copy);
+        }
+
+        long volume = chunk.getVolume();
+        pastedBlocks += volume;
+        pastedChunks++;
+
+        Consumer<PasteJob> listener = progressListener;
+        if (listener != null) {
+            listener.accept(this);
+        }
+        return volume;
+    }
+
+    boolean finish(State terminal, boolean result) {
+        synchronized (this) {
+            if (state.isDone()) {
+                return false;
+            }
+            state = terminal;
+        }
+        future.complete(result);
+        return true;
+    }
+
+    // Only called once no chunk of the job is being pasted anymore.
+    void release() {
+        if (lease != null) {
+            lease.close();
+            lease = null;
+            clipboard = null;
+        }
+    }
+
+    public enum Priority {
+        LOW,
+        NORMAL,
+        HIGH
+    }
+
+    public enum State {
+        DECODING,
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED;
+
+        public boolean isDone() {
+            return this == COMPLETED || this == CANCELLED || this == FAILED;
+        }
+    }
+}
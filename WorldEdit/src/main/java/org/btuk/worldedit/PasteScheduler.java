@@ -0,0 +1,214 @@
+package org.btuk.worldedit;
+
+import com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Polygonal2DRegion;
+import com.sk89q.worldedit.world.World;
+import lombok.extern.java.Log;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Pastes schematics one chunk at a time within a budget per server tick, so many pastes don't drop the TPS.
+ * <p>
+ * Schematics are decoded asynchronously, the chunks are pasted on the main thread. Every tick the scheduler pastes
+ * chunks of the queued jobs until either the block or the time budget is spent, at least one chunk per tick.
+ * Higher priority jobs go first, jobs of the same priority take turns chunk by chunk.
+ */
+@Log
+public final class PasteScheduler {
+
+    private static final Comparator<PasteJob> ORDER = Comparator.comparing(PasteJob::getPriority).reversed()
+            .thenComparingLong(job -> job.turn);
+
+    private final SchematicExecutor executor;
+    private final ClipboardCache clipboardCache;
+    private final long blocksPerTick;
+    private final long nanosPerTick;
+    private final BukkitTask task;
+
+    // Decoded jobs are handed over to the main thread through this queue.
+    private final Queue<PasteJob> decoded = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<PasteJob> queue = new PriorityQueue<>(ORDER);
+    private long turn;
+
+    /**
+     * @param plugin        the plugin to run the scheduler task for
+     * @param blocksPerTick the number of blocks to paste per tick, a chunk holds 16 x 16 x the height of the schematic
+     * @param millisPerTick the time to spend pasting per tick
+     */
+    public PasteScheduler(Plugin plugin, long blocksPerTick, long millisPerTick) {
+        this(plugin, SchematicExecutor.shared(), ClipboardCache.shared(), blocksPerTick, millisPerTick);
+    }
+
+    /**
+     * @param plugin         the plugin to run the scheduler task for
+     * @param executor       the executor to decode schematics on
+     * @param clipboardCache the cache of decoded schematics to paste from
+     * @param blocksPerTick  the number of blocks to paste per tick, a chunk holds 16 x 16 x the height of the schematic
+     * @param millisPerTick  the time to spend pasting per tick
+     */
+    public PasteScheduler(Plugin plugin, SchematicExecutor executor, ClipboardCache clipboardCache, long blocksPerTick,
+                          long millisPerTick) {
+        SchematicUtils.checkFastAsyncWorldEdit();
+        if (blocksPerTick < 1 || millisPerTick < 1) {
+            throw new IllegalArgumentException("The budget per tick must be positive");
+        }
+        this.executor = executor;
+        this.clipboardCache = clipboardCache;
+        this.blocksPerTick = blocksPerTick;
+        this.nanosPerTick = TimeUnit.MILLISECONDS.toNanos(millisPerTick);
+        this.task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+    }
+
+    /**
+     * Submit a paste of a schematic.
+     *
+     * @param schematic the schematic to paste
+     * @param world     the world to paste the schematic in
+     * @param targetY   the Y coordinate of the position to paste the schematic at
+     * @param minY      the minimum Y coordinate to include in the paste
+     * @param maxY      the maximum Y coordinate to include in the paste
+     * @param priority  the priority of the paste
+     * @return the job, already {@link PasteJob.State#FAILED} if the executor could not accept the decoding job
+     */
+    public PasteJob submit(Schematic schematic, World world, int targetY, int minY, int maxY, PasteJob.Priority priority) {
+        return submit(SchematicExecutor.SERVER, schematic, world, targetY, minY, maxY, priority);
+    }
+
+    /**
+     * Submit a paste of a schematic on behalf of a player, decoding it counts towards the limit of the player.
+     *
+     * @param owner     the UUID of the player
+     * @param schematic the schematic to paste
+     * @param world     the world to paste the schematic in
+     * @param targetY   the Y coordinate of the position to paste the schematic at
+     * @param minY      the minimum Y coordinate to include in the paste
+     * @param maxY      the maximum Y coordinate to include in the paste
+     * @param priority  the priority of the paste
+     * @return the job, already {@link PasteJob.State#FAILED} if the executor could not accept the decoding job
+     */
+    public PasteJob submit(UUID owner, Schematic schematic, World world, int targetY, int minY, int maxY, PasteJob.Priority priority) {
+        if (schematic.format() != BuiltInClipboardFormat.FAST_V3) {
+            throw new IllegalArgumentException("Unsupported schematic format: " + schematic.format());
+        }
+        if (task.isCancelled()) {
+            throw new IllegalStateException("The paste scheduler is disabled");
+        }
+
+        PasteJob job = new PasteJob(world, priority);
+        executor.submit(owner, () -> {
+            decode(job, schematic, world, targetY, minY, maxY);
+            return null;
+        }).exceptionally(e -> {
+            // Rejected or dropped by the executor, or decoding failed unexpectedly.
+            if (e instanceof RejectedExecutionException) {
+                log.warning("Schematic paste rejected: " + e.getMessage());
+            }
+            job.finish(PasteJob.State.FAILED, false);
+            return null;
+        });
+        return job;
+    }
+
+    /**
+     * Stop the scheduler, cancelling all jobs that are not done.
+     */
+    public void disable() {
+        task.cancel();
+        drainDecoded();
+        for (PasteJob job : queue) {
+            job.cancel();
+            job.release();
+        }
+        queue.clear();
+    }
+
+    private void decode(PasteJob job, Schematic schematic, World world, int targetY, int minY, int maxY) {
+        if (job.isDone()) {
+            return;
+        }
+
+        Polygonal2DRegion region = new Polygonal2DRegion(world, schematic.points(), schematic.minY(), schematic.maxY());
+        ClipboardCache.Lease lease;
+        try {
+            lease = clipboardCache.acquire(schematic, region);
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.SEVERE, "Could not read schematic data, unable to paste schematic: " + e);
+            job.finish(PasteJob.State.FAILED, false);
+            return;
+        }
+
+        List<CuboidRegion> chunks = TiledRegionCopy.split(world, region, TiledRegionCopy.CHUNK_SIZE);
+        job.decoded(lease, SchematicUtils.getAllowedPasteRegion(schematic, world, targetY, minY, maxY),
+                region.getMinimumPoint(), chunks);
+        decoded.add(job);
+
+        // The scheduler may have been disabled while decoding, the queue is not drained anymore.
+        if (task.isCancelled() && decoded.remove(job)) {
+            job.cancel();
+            job.release();
+        }
+    }
+
+    private void tick() {
+        drainDecoded();
+
+        long deadline = System.nanoTime() + nanosPerTick;
+        long budget = blocksPerTick;
+        PasteJob job;
+        while (budget > 0 && System.nanoTime() < deadline && (job = queue.poll()) != null) {
+            if (job.isDone()) {
+                job.release();
+                continue;
+            }
+
+            try {
+                budget -= job.pasteNextChunk();
+            } catch (RuntimeException e) {
+                log.log(Level.SEVERE, "Could not paste schematic chunk, unable to paste schematic: ", e);
+                job.finish(PasteJob.State.FAILED, false);
+                job.release();
+                continue;
+            }
+
+            if (!job.hasNextChunk()) {
+                job.finish(PasteJob.State.COMPLETED, true);
+                job.release();
+            } else {
+                enqueue(job);
+            }
+        }
+    }
+
+    private void drainDecoded() {
+        PasteJob job;
+        while ((job = decoded.poll()) != null) {
+            if (job.isDone()) {
+                job.release();
+            } else if (!job.hasNextChunk()) {
+                job.finish(PasteJob.State.COMPLETED, true);
+                job.release();
+            } else {
+                enqueue(job);
+            }
+        }
+    }
+
+    private void enqueue(PasteJob job) {
+        job.turn = turn++;
+        queue.add(job);
+    }
+}
@@ -3,9 +3,29 @@ package org.btuk.worldedit;
 import com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat;
 import com.sk89q.worldedit.math.BlockVector2;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 
-public record Schematic(byte[] schematicData, BuiltInClipboardFormat format, List<BlockVector2> points, int minY, int maxY){
+public record Schematic(SchematicData data, BuiltInClipboardFormat format, List<BlockVector2> points, int minY, int maxY){
 
-}
\ No newline at end of file
+    public Schematic(byte[] schematicData, BuiltInClipboardFormat format, List<BlockVector2> points, int minY, int maxY) {
+        this(SchematicData.ofBytes(schematicData), format, points, minY, maxY);
+    }
+
+    /**
+     * Get the schematic as a heap array, reading it fully if it is held in a file or buffer.
+     *
+     * @return the encoded schematic
+     * @deprecated use {@link #data()}, which can be read without copying
+     */
+    @Deprecated
+    public byte[] schematicData() {
+        try {
+            return data.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.btuk.worldedit;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The encoded content of a {@link Schematic}, held in a heap array, a file or a (memory-mapped) buffer.
+ * <p>
+ * Readers get a stream over the source itself, so pasting a file or mapped schematic never copies it onto the heap.
+ */
+public sealed interface SchematicData {
+
+    /**
+     * Open a stream over the data. Every call returns a new stream starting at the beginning.
+     *
+     * @return the stream, to be closed by the caller
+     * @throws IOException if the source could not be opened
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * Get the size of the data.
+     *
+     * @return the size in bytes
+     * @throws IOException if the size of a file could not be read
+     */
+    long size() throws IOException;
+
+    /**
+     * Copy the data into a heap array, only for callers that need a {@code byte[]}.
+     *
+     * @return the data
+     * @throws IOException if the source could not be read
+     */
+    default byte[] toByteArray() throws IOException {
+        try (InputStream inputStream = openStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    static SchematicData ofBytes(byte[] bytes) {
+        return new HeapData(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Wrap part of an array without copying it.
+     *
+     * @param bytes  the array
+     * @param offset the start of the data
+     * @param length the length of the data
+     * @return the schematic data
+     */
+    static SchematicData ofBytes(byte[] bytes, int offset, int length) {
+        return new HeapData(bytes, offset, length);
+    }
+
+    static SchematicData ofFile(Path file) {
+        return new FileData(file);
+    }
+
+    /**
+     * Wrap a buffer, such as a mapped file, without copying it. The buffer's position and limit are not changed.
+     *
+     * @param buffer the buffer, from its position to its limit
+     * @return the schematic data
+     */
+    static SchematicData ofBuffer(ByteBuffer buffer) {
+        return new BufferData(buffer.slice());
+    }
+
+    /**
+     * Map a schematic file into memory.
+     *
+     * @param file the file
+     * @return the schematic data, backed by the mapping
+     * @throws IOException if the file could not be mapped
+     */
+    static SchematicData map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            return new BufferData(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    record HeapData(byte[] bytes, int offset, int length) implements SchematicData {
+
+        public HeapData {
+            Objects.checkFromIndexSize(offset, length, bytes.length);
+        }
+
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(bytes, offset, length);
+        }
+
+        @Override
+        public long size() {
+            return length;
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return offset == 0 && length == bytes.length ? bytes : Arrays.copyOfRange(bytes, offset, offset + length);
+        }
+    }
+
+    record FileData(Path file) implements SchematicData {
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return new BufferedInputStream(Files.newInputStream(file));
+        }
+
+        @Override
+        public long size() throws IOException {
+            return Files.size(file);
+        }
+    }
+
+    record BufferData(ByteBuffer buffer) implements SchematicData {
+
+        @Override
+        public InputStream openStream() {
+            return new ByteBufferInputStream(buffer.duplicate());
+        }
+
+        @Override
+        public long size() {
+            return buffer.remaining();
+        }
+    }
+}
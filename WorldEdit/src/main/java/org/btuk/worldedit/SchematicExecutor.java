@@ -0,0 +1,308 @@
+package org.btuk.worldedit;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Worker pool for schematic jobs with a bounded queue and a limit per owner, usually a player.
+ * <p>
+ * Owners with queued jobs take turns, so one player submitting many jobs doesn't hold up everyone else. A job that
+ * would exceed the queue capacity or the limit of its owner is rejected, its future fails with a
+ * {@link RejectedExecutionException}. Use {@link #canSubmit(UUID)} to check first. Jobs owned by {@link #SERVER} only
+ * count towards the queue capacity.
+ * <p>
+ * The executor also owns the pool that copies the tiles of regions for schematic creation, so concurrent jobs share
+ * a fixed number of tile threads instead of each starting their own.
+ */
+public final class SchematicExecutor implements Closeable {
+
+    /**
+     * Owner of jobs that are not submitted on behalf of a player.
+     */
+    public static final UUID SERVER = new UUID(0, 0);
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 32;
+    private static final int DEFAULT_JOBS_PER_OWNER = 2;
+
+    private static SchematicExecutor shared;
+
+    private final int queueCapacity;
+    private final int maximumJobsPerOwner;
+    private final ExecutorService tilePool;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // Owners in the order they are served, an owner moves to the back after each job.
+    private final LinkedHashMap<UUID, ArrayDeque<Job<?>>> queues = new LinkedHashMap<>();
+    // Queued and running jobs of each owner.
+    private final Map<UUID, Integer> ownerJobs = new HashMap<>();
+
+    private int queued;
+    private int running;
+    private long completed;
+    private long rejected;
+    private long started;
+    private long totalWaitNanos;
+    private long maximumWaitNanos;
+    private boolean closed;
+
+    /**
+     * Create an executor with a tile thread for every available processor.
+     *
+     * @param threads             the number of jobs to run at the same time
+     * @param queueCapacity       the number of jobs that can wait for a thread
+     * @param maximumJobsPerOwner the number of queued and running jobs an owner can have
+     */
+    public SchematicExecutor(int threads, int queueCapacity, int maximumJobsPerOwner) {
+        this(threads, queueCapacity, maximumJobsPerOwner, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads             the number of jobs to run at the same time
+     * @param queueCapacity       the number of jobs that can wait for a thread
+     * @param maximumJobsPerOwner the number of queued and running jobs an owner can have
+     * @param tileThreads         the number of tiles to copy at the same time across all jobs
+     */
+    public SchematicExecutor(int threads, int queueCapacity, int maximumJobsPerOwner, int tileThreads) {
+        if (threads < 1 || queueCapacity < 1 || maximumJobsPerOwner < 1 || tileThreads < 1) {
+            throw new IllegalArgumentException("The threads, queue capacity, jobs per owner and tile threads must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+        this.maximumJobsPerOwner = maximumJobsPerOwner;
+        this.tilePool = Executors.newFixedThreadPool(tileThreads,
+                Thread.ofPlatform().name("schematic-tile-", 0).daemon().factory());
+
+        for (int i = 0; i < threads; i++) {
+            Thread.ofPlatform().name("schematic-worker-" + i).daemon().start(this::work);
+        }
+    }
+
+    /**
+     * Get the executor shared by schematic utilities that were not given their own, creating it if it doesn't exist
+     * or was closed.
+     *
+     * @return the shared executor
+     */
+    public static synchronized SchematicExecutor shared() {
+        if (shared == null || shared.isClosed()) {
+            shared = new SchematicExecutor(DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY, DEFAULT_JOBS_PER_OWNER);
+        }
+        return shared;
+    }
+
+    /**
+     * Submit a job.
+     *
+     * @param owner the owner of the job
+     * @param task  the job
+     * @param <T>   the result type
+     * @return a CompletableFuture with the result of the job, failed with a {@link RejectedExecutionException} if the
+     * queue is full, the owner has reached their limit or the executor is closed
+     */
+    public <T> CompletableFuture<T> submit(UUID owner, Supplier<T> task) {
+        Job<T> job = new Job<>(owner, task, System.nanoTime());
+        lock.lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("The schematic executor is closed"));
+            }
+            if (queued >= queueCapacity) {
+                rejected++;
+                return CompletableFuture.failedFuture(
+                        new RejectedExecutionException("The schematic queue is full (" + queueCapacity + " jobs)"));
+            }
+            int jobs = ownerJobs.getOrDefault(owner, 0);
+            if (!owner.equals(SERVER) && jobs >= maximumJobsPerOwner) {
+                rejected++;
+                return CompletableFuture.failedFuture(
+                        new RejectedExecutionException(owner + " already has " + jobs + " schematic jobs"));
+            }
+
+            ownerJobs.put(owner, jobs + 1);
+            queues.computeIfAbsent(owner, key -> new ArrayDeque<>()).add(job);
+            queued++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return job.future;
+    }
+
+    /**
+     * Check whether a job of an owner would currently be accepted.
+     *
+     * @param owner the owner
+     * @return true if the queue has room and the owner is below their limit
+     */
+    public boolean canSubmit(UUID owner) {
+        lock.lock();
+        try {
+            return !closed && queued < queueCapacity
+                    && (owner.equals(SERVER) || ownerJobs.getOrDefault(owner, 0) < maximumJobsPerOwner);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of queued and running jobs of an owner.
+     *
+     * @param owner the owner
+     * @return the number of jobs
+     */
+    public int getJobs(UUID owner) {
+        lock.lock();
+        try {
+            return ownerJobs.getOrDefault(owner, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the pool that copies the tiles of regions, it is shut down when the executor is closed.
+     *
+     * @return the tile pool
+     */
+    ExecutorService getTilePool() {
+        return tilePool;
+    }
+
+    public SchematicExecutorStats getStats() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            long oldestWaitNanos = 0;
+            for (ArrayDeque<Job<?>> queue : queues.values()) {
+                oldestWaitNanos = Math.max(oldestWaitNanos, now - queue.getFirst().submitted);
+            }
+            return new SchematicExecutorStats(queued, queueCapacity, running, completed, rejected,
+                    Duration.ofNanos(started == 0 ? 0 : totalWaitNanos / started), Duration.ofNanos(maximumWaitNanos),
+                    Duration.ofNanos(oldestWaitNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting jobs and fail the queued ones with a {@link RejectedExecutionException}.
+     * Running jobs are not interrupted, their threads stop once they are done. The tile pool stops accepting tiles, so
+     * running jobs that still have tiles of a region to submit fail.
+     */
+    @Override
+    public void close() {
+        List<Job<?>> dropped = new ArrayList<>();
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queues.values().forEach(dropped::addAll);
+            queues.clear();
+            queued = 0;
+            for (Job<?> job : dropped) {
+                releaseOwner(job.owner);
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        tilePool.shutdown();
+
+        for (Job<?> job : dropped) {
+            job.future.completeExceptionally(new RejectedExecutionException("The schematic executor was closed"));
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Job<?> job;
+            lock.lock();
+            try {
+                while (queued == 0) {
+                    if (closed) {
+                        return;
+                    }
+                    notEmpty.awaitUninterruptibly();
+                }
+                job = next();
+                queued--;
+                running++;
+
+                long waitNanos = System.nanoTime() - job.submitted;
+                started++;
+                totalWaitNanos += waitNanos;
+                maximumWaitNanos = Math.max(maximumWaitNanos, waitNanos);
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                job.run();
+            } finally {
+                lock.lock();
+                try {
+                    running--;
+                    completed++;
+                    releaseOwner(job.owner);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    // Take the first job of the owner whose turn it is, moving the owner to the back.
+    private Job<?> next() {
+        Map.Entry<UUID, ArrayDeque<Job<?>>> first = queues.pollFirstEntry();
+        Job<?> job = first.getValue().poll();
+        if (!first.getValue().isEmpty()) {
+            queues.put(first.getKey(), first.getValue());
+        }
+        return job;
+    }
+
+    private void releaseOwner(UUID owner) {
+        ownerJobs.computeIfPresent(owner, (key, jobs) -> jobs == 1 ? null : jobs - 1);
+    }
+
+    private record Job<T>(UUID owner, Supplier<T> task, long submitted, CompletableFuture<T> future) {
+
+        private Job(UUID owner, Supplier<T> task, long submitted) {
+            this(owner, task, submitted, new CompletableFuture<>());
+        }
+
+        private void run() {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
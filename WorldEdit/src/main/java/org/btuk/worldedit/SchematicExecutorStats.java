@@ -0,0 +1,23 @@
+package org.btuk.worldedit;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of the load of a {@link SchematicExecutor}.
+ *
+ * @param queued        jobs waiting for a thread
+ * @param queueCapacity the maximum number of waiting jobs
+ * @param running       jobs being run
+ * @param completed     jobs that finished, successfully or not
+ * @param rejected      jobs rejected because the queue was full or their owner was at their limit
+ * @param averageWait   the average time jobs waited before they started
+ * @param maximumWait   the longest time a job waited before it started
+ * @param oldestWait    the time the oldest queued job has been waiting
+ */
+public record SchematicExecutorStats(int queued, int queueCapacity, int running, long completed, long rejected,
+                                     Duration averageWait, Duration maximumWait, Duration oldestWait) {
+
+    public boolean isSaturated() {
+        return queued >= queueCapacity;
+    }
+}
@@ -8,10 +8,10 @@ import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
 import com.sk89q.worldedit.function.mask.RegionMask;
-import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
 import com.sk89q.worldedit.function.operation.Operation;
 import com.sk89q.worldedit.function.operation.Operations;
 import com.sk89q.worldedit.math.BlockVector2;
+import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.regions.Polygonal2DRegion;
 import com.sk89q.worldedit.session.ClipboardHolder;
 import com.sk89q.worldedit.world.World;
@@ -19,27 +19,97 @@ import lombok.extern.java.Log;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 /**
  * Utility for creating and pasting schematics.
+ * <p>
+ * Jobs run on a {@link SchematicExecutor}, by default the shared one. The futures of the async methods fail with a
+ * {@link java.util.concurrent.RejectedExecutionException} when its queue is full or the owner set with
+ * {@link #forOwner(UUID)} has reached their limit.
  */
 @Log
 public final class SchematicUtils {
 
+    private static final int DEFAULT_TILE_CHUNKS = 4;
+
+    private final TiledRegionCopy regionCopy;
+    private final SchematicExecutor executor;
+    private final ClipboardCache clipboardCache;
+    private final UUID owner;
+
+    /**
+     * Create schematics by copying chunk-aligned tiles on all available processors.
+     */
     public SchematicUtils() {
-        Plugin fastAsyncWorldEdit = Bukkit.getPluginManager().getPlugin("FastAsyncWorldEdit");
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_TILE_CHUNKS);
+    }
 
-        if (fastAsyncWorldEdit == null || !fastAsyncWorldEdit.isEnabled()) {
-            throw new IllegalStateException("FastAsyncWorldEdit is not installed or enabled");
-        }
+    /**
+     * @param parallelism the number of tiles of a region to copy at the same time when creating a schematic,
+     *                    limited by the tile threads of the executor, 1 copies the region in a single operation
+     * @param tileChunks  the width of a tile in chunks
+     */
+    public SchematicUtils(int parallelism, int tileChunks) {
+        this(parallelism, tileChunks, SchematicExecutor.shared());
+    }
+
+    /**
+     * @param parallelism the number of tiles of a region to copy at the same time when creating a schematic,
+     *                    limited by the tile threads of the executor, 1 copies the region in a single operation
+     * @param tileChunks  the width of a tile in chunks
+     * @param executor    the executor to run the jobs on
+     */
+    public SchematicUtils(int parallelism, int tileChunks, SchematicExecutor executor) {
+        this(parallelism, tileChunks, executor, ClipboardCache.shared());
+    }
+
+    /**
+     * @param parallelism    the number of tiles of a region to copy at the same time when creating a schematic,
+     *                       limited by the tile threads of the executor, 1 copies the region in a single operation
+     * @param tileChunks     the width of a tile in chunks
+     * @param executor       the executor to run the jobs on
+     * @param clipboardCache the cache of decoded schematics to paste from
+     */
+    public SchematicUtils(int parallelism, int tileChunks, SchematicExecutor executor, ClipboardCache clipboardCache) {
+        checkFastAsyncWorldEdit();
+        this.regionCopy = new TiledRegionCopy(parallelism, tileChunks, executor.getTilePool());
+        this.executor = executor;
+        this.clipboardCache = clipboardCache;
+        this.owner = SchematicExecutor.SERVER;
+    }
+
+    private SchematicUtils(TiledRegionCopy regionCopy, SchematicExecutor executor, ClipboardCache clipboardCache, UUID owner) {
+        this.regionCopy = regionCopy;
+        this.executor = executor;
+        this.clipboardCache = clipboardCache;
+        this.owner = owner;
+    }
+
+    /**
+     * Get a view of these utilities that submits its jobs on behalf of a player, so they count towards the limit of
+     * that player.
+     *
+     * @param owner the UUID of the player
+     * @return the utilities for the player
+     */
+    public SchematicUtils forOwner(UUID owner) {
+        return new SchematicUtils(regionCopy, executor, clipboardCache, owner);
     }
 
     /**
@@ -52,7 +122,53 @@ public final class SchematicUtils {
      * @return the schematic in {@link BuiltInClipboardFormat#FAST_V3} format as a CompletableFuture
      */
     public CompletableFuture<Schematic> createSchematic(World world, List<BlockVector2> points, int minY, int maxY) {
-        return CompletableFuture.supplyAsync(() -> createSchematic(BuiltInClipboardFormat.FAST_V3, world, points, minY, maxY));
+        return executor.submit(owner, () -> createSchematic(BuiltInClipboardFormat.FAST_V3, world, points, minY, maxY));
+    }
+
+    /**
+     * Async method to create a schematic in a file, without holding it on the heap.
+     * The file is replaced atomically once the schematic is complete.
+     *
+     * @param world  the world to create the schematic in
+     * @param points the bounds of the schematic
+     * @param minY   the minimum Y coordinate of the schematic
+     * @param maxY   the maximum Y coordinate of the schematic
+     * @param file   the file to write the schematic to
+     * @return the schematic in {@link BuiltInClipboardFormat#FAST_V3} format backed by the file as a CompletableFuture,
+     * or null if it could not be written
+     */
+    public CompletableFuture<Schematic> createSchematic(World world, List<BlockVector2> points, int minY, int maxY, Path file) {
+        return executor.submit(owner, () -> createSchematic(BuiltInClipboardFormat.FAST_V3, world, points, minY, maxY, file));
+    }
+
+    /**
+     * Async method to write a schematic to a stream, for example a network upload.
+     * The stream is flushed but not closed.
+     *
+     * @param world        the world to create the schematic in
+     * @param points       the bounds of the schematic
+     * @param minY         the minimum Y coordinate of the schematic
+     * @param maxY         the maximum Y coordinate of the schematic
+     * @param outputStream the stream to write the schematic to in {@link BuiltInClipboardFormat#FAST_V3} format
+     * @return a CompletableFuture with whether the schematic was written
+     */
+    public CompletableFuture<Boolean> writeSchematic(World world, List<BlockVector2> points, int minY, int maxY, OutputStream outputStream) {
+        return executor.submit(owner, () -> writeSchematic(BuiltInClipboardFormat.FAST_V3, world, points, minY, maxY,
+                new NonClosingOutputStream(outputStream)));
+    }
+
+    /**
+     * Async method to write a schematic to a channel. The channel is not closed.
+     *
+     * @param world   the world to create the schematic in
+     * @param points  the bounds of the schematic
+     * @param minY    the minimum Y coordinate of the schematic
+     * @param maxY    the maximum Y coordinate of the schematic
+     * @param channel the channel to write the schematic to in {@link BuiltInClipboardFormat#FAST_V3} format
+     * @return a CompletableFuture with whether the schematic was written
+     */
+    public CompletableFuture<Boolean> writeSchematic(World world, List<BlockVector2> points, int minY, int maxY, WritableByteChannel channel) {
+        return writeSchematic(world, points, minY, maxY, Channels.newOutputStream(channel));
     }
 
     /**
@@ -69,34 +185,68 @@ public final class SchematicUtils {
         if (schematic.format() != BuiltInClipboardFormat.FAST_V3) {
             throw new IllegalArgumentException("Unsupported schematic format: " + schematic.format());
         }
-        return CompletableFuture.supplyAsync(() -> pasteSchematicV3(schematic, world, targetY, minY, maxY));
+        return executor.submit(owner, () -> pasteSchematicV3(schematic, world, targetY, minY, maxY));
     }
 
-    private boolean pasteSchematicV3(Schematic schematic, World world, int targetY, int minY, int maxY) {
-        Clipboard clipboard;
-
-        UUID randomUUID = UUID.randomUUID();
-        Polygonal2DRegion region = new Polygonal2DRegion(world, schematic.points(), schematic.minY(), schematic.maxY());
+    static void checkFastAsyncWorldEdit() {
+        Plugin fastAsyncWorldEdit = Bukkit.getPluginManager().getPlugin("FastAsyncWorldEdit");
 
-        try (InputStream inputStream = new ByteArrayInputStream(schematic.schematicData())) {
+        if (fastAsyncWorldEdit == null || !fastAsyncWorldEdit.isEnabled()) {
+            throw new IllegalStateException("FastAsyncWorldEdit is not installed or enabled");
+        }
+    }
 
+    /**
+     * Decode a {@link BuiltInClipboardFormat#FAST_V3} schematic into a clipboard.
+     *
+     * @param schematic        the schematic
+     * @param clipboardFactory creates the clipboard to decode into from the dimensions of the schematic
+     * @return the clipboard, to be closed by the caller
+     * @throws IOException if the schematic could not be read
+     */
+    static Clipboard readClipboard(Schematic schematic, Function<BlockVector3, Clipboard> clipboardFactory) throws IOException {
+        // Streams from the file or buffer the schematic is held in, without copying it.
+        try (InputStream inputStream = schematic.data().openStream()) {
             FastSchematicReaderV3 reader = new FastSchematicReaderV3(inputStream);
-            clipboard = reader.read(randomUUID, dimensions -> new DiskOptimizedClipboard(region, randomUUID));
+            return reader.read(UUID.randomUUID(), clipboardFactory);
+        }
+    }
+
+    /**
+     * Get the region a paste may change.
+     *
+     * @param schematic the schematic to paste
+     * @param world     the world to paste the schematic in
+     * @param targetY   the Y coordinate of the position to paste the schematic at
+     * @param minY      the minimum Y coordinate to include in the paste
+     * @param maxY      the maximum Y coordinate to include in the paste
+     * @return the region
+     */
+    static Polygonal2DRegion getAllowedPasteRegion(Schematic schematic, World world, int targetY, int minY, int maxY) {
+        int targetMinY = targetY + (minY - schematic.minY());
+        int targetMaxY = targetY + (maxY - schematic.minY());
 
+        return new Polygonal2DRegion(world, schematic.points(), targetMinY, targetMaxY);
+    }
+
+    private boolean pasteSchematicV3(Schematic schematic, World world, int targetY, int minY, int maxY) {
+        ClipboardCache.Lease lease;
+
+        Polygonal2DRegion region = new Polygonal2DRegion(world, schematic.points(), schematic.minY(), schematic.maxY());
+
+        try {
+            lease = clipboardCache.acquire(schematic, region);
         } catch (IOException e) {
             log.log(Level.SEVERE, "Could not read schematic data, unable to paste schematic: " + e);
             return false;
         }
 
-        int targetMinY = targetY + (minY - schematic.minY());
-        int targetMaxY = targetY + (maxY - schematic.minY());
-
-        Polygonal2DRegion allowedPasteRegion = new Polygonal2DRegion(world, schematic.points(), targetMinY, targetMaxY);
+        Polygonal2DRegion allowedPasteRegion = getAllowedPasteRegion(schematic, world, targetY, minY, maxY);
 
-        try (EditSession editSession = WorldEdit.getInstance().newEditSession(world)) {
+        try (lease; EditSession editSession = WorldEdit.getInstance().newEditSession(world)) {
             editSession.setMask(new RegionMask(allowedPasteRegion));
 
-            Operation operation = new ClipboardHolder(clipboard)
+            Operation operation = new ClipboardHolder(lease.clipboard())
                 .createPaste(editSession)
                 .to(region.getMinimumPoint())
                 .build();
@@ -107,34 +257,100 @@ public final class SchematicUtils {
     }
 
     private Schematic createSchematic(BuiltInClipboardFormat schematicFormat, World world, List<BlockVector2> points, int minY, int maxY) {
-        Schematic schematic;
+        // Hands its buffer to the schematic rather than copying it with toByteArray().
+        ExposedByteArrayOutputStream outputStream = new ExposedByteArrayOutputStream();
+        if (!writeSchematic(schematicFormat, world, points, minY, maxY, outputStream)) {
+            return null;
+        }
+        return new Schematic(outputStream.toSchematicData(), schematicFormat, points, minY, maxY);
+    }
 
+    private Schematic createSchematic(BuiltInClipboardFormat schematicFormat, World world, List<BlockVector2> points, int minY, int maxY, Path file) {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        boolean moved = false;
+        try {
+            boolean written;
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(temporaryFile))) {
+                written = writeSchematic(schematicFormat, world, points, minY, maxY, outputStream);
+            }
+            if (!written) {
+                return null;
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Could not write schematic file " + file + ", unable to create schematic: ", e);
+            return null;
+        } finally {
+            // Also reached when the write or the move failed, or FAWE threw.
+            if (!moved) {
+                deleteTemporaryFile(temporaryFile);
+            }
+        }
+        return new Schematic(SchematicData.ofFile(file), schematicFormat, points, minY, maxY);
+    }
+
+    private static void deleteTemporaryFile(Path temporaryFile) {
+        try {
+            Files.deleteIfExists(temporaryFile);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not delete temporary schematic file " + temporaryFile + ": ", e);
+        }
+    }
+
+    private boolean writeSchematic(BuiltInClipboardFormat schematicFormat, World world, List<BlockVector2> points, int minY, int maxY,
+                                   OutputStream outputStream) {
         UUID randomUUID = UUID.randomUUID();
 
         Polygonal2DRegion region = new Polygonal2DRegion(world, points, minY, maxY);
 
         try (DiskOptimizedClipboard clipboard = new DiskOptimizedClipboard(region, randomUUID)) {
 
-            ForwardExtentCopy forwardExtentCopy = new ForwardExtentCopy(
-                world, region, clipboard, region.getMinimumPoint()
-            );
-
-            forwardExtentCopy.setCopyingBiomes(true);
-            forwardExtentCopy.setCopyingEntities(true);
-
-            Operations.complete(forwardExtentCopy);
+            try {
+                regionCopy.copy(world, region, clipboard);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.log(Level.SEVERE, "Interrupted while copying the region, unable to create schematic");
+                return false;
+            }
 
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             try (ClipboardWriter writer = schematicFormat.getWriter(outputStream)) {
                 writer.write(clipboard);
             } catch (IOException e) {
                 log.log(Level.SEVERE, "Could not write clipboard to file, unable to create schematic: ", e);
-                return null;
+                return false;
             }
+        }
 
-            schematic = new Schematic(outputStream.toByteArray(), schematicFormat, points, minY, maxY);
+        return true;
+    }
+
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        private ExposedByteArrayOutputStream() {
+            super(64 * 1024);
         }
 
-        return schematic;
+        private synchronized SchematicData toSchematicData() {
+            return SchematicData.ofBytes(buf, 0, count);
+        }
+    }
+
+    // The clipboard writer closes its stream, which must not close a stream owned by the caller.
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+
+        private NonClosingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
     }
 }
@@ -0,0 +1,240 @@
+package org.btuk.worldedit;
+
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.function.mask.RegionMask;
+import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
+import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.math.BlockVector2;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Polygonal2DRegion;
+import com.sk89q.worldedit.world.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies a polygonal region of a world into a clipboard in chunk-aligned tiles.
+ * <p>
+ * Tiles are copied concurrently on a pool shared with other copies, each into its own clipboard, and merged into the
+ * target as they complete. A copy has at most its parallelism of tiles in the pool, so only about that many tiles are
+ * held at a time. Tiles that don't overlap the polygon are skipped.
+ */
+final class TiledRegionCopy {
+
+    static final int CHUNK_SIZE = 16;
+
+    private final int parallelism;
+    private final int tileSize;
+    private final ExecutorService tilePool;
+
+    /**
+     * @param parallelism the number of tiles to copy at the same time, 1 copies the region in one operation
+     * @param tileChunks  the width of a tile in chunks
+     * @param tilePool    the pool to copy the tiles on
+     */
+    TiledRegionCopy(int parallelism, int tileChunks, ExecutorService tilePool) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1");
+        }
+        if (tileChunks < 1) {
+            throw new IllegalArgumentException("A tile must be at least 1 chunk wide");
+        }
+        this.parallelism = parallelism;
+        this.tileSize = tileChunks * CHUNK_SIZE;
+        this.tilePool = tilePool;
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Copy the blocks, biomes and entities of a region into a clipboard that covers it.
+     *
+     * @param world  the world to copy from
+     * @param region the region to copy
+     * @param target the clipboard to copy to, at the same coordinates as the world
+     * @throws InterruptedException if the thread was interrupted while waiting for the tiles
+     */
+    void copy(World world, Polygonal2DRegion region, Clipboard target) throws InterruptedException {
+        List<CuboidRegion> tiles = parallelism == 1 ? List.of() : split(world, region, tileSize);
+        if (tiles.size() <= 1) {
+            ForwardExtentCopy copy = new ForwardExtentCopy(world, region, target, region.getMinimumPoint());
+            copy.setCopyingBiomes(true);
+            copy.setCopyingEntities(true);
+            Operations.complete(copy);
+            return;
+        }
+
+        // Keeps at most parallelism tiles of this copy in the shared pool, so concurrent copies take turns.
+        AtomicBoolean abandoned = new AtomicBoolean();
+        CompletionService<Clipboard> completionService = new ExecutorCompletionService<>(tilePool);
+        int submitted = 0;
+        int taken = 0;
+        try {
+            for (; submitted < Math.min(parallelism, tiles.size()); submitted++) {
+                submitTile(completionService, abandoned, world, region, tiles.get(submitted));
+            }
+            while (taken < tiles.size()) {
+                Future<Clipboard> future = completionService.take();
+                taken++;
+                try (Clipboard tileClipboard = future.get()) {
+                    if (submitted < tiles.size()) {
+                        submitTile(completionService, abandoned, world, region, tiles.get(submitted));
+                        submitted++;
+                    }
+                    merge(tileClipboard, target);
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Could not copy a tile of the region", e.getCause());
+        } finally {
+            abandoned.set(true);
+            awaitUnmerged(completionService, submitted - taken);
+        }
+    }
+
+    /**
+     * Split the bounding box of a region into chunk-aligned tiles, keeping the tiles that overlap the polygon.
+     *
+     * @param world    the world of the region
+     * @param region   the region
+     * @param tileSize the width of a tile in blocks, a multiple of the chunk size
+     * @return the tiles, clipped to the bounding box of the region
+     */
+    static List<CuboidRegion> split(World world, Polygonal2DRegion region, int tileSize) {
+        BlockVector3 minimum = region.getMinimumPoint();
+        BlockVector3 maximum = region.getMaximumPoint();
+        List<BlockVector2> points = region.getPoints();
+
+        List<CuboidRegion> tiles = new ArrayList<>();
+        for (int tileX = Math.floorDiv(minimum.x(), tileSize) * tileSize; tileX <= maximum.x(); tileX += tileSize) {
+            for (int tileZ = Math.floorDiv(minimum.z(), tileSize) * tileSize; tileZ <= maximum.z(); tileZ += tileSize) {
+                int minX = Math.max(tileX, minimum.x());
+                int minZ = Math.max(tileZ, minimum.z());
+                int maxX = Math.min(tileX + tileSize - 1, maximum.x());
+                int maxZ = Math.min(tileZ + tileSize - 1, maximum.z());
+                if (overlaps(points, minX, minZ, maxX, maxZ)) {
+                    tiles.add(new CuboidRegion(world, BlockVector3.at(minX, minimum.y(), minZ), BlockVector3.at(maxX, maximum.y(), maxZ)));
+                }
+            }
+        }
+        return tiles;
+    }
+
+    private static void submitTile(CompletionService<Clipboard> completionService, AtomicBoolean abandoned, World world,
+                                   Polygonal2DRegion region, CuboidRegion tile) {
+        completionService.submit(() -> abandoned.get() ? null : copyTile(world, region, tile));
+    }
+
+    // Waits for the tiles that are still in the pool after a failure and closes their clipboards.
+    private static void awaitUnmerged(CompletionService<Clipboard> completionService, int remaining) {
+        boolean interrupted = false;
+        while (remaining > 0) {
+            try {
+                Future<Clipboard> future = completionService.take();
+                remaining--;
+                if (future.state() == Future.State.SUCCESS && future.resultNow() != null) {
+                    future.resultNow().close();
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Clipboard copyTile(World world, Polygonal2DRegion region, CuboidRegion tile) {
+        Clipboard clipboard = new BlockArrayClipboard(tile);
+        try {
+            ForwardExtentCopy copy = new ForwardExtentCopy(world, tile, clipboard, tile.getMinimumPoint());
+            // Keeps the tile to the blocks and entities inside the polygon.
+            copy.setSourceMask(new RegionMask(region));
+            copy.setCopyingBiomes(true);
+            copy.setCopyingEntities(true);
+            Operations.complete(copy);
+            return clipboard;
+        } catch (RuntimeException e) {
+            clipboard.close();
+            throw e;
+        }
+    }
+
+    private static void merge(Clipboard tileClipboard, Clipboard target) {
+        ForwardExtentCopy copy = new ForwardExtentCopy(tileClipboard, tileClipboard.getRegion(), target,
+                tileClipboard.getRegion().getMinimumPoint());
+        copy.setCopyingBiomes(true);
+        copy.setCopyingEntities(true);
+        Operations.complete(copy);
+    }
+
+    // Conservative, a tile that touches the polygon by a single block is kept; the source mask drops what is outside.
+    private static boolean overlaps(List<BlockVector2> points, int minX, int minZ, int maxX, int maxZ) {
+        double left = minX - 1;
+        double bottom = minZ - 1;
+        double right = maxX + 1;
+        double top = maxZ + 1;
+
+        // The polygon is inside the tile or crosses its border.
+        for (int i = 0, j = points.size() - 1; i < points.size(); j = i++) {
+            BlockVector2 start = points.get(j);
+            BlockVector2 end = points.get(i);
+            if (segmentIntersects(start.x(), start.z(), end.x(), end.z(), left, bottom, right, top)) {
+                return true;
+            }
+        }
+        // The tile is inside the polygon.
+        return contains(points, (minX + maxX) / 2.0, (minZ + maxZ) / 2.0);
+    }
+
+    // Liang-Barsky clipping of the segment against the rectangle.
+    private static boolean segmentIntersects(double x0, double z0, double x1, double z1,
+                                             double left, double bottom, double right, double top) {
+        double dx = x1 - x0;
+        double dz = z1 - z0;
+        double[] p = {-dx, dx, -dz, dz};
+        double[] q = {x0 - left, right - x0, z0 - bottom, top - z0};
+        double entry = 0;
+        double exit = 1;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return false;
+                }
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) {
+                    entry = Math.max(entry, t);
+                } else {
+                    exit = Math.min(exit, t);
+                }
+            }
+        }
+        return entry <= exit;
+    }
+
+    private static boolean contains(List<BlockVector2> points, double x, double z) {
+        boolean inside = false;
+        for (int i = 0, j = points.size() - 1; i < points.size(); j = i++) {
+            BlockVector2 a = points.get(i);
+            BlockVector2 b = points.get(j);
+            if ((a.z() > z) != (b.z() > z) && x < (double) (b.x() - a.x()) * (z - a.z()) / (b.z() - a.z()) + a.x()) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,83 @@
+package org.btuk.worldedit;
+
+import com.sk89q.worldedit.math.BlockVector2;
+import com.sk89q.worldedit.world.World;
+import lombok.extern.java.Log;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures how schematic creation scales with the number of threads copying tiles.
+ * <p>
+ * It needs a world, so it is run from a plugin or command on a server with FastAsyncWorldEdit, ideally with a region
+ * of a few hundred chunks. A warm-up round loads the chunks first, so later rounds only measure copying and encoding.
+ * The schematic is written to a discarding stream.
+ */
+@Log
+public final class SchematicBenchmark {
+
+    private SchematicBenchmark() {
+    }
+
+    /**
+     * Create the schematic of a region with 1, 2, 4, ... threads up to the maximum parallelism.
+     *
+     * @param world          the world of the region
+     * @param points         the bounds of the region
+     * @param minY           the minimum Y coordinate of the region
+     * @param maxY           the maximum Y coordinate of the region
+     * @param maxParallelism the highest number of threads to measure, for example the number of cores
+     * @param rounds         the number of rounds to average for every parallelism
+     * @return the results, in order of increasing parallelism
+     */
+    public static List<Result> run(World world, List<BlockVector2> points, int minY, int maxY, int maxParallelism, int rounds) {
+        List<Integer> parallelisms = new ArrayList<>();
+        for (int parallelism = 1; parallelism < maxParallelism; parallelism *= 2) {
+            parallelisms.add(parallelism);
+        }
+        parallelisms.add(maxParallelism);
+
+        // Its own executor, so the tile pool has a thread for every measured tile and no other jobs compete.
+        try (SchematicExecutor executor = new SchematicExecutor(1, 1, 1, maxParallelism)) {
+            time(new SchematicUtils(maxParallelism, 4, executor), world, points, minY, maxY);
+
+            List<Result> results = new ArrayList<>();
+            double baseline = 0;
+            for (int parallelism : parallelisms) {
+                SchematicUtils schematicUtils = new SchematicUtils(parallelism, 4, executor);
+                long nanos = 0;
+                for (int round = 0; round < rounds; round++) {
+                    nanos += time(schematicUtils, world, points, minY, maxY);
+                }
+                double seconds = nanos / 1e9 / rounds;
+                if (parallelism == 1) {
+                    baseline = seconds;
+                }
+                Result result = new Result(parallelism, seconds, baseline / seconds);
+                log.info(String.format(Locale.US, "%2d threads: %.2f s per schematic, %.2fx speed-up",
+                        result.parallelism(), result.seconds(), result.speedUp()));
+                results.add(result);
+            }
+            return results;
+        }
+    }
+
+    private static long time(SchematicUtils schematicUtils, World world, List<BlockVector2> points, int minY, int maxY) {
+        long start = System.nanoTime();
+        if (!schematicUtils.writeSchematic(world, points, minY, maxY, OutputStream.nullOutputStream()).join()) {
+            throw new IllegalStateException("Could not create the schematic");
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @param parallelism the number of threads copying tiles
+     * @param seconds     the average time to create the schematic
+     * @param speedUp     the speed-up compared to a single thread
+     */
+    public record Result(int parallelism, double seconds, double speedUp) {
+    }
+}
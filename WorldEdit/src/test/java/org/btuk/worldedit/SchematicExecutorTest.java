@@ -0,0 +1,165 @@
+package org.btuk.worldedit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the order, the limits and the rejections of the {@link SchematicExecutor}.
+ * <p>
+ * The executor has one worker, which is kept busy by a job of the server while the jobs under test are queued.
+ */
+class SchematicExecutorTest {
+
+    private static final UUID ALICE = new UUID(0, 1);
+    private static final UUID BOB = new UUID(0, 2);
+    private static final UUID CAROL = new UUID(0, 3);
+
+    private SchematicExecutor executor;
+    private CountDownLatch release;
+
+    @AfterEach
+    void closeExecutor() {
+        if (release != null) {
+            release.countDown();
+        }
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    @Test
+    void ownersTakeTurns() throws Exception {
+        executor = new SchematicExecutor(1, 16, 3, 1);
+        block();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (String job : List.of("a1", "a2", "a3", "b1", "b2", "c1")) {
+            UUID owner = switch (job.charAt(0)) {
+                case 'a' -> ALICE;
+                case 'b' -> BOB;
+                default -> CAROL;
+            };
+            futures.add(executor.submit(owner, () -> order.add(job)));
+        }
+        assertEquals(3, executor.getJobs(ALICE));
+        release.countDown();
+        for (CompletableFuture<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(List.of("a1", "b1", "c1", "a2", "b2", "a3"), order);
+        assertEquals(0, executor.getJobs(ALICE));
+    }
+
+    @Test
+    void ownerLimitRejectsFurtherJobs() throws Exception {
+        executor = new SchematicExecutor(1, 16, 2, 1);
+        block();
+
+        CompletableFuture<String> first = executor.submit(ALICE, () -> "first");
+        CompletableFuture<String> second = executor.submit(ALICE, () -> "second");
+        assertFalse(executor.canSubmit(ALICE));
+        assertRejected(executor.submit(ALICE, () -> "third"));
+
+        // Other owners and the server are not limited by Alice's jobs.
+        assertTrue(executor.canSubmit(BOB));
+        CompletableFuture<String> bob = executor.submit(BOB, () -> "bob");
+        for (int i = 0; i < 3; i++) {
+            executor.submit(SchematicExecutor.SERVER, () -> "server");
+        }
+        assertEquals(1, executor.getStats().rejected());
+
+        release.countDown();
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        assertEquals("bob", bob.get(5, TimeUnit.SECONDS));
+        // Finished jobs no longer count towards the limit.
+        assertEquals("again", executor.submit(ALICE, () -> "again").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void fullQueueRejectsJobs() throws Exception {
+        executor = new SchematicExecutor(1, 3, 2, 1);
+        block();
+
+        // The running job doesn't count towards the queue capacity.
+        List<CompletableFuture<UUID>> queued = new ArrayList<>();
+        for (UUID owner : List.of(ALICE, BOB, CAROL)) {
+            queued.add(executor.submit(owner, () -> owner));
+        }
+        assertEquals(3, executor.getStats().queued());
+        assertFalse(executor.canSubmit(SchematicExecutor.SERVER));
+        assertRejected(executor.submit(SchematicExecutor.SERVER, () -> null));
+        assertRejected(executor.submit(new UUID(0, 4), () -> null));
+        assertEquals(2, executor.getStats().rejected());
+        // A rejected job doesn't count as a job of its owner.
+        assertEquals(0, executor.getJobs(new UUID(0, 4)));
+
+        release.countDown();
+        for (int i = 0; i < queued.size(); i++) {
+            assertEquals(List.of(ALICE, BOB, CAROL).get(i), queued.get(i).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void closingRejectsQueuedAndNewJobs() throws Exception {
+        executor = new SchematicExecutor(1, 16, 2, 1);
+        CompletableFuture<String> running = block();
+        CompletableFuture<String> queued = executor.submit(ALICE, () -> "queued");
+
+        executor.close();
+        assertRejected(queued);
+        assertRejected(executor.submit(BOB, () -> "late"));
+        assertEquals(0, executor.getJobs(ALICE));
+
+        // The running job is not interrupted.
+        release.countDown();
+        assertEquals("blocker", running.get(5, TimeUnit.SECONDS));
+    }
+
+    // Occupy the worker with a job of the server until the latch is released.
+    private CompletableFuture<String> block() throws InterruptedException {
+        release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<String> future = executor.submit(SchematicExecutor.SERVER, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "blocker";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return future;
+    }
+
+    private static void assertRejected(CompletableFuture<?> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+            } catch (TimeoutException timeout) {
+                throw new AssertionError("The job was not rejected", timeout);
+            }
+        });
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    }
+}